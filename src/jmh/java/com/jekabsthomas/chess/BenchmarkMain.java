@@ -0,0 +1,25 @@
+package com.jekabsthomas.chess;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the microbenchmarks of the engine primitives (everything in src/jmh/java).
+ * The GC profiler is always on, so next to the throughput every benchmark reports
+ *     the bytes allocated per operation (gc.alloc.rate.norm).
+ * Takes the usual JMH options, e.g. a regex to select benchmarks:
+ *     java -jar target/benchmarks.jar ChessBoard
+ * @author Jekabs Gritans
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -0,0 +1,45 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the static evaluation of the bench positions.
+ * As in a search, the pawn structures mostly come from the pawn table.
+ * One operation evaluates all positions.
+ * @author Jekabs Gritans
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EvaluatorBenchmark {
+    private final Evaluator evaluator = new Evaluator();
+    private ChessGame[] games;
+
+    @Setup
+    public void setup() {
+        games = Bench.POSITIONS.stream().map(ChessGame::new).toArray(ChessGame[]::new);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        int checksum = 0;
+        for (ChessGame game : games) {
+            checksum += evaluator.evaluate(game);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,89 @@
+package com.jekabsthomas.chess.engine;
+
+import com.jekabsthomas.chess.core.Bench;
+import com.jekabsthomas.chess.utils.FenParser;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the board primitives on the bench positions:
+ *     construction from FEN, copying, making and undoing every legal move and hashing.
+ * One operation handles all positions (and for makeMove all of their moves).
+ * @author Jekabs Gritans
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ChessBoardBenchmark {
+    private final ZobristHash zobristHash = new ZobristHash();
+    private FenParser.FenResult[] fens;
+    private ChessGame[] games;
+    private int[][] moves;
+
+    @Setup
+    public void setup() {
+        int size = Bench.POSITIONS.size();
+        fens = new FenParser.FenResult[size];
+        games = new ChessGame[size];
+        moves = new int[size][];
+        for (int i = 0; i < size; i++) {
+            fens[i] = FenParser.parseFen(Bench.POSITIONS.get(i));
+            games[i] = new ChessGame(Bench.POSITIONS.get(i));
+            int[] buffer = new int[ChessRules.MAX_MOVES];
+            int count = games[i].getLegalMoves(buffer);
+            moves[i] = Arrays.copyOf(buffer, count);
+        }
+    }
+
+    @Benchmark
+    public void construct(Blackhole blackhole) {
+        for (FenParser.FenResult fen : fens) {
+            blackhole.consume(new ChessBoard(fen.piecePositions, fen.castlingAvailability,
+                fen.enPassantTarget));
+        }
+    }
+
+    @Benchmark
+    public void copy(Blackhole blackhole) {
+        for (ChessGame game : games) {
+            blackhole.consume(new ChessBoard(game.getBoard()));
+        }
+    }
+
+    @Benchmark
+    public int makeMove() {
+        int checksum = 0;
+        for (int i = 0; i < games.length; i++) {
+            ChessBoard board = games[i].getBoard();
+            for (int move : moves[i]) {
+                int undo = board.makeMove(move);
+                checksum += board.getPieceCount();
+                board.undoMove(move, undo);
+            }
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long getHash() {
+        long checksum = 0;
+        for (ChessGame game : games) {
+            checksum ^= zobristHash.getHash(game);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,53 @@
+package com.jekabsthomas.chess.engine;
+
+import com.jekabsthomas.chess.core.Bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of legal move generation on the bench positions,
+ *     both into a move buffer (as the search does) and as a list of move objects (as the GUI does).
+ * One operation generates the moves of all positions.
+ * @author Jekabs Gritans
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class MoveGenerationBenchmark {
+    private final int[] buffer = new int[ChessRules.MAX_MOVES];
+    private ChessGame[] games;
+
+    @Setup
+    public void setup() {
+        games = Bench.POSITIONS.stream().map(ChessGame::new).toArray(ChessGame[]::new);
+    }
+
+    @Benchmark
+    public int getLegalMoves() {
+        int count = 0;
+        for (ChessGame game : games) {
+            count += ChessRules.getLegalMoves(game.getBoard(), game.isWhiteMove(), buffer);
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void getLegalMoveList(Blackhole blackhole) {
+        for (ChessGame game : games) {
+            blackhole.consume(game.getLegalMoves());
+        }
+    }
+}
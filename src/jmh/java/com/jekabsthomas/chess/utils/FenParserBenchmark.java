@@ -0,0 +1,36 @@
+package com.jekabsthomas.chess.utils;
+
+import com.jekabsthomas.chess.core.Bench;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of parsing the FEN strings of the bench positions.
+ * One operation parses all positions.
+ * @author Jekabs Gritans
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FenParserBenchmark {
+    private final String[] fens = Bench.POSITIONS.toArray(new String[0]);
+
+    @Benchmark
+    public void parseFen(Blackhole blackhole) {
+        for (String fen : fens) {
+            blackhole.consume(FenParser.parseFen(fen));
+        }
+    }
+}
@@ -1,13 +1,49 @@
 package com.jekabsthomas.chess;
 
+import com.jekabsthomas.chess.core.AnalysisServer;
+import com.jekabsthomas.chess.core.Bench;
+import com.jekabsthomas.chess.core.DataGenerator;
 import com.jekabsthomas.chess.core.GameMain;
+import com.jekabsthomas.chess.core.GameServer;
+import com.jekabsthomas.chess.core.SelfPlayCoordinator;
+import com.jekabsthomas.chess.core.SelfPlayWorker;
+import com.jekabsthomas.chess.core.TexelTuner;
+import com.jekabsthomas.chess.core.UciProtocol;
+import com.jekabsthomas.chess.engine.Perft;
+import com.jekabsthomas.chess.engine.TablebaseGenerator;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.management.JMException;
 
 /**
  * Class that runs the GameMain, only exists as easy entry point for maven.
+ * The first argument can instead select a command line tool.
  * @author Thomas de Bock
  */
 public class App {
-    public static void main(String[] args) {
-        (new GameMain()).startGame();
+    public static void main(String[] args)
+        throws IOException, InterruptedException, JMException {
+        if (args.length == 0) {
+            (new GameMain()).startGame();
+            return;
+        }
+
+        String[] toolArgs = Arrays.copyOfRange(args, 1, args.length);
+        switch (args[0]) {
+            case "tune" -> TexelTuner.main(toolArgs);
+            case "datagen" -> DataGenerator.main(toolArgs);
+            case "tablebase" -> TablebaseGenerator.main(toolArgs);
+            case "bench" -> Bench.main(toolArgs);
+            case "perft" -> Perft.main(toolArgs);
+            case "uci" -> UciProtocol.main(toolArgs);
+            case "server" -> GameServer.main(toolArgs);
+            case "analysis" -> AnalysisServer.main(toolArgs);
+            case "selfplay" -> SelfPlayCoordinator.main(toolArgs);
+            case "selfplay-worker" -> SelfPlayWorker.main(toolArgs);
+            default -> {
+                System.err.println("Unknown command: " + args[0]);
+                System.exit(1);
+            }
+        }
     }
 }
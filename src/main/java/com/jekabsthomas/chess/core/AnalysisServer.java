@@ -0,0 +1,365 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.core.SearchScheduler.Priority;
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ZobristHash;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+
+/**
+ * Local HTTP service that analyses positions: GET /analyze?fen=FEN&amp;depth=N answers
+ *     with the best move, score and principal variation as JSON.
+ * Popular positions are asked for again and again, so results are kept in a bounded
+ *     LRU cache keyed by (Zobrist hash, depth), and identical requests that arrive while
+ *     the position is being searched wait for that search instead of starting their own.
+ * Searches run on a SearchScheduler (see GameServer) as background jobs, so a scheduler
+ *     shared with a GameServer lets bot moves go first. Requests run on virtual threads
+ *     if the JVM has them.
+ * @author Jekabs Gritans
+ */
+public class AnalysisServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_DEPTH = 8;
+    public static final int MAX_DEPTH = 30;
+    public static final int DEFAULT_CACHE_ENTRIES = 10000;
+    public static final int ENGINE_HASH_MB = 64;
+
+    /**
+     * Result of an analysis.
+     * @param bestMove the best move in UCI notation
+     * @param score the score from the perspective of the player to move
+     * @param depth the searched depth
+     * @param nodes the number of searched nodes
+     * @param pv the principal variation in UCI notation, starting with the best move
+     */
+    public record Analysis(String bestMove, int score, int depth, long nodes, List<String> pv) {}
+
+    private record Key(long hash, int depth) {}
+
+    private final ZobristHash zobristHash = new ZobristHash();
+    private final SearchScheduler scheduler;
+    private final boolean ownsScheduler;
+    private final Map<Key, Analysis> cache;
+    private final Map<Key, CompletableFuture<Analysis>> inFlight = new ConcurrentHashMap<>();
+    private final HttpServer httpServer;
+    private final ExecutorService requestExecutor;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    /**
+     * Starts an analysis service on the loopback address.
+     * @param port the port to listen on, or 0 for any free port
+     * @param searchThreads the number of searches that run at the same time
+     * @param cacheEntries the number of results to keep
+     * @throws IOException if the port cannot be opened
+     */
+    public AnalysisServer(int port, int searchThreads, int cacheEntries) throws IOException {
+        this(port, GameServer.newScheduler(searchThreads, ENGINE_HASH_MB), true, cacheEntries);
+    }
+
+    /**
+     * Starts an analysis service on the loopback address that searches on a shared scheduler.
+     * @param port the port to listen on, or 0 for any free port
+     * @param scheduler the scheduler of the searches, not closed with the service
+     * @param cacheEntries the number of results to keep
+     * @throws IOException if the port cannot be opened
+     */
+    public AnalysisServer(int port, SearchScheduler scheduler, int cacheEntries)
+        throws IOException {
+        this(port, scheduler, false, cacheEntries);
+    }
+
+    private AnalysisServer(int port, SearchScheduler scheduler, boolean ownsScheduler,
+        int cacheEntries) throws IOException {
+        if (cacheEntries <= 0) {
+            if (ownsScheduler) {
+                scheduler.close();
+            }
+            throw new IllegalArgumentException("Cache entries must be positive");
+        }
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+
+        // access order, so the eldest entry is the least recently used one
+        cache = new LinkedHashMap<Key, Analysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Analysis> eldest) {
+                return size() > cacheEntries;
+            }
+        };
+
+        requestExecutor = GameServer.newConnectionExecutor();
+        httpServer = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.setExecutor(requestExecutor);
+        httpServer.createContext("/analyze", this::handleAnalyze);
+        httpServer.start();
+    }
+
+    /**
+     * Gets the port the service listens on.
+     * @return the port
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Analyses a position, from the cache if it was analysed to the same depth before.
+     * Blocks until the result is known.
+     * @param fen the position
+     * @param depth the depth to search to
+     * @return the analysis
+     * @throws IllegalArgumentException if the FEN is invalid or the depth out of range
+     * @throws IllegalStateException if there are no legal moves in the position
+     */
+    public Analysis analyze(String fen, int depth) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be between 1 and " + MAX_DEPTH);
+        }
+        ChessGame game = new ChessGame(fen);
+        if (!game.hasLegalMoves()) {
+            throw new IllegalStateException("No legal moves");
+        }
+
+        requests.incrementAndGet();
+        Key key = new Key(zobristHash.getHash(game), depth);
+        Analysis cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<Analysis> future = new CompletableFuture<>();
+        CompletableFuture<Analysis> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalescedRequests.incrementAndGet();
+            return join(running);
+        }
+
+        // the search may have finished between the lookup and becoming the searching request
+        try {
+            cached = getCached(key);
+            future.complete(cached != null ? cached : search(game, depth, key));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key);
+        }
+        return join(future);
+    }
+
+    private Analysis getCached(Key key) {
+        Analysis cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    private Analysis search(ChessGame game, int depth, Key key) {
+        searches.incrementAndGet();
+        SearchResult result = scheduler.submit(game, SearchLimits.ofDepth(depth),
+            Priority.BACKGROUND).join();
+
+        List<String> pv = new ArrayList<>();
+        for (ChessMove move : result.lines().get(0).moves()) {
+            pv.add(move.toUci());
+        }
+        Analysis analysis = new Analysis(result.bestMove().toUci(), result.score(),
+            result.depth(), result.nodes(), List.copyOf(pv));
+        synchronized (cache) {
+            cache.put(key, analysis);
+        }
+        return analysis;
+    }
+
+    private static Analysis join(CompletableFuture<Analysis> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of analysis requests (with a valid position).
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of searches, the requests that were neither cached nor coalesced.
+     * @return the number of searches
+     */
+    public long getSearches() {
+        return searches.get();
+    }
+
+    /**
+     * Gets the number of requests answered from the cache.
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Gets the number of requests that waited for the search of an identical request.
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    /**
+     * Stops the service, and the scheduler if it is not shared.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        requestExecutor.shutdownNow();
+        if (ownsScheduler) {
+            scheduler.close();
+        }
+    }
+
+    private void handleAnalyze(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "{\"error\": \"Only GET is supported\"}");
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String fen = query.get("fen");
+            if (fen == null) {
+                respond(exchange, 400, "{\"error\": \"Missing fen\"}");
+                return;
+            }
+
+            try {
+                int depth = query.containsKey("depth")
+                    ? Integer.parseInt(query.get("depth")) : DEFAULT_DEPTH;
+                respond(exchange, 200, toJson(analyze(fen, depth)));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                respond(exchange, 400, "{\"error\": \"" + escape(e.getMessage()) + "\"}");
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals),
+                    StandardCharsets.UTF_8), URLDecoder.decode(parameter.substring(equals + 1),
+                    StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Writes an analysis as JSON, the score in centipawns or as moves until mate.
+     * @param analysis the analysis
+     * @return the JSON object
+     */
+    static String toJson(Analysis analysis) {
+        StringBuilder pv = new StringBuilder();
+        for (String move : analysis.pv()) {
+            if (pv.length() != 0) {
+                pv.append(", ");
+            }
+            pv.append('"').append(move).append('"');
+        }
+
+        int mateMoves = Engine.getMateMoves(analysis.score());
+        String score = mateMoves != 0 ? "\"mate\": " + mateMoves : "\"cp\": " + analysis.score();
+        return "{\"bestmove\": \"%s\", %s, \"depth\": %d, \"nodes\": %d, \"pv\": [%s]}".formatted(
+            analysis.bestMove(), score, analysis.depth(), analysis.nodes(), pv);
+    }
+
+    private static String escape(String text) {
+        return String.valueOf(text).replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json)
+        throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Runs the service until the process is killed.
+     * The statistics of the engines are registered as MBeans named analysis-0, analysis-1, ...
+     * @param args options -port N (8080 by default), -threads N (the number of cores)
+     *     and -cache N (the number of cached results)
+     * @throws IOException if the port cannot be opened
+     * @throws InterruptedException if interrupted while running
+     * @throws JMException if the MBeans cannot be registered
+     */
+    public static void main(String[] args)
+        throws IOException, InterruptedException, JMException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int cacheEntries = DEFAULT_CACHE_ENTRIES;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port" -> port = Integer.parseInt(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-cache" -> cacheEntries = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SearchScheduler scheduler = GameServer.newScheduler(threads, ENGINE_HASH_MB);
+        scheduler.registerMBeans("analysis");
+        AnalysisServer server = new AnalysisServer(port, scheduler, cacheEntries);
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/analyze");
+        while (true) {
+            TimeUnit.MINUTES.sleep(1);
+            System.out.println("%d requests, %d searches, %d cached, %d coalesced".formatted(
+                server.getRequests(), server.getSearches(), server.getCacheHits(),
+                server.getCoalescedRequests()));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Fixed benchmark of the engine: searches the same positions to the same depth every time.
+ * Move ordering is seeded and the search is single-threaded without time limits,
+ *     so the total number of nodes only changes when the search itself changes.
+ * The node count is thus a signature of the engine's behavior, separate from its speed:
+ *     an optimization should keep the nodes and raise the nodes per second.
+ * @author Jekabs Gritans
+ */
+public class Bench {
+    public static final int DEFAULT_DEPTH = 6;
+    public static final long DEFAULT_SEED = 0x5EED;
+    public static final int HASH_MB = 16;
+
+    // openings, middlegames and endings, with castling, en passant and promotions
+    public static final List<String> POSITIONS = List.of(
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+        "r1bq1rk1/ppp2ppp/2np1n2/2b1p3/2B1P3/2NP1N2/PPP2PPP/R1BQ1RK1 w - - 0 7",
+        "2r3k1/pp3ppp/4p3/3pP3/3P4/P4N2/1P3PPP/2R3K1 b - - 0 25",
+        "8/8/4k3/8/2p5/8/B2K4/8 w - - 0 1",
+        "8/5pk1/6p1/8/8/6P1/5PK1/8 w - - 0 40",
+        "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1"
+    );
+
+    /**
+     * Totals of a benchmark run.
+     * @param nodes the number of nodes of all searches, the signature of the run
+     * @param timeMs the time of all searches in milliseconds
+     * @param depthTimesMs the time all searches took to complete each depth, index 0 is depth 1
+     */
+    public record Result(long nodes, long timeMs, long[] depthTimesMs) {
+        /**
+         * Gets the search speed.
+         * @return the number of nodes per second, 0 if no time has passed
+         */
+        public long getNodesPerSecond() {
+            return SearchStats.getNodesPerSecond(nodes, timeMs);
+        }
+    }
+
+    /**
+     * Searches all benchmark positions, each starting with a cleared transposition table.
+     * @param depth the depth to search every position to
+     * @param seed the seed of the move ordering
+     * @param out where to print the results of every position, or null to print nothing
+     * @return the totals
+     */
+    public static Result run(int depth, long seed, PrintStream out) {
+        long nodes = 0;
+        long timeMs = 0;
+        long[] depthTimesMs = new long[depth];
+
+        try (Engine engine = new Engine(HASH_MB, 1)) {
+            engine.setSeed(seed);
+            for (int i = 0; i < POSITIONS.size(); i++) {
+                engine.newGame();
+                ChessGame game = new ChessGame(POSITIONS.get(i));
+                SearchResult result = engine.search(game, SearchLimits.ofDepth(depth)).join();
+                nodes += result.nodes();
+                timeMs += result.timeMs();
+
+                // time to depth counts all iterations up to it
+                StringBuilder depthTimes = new StringBuilder();
+                long elapsedMs = 0;
+                List<Long> iterationTimesMs = result.stats().iterationTimesMs();
+                for (int d = 0; d < iterationTimesMs.size(); d++) {
+                    elapsedMs += iterationTimesMs.get(d);
+                    depthTimesMs[d] += elapsedMs;
+                    depthTimes.append(' ').append(elapsedMs);
+                }
+
+                if (out != null) {
+                    out.printf("position %2d/%d: %9d nodes %7d ms %9d nps, ms to depth:%s%n",
+                        i + 1, POSITIONS.size(), result.nodes(), result.timeMs(),
+                        SearchStats.getNodesPerSecond(result.nodes(), result.timeMs()),
+                        depthTimes);
+                }
+            }
+        }
+
+        return new Result(nodes, timeMs, depthTimesMs);
+    }
+
+    /**
+     * Runs the benchmark from the command line.
+     * @param args options -depth N and -seed N
+     */
+    public static void main(String[] args) {
+        int depth = DEFAULT_DEPTH;
+        long seed = DEFAULT_SEED;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-depth" -> depth = Integer.parseInt(args[++i]);
+                case "-seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Result result = run(depth, seed, System.out);
+        StringBuilder depthTimes = new StringBuilder();
+        for (long depthTimeMs : result.depthTimesMs()) {
+            depthTimes.append(' ').append(depthTimeMs);
+        }
+
+        System.out.println("========================");
+        System.out.println("Depth           : " + depth);
+        System.out.println("Nodes searched  : " + result.nodes());
+        System.out.println("Total time (ms) : " + result.timeMs());
+        System.out.println("Nodes/second    : " + result.getNodesPerSecond());
+        System.out.println("ms to depth     :" + depthTimes);
+    }
+}
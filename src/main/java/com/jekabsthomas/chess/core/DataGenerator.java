@@ -0,0 +1,322 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import com.jekabsthomas.chess.engine.ChessPiece;
+import com.jekabsthomas.chess.engine.ChessRules;
+import com.jekabsthomas.chess.engine.ZobristHash;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.ArrayList;
+
+/**
+ * Generates training data by letting the engine play against itself (see TrainingData).
+ * Every worker thread plays whole games with its own engine and fixed-node searches,
+ *     starting from a few random moves so that games differ.
+ * Quiet positions are recorded with their search score and labeled with the result
+ *     once the game is over, then appended to the output through a buffered channel.
+ * @author Jekabs Gritans
+ */
+public class DataGenerator {
+    public static final long DEFAULT_NODES = 5000;
+    public static final int RANDOM_PLIES = 8;
+    public static final int MAX_PLIES = 400; // longer games are adjudicated as draws
+
+    private static final int ENGINE_HASH_MB = 4;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int DEDUP_ENTRIES = 1 << 24;
+
+    private final Path output;
+    private final long nodesPerMove;
+    private final int threads;
+    private final long seed;
+    private final SeenPositions seenPositions; // null if positions are not deduplicated
+
+    private final AtomicInteger gamesStarted = new AtomicInteger();
+    private final AtomicLong positionsWritten = new AtomicLong();
+
+    /**
+     * Creates a generator.
+     * @param output the file to append records to
+     * @param nodesPerMove the node limit of every search
+     * @param threads the number of games played at the same time
+     * @param isDeduplicating whether positions that were already written are skipped
+     * @param seed the seed of the random opening moves and the engines' move choices
+     */
+    public DataGenerator(Path output, long nodesPerMove, int threads, boolean isDeduplicating,
+        long seed) {
+        if (nodesPerMove <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Nodes and threads must be positive");
+        }
+
+        this.output = output;
+        this.nodesPerMove = nodesPerMove;
+        this.threads = threads;
+        this.seed = seed;
+        seenPositions = isDeduplicating ? new SeenPositions(DEDUP_ENTRIES) : null;
+    }
+
+    /**
+     * Plays games and writes their positions, blocking until all games are finished.
+     * @param games the number of games to play
+     * @return the number of written positions
+     * @throws IOException if the output cannot be written
+     */
+    public long generate(int games) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (RecordWriter writer = new RecordWriter(output)) {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < threads; i++) {
+                long workerSeed = seed + i;
+                futures.add(workers.submit(() -> {
+                    playGames(games, writer, workerSeed);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    throw new IllegalStateException("Worker failed", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while generating", e);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return positionsWritten.get();
+    }
+
+    /**
+     * Plays games until the requested number has been started by all workers.
+     * @param games the total number of games
+     * @param writer the output
+     * @param seed the seed of this worker
+     * @throws IOException if the output cannot be written
+     */
+    private void playGames(int games, RecordWriter writer, long seed) throws IOException {
+        Random random = new Random(seed);
+        ZobristHash zobristHash = new ZobristHash();
+        ByteBuffer records = ByteBuffer.allocate(MAX_PLIES * TrainingData.RECORD_BYTES)
+            .order(TrainingData.BYTE_ORDER);
+
+        try (Engine engine = new Engine(ENGINE_HASH_MB, 1)) {
+            engine.setSeed(seed);
+            while (gamesStarted.getAndIncrement() < games) {
+                engine.newGame();
+                records.clear();
+                int result = playGame(engine, zobristHash, records, random);
+
+                // label the positions now that the result is known
+                records.flip();
+                for (int i = 0; i < records.limit(); i += TrainingData.RECORD_BYTES) {
+                    records.put(i + TrainingData.RESULT_OFFSET, (byte) result);
+                }
+                writer.write(records);
+                positionsWritten.addAndGet(records.limit() / TrainingData.RECORD_BYTES);
+            }
+        }
+    }
+
+    /**
+     * Plays a single game, recording its quiet positions.
+     * @return the result of the game, e.g. TrainingData.DRAW
+     */
+    private int playGame(Engine engine, ZobristHash zobristHash, ByteBuffer records,
+        Random random) {
+        ChessGame game = new ChessGame();
+        SearchLimits limits = SearchLimits.ofNodes(nodesPerMove);
+
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            if (game.getGameState() != GameState.ACTIVE) {
+                break;
+            }
+
+            if (ply < RANDOM_PLIES) {
+                List<ChessMove> moves = game.getLegalMoves();
+                game.makeMove(moves.get(random.nextInt(moves.size())));
+                continue;
+            }
+
+            SearchResult result = engine.search(game, limits).join();
+            int whiteScore = game.isWhiteMove() ? result.score() : -result.score();
+            if (isQuiet(game, result) && isNew(zobristHash.getHash(game))) {
+                TrainingData.write(records, game, whiteScore, TrainingData.DRAW);
+            }
+            game.makeMove(result.bestMove());
+        }
+
+        // games stopped at MAX_PLIES are counted as draws but did not really finish
+        if (game.getGameState() != GameState.ACTIVE) {
+            GameFinishedEvent.emit(game);
+        }
+        return switch (game.getGameState()) {
+            case WHITE_WINS -> TrainingData.WHITE_WINS;
+            case BLACK_WINS -> TrainingData.BLACK_WINS;
+            default -> TrainingData.DRAW;
+        };
+    }
+
+    /**
+     * Checks whether a position is suitable for training a static evaluation:
+     *     not in check, no capture or promotion to be made, and no mate found.
+     */
+    private static boolean isQuiet(ChessGame game, SearchResult result) {
+        if (Math.abs(result.score()) >= Engine.MATE_SCORE - 1000
+            || ChessRules.canCaptureKing(game.getBoard(), !game.isWhiteMove())) {
+            return false;
+        }
+
+        ChessMove move = result.bestMove();
+        return !game.isCapture(move) && move.getPromotionType() == ChessPiece.EMPTY;
+    }
+
+    private boolean isNew(long key) {
+        return seenPositions == null || seenPositions.add(key);
+    }
+
+    /**
+     * Plays self-play games from the command line.
+     * Usage: datagen outputFile [-games N] [-nodes N] [-threads N] [-seed N] [-dedup]
+     * @param args the arguments
+     * @throws IOException if the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: datagen <output file> [-games N] [-nodes N] "
+                + "[-threads N] [-seed N] [-dedup]");
+            return;
+        }
+
+        int games = 100;
+        long nodes = DEFAULT_NODES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        boolean isDeduplicating = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games" -> games = Integer.parseInt(args[++i]);
+                case "-nodes" -> nodes = Long.parseLong(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-seed" -> seed = Long.parseLong(args[++i]);
+                case "-dedup" -> isDeduplicating = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        DataGenerator generator = new DataGenerator(Path.of(args[0]), nodes, threads,
+            isDeduplicating, seed);
+        long positions = generator.generate(games);
+        System.out.printf("%d games, %d positions in %d ms%n", games, positions,
+            System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Appends records to a file through a large buffer, shared by all workers.
+     */
+    private static class RecordWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+        RecordWriter(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        }
+
+        /**
+         * Appends the remaining bytes of a buffer, writing to the file whenever it is full.
+         * Records of one call stay together.
+         * @param records the records
+         * @throws IOException if the file cannot be written
+         */
+        synchronized void write(ByteBuffer records) throws IOException {
+            while (records.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(records.remaining(), buffer.remaining());
+                buffer.put(records.slice(records.position(), length));
+                records.position(records.position() + length);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Lockless set of Zobrist keys shared by all workers (open addressing).
+     * When the set is full new keys are treated as unseen, so output never stops.
+     */
+    private static class SeenPositions {
+        private static final int MAX_PROBES = 16;
+
+        private final AtomicLongArray keys;
+        private final int mask;
+
+        SeenPositions(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+        }
+
+        /**
+         * Adds a key.
+         * @param key the Zobrist key
+         * @return true if the key was not in the set
+         */
+        boolean add(long key) {
+            key = key == 0 ? 1 : key; // 0 marks empty slots
+            int idx = (int) key & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int slot = (idx + probe) & mask;
+                long stored = keys.get(slot);
+                if (stored == key) {
+                    return false;
+                }
+                if (stored == 0) {
+                    if (keys.compareAndSet(slot, 0, key)) {
+                        return true;
+                    }
+                    if (keys.get(slot) == key) {
+                        return false; // another worker added it just now
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
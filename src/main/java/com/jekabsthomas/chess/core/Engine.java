@@ -0,0 +1,1208 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard;
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import com.jekabsthomas.chess.engine.ChessPiece;
+import com.jekabsthomas.chess.engine.ChessRules;
+import com.jekabsthomas.chess.engine.Tablebase;
+import com.jekabsthomas.chess.engine.ZobristHash;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Chess engine that uses negamax (minimax from the perspective of the player to move).
+ * Features:
+ * - alpha-beta pruning
+ * - transposition table (stores previous search results, shared between search threads)
+ * - iterative deepening (allows to adhere to time, node and depth limits)
+ * - history heuristic (quiet moves that caused cutoffs before are searched first)
+ * - lazy SMP (additional threads search the same tree and fill the shared table)
+ * - multi-PV (optionally ranks several best moves, each with its principal variation)
+ * - optional neural network evaluation (see NnueNetwork)
+ * - optional endgame tablebases (positions of solved endings are not searched further)
+ * - search statistics (see SearchStats), also readable over JMX (see EngineStatsMXBean)
+ * - progress reports after every iteration (see SearchInfo), e.g. for the UCI protocol
+ * - flight recorder events of iterations and decided moves (see SearchIterationEvent)
+ * All search state belongs to the instance, so independent engines can run side by side.
+ * A single engine runs one search at a time, asynchronously on its executor.
+ * @author Jekabs Gritans
+ */
+public class Engine implements AutoCloseable {
+    public static final int DEFAULT_HASH_MB = 16;
+    public static final int DEFAULT_THREADS = 1;
+    public static final SearchLimits DEFAULT_LIMITS = SearchLimits.ofTime(1000);
+    public static final int EVAL_CACHE_MB = 4;
+
+    // scores
+    public static final int MATE_SCORE = 100000;
+    private static final int INFINITY = 1000000;
+    private static final int MAX_PLY = 128;
+    private static final int TABLEBASE_WIN_SCORE = MATE_SCORE - 2 * MAX_PLY; // distance unknown
+
+    private static final long PONDER_WAIT_NANOS = 1000000;
+
+    private final TranspositionTable transpoTable;
+    private final EvalCache evalCache = new EvalCache(EVAL_CACHE_MB);
+    private final ZobristHash zobristHash = new ZobristHash();
+    private final Random random = new Random();
+    private final EngineStats stats = new EngineStats();
+    private ObjectName mbeanName = null;
+
+    // history heuristic, indexed by the lower 16 bits of the encoded move (from and to squares)
+    private final int[] history = new int[1 << 16];
+
+    private int threads;
+    private int multiPv = 1;
+    private NnueNetwork network = null; // null to use the handcrafted evaluation
+    private EvalParams evalParams = new EvalParams();
+    private volatile Tablebase tablebase = null;
+    private volatile boolean isLogging = false; // print search progress to the console
+    private volatile Consumer<SearchInfo> infoListener = null;
+    private ExecutorService helperPool;
+
+    // runs the main search thread
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    // the most recently started search
+    private volatile SearchTask latestTask;
+    private Searcher[] searchers = new Searcher[0];
+
+    // one per search thread, they cache pawn structures
+    private Evaluator[] evaluators = new Evaluator[0];
+
+    // one per search thread, reused by every search so that searching does not allocate
+    private SearchStack[] stacks = new SearchStack[0];
+
+    /**
+     * Creates an engine with the default hash size and a single search thread.
+     */
+    public Engine() {
+        this(DEFAULT_HASH_MB, DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates an engine.
+     * @param hashMb the size of the transposition table in megabytes
+     * @param threads the number of search threads
+     */
+    public Engine(int hashMb, int threads) {
+        this(hashMb, threads, null);
+    }
+
+    /**
+     * Creates an engine whose main search thread runs on the given executor,
+     *     e.g. to share a bounded pool between many engines.
+     * Helper threads (if threads is greater than 1) are always owned by the engine.
+     * @param hashMb the size of the transposition table in megabytes
+     * @param threads the number of search threads
+     * @param executor the executor to run searches on, or null to use an own thread
+     */
+    public Engine(int hashMb, int threads, Executor executor) {
+        transpoTable = new TranspositionTable(hashMb);
+        setThreads(threads);
+
+        ownsExecutor = executor == null;
+        this.executor = ownsExecutor
+            ? Executors.newSingleThreadExecutor(runnable -> createDaemonThread(runnable, "engine"))
+            : executor;
+    }
+
+    /**
+     * Finds the best legal move for the current player within the default time limit.
+     * Blocks until the search is finished.
+     * @param game the game to search
+     * @return the best legal move
+     */
+    public ChessMove generateMove(ChessGame game) {
+        return generateMove(game, DEFAULT_LIMITS);
+    }
+
+    /**
+     * Finds the best legal move for the current player.
+     * Blocks until the search is finished.
+     * @param game the game to search
+     * @param limits the limits of the search
+     * @return the best legal move
+     * @throws IllegalStateException if game is over
+     */
+    public ChessMove generateMove(ChessGame game, SearchLimits limits) {
+        return search(game, limits).join().bestMove();
+    }
+
+    /**
+     * Starts searching for the best legal move for the current player.
+     * The search runs on the engine's executor over a snapshot of the game,
+     *     so the game may be changed while the search is running.
+     * Searches of one engine run one after another in the order they were started.
+     * Cancelling the returned future stops the search (or skips it if it has not started yet),
+     *     whereas stop() completes it with the best move found so far.
+     * @param game the game to search
+     * @param limits the limits of the search
+     * @return the future result of the search
+     * @throws IllegalStateException if game is over
+     */
+    public CompletableFuture<SearchResult> search(ChessGame game, SearchLimits limits) {
+        return startSearch(game, limits, false, null);
+    }
+
+    /**
+     * Starts a search that also stops once a condition holds, checked like the limits.
+     * Unlike stop(), the condition cannot miss the search by coming before it starts,
+     *     so callers sharing an engine can stop exactly the search they started.
+     * @param game the game to search
+     * @param limits the limits of the search
+     * @param stopCondition the condition, checked in every node from any search thread
+     * @return the future result of the search
+     * @throws IllegalStateException if game is over
+     */
+    public CompletableFuture<SearchResult> search(ChessGame game, SearchLimits limits,
+        BooleanSupplier stopCondition) {
+        return startSearch(game, limits, false, stopCondition);
+    }
+
+    /**
+     * Starts searching on the opponent's time, assuming they play the expected move.
+     * The limits are ignored until ponderHit() is called, so the search keeps going
+     *     while the opponent is thinking. It fills the transposition table either way:
+     *     on a ponder hit the search continues, on a miss the caller cancels it and starts
+     *     a regular search of the actual position, which benefits from the filled table.
+     * @param game the game before the opponent's move
+     * @param expectedMove the move the opponent is expected to play
+     * @param limits the limits of the search, starting from the ponder hit
+     * @return the future result of the search of the position after the expected move
+     * @throws IllegalStateException if game is over (also after the expected move)
+     */
+    public CompletableFuture<SearchResult> ponder(ChessGame game, ChessMove expectedMove,
+        SearchLimits limits) {
+        return ponder(makeMove(game, expectedMove), limits);
+    }
+
+    /**
+     * Starts searching a position on the opponent's time, see ponder(ChessGame, ChessMove,
+     *     SearchLimits), for when the expected move has already been made.
+     * Also useful for searches that must only finish when told to, as the search
+     *     does not complete before stop() or ponderHit() is called.
+     * @param game the game after the opponent's expected move
+     * @param limits the limits of the search, starting from the ponder hit
+     * @return the future result of the search
+     * @throws IllegalStateException if game is over
+     */
+    public CompletableFuture<SearchResult> ponder(ChessGame game, SearchLimits limits) {
+        return startSearch(game, limits, true, null);
+    }
+
+    /**
+     * Tells the engine that the opponent played the expected move of the latest ponder search.
+     * The search then continues as a regular search, its limits counting from now.
+     */
+    public void ponderHit() {
+        SearchTask task = latestTask;
+        if (task != null && task.pondering) {
+            task.startTime = System.currentTimeMillis();
+            task.pondering = false;
+        }
+    }
+
+    /**
+     * Stops the latest search as soon as possible (also if it is pondering).
+     * The search returns the best move of the last completed iteration.
+     */
+    public void stop() {
+        SearchTask task = latestTask;
+        if (task != null) {
+            task.stopped = true;
+        }
+    }
+
+    /**
+     * Stops the current search and releases the engine's threads.
+     * The engine cannot search anymore afterwards.
+     */
+    @Override
+    public void close() {
+        stop();
+        unregisterMBean();
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+        if (helperPool != null) {
+            helperPool.shutdown();
+        }
+    }
+
+    /**
+     * Creates a search of a snapshot of the game and queues it on the executor.
+     * @param game the game to search
+     * @param limits the limits of the search
+     * @param isPondering whether the limits are ignored until a ponder hit
+     * @param stopCondition a condition that also stops the search, or null
+     * @return the future result of the search
+     */
+    private CompletableFuture<SearchResult> startSearch(ChessGame game, SearchLimits limits,
+        boolean isPondering, BooleanSupplier stopCondition) {
+        if (game.getGameState() != GameState.ACTIVE) {
+            throw new IllegalStateException("Game is over");
+        }
+
+        SearchTask task = new SearchTask(new ChessGame(game), limits, isPondering,
+            stopCondition);
+        task.future.whenComplete((result, error) -> {
+            if (task.future.isCancelled()) {
+                task.stopped = true;
+            }
+        });
+
+        latestTask = task;
+        executor.execute(() -> runSearch(task));
+        return task.future;
+    }
+
+    /**
+     * Runs a search on the executor and completes its future.
+     * @param task the search to run
+     */
+    private synchronized void runSearch(SearchTask task) {
+        if (task.future.isDone()) {
+            return; // cancelled before it started
+        }
+
+        try {
+            task.future.complete(think(task));
+        } catch (RuntimeException e) {
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Searches the game on the calling thread and the helper threads.
+     * @param task the search to run
+     * @return the result of the search
+     */
+    private SearchResult think(SearchTask task) {
+        MoveDecidedEvent event = new MoveDecidedEvent();
+        event.begin();
+        task.startTime = System.currentTimeMillis();
+        ageHistory();
+
+        // the accumulator is copied along with every searched position
+        task.game.getBoard().setAccumulator(network == null ? null : network.createAccumulator());
+
+        searchers = new Searcher[threads];
+        for (int i = 0; i < threads; i++) {
+            searchers[i] = new Searcher(task, i, random.nextLong());
+        }
+
+        // helpers only fill the transposition table, the main searcher decides the move
+        List<Future<?>> helpers = new ArrayList<Future<?>>();
+        for (int i = 1; i < threads; i++) {
+            Searcher helper = searchers[i];
+            helpers.add(helperPool.submit(() -> helper.iterativeDeepening()));
+        }
+
+        Searcher main = searchers[0];
+        main.iterativeDeepening();
+
+        // a ponder search must not finish before the opponent has moved,
+        // even if there is nothing left to search
+        while (task.pondering && !task.stopped) {
+            LockSupport.parkNanos(PONDER_WAIT_NANOS);
+        }
+
+        task.stopped = true;
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Helper search failed", e.getCause());
+            }
+        }
+
+        PvLine bestLine = main.lines.get(0);
+        ChessMove move = bestLine.moves().get(0);
+        ChessMove ponderMove = bestLine.moves().size() > 1 ? bestLine.moves().get(1) : null;
+        if (isLogging) {
+            System.out.println("best move at depth %d: %s".formatted(main.completedDepth, move));
+        }
+
+        long timeMs = System.currentTimeMillis() - task.startTime;
+        SearchStats searchStats = collectStats(main, timeMs);
+        stats.add(searchStats);
+        if (event.shouldCommit()) {
+            event.move = move.toString();
+            event.score = bestLine.score();
+            event.depth = main.completedDepth;
+            event.nodes = searchStats.nodes();
+            event.fen = task.game.getFenString();
+            event.commit();
+        }
+        return new SearchResult(move, ponderMove, bestLine.score(), main.completedDepth,
+            searchStats.nodes(), timeMs, main.lines, searchStats);
+    }
+
+    /**
+     * Sums the statistics of all searchers of a finished search.
+     * @param main the main searcher
+     * @param timeMs the time the search took in milliseconds
+     * @return the statistics
+     */
+    private SearchStats collectStats(Searcher main, long timeMs) {
+        long tableProbes = 0;
+        long tableHits = 0;
+        long expandedNodes = 0;
+        long cutoffs = 0;
+        long firstMoveCutoffs = 0;
+        long tablebaseHits = 0;
+        int selDepth = 0;
+        for (Searcher searcher : searchers) {
+            tableProbes += searcher.tableProbes;
+            tableHits += searcher.tableHits;
+            expandedNodes += searcher.expandedNodes;
+            cutoffs += searcher.cutoffs;
+            firstMoveCutoffs += searcher.firstMoveCutoffs;
+            tablebaseHits += searcher.tablebaseHits;
+            selDepth = Math.max(selDepth, searcher.selDepth);
+        }
+
+        return new SearchStats(getNodeCount(), timeMs, main.completedDepth, selDepth, tableProbes,
+            tableHits, expandedNodes, cutoffs, firstMoveCutoffs, tablebaseHits,
+            List.copyOf(main.iterationTimesMs), List.copyOf(main.iterationNodes));
+    }
+
+    /**
+     * Checks whether an encoded move is one of the legal moves of a game.
+     * @param game the game
+     * @param move the encoded move
+     * @param buffer an array for the legal moves
+     * @return true if the move is legal
+     */
+    private static boolean isLegalMove(ChessGame game, int move, int[] buffer) {
+        int numMoves = game.getLegalMoves(buffer);
+        for (int i = 0; i < numMoves; i++) {
+            if (buffer[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets everything learned in previous searches, to be called when a new game starts.
+     */
+    public synchronized void newGame() {
+        transpoTable.clear();
+        evalCache.clear();
+        for (Evaluator evaluator : evaluators) {
+            evaluator.clear();
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+    }
+
+    /**
+     * Sets the size of the transposition table, discarding its entries.
+     * @param hashMb the size of the table in megabytes
+     */
+    public synchronized void setHashSize(int hashMb) {
+        transpoTable.resize(hashMb);
+    }
+
+    /**
+     * Sets the number of threads used for searching.
+     * @param threads the number of threads
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public synchronized void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+
+        if (helperPool != null) {
+            helperPool.shutdown();
+            helperPool = null;
+        }
+
+        this.threads = threads;
+        Evaluator[] oldEvaluators = evaluators;
+        evaluators = Arrays.copyOf(oldEvaluators, threads);
+        stacks = Arrays.copyOf(stacks, threads);
+        for (int i = oldEvaluators.length; i < threads; i++) {
+            evaluators[i] = new Evaluator(evalParams, Evaluator.PAWN_TABLE_ENTRIES);
+            stacks[i] = new SearchStack();
+        }
+        if (threads > 1) {
+            helperPool = Executors.newFixedThreadPool(threads - 1,
+                runnable -> createDaemonThread(runnable, "engine-helper"));
+        }
+    }
+
+    /**
+     * Creates a thread that does not keep the application running.
+     * @param runnable the task of the thread
+     * @param name the name of the thread
+     * @return the thread
+     */
+    private static Thread createDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Gets the number of threads used for searching.
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of best lines to search (multi-PV analysis).
+     * Every line starts with a different move, so the search ranks the best moves.
+     * Searching more than one line makes the search slower.
+     * @param multiPv the number of lines
+     * @throws IllegalArgumentException if multiPv is not positive
+     */
+    public synchronized void setMultiPv(int multiPv) {
+        if (multiPv <= 0) {
+            throw new IllegalArgumentException("Number of lines must be positive");
+        }
+        this.multiPv = multiPv;
+    }
+
+    /**
+     * Sets the neural network used for evaluation instead of the handcrafted evaluation.
+     * @param network the network, or null to use the handcrafted evaluation
+     */
+    public synchronized void setNetwork(NnueNetwork network) {
+        this.network = network;
+        evalCache.clear(); // cached evaluations came from the other evaluation
+    }
+
+    /**
+     * Sets the endgame tablebase probed during the search.
+     * @param tablebase the tablebase, or null to search endings like any other position
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Seeds the shuffling of equally good moves, which otherwise differs between runs.
+     * A seeded single-threaded search to a fixed depth always searches the same nodes
+     *     (if the transposition table and history are cleared by newGame first).
+     * @param seed the seed
+     */
+    public synchronized void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Sets the listener that is told the progress of every search after each iteration.
+     * It is called on the search thread, so it should not take long.
+     * @param infoListener the listener, or null for none
+     */
+    public void setInfoListener(Consumer<SearchInfo> infoListener) {
+        this.infoListener = infoListener;
+    }
+
+    /**
+     * Sets whether search progress is printed to the console, off by default.
+     * Meant for the GUI, other front ends report through setInfoListener and SearchStats.
+     * @param isLogging true to print progress
+     */
+    public void setLogging(boolean isLogging) {
+        this.isLogging = isLogging;
+    }
+
+    /**
+     * Sets the weights of the handcrafted evaluation, e.g. loaded from a tuned file.
+     * @param evalParams the weights
+     */
+    public synchronized void setEvalParams(EvalParams evalParams) {
+        this.evalParams = new EvalParams(evalParams);
+        for (int i = 0; i < evaluators.length; i++) {
+            evaluators[i] = new Evaluator(this.evalParams, Evaluator.PAWN_TABLE_ENTRIES);
+        }
+        evalCache.clear();
+    }
+
+    /**
+     * Gets the neural network used for evaluation.
+     * @return the network, or null if the handcrafted evaluation is used
+     */
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the number of best lines to search.
+     * @return the number of lines
+     */
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    /**
+     * Gets the statistics of all searches of this engine.
+     * @return the statistics
+     */
+    public EngineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Registers the statistics of this engine with the platform MBean server,
+     *     so that monitoring tools can read them over JMX (see EngineStatsMXBean).
+     * The registration is removed when the engine is closed.
+     * @param name the name of the engine, unique among registered engines
+     * @return the object name of the registered MBean
+     * @throws JMException if the name is invalid or already registered
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        unregisterMBean();
+        ObjectName objectName = new ObjectName("com.jekabsthomas.chess:type=Engine,name="
+            + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(stats, objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the registration of registerMBean, if any.
+     */
+    private synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            // already unregistered by someone else
+        }
+        mbeanName = null;
+    }
+
+    /**
+     * Gets the number of nodes searched by all threads in the current or last search.
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        long nodes = 0;
+        for (Searcher searcher : searchers) {
+            nodes += searcher.nodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the number of moves until mate of a score, e.g. to report it.
+     * @param score a score from the perspective of the player to move
+     * @return the number of moves until mate, positive if the player to move mates
+     *     and negative if they are mated, 0 if the score is not a mate
+     */
+    public static int getMateMoves(int score) {
+        if (score >= MATE_SCORE - MAX_PLY) {
+            return (MATE_SCORE - score + 1) / 2;
+        } else if (score <= -MATE_SCORE + MAX_PLY) {
+            return -(MATE_SCORE + score) / 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether a search should stop.
+     * @param task the search
+     * @return true if stopped or any of the limits is reached (and not pondering)
+     */
+    private boolean shouldStop(SearchTask task) {
+        if (task.stopped) {
+            return true;
+        } else if (task.stopCondition != null && task.stopCondition.getAsBoolean()) {
+            task.stopped = true;
+            return true;
+        } else if (task.pondering) {
+            return false;
+        }
+
+        SearchLimits limits = task.limits;
+        if (limits.timeMs() > 0 && System.currentTimeMillis() - task.startTime > limits.timeMs()) {
+            task.stopped = true;
+        } else if (limits.nodes() > 0 && getNodeCount() >= limits.nodes()) {
+            task.stopped = true;
+        }
+
+        return task.stopped;
+    }
+
+    /**
+     * Halves the history scores so that recent searches dominate the move ordering.
+     */
+    private void ageHistory() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] /= 2;
+        }
+    }
+
+    /**
+     * Gets the heuristic value of the game from the perspective of the player to move.
+     * Transpositions reach the same positions many times, so evaluations are cached.
+     * @param game the game to evaluate (must be active)
+     * @param key the Zobrist hash of the game
+     * @param evaluator the evaluator of the calling thread
+     * @return the heuristic value of the game
+     */
+    private int evaluate(ChessGame game, long key, Evaluator evaluator) {
+        int eval = evalCache.probe(key);
+        if (eval == EvalCache.NONE) {
+            eval = evaluator.evaluate(game);
+            evalCache.store(key, eval);
+        }
+        return eval;
+    }
+
+    /**
+     * Gets the heuristic value of a game whose player to move has no legal moves.
+     * @param game the game
+     * @param ply the distance from the root of the search
+     * @return the heuristic value of the game, a loss if checkmated and 0 if stalemated
+     */
+    private static int evaluateNoMoves(ChessGame game, int ply) {
+        return game.isInCheck() ? -MATE_SCORE + ply : 0;
+    }
+
+    /**
+     * Gets the heuristic value of a finished game from the perspective of the player to move.
+     * Faster wins are preferred over slower ones.
+     * @param game the finished game
+     * @param ply the distance from the root of the search
+     * @return the heuristic value of the game
+     */
+    private static int evaluateGameOver(ChessGame game, int ply) {
+        GameState state = game.getGameState();
+        if (state == GameState.STALEMATE || state == GameState.DRAW) {
+            return 0;
+        }
+
+        // after a checkmate it is the turn of the player who lost
+        boolean isWhiteWinner = state == GameState.WHITE_WINS;
+        return isWhiteWinner == game.isWhiteMove() ? MATE_SCORE - ply : -MATE_SCORE + ply;
+    }
+
+    /**
+     * Converts the result of a tablebase probe to a score of the player to move.
+     * Known distances give the same scores as mates found by the search.
+     * @param result the result of the probe
+     * @param ply the distance from the root of the search
+     * @return the heuristic value of the position
+     */
+    private static int getTablebaseScore(int result, int ply) {
+        int distance = Tablebase.getDistance(result);
+        int score = distance == Tablebase.UNKNOWN_DISTANCE ? TABLEBASE_WIN_SCORE - ply
+            : MATE_SCORE - ply - distance;
+        return switch (Tablebase.getWdl(result)) {
+            case Tablebase.WIN -> score;
+            case Tablebase.LOSS -> -score;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Converts a score to be stored in the transposition table.
+     * Mate scores are stored relative to the position rather than the root,
+     *     so that they stay correct when the position is reached at a different ply.
+     * @param score the score relative to the root
+     * @param ply the distance from the root
+     * @return the score relative to the position
+     */
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE_SCORE - MAX_PLY) {
+            return score + ply;
+        } else if (score <= -MATE_SCORE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /**
+     * Converts a score read from the transposition table back to be relative to the root.
+     * @param score the score relative to the position
+     * @param ply the distance from the root
+     * @return the score relative to the root
+     */
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE_SCORE - MAX_PLY) {
+            return score - ply;
+        } else if (score <= -MATE_SCORE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /**
+     * Makes a move on a copy of the game and returns the resulting game.
+     * @param game the game to make the move on
+     * @param move the move to make
+     * @return the resulting game
+     */
+    private static ChessGame makeMove(ChessGame game, ChessMove move) {
+        ChessGame newGame = new ChessGame(game);
+        newGame.makeMove(move);
+        return newGame;
+    }
+
+    /**
+     * Buffers of a search thread, indexed by the distance from the root.
+     * Kept by the engine between searches, so searches do not allocate them again.
+     */
+    private static class SearchStack {
+        // legal moves of every ply and their sorting keys (see Searcher.orderMoves)
+        final int[][] moves = new int[MAX_PLY + 1][ChessRules.MAX_MOVES];
+        final int[][] moveOrders = new int[MAX_PLY + 1][ChessRules.MAX_MOVES];
+
+        // triangular principal variation table
+        // row ply holds the best line found from that ply, of length pvLength[ply]
+        final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+        final int[] pvLength = new int[MAX_PLY + 1];
+
+        // root moves already in a line of the current iteration (multi-PV)
+        final int[] excludedRootMoves = new int[ChessRules.MAX_MOVES];
+    }
+
+    /**
+     * State of a single search, from the moment it is started until its future completes.
+     */
+    private static class SearchTask {
+        final ChessGame game;
+        final SearchLimits limits;
+        final CompletableFuture<SearchResult> future = new CompletableFuture<SearchResult>();
+        final BooleanSupplier stopCondition; // null if only stopped by stop() and the limits
+        volatile long startTime;
+        volatile boolean pondering;
+        volatile boolean stopped = false;
+
+        /**
+         * Creates a search.
+         * @param game the snapshot of the game to search
+         * @param limits the limits of the search
+         * @param isPondering whether the limits are ignored until a ponder hit
+         * @param stopCondition a condition that also stops the search, or null
+         */
+        SearchTask(ChessGame game, SearchLimits limits, boolean isPondering,
+            BooleanSupplier stopCondition) {
+            this.game = game;
+            this.limits = limits;
+            this.pondering = isPondering;
+            this.stopCondition = stopCondition;
+        }
+    }
+
+    /**
+     * A single search thread.
+     * All searchers of an engine share the transposition table and history.
+     * Every searcher walks the tree by making and taking back moves on its own copy of the game,
+     *     so after the first iteration a search allocates nothing per node.
+     */
+    private class Searcher {
+        private final SearchTask task;
+        private final int id;
+        private final Random random;
+        private final Evaluator evaluator;
+        private final ChessGame game;
+        private volatile long nodes = 0;
+        private int rootBestMove = 0;
+
+        // statistics, read once the search is finished (see SearchStats)
+        private long tableProbes = 0;
+        private long tableHits = 0;
+        private long expandedNodes = 0;
+        private long cutoffs = 0;
+        private long firstMoveCutoffs = 0;
+        private long tablebaseHits = 0;
+        private int selDepth = 0;
+        private final List<Long> iterationTimesMs = new ArrayList<Long>();
+        private final List<Long> iterationNodes = new ArrayList<Long>();
+
+        private final int[][] moves;
+        private final int[][] moveOrders;
+        private final int[][] pvTable;
+        private final int[] pvLength;
+        private final int[] excludedRootMoves;
+        private int numExcludedRootMoves = 0;
+
+        // result of the last completed iteration, best line first
+        private List<PvLine> lines = new ArrayList<PvLine>();
+        private int completedDepth = 0;
+
+        /**
+         * Creates a searcher.
+         * @param task the search it takes part in
+         * @param id the index of the searcher, 0 is the main searcher
+         * @param seed the seed for shuffling moves
+         */
+        Searcher(SearchTask task, int id, long seed) {
+            this.task = task;
+            this.id = id;
+            this.random = new Random(seed);
+            this.evaluator = evaluators[id];
+            this.game = new ChessGame(task.game);
+
+            SearchStack stack = stacks[id];
+            moves = stack.moves;
+            moveOrders = stack.moveOrders;
+            pvTable = stack.pvTable;
+            pvLength = stack.pvLength;
+            excludedRootMoves = stack.excludedRootMoves;
+        }
+
+        /**
+         * Iteratively searches deeper until a limit is reached.
+         * Not inefficient because the transposition table stores previous results,
+         *     in fact it allows us to first search the best move from the previous search
+         *     which is likely to be the best move in the current search.
+         */
+        void iterativeDeepening() {
+            // helpers start at different depths so that threads diverge
+            int searchDepth = 1 + id % 2;
+
+            // helpers only search the best line
+            int numLines = id == 0 ? Math.min(multiPv, game.getLegalMoves(moves[0])) : 1;
+
+            long iterationStartTime = System.currentTimeMillis();
+            long iterationStartNodes = 0;
+            while (task.limits.allowsDepth(searchDepth) && searchDepth < MAX_PLY) {
+                SearchIterationEvent event = new SearchIterationEvent();
+                event.begin();
+                long eventStartNodes = nodes;
+                List<PvLine> newLines = new ArrayList<PvLine>();
+                try {
+                    searchLines(searchDepth, numLines, newLines);
+                } catch (SearchStoppedException e) {
+                    // immediately stop searching and use last result
+                    break;
+                }
+
+                lines = newLines;
+                completedDepth = searchDepth;
+                if (event.shouldCommit()) {
+                    event.searcher = id;
+                    event.depth = searchDepth;
+                    event.nodes = nodes - eventStartNodes;
+                    event.score = newLines.get(0).score();
+                    event.commit();
+                }
+                if (id == 0) {
+                    long now = System.currentTimeMillis();
+                    long totalNodes = getNodeCount();
+                    iterationTimesMs.add(now - iterationStartTime);
+                    iterationNodes.add(totalNodes - iterationStartNodes);
+                    iterationStartTime = now;
+                    iterationStartNodes = totalNodes;
+                }
+                if (id == 0 && isLogging) {
+                    System.out.println("depth %s searched in %s ms".formatted(
+                        searchDepth, System.currentTimeMillis() - task.startTime));
+                }
+                Consumer<SearchInfo> listener = infoListener;
+                if (id == 0 && listener != null) {
+                    int maxSelDepth = 0;
+                    for (Searcher searcher : searchers) {
+                        maxSelDepth = Math.max(maxSelDepth, searcher.selDepth);
+                    }
+                    listener.accept(new SearchInfo(searchDepth, maxSelDepth, getNodeCount(),
+                        System.currentTimeMillis() - task.startTime, lines));
+                }
+                searchDepth++;
+            }
+        }
+
+        /**
+         * Searches the best lines of the game, each excluding the first moves of the others.
+         * All lines share the transposition table, so later lines are searched quickly.
+         * @param depth the depth to search
+         * @param numLines the number of lines to find
+         * @param newLines the list to add the lines to, sorted from best to worst
+         */
+        private void searchLines(int depth, int numLines, List<PvLine> newLines) {
+            numExcludedRootMoves = 0;
+            for (int i = 0; i < numLines; i++) {
+                int score = search(depth, -INFINITY, INFINITY, 0);
+                newLines.add(new PvLine(score, getPrincipalVariation(depth)));
+                excludedRootMoves[numExcludedRootMoves++] = rootBestMove;
+            }
+
+            // a later line can score higher if the table changed in between
+            newLines.sort(Comparator.comparingInt(line -> -line.score()));
+        }
+
+        /**
+         * Gets the best line of the last search from the root.
+         * A line that was cut short (e.g. by a transposition table hit) is extended
+         *     by following the best moves stored in the table.
+         * No positions are searched, only looked up.
+         * @param maxLength the length to extend the line up to
+         * @return the moves of the line
+         */
+        private List<ChessMove> getPrincipalVariation(int maxLength) {
+            List<ChessMove> pv = new ArrayList<ChessMove>();
+            for (int i = 0; i < pvLength[0]; i++) {
+                pv.add(game.decodeMove(pvTable[0][i]));
+                game.makeMove(pvTable[0][i]);
+            }
+
+            // the move buffers are free once the search has returned
+            while (pv.size() < maxLength && game.getGameState() == GameState.ACTIVE) {
+                long entry = transpoTable.probe(zobristHash.getHash(game));
+                int move = TranspositionTable.getMove(entry);
+                if (entry == TranspositionTable.NONE || !isLegalMove(game, move, moves[0])) {
+                    break;
+                }
+                pv.add(game.decodeMove(move));
+                game.makeMove(move);
+            }
+
+            for (int i = 0; i < pv.size(); i++) {
+                game.undoMove();
+            }
+            return pv;
+        }
+
+        /**
+         * Recursive negamax function, searching the searcher's game.
+         * @param depth the remaining depth to search
+         * @param alpha the best score the player to move is already guaranteed
+         * @param beta the best score the opponent is already guaranteed (negated)
+         * @param ply the distance from the root
+         * @return the heuristic value of the game from the perspective of the player to move
+         */
+        private int search(int depth, int alpha, int beta, int ply) {
+            // exit search if a limit is reached, but the main searcher always completes
+            // the first iteration so that there is a move to return
+            if ((id != 0 || completedDepth > 0) && shouldStop(task)) {
+                throw new SearchStoppedException();
+            }
+            nodes++;
+            pvLength[ply] = 0;
+            selDepth = Math.max(selDepth, ply);
+
+            // only draws, checkmate and stalemate are found by looking for legal moves
+            if (game.getGameState() != GameState.ACTIVE) {
+                return evaluateGameOver(game, ply);
+            }
+
+            // solved endings need no search (the root still has to choose a move)
+            Tablebase tablebase = Engine.this.tablebase;
+            if (ply > 0 && tablebase != null) {
+                int result = tablebase.probe(game.getBoard(), game.isWhiteMove());
+                if (result != Tablebase.NOT_FOUND) {
+                    tablebaseHits++;
+                    return getTablebaseScore(result, ply);
+                }
+            }
+
+            long key = zobristHash.getHash(game);
+            if (depth == 0) {
+                return game.hasLegalMoves() ? evaluate(game, key, evaluator)
+                    : evaluateNoMoves(game, ply);
+            }
+
+            // don't recalculate if previously calculated at sufficient depth
+            long entry = transpoTable.probe(key);
+            int tableMove = 0;
+            tableProbes++;
+            if (entry != TranspositionTable.NONE) {
+                tableHits++;
+                tableMove = TranspositionTable.getMove(entry);
+                if (ply > 0 && TranspositionTable.getDepth(entry) >= depth) {
+                    int score = scoreFromTable(TranspositionTable.getScore(entry), ply);
+                    int bound = TranspositionTable.getBound(entry);
+                    if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+
+            int[] plyMoves = moves[ply];
+            int[] plyMoveOrders = moveOrders[ply];
+            int numMoves = game.getLegalMoves(plyMoves);
+            if (numMoves == 0) {
+                return evaluateNoMoves(game, ply);
+            }
+            orderMoves(game.getBoard(), plyMoves, plyMoveOrders, numMoves, tableMove);
+
+            expandedNodes++;
+            int searchedMoves = 0;
+            int originalAlpha = alpha;
+            int bestScore = -INFINITY;
+            int bestMove = 0;
+
+            for (int i = 0; i < numMoves; i++) {
+                int move = pickMove(plyMoves, plyMoveOrders, i, numMoves);
+                if (ply == 0 && isExcludedRootMove(move)) {
+                    continue;
+                }
+
+                boolean isCapture = isCapture(game.getBoard(), move);
+                game.makeMove(move);
+                int score;
+                try {
+                    score = -search(depth - 1, -beta, -alpha, ply + 1);
+                } finally {
+                    game.undoMove();
+                }
+                searchedMoves++;
+
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+                    if (ply == 0) {
+                        rootBestMove = move;
+                    }
+                }
+
+                if (score > alpha) {
+                    alpha = score;
+
+                    // new best line: this move followed by the best line of the child
+                    pvTable[ply][0] = move;
+                    System.arraycopy(pvTable[ply + 1], 0, pvTable[ply], 1, pvLength[ply + 1]);
+                    pvLength[ply] = pvLength[ply + 1] + 1;
+                }
+
+                // the opponent already has a better alternative elsewhere,
+                // so they will never allow this position
+                if (alpha >= beta) {
+                    cutoffs++;
+                    if (searchedMoves == 1) {
+                        firstMoveCutoffs++;
+                    }
+                    if (!isCapture) {
+                        history[move & 0xFFFF] += depth * depth;
+                    }
+                    break;
+                }
+            }
+
+            // update table entry, unless some root moves were excluded from the search
+            if (ply > 0 || numExcludedRootMoves == 0) {
+                int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                    : bestScore >= beta ? TranspositionTable.LOWER_BOUND
+                    : TranspositionTable.EXACT;
+                transpoTable.store(key, depth, bound, scoreToTable(bestScore, ply), bestMove);
+            }
+
+            return bestScore;
+        }
+
+        private boolean isExcludedRootMove(int move) {
+            for (int i = 0; i < numExcludedRootMoves; i++) {
+                if (excludedRootMoves[i] == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Computes the sorting keys of moves so that the most promising ones are searched first:
+         *     the best move from a previous search, then captures of valuable pieces
+         *     by cheap pieces, then quiet moves by history.
+         * Moves are shuffled first, so that equally good moves are played with variety.
+         * @param board the board the moves are made on
+         * @param moves the encoded moves
+         * @param moveOrders the array to put the sorting keys in
+         * @param numMoves the number of moves
+         * @param tableMove the encoded best move from the transposition table, or 0
+         */
+        private void orderMoves(ChessBoard board, int[] moves, int[] moveOrders, int numMoves,
+            int tableMove) {
+            for (int i = numMoves - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int move = moves[i];
+                moves[i] = moves[j];
+                moves[j] = move;
+            }
+            for (int i = 0; i < numMoves; i++) {
+                moveOrders[i] = getMoveOrder(board, moves[i], tableMove);
+            }
+        }
+
+        /**
+         * Moves the best remaining move to the given index and returns it.
+         * Sorting one move at a time is faster than sorting them all,
+         *     as most nodes stop after their first few moves.
+         */
+        private int pickMove(int[] moves, int[] moveOrders, int index, int numMoves) {
+            int best = index;
+            for (int i = index + 1; i < numMoves; i++) {
+                if (moveOrders[i] > moveOrders[best]) {
+                    best = i;
+                }
+            }
+
+            int move = moves[best];
+            moves[best] = moves[index];
+            moves[index] = move;
+            int moveOrder = moveOrders[best];
+            moveOrders[best] = moveOrders[index];
+            moveOrders[index] = moveOrder;
+            return move;
+        }
+
+        /**
+         * Gets the sorting key of a move, higher is searched first.
+         */
+        private int getMoveOrder(ChessBoard board, int move, int tableMove) {
+            if (move == tableMove) {
+                return Integer.MAX_VALUE;
+            }
+
+            if (isCapture(board, move)) {
+                byte attacker = ChessPiece.getType(board.getMovedPiece(move));
+                byte victim = ChessPiece.getType(board.getCapturedPiece(move));
+                return (1 << 24) + victim * 8 - attacker;
+            }
+
+            return Math.min(history[move & 0xFFFF], (1 << 24) - 1);
+        }
+
+        /**
+         * Checks whether a move captures a piece on its destination.
+         */
+        private boolean isCapture(ChessBoard board, int move) {
+            return ChessPiece.isPiece(board.getCapturedPiece(move));
+        }
+    }
+
+    /**
+     * Exception thrown when the search is stopped.
+     */
+    private static class SearchStoppedException extends RuntimeException {
+        public SearchStoppedException() {
+            super();
+        }
+    }
+}
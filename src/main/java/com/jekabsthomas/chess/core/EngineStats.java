@@ -0,0 +1,141 @@
+package com.jekabsthomas.chess.core;
+
+import java.util.List;
+
+/**
+ * Cumulative statistics of all searches of an engine, along with the last search.
+ * Registered as an MBean by Engine.registerMBean.
+ * @author Jekabs Gritans
+ */
+public class EngineStats implements EngineStatsMXBean {
+    private static final SearchStats NO_SEARCH = new SearchStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+        List.of(), List.of());
+
+    private long searches;
+    private long nodes;
+    private long timeMs;
+    private long tableProbes;
+    private long tableHits;
+    private long expandedNodes;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private long tablebaseHits;
+    private SearchStats lastSearch = NO_SEARCH;
+
+    /**
+     * Adds the statistics of a finished search.
+     * @param stats the statistics of the search
+     */
+    synchronized void add(SearchStats stats) {
+        searches++;
+        nodes += stats.nodes();
+        timeMs += stats.timeMs();
+        tableProbes += stats.tableProbes();
+        tableHits += stats.tableHits();
+        expandedNodes += stats.expandedNodes();
+        cutoffs += stats.cutoffs();
+        firstMoveCutoffs += stats.firstMoveCutoffs();
+        tablebaseHits += stats.tablebaseHits();
+        lastSearch = stats;
+    }
+
+    /**
+     * Gets the statistics of the last finished search.
+     * @return the statistics, all zero if there was no search yet
+     */
+    public synchronized SearchStats getLastSearch() {
+        return lastSearch;
+    }
+
+    @Override
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    @Override
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public synchronized long getTimeMs() {
+        return timeMs;
+    }
+
+    @Override
+    public synchronized long getNodesPerSecond() {
+        return SearchStats.getNodesPerSecond(nodes, timeMs);
+    }
+
+    @Override
+    public synchronized long getTableProbes() {
+        return tableProbes;
+    }
+
+    @Override
+    public synchronized double getTableHitRate() {
+        return SearchStats.getRate(tableHits, tableProbes);
+    }
+
+    @Override
+    public synchronized double getCutoffRate() {
+        return SearchStats.getRate(cutoffs, expandedNodes);
+    }
+
+    @Override
+    public synchronized double getFirstMoveCutoffRate() {
+        return SearchStats.getRate(firstMoveCutoffs, cutoffs);
+    }
+
+    @Override
+    public synchronized long getTablebaseHits() {
+        return tablebaseHits;
+    }
+
+    @Override
+    public synchronized long getLastNodes() {
+        return lastSearch.nodes();
+    }
+
+    @Override
+    public synchronized long getLastNodesPerSecond() {
+        return lastSearch.getNodesPerSecond();
+    }
+
+    @Override
+    public synchronized long getLastTimeMs() {
+        return lastSearch.timeMs();
+    }
+
+    @Override
+    public synchronized int getLastDepth() {
+        return lastSearch.depth();
+    }
+
+    @Override
+    public synchronized int getLastSelDepth() {
+        return lastSearch.selDepth();
+    }
+
+    @Override
+    public synchronized double getLastEffectiveBranchingFactor() {
+        return lastSearch.getEffectiveBranchingFactor();
+    }
+
+    /**
+     * Forgets all searches.
+     */
+    @Override
+    public synchronized void reset() {
+        searches = 0;
+        nodes = 0;
+        timeMs = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        expandedNodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        tablebaseHits = 0;
+        lastSearch = NO_SEARCH;
+    }
+}
@@ -0,0 +1,89 @@
+package com.jekabsthomas.chess.core;
+
+/**
+ * Management interface of the statistics of an engine (see EngineStats),
+ *     so that monitoring tools can read them over JMX.
+ * Totals are summed over all searches since the engine was created or reset.
+ * @author Jekabs Gritans
+ */
+public interface EngineStatsMXBean {
+    /**
+     * @return the number of finished searches
+     */
+    long getSearches();
+
+    /**
+     * @return the total number of searched nodes
+     */
+    long getNodes();
+
+    /**
+     * @return the total search time in milliseconds
+     */
+    long getTimeMs();
+
+    /**
+     * @return the average number of nodes per second of all searches
+     */
+    long getNodesPerSecond();
+
+    /**
+     * @return the total number of transposition table lookups
+     */
+    long getTableProbes();
+
+    /**
+     * @return the fraction of transposition table lookups that found their position
+     */
+    double getTableHitRate();
+
+    /**
+     * @return the fraction of expanded nodes that stopped early
+     */
+    double getCutoffRate();
+
+    /**
+     * @return the fraction of cutoffs caused by the first searched move
+     */
+    double getFirstMoveCutoffRate();
+
+    /**
+     * @return the total number of nodes resolved by the endgame tablebase
+     */
+    long getTablebaseHits();
+
+    /**
+     * @return the number of nodes of the last search
+     */
+    long getLastNodes();
+
+    /**
+     * @return the number of nodes per second of the last search
+     */
+    long getLastNodesPerSecond();
+
+    /**
+     * @return the time of the last search in milliseconds
+     */
+    long getLastTimeMs();
+
+    /**
+     * @return the completed depth of the last search
+     */
+    int getLastDepth();
+
+    /**
+     * @return the largest distance from the root reached by the last search
+     */
+    int getLastSelDepth();
+
+    /**
+     * @return the effective branching factor of the last search
+     */
+    double getLastEffectiveBranchingFactor();
+
+    /**
+     * Forgets all searches.
+     */
+    void reset();
+}
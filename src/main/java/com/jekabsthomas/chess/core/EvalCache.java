@@ -0,0 +1,68 @@
+package com.jekabsthomas.chess.core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size cache of static evaluations keyed by 64-bit Zobrist hashes.
+ * Separate from the transposition table, as evaluations are needed at every leaf
+ *     and would otherwise push search results out of the table.
+ * Each entry is a single long: the upper 32 bits of the key and the evaluation.
+ *     The lower bits of the key select the slot, so together nearly the whole key is checked.
+ * The cache is lockless so that several search threads can share it.
+ * @author Jekabs Gritans
+ */
+public class EvalCache {
+    // returned by probe if the position is not in the cache
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final long KEY_MASK = 0xFFFFFFFF00000000L;
+    private static final int BYTES_PER_ENTRY = 8;
+
+    private long[] entries;
+    private int mask;
+
+    /**
+     * Creates an evaluation cache.
+     * @param sizeMb the maximum size of the cache in megabytes
+     * @throws IllegalArgumentException if sizeMb is not positive
+     */
+    public EvalCache(int sizeMb) {
+        if (sizeMb <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+
+        long maxEntries = (long) sizeMb * 1024 * 1024 / BYTES_PER_ENTRY;
+        int numEntries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+        entries = new long[numEntries];
+        mask = numEntries - 1;
+    }
+
+    /**
+     * Gets the cached evaluation of a position.
+     * @param key the Zobrist hash of the position
+     * @return the evaluation, or NONE if the position is not cached
+     */
+    public int probe(long key) {
+        long entry = entries[(int) key & mask];
+        if ((entry & KEY_MASK) != (key & KEY_MASK) || entry == 0) {
+            return NONE;
+        }
+        return (int) entry;
+    }
+
+    /**
+     * Caches the evaluation of a position, replacing whatever was in its slot.
+     * @param key the Zobrist hash of the position
+     * @param eval the evaluation
+     */
+    public void store(long key, int eval) {
+        entries[(int) key & mask] = (key & KEY_MASK) | (eval & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0);
+    }
+}
@@ -0,0 +1,351 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessPiece;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Weights of the handcrafted evaluation (see Evaluator), stored as one vector so they can be tuned.
+ * Piece values and piece-square tables have separate middlegame and endgame weights,
+ *     the game phase decides how they are blended.
+ * Tables are indexed by (piece type - 1) * 64 + row * 8 + col, from white's perspective.
+ *
+ * Parameters are saved as text: the name of each group followed by its values,
+ *     groups that are missing from a file keep their default values.
+ * @author Jekabs Gritans
+ */
+public class EvalParams {
+    // layout of the parameter vector
+    public static final int MG_PIECE_VALUES = 0;
+    public static final int EG_PIECE_VALUES = MG_PIECE_VALUES + 6;
+    public static final int MG_POSITION_BONUSES = EG_PIECE_VALUES + 6;
+    public static final int EG_POSITION_BONUSES = MG_POSITION_BONUSES + 6 * 64;
+    public static final int DOUBLED_PAWN = EG_POSITION_BONUSES + 6 * 64; // per extra pawn on a file
+    public static final int ISOLATED_PAWN = DOUBLED_PAWN + 1;
+    public static final int BACKWARD_PAWN = ISOLATED_PAWN + 1;
+    // indexed by how far the pawn has advanced (1 is its starting rank)
+    public static final int PASSED_PAWN = BACKWARD_PAWN + 1;
+    // extra bonus if nothing blocks the passed pawn
+    public static final int FREE_PASSED_PAWN = PASSED_PAWN + 8;
+    // own pawns one and two ranks in front of a king on its back ranks
+    public static final int SHIELD_CLOSE = FREE_PASSED_PAWN + 8;
+    public static final int SHIELD_FAR = SHIELD_CLOSE + 1;
+    public static final int SIZE = SHIELD_FAR + 1;
+
+    // how a parameter is blended between the game phases
+    public static final int MIDDLEGAME = 0; // counts fully with all pieces on the board
+    public static final int ENDGAME = 1; // counts fully with only kings and pawns
+    public static final int BOTH = 2; // always counts fully
+
+    private static final String[] PIECE_NAMES = {
+        "Pawn", "Knight", "Bishop", "Rook", "Queen", "King"
+    };
+
+    private static final Group[] GROUPS;
+    private static final int[] DEFAULT_VALUES = new int[SIZE];
+
+    private final int[] values;
+
+    /**
+     * Creates the default parameters.
+     */
+    public EvalParams() {
+        values = DEFAULT_VALUES.clone();
+    }
+
+    /**
+     * Creates a copy of parameters.
+     * @param other the parameters to copy
+     */
+    public EvalParams(EvalParams other) {
+        values = other.values.clone();
+    }
+
+    /**
+     * Loads parameters saved by save.
+     * @param path the path of the file
+     * @return the parameters
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static EvalParams load(Path path) throws IOException {
+        EvalParams params = new EvalParams();
+        Group group = null;
+        int filled = 0;
+
+        for (String token : Files.readString(path).trim().split("\\s+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (!Character.isDigit(token.charAt(token.length() - 1))) {
+                if (group != null && filled != group.length()) {
+                    throw new IOException("Wrong number of values for " + group.name());
+                }
+                group = findGroup(token);
+                filled = 0;
+                continue;
+            }
+
+            if (group == null || filled == group.length()) {
+                throw new IOException("Unexpected value " + token + " in " + path);
+            }
+            try {
+                params.values[group.offset() + filled++] = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid value " + token + " in " + path, e);
+            }
+        }
+
+        if (group != null && filled != group.length()) {
+            throw new IOException("Wrong number of values for " + group.name());
+        }
+        return params;
+    }
+
+    /**
+     * Saves the parameters in the format read by load.
+     * @param path the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (Group group : GROUPS) {
+                writer.write(group.name());
+                for (int i = 0; i < group.length(); i++) {
+                    // tables are written row by row
+                    writer.write(i % 8 == 0 && group.length() == 64 ? "\n   " : " ");
+                    writer.write(Integer.toString(values[group.offset() + i]));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Gets a parameter.
+     * @param index the index of the parameter
+     * @return the value
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Sets a parameter.
+     * @param index the index of the parameter
+     * @param value the value
+     */
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    /**
+     * Gets all parameters without copying them, for fast access by the evaluator.
+     * @return the values (not to be modified)
+     */
+    int[] getValues() {
+        return values;
+    }
+
+    /**
+     * Gets how a parameter is blended between the game phases.
+     * @param index the index of the parameter
+     * @return MIDDLEGAME, ENDGAME or BOTH
+     */
+    public static int getPhaseKind(int index) {
+        if (index < EG_PIECE_VALUES
+            || index >= MG_POSITION_BONUSES && index < EG_POSITION_BONUSES
+            || index == SHIELD_CLOSE || index == SHIELD_FAR) {
+            return MIDDLEGAME;
+        }
+        if (index < DOUBLED_PAWN) {
+            return ENDGAME;
+        }
+        return BOTH;
+    }
+
+    /**
+     * Checks whether a parameter may be changed by tuning.
+     * The king's value is fixed, it only has to be larger than everything else.
+     * @param index the index of the parameter
+     * @return true if the parameter is tunable
+     */
+    public static boolean isTunable(int index) {
+        return index != MG_PIECE_VALUES + ChessPiece.KING - 1
+            && index != EG_PIECE_VALUES + ChessPiece.KING - 1;
+    }
+
+    private static Group findGroup(String name) throws IOException {
+        for (Group group : GROUPS) {
+            if (group.name().equals(name)) {
+                return group;
+            }
+        }
+        throw new IOException("Unknown parameter group " + name);
+    }
+
+    /**
+     * Named range of the parameter vector.
+     */
+    private record Group(String name, int offset, int length) {}
+
+    // DEFAULT VALUES
+    // from https://www.chessprogramming.org/Simplified_Evaluation_Function
+
+    private static final Map<Byte, Integer> pieceTypeValues = Map.of(
+        ChessPiece.PAWN, 100,
+        ChessPiece.KNIGHT, 320,
+        ChessPiece.BISHOP, 330,
+        ChessPiece.ROOK, 500,
+        ChessPiece.QUEEN, 900,
+        ChessPiece.KING, 20000
+    );
+
+    // incentivize optimal piece positioning
+    // these are from white's perspective (flipped for black)
+    private static final Map<Byte, int[][]> middlegamePositionBonuses = Map.ofEntries(
+        Map.entry(ChessPiece.PAWN,
+            new int[][] {
+                {0,  0,  0,  0,  0,  0,  0,  0},
+                {50, 50, 50, 50, 50, 50, 50, 50},
+                {10, 10, 20, 30, 30, 20, 10, 10},
+                {5,  5, 10, 25, 25, 10,  5,  5},
+                {0,  0,  0, 20, 20,  0,  0,  0},
+                {5, -5, -10,  0,  0, -10, -5,  5},
+                {5, 10, 10, -20, -20, 10, 10,  5},
+                {0,  0,  0,  0,  0,  0,  0,  0},
+            }),
+        Map.entry(ChessPiece.KNIGHT,
+            new int[][] {
+                {-50, -40, -30, -30, -30, -30, -40, -50},
+                {-40, -20,  0,  0,  0,  0, -20, -40},
+                {-30,  0, 10, 15, 15, 10,  0, -30},
+                {-30,  5, 15, 20, 20, 15,  5, -30},
+                {-30,  0, 15, 20, 20, 15,  0, -30},
+                {-30,  5, 10, 15, 15, 10,  5, -30},
+                {-40, -20,  0,  5,  5,  0, -20, -40},
+                {-50, -40, -30, -30, -30, -30, -40, -50},
+            }),
+        Map.entry(ChessPiece.BISHOP,
+            new int[][] {
+                {-20, -10, -10, -10, -10, -10, -10, -20},
+                {-10,  0,  0,  0,  0,  0,  0, -10},
+                {-10,  0,  5, 10, 10,  5,  0, -10},
+                {-10,  5,  5, 10, 10,  5,  5, -10},
+                {-10,  0, 10, 10, 10, 10,  0, -10},
+                {-10, 10, 10, 10, 10, 10, 10, -10},
+                {-10,  5,  0,  0,  0,  0,  5, -10},
+                {-20, -10, -10, -10, -10, -10, -10, -20},
+            }),
+        Map.entry(ChessPiece.ROOK,
+            new int[][] {
+                {0,  0,  0,  0,  0,  0,  0,  0},
+                {5, 10, 10, 10, 10, 10, 10,  5},
+                {-5,  0,  0,  0,  0,  0,  0, -5},
+                {-5,  0,  0,  0,  0,  0,  0, -5},
+                {-5,  0,  0,  0,  0,  0,  0, -5},
+                {-5,  0,  0,  0,  0,  0,  0, -5},
+                {-5,  0,  0,  0,  0,  0,  0, -5},
+                {0,  0,  0,  5,  5,  0,  0,  0},
+            }),
+        Map.entry(ChessPiece.QUEEN,
+            new int[][] {
+                {-20, -10, -10, -5, -5, -10, -10, -20},
+                {-10,  0,  0,  0,  0,  0,  0, -10},
+                {-10,  0,  5,  5,  5,  5,  0, -10},
+                {-5,  0,  5,  5,  5,  5,  0, -5},
+                {0,  0,  5,  5,  5,  5,  0, -5},
+                {-10,  5,  5,  5,  5,  5,  0, -10},
+                {-10,  0,  5,  0,  0,  0,  0, -10},
+                {-20, -10, -10, -5, -5, -10, -10, -20},
+            }),
+        Map.entry(ChessPiece.KING,
+            new int[][] {
+                {-30, -40, -40, -50, -50, -40, -40, -30},
+                {-30, -40, -40, -50, -50, -40, -40, -30},
+                {-30, -40, -40, -50, -50, -40, -40, -30},
+                {-30, -40, -40, -50, -50, -40, -40, -30},
+                {-20, -30, -30, -40, -40, -30, -30, -20},
+                {-10, -20, -20, -20, -20, -20, -20, -10},
+                {20, 20,  0,  0,  0,  0, 20, 20},
+                {20, 30, 10,  0,  0, 10, 30, 20},
+            })
+    );
+
+    // in the endgame pawns should advance and the king should become active
+    // other pieces are placed the same as in the middlegame
+    private static final Map<Byte, int[][]> endgamePositionBonuses = Map.ofEntries(
+        Map.entry(ChessPiece.PAWN,
+            new int[][] {
+                {0,  0,  0,  0,  0,  0,  0,  0},
+                {80, 80, 80, 80, 80, 80, 80, 80},
+                {50, 50, 50, 50, 50, 50, 50, 50},
+                {30, 30, 30, 30, 30, 30, 30, 30},
+                {20, 20, 20, 20, 20, 20, 20, 20},
+                {10, 10, 10, 10, 10, 10, 10, 10},
+                {0,  0,  0,  0,  0,  0,  0,  0},
+                {0,  0,  0,  0,  0,  0,  0,  0},
+            }),
+        Map.entry(ChessPiece.KNIGHT, middlegamePositionBonuses.get(ChessPiece.KNIGHT)),
+        Map.entry(ChessPiece.BISHOP, middlegamePositionBonuses.get(ChessPiece.BISHOP)),
+        Map.entry(ChessPiece.ROOK, middlegamePositionBonuses.get(ChessPiece.ROOK)),
+        Map.entry(ChessPiece.QUEEN, middlegamePositionBonuses.get(ChessPiece.QUEEN)),
+        Map.entry(ChessPiece.KING,
+            new int[][] {
+                {-50, -40, -30, -20, -20, -30, -40, -50},
+                {-30, -20, -10,  0,  0, -10, -20, -30},
+                {-30, -10, 20, 30, 30, 20, -10, -30},
+                {-30, -10, 30, 40, 40, 30, -10, -30},
+                {-30, -10, 30, 40, 40, 30, -10, -30},
+                {-30, -10, 20, 30, 30, 20, -10, -30},
+                {-30, -30,  0,  0,  0,  0, -30, -30},
+                {-50, -30, -30, -30, -30, -30, -30, -50},
+            })
+    );
+
+    static {
+        GROUPS = new Group[2 + 2 * 6 + 7];
+        int g = 0;
+        GROUPS[g++] = new Group("mgPieceValues", MG_PIECE_VALUES, 6);
+        GROUPS[g++] = new Group("egPieceValues", EG_PIECE_VALUES, 6);
+        for (int type = 0; type < 6; type++) {
+            GROUPS[g++] = new Group("mg" + PIECE_NAMES[type], MG_POSITION_BONUSES + type * 64, 64);
+        }
+        for (int type = 0; type < 6; type++) {
+            GROUPS[g++] = new Group("eg" + PIECE_NAMES[type], EG_POSITION_BONUSES + type * 64, 64);
+        }
+        GROUPS[g++] = new Group("doubledPawn", DOUBLED_PAWN, 1);
+        GROUPS[g++] = new Group("isolatedPawn", ISOLATED_PAWN, 1);
+        GROUPS[g++] = new Group("backwardPawn", BACKWARD_PAWN, 1);
+        GROUPS[g++] = new Group("passedPawn", PASSED_PAWN, 8);
+        GROUPS[g++] = new Group("freePassedPawn", FREE_PASSED_PAWN, 8);
+        GROUPS[g++] = new Group("shieldClose", SHIELD_CLOSE, 1);
+        GROUPS[g++] = new Group("shieldFar", SHIELD_FAR, 1);
+
+        for (byte type = ChessPiece.PAWN; type <= ChessPiece.KING; type++) {
+            DEFAULT_VALUES[MG_PIECE_VALUES + type - 1] = pieceTypeValues.get(type);
+            DEFAULT_VALUES[EG_PIECE_VALUES + type - 1] = pieceTypeValues.get(type);
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    int square = (type - 1) * 64 + row * 8 + col;
+                    DEFAULT_VALUES[MG_POSITION_BONUSES + square] =
+                        middlegamePositionBonuses.get(type)[row][col];
+                    DEFAULT_VALUES[EG_POSITION_BONUSES + square] =
+                        endgamePositionBonuses.get(type)[row][col];
+                }
+            }
+        }
+
+        DEFAULT_VALUES[DOUBLED_PAWN] = -10;
+        DEFAULT_VALUES[ISOLATED_PAWN] = -15;
+        DEFAULT_VALUES[BACKWARD_PAWN] = -8;
+        System.arraycopy(new int[] {0, 5, 10, 20, 35, 60, 100, 0}, 0,
+            DEFAULT_VALUES, PASSED_PAWN, 8);
+        System.arraycopy(new int[] {0, 0, 5, 10, 15, 25, 40, 0}, 0,
+            DEFAULT_VALUES, FREE_PASSED_PAWN, 8);
+        DEFAULT_VALUES[SHIELD_CLOSE] = 10;
+        DEFAULT_VALUES[SHIELD_FAR] = 5;
+    }
+}
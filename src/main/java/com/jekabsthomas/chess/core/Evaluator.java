@@ -0,0 +1,376 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessPiece;
+import com.jekabsthomas.chess.engine.MaterialTable;
+
+/**
+ * Heuristic evaluation of chess positions.
+ * Material is scored with separate middlegame and endgame tables,
+ *     blended by the game phase from the material table.
+ * Boards with a neural network accumulator attached are evaluated by the network instead.
+ * Pawn structure is expensive to analyse but rarely changes,
+ *     so its evaluation is cached in a pawn table keyed by the board's pawn hash.
+ * All weights come from EvalParams, so they can be tuned (see TexelTuner).
+ * Not thread-safe: every search thread owns its own evaluator.
+ * @author Jekabs Gritans
+ */
+public class Evaluator {
+    public static final int PAWN_TABLE_ENTRIES = 1 << 14;
+
+    // driving a bare king to the edge
+    private static final int BARE_KING_EDGE = 20;
+    private static final int BARE_KING_CLOSE = 10;
+
+    // bitboard masks, bit (row * 8 + col), index 0 is white and 1 is black
+    private static final long[] FILE_MASKS = new long[8];
+    private static final long[] ADJACENT_FILE_MASKS = new long[8];
+    // enemy pawns that can stop a pawn: ahead of it on its own and adjacent files
+    private static final long[][] PASSED_MASKS = new long[2][64];
+    // own pawns that can defend a pawn: beside or behind it on adjacent files
+    private static final long[][] SUPPORT_MASKS = new long[2][64];
+    // enemy pawns that attack the square in front of a pawn
+    private static final long[][] STOP_ATTACK_MASKS = new long[2][64];
+    // own pawns one and two ranks in front of a king
+    private static final long[][] SHIELD_CLOSE_MASKS = new long[2][64];
+    private static final long[][] SHIELD_FAR_MASKS = new long[2][64];
+
+    static {
+        for (int col = 0; col < 8; col++) {
+            for (int row = 0; row < 8; row++) {
+                FILE_MASKS[col] |= bit(row, col);
+            }
+        }
+        for (int col = 0; col < 8; col++) {
+            ADJACENT_FILE_MASKS[col] = (col > 0 ? FILE_MASKS[col - 1] : 0)
+                | (col < 7 ? FILE_MASKS[col + 1] : 0);
+        }
+
+        for (int color = 0; color < 2; color++) {
+            int forward = color == 0 ? -1 : 1; // white moves towards row 0
+
+            for (int sq = 0; sq < 64; sq++) {
+                int row = sq / 8;
+                int col = sq % 8;
+
+                for (int r = 0; r < 8; r++) {
+                    boolean isAhead = (r - row) * forward > 0;
+                    for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, 7); c++) {
+                        if (isAhead) {
+                            PASSED_MASKS[color][sq] |= bit(r, c);
+                        } else if (c != col) {
+                            SUPPORT_MASKS[color][sq] |= bit(r, c);
+                        }
+                    }
+                }
+
+                STOP_ATTACK_MASKS[color][sq] = bit(row + 2 * forward, col - 1)
+                    | bit(row + 2 * forward, col + 1);
+                for (int c = col - 1; c <= col + 1; c++) {
+                    SHIELD_CLOSE_MASKS[color][sq] |= bit(row + forward, c);
+                    SHIELD_FAR_MASKS[color][sq] |= bit(row + 2 * forward, c);
+                }
+            }
+        }
+    }
+
+    private final PawnTable pawnTable;
+    private final int[] params;
+
+    // state of the position being evaluated, index 0 is white and 1 is black
+    private int middlegameScore; // from white's perspective
+    private int endgameScore;
+    private final long[] pawns = new long[2];
+    private final int[] kingSquares = new int[2];
+
+    // coefficients of the parameters in the evaluation, only while tracing
+    private int[] trace = null;
+    private final PawnTable.Entry traceEntry = new PawnTable.Entry();
+
+    /**
+     * Creates an evaluator with the default parameters and pawn table size.
+     */
+    public Evaluator() {
+        this(new EvalParams(), PAWN_TABLE_ENTRIES);
+    }
+
+    /**
+     * Creates an evaluator.
+     * @param params the evaluation parameters, later changes to them are not seen
+     * @param pawnTableEntries the number of entries of the pawn table
+     */
+    public Evaluator(EvalParams params, int pawnTableEntries) {
+        this.params = params.getValues().clone();
+        pawnTable = new PawnTable(pawnTableEntries);
+    }
+
+    /**
+     * Computes the heuristic value of the game from the perspective of the player to move.
+     * Does not allocate, so it can be called for every leaf of the search.
+     * @param game the game to evaluate (must be active)
+     * @return the heuristic value of the game
+     */
+    public int evaluate(ChessGame game) {
+        ChessBoard board = game.getBoard();
+        if (board.getAccumulator() instanceof NnueAccumulator accumulator) {
+            return accumulator.getNetwork().evaluate(accumulator, game.isWhiteMove());
+        }
+
+        int score = evaluateWhite(board);
+        return game.isWhiteMove() ? score : -score;
+    }
+
+    /**
+     * Computes the handcrafted evaluation and how much each parameter contributes to it.
+     * The evaluation is linear in the parameters except for the phase blend and scaling
+     *     (see EvalParams.getPhaseKind and MaterialTable.getScale).
+     * @param game the game to evaluate (must be active)
+     * @param coefficients receives the coefficient of each parameter from white's perspective,
+     *     must be zeroed and of length EvalParams.SIZE
+     * @return the heuristic value of the game from white's perspective
+     */
+    int trace(ChessGame game, int[] coefficients) {
+        trace = coefficients;
+        try {
+            return evaluateWhite(game.getBoard());
+        } finally {
+            trace = null;
+        }
+    }
+
+    /**
+     * Forgets all cached pawn structures.
+     */
+    public void clear() {
+        pawnTable.clear();
+    }
+
+    /**
+     * Gets the pawn table of the evaluator.
+     * @return the pawn table
+     */
+    public PawnTable getPawnTable() {
+        return pawnTable;
+    }
+
+    private int evaluateWhite(ChessBoard board) {
+        int materialEntry = MaterialTable.probe(board.getMaterialKey());
+
+        // heuristic value of material, separately for the middlegame and the endgame
+        scanBoard(board);
+
+        // heuristic value of pawn structure, the shield only matters while there is an attack
+        PawnTable.Entry pawnEntry = getPawnEntry(board);
+        middlegameScore += scoreKingShield(pawnEntry, 0) + scoreKingShield(pawnEntry, 1);
+
+        // blend by how much material is left, so the evaluation changes smoothly
+        int phase = MaterialTable.getPhase(materialEntry);
+        int score = (middlegameScore * phase + endgameScore * (MaterialTable.MAX_PHASE - phase))
+            / MaterialTable.MAX_PHASE;
+
+        score += pawnEntry.score;
+        score += scorePassedPawns(board, pawnEntry, 0) + scorePassedPawns(board, pawnEntry, 1);
+
+        // endgame knowledge of the material combination
+        if (MaterialTable.isMatingBareKing(materialEntry, true)) {
+            score += scoreBareKing(kingSquares[0], kingSquares[1]);
+        } else if (MaterialTable.isMatingBareKing(materialEntry, false)) {
+            score -= scoreBareKing(kingSquares[1], kingSquares[0]);
+        }
+        return score * MaterialTable.getScale(materialEntry, score > 0)
+            / MaterialTable.NORMAL_SCALE;
+    }
+
+    /**
+     * Scores material and piece positions, and collects the pawns and kings.
+     * @param board the board
+     */
+    private void scanBoard(ChessBoard board) {
+        middlegameScore = 0;
+        endgameScore = 0;
+        pawns[0] = 0;
+        pawns[1] = 0;
+        kingSquares[0] = -1;
+        kingSquares[1] = -1;
+
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                byte piece = board.getPiece(row, col);
+                if (!ChessPiece.isPiece(piece)) {
+                    continue;
+                }
+
+                int color = ChessPiece.isWhite(piece) ? 0 : 1;
+                int sign = color == 0 ? 1 : -1;
+                int typeIdx = ChessPiece.getType(piece) - 1;
+                int tableRow = color == 0 ? row : 7 - row; // mirror if black
+                int square = typeIdx * 64 + tableRow * 8 + col;
+
+                middlegameScore += weigh(EvalParams.MG_PIECE_VALUES + typeIdx, sign)
+                    + weigh(EvalParams.MG_POSITION_BONUSES + square, sign);
+                endgameScore += weigh(EvalParams.EG_PIECE_VALUES + typeIdx, sign)
+                    + weigh(EvalParams.EG_POSITION_BONUSES + square, sign);
+
+                if (typeIdx == ChessPiece.PAWN - 1) {
+                    pawns[color] |= 1L << (row * 8 + col);
+                } else if (typeIdx == ChessPiece.KING - 1) {
+                    kingSquares[color] = row * 8 + col;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the pawn structure evaluation of the scanned board, computing it if it is not cached.
+     * Traced structures are never cached, since the trace needs every term.
+     * @param board the board
+     * @return the filled in pawn table entry
+     */
+    private PawnTable.Entry getPawnEntry(ChessBoard board) {
+        long pawnHash = board.getPawnHash();
+        PawnTable.Entry entry = traceEntry;
+        if (trace == null) {
+            entry = pawnTable.probe(pawnHash);
+            if (entry.matches(pawnHash)) {
+                return entry;
+            }
+        }
+
+        entry.pawns[0] = pawns[0];
+        entry.pawns[1] = pawns[1];
+        entry.score = scorePawns(entry, 0) + scorePawns(entry, 1);
+        entry.key = pawnHash;
+        entry.isValid = trace == null;
+        return entry;
+    }
+
+    /**
+     * Scores the pawn structure of one side and records its passed pawns.
+     * @param entry the entry holding both sides' pawns
+     * @param color 0 for white, 1 for black
+     * @return the value of the side's pawn structure from white's perspective
+     */
+    private int scorePawns(PawnTable.Entry entry, int color) {
+        long own = entry.pawns[color];
+        long enemy = entry.pawns[1 - color];
+        int sign = color == 0 ? 1 : -1;
+        int score = 0;
+        entry.passedPawns[color] = 0;
+
+        for (int col = 0; col < 8; col++) {
+            int count = Long.bitCount(own & FILE_MASKS[col]);
+            if (count > 1) {
+                score += weigh(EvalParams.DOUBLED_PAWN, (count - 1) * sign);
+            }
+        }
+
+        for (long remaining = own; remaining != 0; remaining &= remaining - 1) {
+            int sq = Long.numberOfTrailingZeros(remaining);
+            int col = sq % 8;
+
+            if ((PASSED_MASKS[color][sq] & enemy) == 0) {
+                entry.passedPawns[color] |= 1L << sq;
+                score += weigh(EvalParams.PASSED_PAWN + advancement(sq, color), sign);
+            }
+
+            if ((own & ADJACENT_FILE_MASKS[col]) == 0) {
+                score += weigh(EvalParams.ISOLATED_PAWN, sign);
+            } else if ((own & SUPPORT_MASKS[color][sq]) == 0
+                && (enemy & STOP_ATTACK_MASKS[color][sq]) != 0) {
+                // can never be defended by a pawn and cannot safely advance either
+                score += weigh(EvalParams.BACKWARD_PAWN, sign);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Scores the pawn shield of one side's king.
+     * Only a king on its two back ranks is shielded, further up the board it is exposed anyway.
+     * @param pawnEntry the pawn structure entry
+     * @param color 0 for white, 1 for black
+     * @return the value of the pawn shield from white's perspective
+     */
+    private int scoreKingShield(PawnTable.Entry pawnEntry, int color) {
+        int sq = kingSquares[color];
+        if (sq < 0 || advancement(sq, color) > 1) {
+            return 0;
+        }
+
+        long own = pawnEntry.pawns[color];
+        int sign = color == 0 ? 1 : -1;
+        return weigh(EvalParams.SHIELD_CLOSE,
+                Long.bitCount(own & SHIELD_CLOSE_MASKS[color][sq]) * sign)
+            + weigh(EvalParams.SHIELD_FAR, Long.bitCount(own & SHIELD_FAR_MASKS[color][sq]) * sign);
+    }
+
+    /**
+     * Scores how close a side is to mating a bare king.
+     * Piece-square tables alone do not know how to mate,
+     *     the losing king has to be driven to the edge with the help of the winning king.
+     * @param winner the square of the winning king
+     * @param loser the square of the bare king
+     * @return the bonus of the winning side
+     */
+    private static int scoreBareKing(int winner, int loser) {
+        if (winner < 0 || loser < 0) {
+            return 0;
+        }
+
+        int loserRow = loser / 8;
+        int loserCol = loser % 8;
+        int centerDistance = Math.max(3 - loserRow, loserRow - 4)
+            + Math.max(3 - loserCol, loserCol - 4);
+        int kingDistance = Math.abs(winner / 8 - loserRow) + Math.abs(winner % 8 - loserCol);
+        return BARE_KING_EDGE * centerDistance + BARE_KING_CLOSE * (14 - kingDistance);
+    }
+
+    /**
+     * Scores how freely one side's passed pawns can advance.
+     * Depends on pieces other than pawns, so it is not cached with the structure.
+     * @param board the board
+     * @param pawnEntry the pawn structure entry
+     * @param color 0 for white, 1 for black
+     * @return the value of unblocked passed pawns from white's perspective
+     */
+    private int scorePassedPawns(ChessBoard board, PawnTable.Entry pawnEntry, int color) {
+        int sign = color == 0 ? 1 : -1;
+        int score = 0;
+        for (long remaining = pawnEntry.passedPawns[color]; remaining != 0;
+            remaining &= remaining - 1) {
+            int sq = Long.numberOfTrailingZeros(remaining);
+            int stopRow = sq / 8 + (color == 0 ? -1 : 1);
+            if (board.getPiece(stopRow, sq % 8) == ChessPiece.EMPTY) {
+                score += weigh(EvalParams.FREE_PASSED_PAWN + advancement(sq, color), sign);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Gets the value of a term and records its coefficient while tracing.
+     * @param param the index of the parameter
+     * @param coefficient how often the term applies, negative for black
+     * @return the value of the term
+     */
+    private int weigh(int param, int coefficient) {
+        if (trace != null) {
+            trace[param] += coefficient;
+        }
+        return params[param] * coefficient;
+    }
+
+    // 0 for squares off the board so that masks can be built without bounds checks
+    private static long bit(int row, int col) {
+        if (row < 0 || row > 7 || col < 0 || col > 7) {
+            return 0;
+        }
+        return 1L << (row * 8 + col);
+    }
+
+    // number of ranks a piece of the given color is away from its back rank
+    private static int advancement(int sq, int color) {
+        return color == 0 ? 7 - sq / 8 : sq / 8;
+    }
+}
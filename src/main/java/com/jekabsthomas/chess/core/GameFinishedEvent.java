@@ -0,0 +1,43 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a game that ended (not of games ending within a search).
+ * @author Jekabs Gritans
+ */
+@Name("com.jekabsthomas.chess.GameFinished")
+@Label("Game Finished")
+@Category({"Chess", "Game"})
+@Description("A game ended in a win, stalemate or draw")
+public class GameFinishedEvent extends Event {
+    @Label("State")
+    String state;
+
+    @Label("Plies")
+    @Description("Moves of both players made in the game")
+    int plies;
+
+    @Label("Position")
+    @Description("FEN of the final position")
+    String fen;
+
+    /**
+     * Records the end of a game, if the event is enabled in a running recording.
+     * @param game the finished game
+     */
+    public static void emit(ChessGame game) {
+        GameFinishedEvent event = new GameFinishedEvent();
+        if (event.shouldCommit()) {
+            event.state = game.getGameState().name();
+            event.plies = game.getPlyCount();
+            event.fen = game.getFenString();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.core.SearchScheduler.Priority;
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+
+/**
+ * Headless server that hosts many games at once over a line-based TCP protocol,
+ *     both against the bot and between two connected players.
+ * Every connection is handled by its own thread, a virtual thread if the JVM has them
+ *     (Java 21+), so idle sessions cost little more than their game and socket.
+ * Bot moves are searched by a SearchScheduler with a fixed number of workers, one per core
+ *     by default, so searches never oversubscribe the CPU. Bot moves are latency-critical,
+ *     so they preempt background analyses of an AnalysisServer sharing the scheduler.
+ *
+ * Commands (one per line) and their answers:
+ * - new bot [white|black] [movetime N] [depth N]: game ID COLOR, then the bot's move if it
+ *     plays white
+ * - new human: game ID white, the game starts when another connection joins
+ * - join ID: game ID black, the creator is told joined
+ * - move UCI: ok, then the reply (move UCI) from the bot or the other player;
+ *     when the game ends both players are told end STATE
+ * - fen: fen FEN
+ * - moves: moves UCI...
+ * - quit: closes the connection, the other player is told left
+ * Invalid commands are answered with error MESSAGE.
+ * @author Jekabs Gritans
+ */
+public class GameServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7070;
+    public static final long DEFAULT_BOT_TIME_MS = 1000;
+    public static final int ENGINE_HASH_MB = 16;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionExecutor;
+    private final SearchScheduler scheduler;
+    private final boolean ownsScheduler;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread acceptThread;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Starts a server on the loopback address.
+     * @param port the port to listen on, or 0 for any free port
+     * @param searchThreads the number of bot searches that run at the same time
+     * @throws IOException if the port cannot be opened
+     */
+    public GameServer(int port, int searchThreads) throws IOException {
+        this(port, newScheduler(searchThreads, ENGINE_HASH_MB), true);
+    }
+
+    /**
+     * Starts a server on the loopback address that searches on a shared scheduler.
+     * @param port the port to listen on, or 0 for any free port
+     * @param scheduler the scheduler of the bot searches, not closed with the server
+     * @throws IOException if the port cannot be opened
+     */
+    public GameServer(int port, SearchScheduler scheduler) throws IOException {
+        this(port, scheduler, false);
+    }
+
+    private GameServer(int port, SearchScheduler scheduler, boolean ownsScheduler)
+        throws IOException {
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        connectionExecutor = newConnectionExecutor();
+        acceptThread = new Thread(this::acceptConnections, "game-server");
+        acceptThread.start();
+    }
+
+    /**
+     * Creates a scheduler with one search at a time per thread.
+     * @param searchThreads the number of searches that run at the same time
+     * @param hashMb the size of the transposition table of each started search
+     * @return the scheduler
+     */
+    static SearchScheduler newScheduler(int searchThreads, int hashMb) {
+        if (searchThreads <= 0) {
+            throw new IllegalArgumentException("Number of search threads must be positive");
+        }
+        return new SearchScheduler(searchThreads, hashMb, SearchScheduler.DEFAULT_QUANTUM_NODES);
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     * Found by reflection, so that the server also runs on Java versions without them,
+     *     in which case a cached pool of platform threads is used instead.
+     * @return the executor
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "game-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of games that are being played or waiting for a second player.
+     * @return the number of games
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops accepting connections, closes all open ones and the scheduler if it is not shared.
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        serverSocket.close();
+        try {
+            acceptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Session session : sessions.values()) {
+            session.closeAll();
+        }
+        connectionExecutor.shutdownNow();
+        if (ownsScheduler) {
+            scheduler.close();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!isClosed) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> new Connection(socket).run());
+            } catch (IOException e) {
+                if (!isClosed) {
+                    System.out.println("Failed to accept connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the bot's move on the scheduler.
+     * @param game the game, not changed
+     * @param limits the limits of the search
+     * @return the best move
+     * @throws InterruptedException if interrupted while searching, the search is cancelled
+     */
+    private ChessMove searchBotMove(ChessGame game, SearchLimits limits)
+        throws InterruptedException {
+        CompletableFuture<SearchResult> search = scheduler.submit(game, limits,
+            Priority.LATENCY_CRITICAL);
+        try {
+            return search.get().bestMove();
+        } catch (InterruptedException e) {
+            search.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bot search failed", e.getCause());
+        }
+    }
+
+    /**
+     * A game and its players.
+     * Guarded by a lock rather than synchronized, which would pin virtual threads.
+     */
+    private class Session {
+        final long id;
+        final ChessGame game = new ChessGame();
+        final ReentrantLock lock = new ReentrantLock();
+        final SearchLimits botLimits; // null if both players are human
+        final boolean isBotWhite;
+        Connection white;
+        Connection black;
+
+        Session(long id, SearchLimits botLimits, boolean isBotWhite) {
+            this.id = id;
+            this.botLimits = botLimits;
+            this.isBotWhite = isBotWhite;
+        }
+
+        boolean isBotTurn() {
+            return botLimits != null && game.getGameState() == GameState.ACTIVE
+                && game.isWhiteMove() == isBotWhite;
+        }
+
+        Connection getOpponent(Connection player) {
+            return player == white ? black : white;
+        }
+
+        void closeAll() {
+            for (Connection player : new Connection[] {white, black}) {
+                if (player != null) {
+                    player.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the commands of one client.
+     */
+    private class Connection {
+        private final Socket socket;
+        private PrintWriter out;
+        private volatile Session session = null; // also ended by the other player leaving
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void run() {
+            try (socket;
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                out = new PrintWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] tokens = line.trim().split("\\s+");
+                    if (tokens[0].equals("quit")) {
+                        break;
+                    }
+                    try {
+                        handle(tokens);
+                    } catch (IllegalArgumentException | IllegalStateException
+                        | IndexOutOfBoundsException e) {
+                        send("error " + e.getMessage());
+                    }
+                }
+            } catch (SocketException e) {
+                // closed by the client or the server
+            } catch (IOException e) {
+                System.out.println("Connection failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                leave();
+            }
+        }
+
+        void send(String message) {
+            out.println(message);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+
+        private void handle(String[] tokens) throws InterruptedException {
+            switch (tokens[0]) {
+                case "new" -> newGame(tokens);
+                case "join" -> join(Long.parseLong(tokens[1]));
+                case "move" -> move(tokens[1]);
+                case "fen" -> send("fen " + getSession().game.getFenString());
+                case "moves" -> {
+                    Session current = getSession();
+                    current.lock.lock();
+                    try {
+                        StringBuilder moves = new StringBuilder("moves");
+                        if (current.game.getGameState() == GameState.ACTIVE) {
+                            for (ChessMove move : current.game.getLegalMoves()) {
+                                moves.append(' ').append(move.toUci());
+                            }
+                        }
+                        send(moves.toString());
+                    } finally {
+                        current.lock.unlock();
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown command " + tokens[0]);
+            }
+        }
+
+        private void newGame(String[] tokens) throws InterruptedException {
+            if (tokens.length < 2 || !tokens[1].equals("bot") && !tokens[1].equals("human")) {
+                throw new IllegalArgumentException("Expected new bot or new human");
+            }
+            leave();
+
+            long id = nextId.getAndIncrement();
+            if (tokens[1].equals("human")) {
+                session = new Session(id, null, false);
+                session.white = this;
+                sessions.put(id, session);
+                send("game " + id + " white");
+                return;
+            }
+
+            boolean isHumanWhite = true;
+            int depth = 0;
+            long timeMs = DEFAULT_BOT_TIME_MS;
+            for (int i = 2; i < tokens.length; i++) {
+                switch (tokens[i]) {
+                    case "white" -> isHumanWhite = true;
+                    case "black" -> isHumanWhite = false;
+                    case "movetime" -> timeMs = Long.parseLong(tokens[++i]);
+                    case "depth" -> {
+                        depth = Integer.parseInt(tokens[++i]);
+                        timeMs = 0;
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option " + tokens[i]);
+                }
+            }
+
+            session = new Session(id, new SearchLimits(depth, 0, timeMs), !isHumanWhite);
+            if (isHumanWhite) {
+                session.white = this;
+            } else {
+                session.black = this;
+            }
+            sessions.put(id, session);
+            send("game " + id + (isHumanWhite ? " white" : " black"));
+            playBotMove();
+        }
+
+        private void join(long id) {
+            Session other = sessions.get(id);
+            if (other == null || other.botLimits != null) {
+                throw new IllegalArgumentException("No game " + id + " to join");
+            }
+            leave();
+
+            other.lock.lock();
+            try {
+                if (other.black != null || !sessions.containsKey(id)) {
+                    throw new IllegalStateException("Game " + id + " cannot be joined");
+                }
+                other.black = this;
+                session = other;
+                send("game " + id + " black");
+                other.white.send("joined");
+            } finally {
+                other.lock.unlock();
+            }
+        }
+
+        private void move(String uci) throws InterruptedException {
+            Session current = getSession();
+            current.lock.lock();
+            try {
+                boolean isWhite = current.white == this;
+                if (current.game.getGameState() != GameState.ACTIVE) {
+                    throw new IllegalStateException("Game is over");
+                } else if (current.botLimits == null && current.black == null) {
+                    throw new IllegalStateException("Waiting for an opponent");
+                } else if (current.game.isWhiteMove() != isWhite) {
+                    throw new IllegalStateException("Not your turn");
+                }
+
+                ChessMove move = current.game.findMove(uci);
+                if (move == null) {
+                    throw new IllegalArgumentException("Illegal move " + uci);
+                }
+                current.game.makeMove(move);
+                send("ok");
+
+                Connection opponent = current.getOpponent(this);
+                if (opponent != null) {
+                    opponent.send("move " + uci);
+                }
+                sendEnd();
+            } finally {
+                current.lock.unlock();
+            }
+
+            // the connection owns its bot game, so the search can run without the lock
+            playBotMove();
+        }
+
+        private void playBotMove() throws InterruptedException {
+            if (!session.isBotTurn()) {
+                return;
+            }
+
+            ChessMove move = searchBotMove(session.game, session.botLimits);
+            session.lock.lock();
+            try {
+                session.game.makeMove(move);
+                send("move " + move.toUci());
+                sendEnd();
+            } finally {
+                session.lock.unlock();
+            }
+        }
+
+        private void sendEnd() {
+            GameState state = session.game.getGameState();
+            if (state == GameState.ACTIVE) {
+                return;
+            }
+
+            for (Connection player : new Connection[] {session.white, session.black}) {
+                if (player != null) {
+                    player.send("end " + state);
+                }
+            }
+            sessions.remove(session.id);
+        }
+
+        private Session getSession() {
+            if (session == null) {
+                throw new IllegalStateException("No game, start one with new");
+            }
+            return session;
+        }
+
+        /**
+         * Leaves the current game, which ends it.
+         */
+        private void leave() {
+            Session current = session;
+            if (current == null) {
+                return;
+            }
+
+            session = null;
+            current.lock.lock();
+            try {
+                if (sessions.remove(current.id) != null) {
+                    Connection opponent = current.getOpponent(this);
+                    if (opponent != null) {
+                        // cleared first, so that its next command cannot reach this game
+                        opponent.session = null;
+                        opponent.send("left");
+                    }
+                }
+            } finally {
+                current.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs a server until the process is killed.
+     * With -analysis-port an AnalysisServer runs in the same process on the same scheduler,
+     *     so games and analyses share the cores and bot moves go first.
+     * The statistics of the engines are registered as MBeans named server-0, server-1, ...
+     * @param args options -port N (7070 by default), -threads N (the number of cores)
+     *     and -analysis-port N (no analysis service by default)
+     * @throws IOException if a port cannot be opened
+     * @throws InterruptedException if interrupted while running
+     * @throws JMException if the MBeans cannot be registered
+     */
+    public static void main(String[] args)
+        throws IOException, InterruptedException, JMException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int analysisPort = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port" -> port = Integer.parseInt(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-analysis-port" -> analysisPort = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SearchScheduler scheduler = newScheduler(threads, ENGINE_HASH_MB);
+        scheduler.registerMBeans("server");
+        GameServer server = new GameServer(port, scheduler);
+        System.out.println("Listening on port " + server.getPort());
+        if (analysisPort >= 0) {
+            AnalysisServer analysisServer = new AnalysisServer(analysisPort, scheduler,
+                AnalysisServer.DEFAULT_CACHE_ENTRIES);
+            System.out.println("Analysing on http://localhost:" + analysisServer.getPort()
+                + "/analyze");
+        }
+        while (true) {
+            TimeUnit.MINUTES.sleep(1);
+            System.out.println("%d games, %d queued searches".formatted(
+                server.getSessionCount(), scheduler.getQueuedJobs()));
+        }
+    }
+}
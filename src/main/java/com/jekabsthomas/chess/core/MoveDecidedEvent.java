@@ -0,0 +1,36 @@
+package com.jekabsthomas.chess.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a finished search.
+ * The duration of the event is the time of the search.
+ * @author Jekabs Gritans
+ */
+@Name("com.jekabsthomas.chess.MoveDecided")
+@Label("Move Decided")
+@Category({"Chess", "Search"})
+@Description("The engine finished a search and decided on a move")
+class MoveDecidedEvent extends Event {
+    @Label("Move")
+    String move;
+
+    @Label("Score")
+    @Description("Score of the move from the perspective of the player to move")
+    int score;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes searched by all threads")
+    long nodes;
+
+    @Label("Position")
+    @Description("FEN of the searched position")
+    String fen;
+}
@@ -0,0 +1,76 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard;
+
+/**
+ * Hidden layer of a neural network, kept up to date with the pieces of a board.
+ * Adding or removing a piece only adds or subtracts one row of weights per perspective,
+ *     which is much cheaper than recomputing the layer for every evaluated position.
+ * @author Jekabs Gritans
+ */
+public class NnueAccumulator implements ChessBoard.FeatureAccumulator {
+    private final NnueNetwork network;
+    private final short[] white;
+    private final short[] black;
+
+    /**
+     * Creates an empty accumulator.
+     * @param network the network
+     */
+    NnueAccumulator(NnueNetwork network) {
+        this.network = network;
+        white = network.getHiddenBiases().clone();
+        black = network.getHiddenBiases().clone();
+    }
+
+    private NnueAccumulator(NnueAccumulator other) {
+        network = other.network;
+        white = other.white.clone();
+        black = other.black.clone();
+    }
+
+    @Override
+    public void reset() {
+        short[] biases = network.getHiddenBiases();
+        System.arraycopy(biases, 0, white, 0, biases.length);
+        System.arraycopy(biases, 0, black, 0, biases.length);
+    }
+
+    @Override
+    public void addPiece(byte piece, int row, int col) {
+        NnueInference inference = network.getInference();
+        short[] weights = network.getFeatureWeights();
+        inference.add(white, weights, network.getFeatureOffset(piece, row, col, true));
+        inference.add(black, weights, network.getFeatureOffset(piece, row, col, false));
+    }
+
+    @Override
+    public void removePiece(byte piece, int row, int col) {
+        NnueInference inference = network.getInference();
+        short[] weights = network.getFeatureWeights();
+        inference.subtract(white, weights, network.getFeatureOffset(piece, row, col, true));
+        inference.subtract(black, weights, network.getFeatureOffset(piece, row, col, false));
+    }
+
+    @Override
+    public NnueAccumulator copy() {
+        return new NnueAccumulator(this);
+    }
+
+    /**
+     * Gets the network of the accumulator.
+     * @return the network
+     */
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the hidden values seen by one side.
+     * @param isWhite whether to get white's perspective
+     * @return the hidden values (not to be modified)
+     */
+    short[] getValues(boolean isWhite) {
+        return isWhite ? white : black;
+    }
+}
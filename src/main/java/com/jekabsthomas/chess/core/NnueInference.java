@@ -0,0 +1,59 @@
+package com.jekabsthomas.chess.core;
+
+/**
+ * Integer arithmetic of the neural network evaluation.
+ * All implementations produce identical results, they only differ in speed.
+ * @author Jekabs Gritans
+ */
+interface NnueInference {
+    /**
+     * Adds a row of weights to an accumulator (int16 lanes, wrapping on overflow).
+     * @param accumulator the accumulator
+     * @param weights the weights
+     * @param offset the index of the row in weights
+     */
+    void add(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Subtracts a row of weights from an accumulator (int16 lanes, wrapping on overflow).
+     * @param accumulator the accumulator
+     * @param weights the weights
+     * @param offset the index of the row in weights
+     */
+    void subtract(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Computes the dot product of the clipped accumulator with a row of weights.
+     * @param accumulator the accumulator
+     * @param weights the weights
+     * @param offset the index of the row in weights
+     * @param clip the maximum activation, activations are clipped to [0, clip]
+     * @return the dot product (int32, wrapping on overflow)
+     */
+    int dot(short[] accumulator, short[] weights, int offset, short clip);
+
+    /**
+     * Gets the fastest inference supported by the running JVM.
+     * SIMD inference needs the incubating vector module (--add-modules jdk.incubator.vector).
+     * @return the inference
+     */
+    static NnueInference create() {
+        if (isVectorAvailable()) {
+            try {
+                return (NnueInference) Class.forName("com.jekabsthomas.chess.core.VectorInference")
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall through to scalar inference
+            }
+        }
+        return new ScalarInference();
+    }
+
+    /**
+     * Checks whether the vector module is loaded.
+     * @return true if SIMD inference can be used
+     */
+    static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+}
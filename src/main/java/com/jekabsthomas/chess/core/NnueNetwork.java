@@ -0,0 +1,198 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessPiece;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Small quantized neural network that evaluates positions (NNUE style).
+ * 768 piece-square inputs per perspective feed a hidden layer of int16 accumulators,
+ *     which are updated incrementally as pieces move (see NnueAccumulator).
+ * The clipped accumulators of the player to move and the opponent feed a single output.
+ *
+ * File format (little-endian): "NNUE", int version, int hidden size,
+ *     int16 feature weights (768 rows of hidden size), int16 hidden biases,
+ *     int16 output weights (player to move half, then opponent half), int32 output bias.
+ * @author Jekabs Gritans
+ */
+public class NnueNetwork {
+    public static final int NUM_FEATURES = 2 * 6 * 64; // (own, enemy) x piece type x square
+
+    // quantization: activations are clipped to [0, CLIP], output weights are scaled by
+    // OUTPUT_QUANT and the output is in units of EVAL_SCALE centipawns
+    static final short CLIP = 255;
+    private static final int OUTPUT_QUANT = 64;
+    private static final int EVAL_SCALE = 400;
+
+    private static final int MAGIC = 'N' | 'N' << 8 | 'U' << 16 | 'E' << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    private final int hiddenSize;
+    private final short[] featureWeights;
+    private final short[] hiddenBiases;
+    private final short[] outputWeights;
+    private final int outputBias;
+    private NnueInference inference = NnueInference.create();
+
+    /**
+     * Creates a network from its quantized weights.
+     * @param hiddenSize the number of hidden neurons per perspective
+     * @param featureWeights the input weights, NUM_FEATURES rows of hiddenSize
+     * @param hiddenBiases the hidden biases, hiddenSize values
+     * @param outputWeights the output weights, 2 * hiddenSize values
+     * @param outputBias the output bias
+     * @throws IllegalArgumentException if the sizes do not match
+     */
+    public NnueNetwork(int hiddenSize, short[] featureWeights, short[] hiddenBiases,
+        short[] outputWeights, int outputBias) {
+        if (hiddenSize <= 0 || featureWeights.length != NUM_FEATURES * hiddenSize
+            || hiddenBiases.length != hiddenSize || outputWeights.length != 2 * hiddenSize) {
+            throw new IllegalArgumentException("Network weights do not match the hidden size");
+        }
+
+        this.hiddenSize = hiddenSize;
+        this.featureWeights = featureWeights;
+        this.hiddenBiases = hiddenBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Loads a network from a file.
+     * @param path the path of the weights file
+     * @return the network
+     * @throws IOException if the file cannot be read or is not a valid network
+     */
+    public static NnueNetwork load(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid network file size: " + path);
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the file is consumed
+            }
+        }
+        buffer.flip().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a network file: " + path);
+        }
+        int hiddenSize = buffer.getInt();
+        if (hiddenSize <= 0 || buffer.remaining() != getWeightBytes(hiddenSize)) {
+            throw new IOException("Invalid network size in " + path);
+        }
+
+        short[] featureWeights = new short[NUM_FEATURES * hiddenSize];
+        short[] hiddenBiases = new short[hiddenSize];
+        short[] outputWeights = new short[2 * hiddenSize];
+        buffer.asShortBuffer().get(featureWeights).get(hiddenBiases).get(outputWeights);
+        buffer.position(buffer.limit() - 4);
+        return new NnueNetwork(hiddenSize, featureWeights, hiddenBiases, outputWeights,
+            buffer.getInt());
+    }
+
+    /**
+     * Saves the network to a file in the format read by load.
+     * @param path the path of the weights file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (int) getWeightBytes(hiddenSize))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hiddenSize);
+        buffer.asShortBuffer().put(featureWeights).put(hiddenBiases).put(outputWeights);
+        buffer.position(buffer.limit() - 4);
+        buffer.putInt(outputBias).flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Creates an accumulator of this network, to be attached to a board.
+     * @return the accumulator
+     */
+    public NnueAccumulator createAccumulator() {
+        return new NnueAccumulator(this);
+    }
+
+    /**
+     * Evaluates a position from the perspective of the player to move.
+     * @param accumulator the accumulator attached to the position's board
+     * @param isWhiteMove whether white is to move
+     * @return the heuristic value in centipawns
+     */
+    public int evaluate(NnueAccumulator accumulator, boolean isWhiteMove) {
+        return evaluate(accumulator, isWhiteMove, inference);
+    }
+
+    /**
+     * Evaluates a position with the given inference.
+     * @param accumulator the accumulator attached to the position's board
+     * @param isWhiteMove whether white is to move
+     * @param inference the inference to use
+     * @return the heuristic value in centipawns
+     */
+    int evaluate(NnueAccumulator accumulator, boolean isWhiteMove, NnueInference inference) {
+        short[] own = accumulator.getValues(isWhiteMove);
+        short[] enemy = accumulator.getValues(!isWhiteMove);
+        int output = inference.dot(own, outputWeights, 0, CLIP)
+            + inference.dot(enemy, outputWeights, hiddenSize, CLIP);
+        return (int) ((long) (output / CLIP + outputBias) * EVAL_SCALE / (CLIP * OUTPUT_QUANT));
+    }
+
+    /**
+     * Gets the number of hidden neurons per perspective.
+     * @return the hidden size
+     */
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    /**
+     * Gets the index of the first weight of an input feature.
+     * Each perspective sees its own pieces first and its own back rank as rank 1.
+     * @param piece the piece
+     * @param row the row index from top
+     * @param col the column index from left
+     * @param isWhitePerspective whether the feature is seen by white
+     * @return the offset of the feature's row of weights
+     */
+    int getFeatureOffset(byte piece, int row, int col, boolean isWhitePerspective) {
+        int side = ChessPiece.isWhite(piece) == isWhitePerspective ? 0 : 1;
+        int square = (isWhitePerspective ? 7 - row : row) * 8 + col;
+        int feature = (side * 6 + ChessPiece.getType(piece) - 1) * 64 + square;
+        return feature * hiddenSize;
+    }
+
+    short[] getFeatureWeights() {
+        return featureWeights;
+    }
+
+    short[] getHiddenBiases() {
+        return hiddenBiases;
+    }
+
+    NnueInference getInference() {
+        return inference;
+    }
+
+    void setInference(NnueInference inference) {
+        this.inference = inference;
+    }
+
+    private static long getWeightBytes(int hiddenSize) {
+        return 2L * (NUM_FEATURES + 3) * hiddenSize + 4;
+    }
+}
@@ -0,0 +1,87 @@
+package com.jekabsthomas.chess.core;
+
+/**
+ * Cache of pawn structure evaluations keyed by the pawn-only Zobrist hash.
+ * Pawn structure rarely changes within a search, so nearly all lookups hit.
+ * Entries are allocated up front and overwritten in place, so lookups never allocate.
+ * Not thread-safe: every search thread owns its own table.
+ * @author Jekabs Gritans
+ */
+public class PawnTable {
+    private final Entry[] entries;
+    private final int mask;
+    private long probes = 0;
+    private long hits = 0;
+
+    /**
+     * Creates a pawn table.
+     * @param numEntries the number of entries, rounded down to a power of two
+     * @throws IllegalArgumentException if numEntries is not positive
+     */
+    public PawnTable(int numEntries) {
+        if (numEntries <= 0) {
+            throw new IllegalArgumentException("Number of entries must be positive");
+        }
+
+        entries = new Entry[Integer.highestOneBit(numEntries)];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry();
+        }
+        mask = entries.length - 1;
+    }
+
+    /**
+     * Gets the entry of a pawn structure.
+     * If the entry does not belong to the structure yet (see Entry.key),
+     *     the caller has to fill it in.
+     * @param pawnHash the pawn hash of the structure
+     * @return the entry of the structure's slot
+     */
+    public Entry probe(long pawnHash) {
+        Entry entry = entries[(int) pawnHash & mask];
+        probes++;
+        if (entry.key == pawnHash && entry.isValid) {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (Entry entry : entries) {
+            entry.isValid = false;
+        }
+    }
+
+    /**
+     * Gets the fraction of lookups that found their structure.
+     * @return the hit rate between 0 and 1, 0 if there were no lookups
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    /**
+     * Cached evaluation of one pawn structure.
+     * Pawn sets are bitboards, bit (row * 8 + col) with row 0 being the 8th rank.
+     * Index 0 of the arrays is white, 1 is black.
+     */
+    public static class Entry {
+        public long key;
+        public boolean isValid = false;
+        public int score; // from white's perspective
+        public final long[] pawns = new long[2];
+        public final long[] passedPawns = new long[2];
+
+        /**
+         * Checks whether the entry holds the given structure.
+         * @param pawnHash the pawn hash of the structure
+         * @return true if the entry can be used as is
+         */
+        public boolean matches(long pawnHash) {
+            return isValid && key == pawnHash;
+        }
+    }
+}
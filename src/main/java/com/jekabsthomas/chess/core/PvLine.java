@@ -0,0 +1,24 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import java.util.List;
+
+/**
+ * A principal variation: the line of play the search expects from a position.
+ * @param score the score of the line from the perspective of the player to move
+ * @param moves the moves of the line, starting with the move to play
+ * @author Jekabs Gritans
+ */
+public record PvLine(int score, List<ChessMove> moves) {
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (ChessMove move : moves) {
+            if (line.length() != 0) {
+                line.append(", ");
+            }
+            line.append(move);
+        }
+        return score + ": " + line;
+    }
+}
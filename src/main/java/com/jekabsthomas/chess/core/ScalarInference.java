@@ -0,0 +1,31 @@
+package com.jekabsthomas.chess.core;
+
+/**
+ * Plain Java inference, used when the vector module is not available.
+ * @author Jekabs Gritans
+ */
+class ScalarInference implements NnueInference {
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public int dot(short[] accumulator, short[] weights, int offset, short clip) {
+        int sum = 0;
+        for (int i = 0; i < accumulator.length; i++) {
+            int activation = Math.min(Math.max(accumulator[i], 0), clip);
+            sum += activation * weights[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,22 @@
+package com.jekabsthomas.chess.core;
+
+import java.util.List;
+
+/**
+ * Progress of a running search, reported after every completed iteration (see Engine).
+ * @param depth the depth of the completed iteration
+ * @param selDepth the largest distance from the root reached so far
+ * @param nodes the number of nodes searched so far by all threads
+ * @param timeMs the time since the search started in milliseconds
+ * @param lines the best lines of the iteration (one per multi-PV line), sorted from best to worst
+ * @author Jekabs Gritans
+ */
+public record SearchInfo(int depth, int selDepth, long nodes, long timeMs, List<PvLine> lines) {
+    /**
+     * Gets the search speed.
+     * @return the number of nodes per second, 0 if no time has passed
+     */
+    public long getNodesPerSecond() {
+        return SearchStats.getNodesPerSecond(nodes, timeMs);
+    }
+}
@@ -0,0 +1,33 @@
+package com.jekabsthomas.chess.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a completed iteration of iterative deepening.
+ * The duration of the event is the time of the iteration.
+ * @author Jekabs Gritans
+ */
+@Name("com.jekabsthomas.chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess", "Search"})
+@Description("An iteration of iterative deepening completed")
+class SearchIterationEvent extends Event {
+    @Label("Searcher")
+    @Description("Index of the search thread, 0 is the main thread")
+    int searcher;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes searched by this thread during the iteration")
+    long nodes;
+
+    @Label("Score")
+    @Description("Score of the best line from the perspective of the player to move")
+    int score;
+}
@@ -0,0 +1,75 @@
+package com.jekabsthomas.chess.core;
+
+/**
+ * Limits of a single search.
+ * The search stops as soon as any of the limits is reached.
+ * A non-positive value means that the respective limit is not used.
+ * @param depth the maximum depth (plies) to search
+ * @param nodes the maximum number of nodes to search
+ * @param timeMs the maximum search time in milliseconds
+ * @author Jekabs Gritans
+ */
+public record SearchLimits(int depth, long nodes, long timeMs) {
+    // playing with a clock
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    private static final long CLOCK_MARGIN_MS = 50; // for the time between searches
+
+    /**
+     * Creates limits that only restrict the search time.
+     * @param timeMs the maximum search time in milliseconds
+     * @return the limits
+     */
+    public static SearchLimits ofTime(long timeMs) {
+        return new SearchLimits(0, 0, timeMs);
+    }
+
+    /**
+     * Creates limits that only restrict the search depth.
+     * @param depth the maximum depth to search
+     * @return the limits
+     */
+    public static SearchLimits ofDepth(int depth) {
+        return new SearchLimits(depth, 0, 0);
+    }
+
+    /**
+     * Creates limits that only restrict the number of searched nodes.
+     * @param nodes the maximum number of nodes to search
+     * @return the limits
+     */
+    public static SearchLimits ofNodes(long nodes) {
+        return new SearchLimits(0, nodes, 0);
+    }
+
+    /**
+     * Creates limits for a player with a clock: an equal share of the remaining time
+     *     for each move until the time control plus most of the increment,
+     *     but never all of the remaining time.
+     * @param remainingMs the time left on the clock in milliseconds
+     * @param incrementMs the time added to the clock after each move in milliseconds
+     * @param movesToGo the number of moves until the time control, or 0 if unknown
+     * @return the limits
+     */
+    public static SearchLimits ofClock(long remainingMs, long incrementMs, int movesToGo) {
+        long timeMs = remainingMs / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO)
+            + incrementMs * 3 / 4;
+        return ofTime(Math.max(1, Math.min(timeMs, remainingMs - CLOCK_MARGIN_MS)));
+    }
+
+    /**
+     * Creates limits that never stop the search, it has to be stopped explicitly.
+     * @return the limits
+     */
+    public static SearchLimits infinite() {
+        return new SearchLimits(0, 0, 0);
+    }
+
+    /**
+     * Checks whether the search may continue to the given depth.
+     * @param searchDepth the depth about to be searched
+     * @return true if the depth is within the limits
+     */
+    public boolean allowsDepth(int searchDepth) {
+        return depth <= 0 || searchDepth <= depth;
+    }
+}
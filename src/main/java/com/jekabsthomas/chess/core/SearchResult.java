@@ -0,0 +1,27 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import java.util.List;
+
+/**
+ * Result of a finished search.
+ * @param bestMove the best move found
+ * @param ponderMove the expected reply of the opponent, or null if unknown
+ * @param score the score of the best move from the perspective of the player to move
+ * @param depth the depth of the last completed iteration
+ * @param nodes the number of nodes searched by all threads
+ * @param timeMs the time the search took in milliseconds
+ * @param lines the best lines (one per multi-PV line), sorted from best to worst
+ * @param stats the statistics of the search
+ * @author Jekabs Gritans
+ */
+public record SearchResult(
+    ChessMove bestMove,
+    ChessMove ponderMove,
+    int score,
+    int depth,
+    long nodes,
+    long timeMs,
+    List<PvLine> lines,
+    SearchStats stats
+) {}
@@ -0,0 +1,438 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+
+/**
+ * Runs many searches on a fixed number of worker threads, so that many games or analyses
+ *     can share the cores without oversubscribing them.
+ * Searches are time-sliced: a worker searches a job for a quantum of nodes and then puts it
+ *     back in the queue. A started job keeps an engine between its slices, so the next slice
+ *     restarts iterative deepening from the job's transposition table and gets through the
+ *     completed depths quickly. A slice that does not get deeper doubles the job's quantum.
+ * Engines are large (mostly their tables), so only a bounded number of jobs are started at
+ *     once. Other jobs wait in the queue without one, and a job that finds all engines taken
+ *     takes the engine of a queued less important job (which keeps its best result
+ *     but starts over) or waits until a job finishes.
+ * The queue is ordered by priority, then by deadline, then round-robin.
+ * A latency-critical job that finds all workers busy with lower priority jobs stops the
+ *     slice of the least important one, which keeps its progress and is queued again.
+ *     Slices are stopped through a flag of their job that the search checks, as the
+ *     engine may be between searches when the flag is set.
+ * Limits of a job: the depth to reach, the total number of nodes of all slices
+ *     and the time until the deadline, counting from submission (so including waiting).
+ * @author Jekabs Gritans
+ */
+public class SearchScheduler implements AutoCloseable {
+    public static final int DEFAULT_HASH_MB = 8;
+    public static final long DEFAULT_QUANTUM_NODES = 20000;
+    public static final long MAX_QUANTUM_NODES = 5000000;
+    public static final int DEFAULT_STARTED_JOBS_PER_WORKER = 4;
+
+    /**
+     * Priority of a job, higher priorities always run first.
+     */
+    public enum Priority {
+        BACKGROUND,
+        NORMAL,
+        LATENCY_CRITICAL
+    }
+
+    private static final Comparator<Job> ORDER = Comparator
+        .comparing((Job job) -> job.priority, Comparator.reverseOrder())
+        .thenComparingLong(job -> job.deadline)
+        .thenComparingLong(job -> job.sequence);
+
+    private final int hashMb;
+    private final long quantumNodes;
+    private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>(16, ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread[] workers;
+    private final Job[] running; // per worker, guarded by this
+    private final int maxEngines;
+    private final Deque<Engine> freeEngines = new ArrayDeque<>(); // guarded by this
+    private final List<Job> parked = new ArrayList<>(); // waiting for an engine, guarded by this
+    private final List<Engine> engines = new ArrayList<>(); // all created, guarded by this
+    private String mbeanName = null; // guarded by this
+    private volatile boolean closed = false;
+
+    private final AtomicLong slices = new AtomicLong();
+    private final AtomicLong preemptions = new AtomicLong();
+
+    /**
+     * Creates a scheduler with one worker per core.
+     */
+    public SearchScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_HASH_MB, DEFAULT_QUANTUM_NODES);
+    }
+
+    /**
+     * Creates a scheduler that starts up to DEFAULT_STARTED_JOBS_PER_WORKER jobs per worker.
+     * @param workers the number of worker threads
+     * @param hashMb the size of the transposition table of each started job in megabytes
+     * @param quantumNodes the number of nodes of the first slice of a job
+     */
+    public SearchScheduler(int workers, int hashMb, long quantumNodes) {
+        this(workers, hashMb, quantumNodes, workers * DEFAULT_STARTED_JOBS_PER_WORKER);
+    }
+
+    /**
+     * Creates a scheduler.
+     * @param workers the number of worker threads
+     * @param hashMb the size of the transposition table of each started job in megabytes
+     * @param quantumNodes the number of nodes of the first slice of a job
+     * @param maxStartedJobs the number of engines, at least the number of workers
+     */
+    public SearchScheduler(int workers, int hashMb, long quantumNodes, int maxStartedJobs) {
+        if (workers <= 0 || hashMb <= 0 || quantumNodes <= 0) {
+            throw new IllegalArgumentException("Workers, hash size and quantum must be positive");
+        } else if (maxStartedJobs < workers) {
+            throw new IllegalArgumentException("Every worker needs an engine");
+        }
+
+        this.hashMb = hashMb;
+        this.quantumNodes = quantumNodes;
+        maxEngines = maxStartedJobs;
+        this.workers = new Thread[workers];
+        running = new Job[workers];
+        for (int i = 0; i < workers; i++) {
+            int worker = i;
+            this.workers[i] = new Thread(() -> work(worker), "scheduler-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a search of a snapshot of the game.
+     * Cancelling the returned future stops the search (or drops it if it is still queued).
+     * @param game the game to search
+     * @param limits the depth to reach, the total nodes and the time until the deadline;
+     *     without any limit the search only ends when cancelled
+     * @param priority the priority of the search
+     * @return the future result, with the best move of the deepest completed iteration
+     *     and the nodes and time of all slices together
+     * @throws IllegalStateException if the game is over or the scheduler closed
+     */
+    public CompletableFuture<SearchResult> submit(ChessGame game, SearchLimits limits,
+        Priority priority) {
+        if (game.getGameState() != GameState.ACTIVE) {
+            throw new IllegalStateException("Game is over");
+        } else if (closed) {
+            throw new IllegalStateException("Scheduler is closed");
+        }
+
+        Job job = new Job(new ChessGame(game), limits, priority);
+        job.sequence = sequence.getAndIncrement();
+        queue.add(job);
+        if (priority == Priority.LATENCY_CRITICAL) {
+            preemptFor(job);
+        }
+        return job.future;
+    }
+
+    /**
+     * Stops the slice of the least important running job if it is less important than
+     *     the given one and no worker is free. Takes effect at the latest when the slice
+     *     would have ended anyway.
+     * @param job the job that wants a worker
+     */
+    private synchronized void preemptFor(Job job) {
+        Job victim = null;
+        for (Job other : running) {
+            if (other == null) {
+                return; // a free worker takes the job
+            } else if (!other.preempted
+                && (victim == null || other.priority.compareTo(victim.priority) < 0)) {
+                victim = other;
+            }
+        }
+
+        if (victim != null && victim.priority.compareTo(job.priority) < 0) {
+            victim.preempted = true; // also seen by a slice that has not started searching
+            preemptions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gives a job an engine: a free one, a new one, or the one of a queued less important job.
+     * @param job the job without an engine
+     * @return false if the job has to wait for an engine, it is parked until one is free
+     */
+    private synchronized boolean acquireEngine(Job job) {
+        Engine engine = freeEngines.poll();
+        if (engine == null && engines.size() < maxEngines) {
+            engine = new Engine(hashMb, 1, Runnable::run);
+            registerMBean(engine, engines.size());
+            engines.add(engine);
+        }
+
+        if (engine == null) {
+            Job victim = null;
+            for (Job other : queue) {
+                if (other.engine != null && other.priority.compareTo(job.priority) < 0
+                    && (victim == null || ORDER.compare(other, victim) > 0)) {
+                    victim = other;
+                }
+            }
+            // a worker may have taken it in the meantime
+            if (victim == null || !queue.remove(victim)) {
+                parked.add(job);
+                return false;
+            }
+            engine = victim.engine;
+            victim.engine = null;
+            queue.add(victim);
+        }
+
+        engine.newGame();
+        job.engine = engine;
+        return true;
+    }
+
+    /**
+     * Takes the engine of a finished job and lets the parked jobs try again.
+     * @param job the finished job
+     */
+    private synchronized void releaseEngine(Job job) {
+        if (job.engine == null) {
+            return;
+        }
+
+        if (closed) {
+            job.engine.close();
+        } else {
+            freeEngines.add(job.engine);
+        }
+        job.engine = null;
+        queue.addAll(parked);
+        parked.clear();
+    }
+
+    private void work(int worker) {
+        while (!closed) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job.future.isDone()) {
+                job.finish(); // cancelled while queued
+                continue;
+            }
+
+            boolean finished;
+            try {
+                if (job.engine == null && !acquireEngine(job)) {
+                    continue;
+                }
+                synchronized (this) {
+                    job.preempted = false;
+                    running[worker] = job;
+                }
+                finished = runSlice(job);
+            } catch (RuntimeException e) {
+                job.future.completeExceptionally(e);
+                finished = true;
+            } finally {
+                synchronized (this) {
+                    running[worker] = null;
+                }
+            }
+
+            if (finished || job.future.isDone()) {
+                job.finish();
+            } else {
+                job.sequence = sequence.getAndIncrement(); // behind jobs of equal importance
+                queue.add(job);
+            }
+        }
+    }
+
+    /**
+     * Searches a job for one quantum on the calling thread.
+     * @param job the job
+     * @return true if the job reached one of its limits
+     */
+    private boolean runSlice(Job job) {
+        SearchLimits limits = job.limits;
+        long quantum = job.quantum;
+        if (limits.nodes() > 0) {
+            quantum = Math.max(1, Math.min(quantum, limits.nodes() - job.nodes));
+        }
+        long timeMs = limits.timeMs() > 0
+            ? Math.max(1, job.deadline - System.currentTimeMillis()) : 0;
+
+        // a job that has a move but missed its deadline is not searched any further
+        if (job.best != null && limits.timeMs() > 0
+            && System.currentTimeMillis() >= job.deadline) {
+            return true;
+        }
+
+        // cancelling the job stops the slice too
+        SearchResult result = job.engine.search(job.game,
+            new SearchLimits(limits.depth(), quantum, timeMs),
+            () -> job.preempted || job.future.isDone()).join();
+        slices.incrementAndGet();
+        job.nodes += result.nodes();
+        boolean isDeeper = job.best == null || result.depth() > job.best.depth();
+        if (job.best == null || result.depth() >= job.best.depth()) {
+            job.best = result;
+        }
+
+        if (!limits.allowsDepth(job.best.depth() + 1)
+            || limits.nodes() > 0 && job.nodes >= limits.nodes()
+            || limits.timeMs() > 0 && System.currentTimeMillis() >= job.deadline) {
+            return true;
+        } else if (job.preempted) {
+            return false;
+        } else if (result.nodes() < quantum) {
+            return true; // nothing left to search
+        }
+
+        if (!isDeeper) {
+            job.quantum = Math.min(job.quantum * 2, MAX_QUANTUM_NODES);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of searched slices of all jobs.
+     * @return the number of slices
+     */
+    public long getSlices() {
+        return slices.get();
+    }
+
+    /**
+     * Gets the number of slices stopped for a latency-critical job.
+     * @return the number of preemptions
+     */
+    public long getPreemptions() {
+        return preemptions.get();
+    }
+
+    /**
+     * Gets the number of engines created, at most the number of jobs started at once.
+     * @return the number of engines
+     */
+    public synchronized int getEngineCount() {
+        return engines.size();
+    }
+
+    /**
+     * Registers the statistics of every engine as an MBean (see Engine.registerMBean),
+     *     named after the scheduler and numbered in the order the engines are created,
+     *     e.g. server-0. Engines created later are registered when they are created.
+     * @param name the name of the scheduler, unique among registered engines and schedulers
+     * @throws JMException if the name is invalid or already registered
+     */
+    public synchronized void registerMBeans(String name) throws JMException {
+        for (int i = 0; i < engines.size(); i++) {
+            engines.get(i).registerMBean(name + "-" + i);
+        }
+        mbeanName = name;
+    }
+
+    private void registerMBean(Engine engine, int index) {
+        if (mbeanName == null) {
+            return;
+        }
+
+        try {
+            engine.registerMBean(mbeanName + "-" + index);
+        } catch (JMException e) {
+            System.out.println("Failed to register MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the number of jobs waiting for a worker.
+     * @return the number of queued jobs
+     */
+    public int getQueuedJobs() {
+        return queue.size();
+    }
+
+    /**
+     * Cancels all jobs and stops the workers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            for (Job job : running) {
+                if (job != null) {
+                    job.future.cancel(false);
+                }
+            }
+        }
+        Job job;
+        while ((job = queue.poll()) != null) {
+            job.future.cancel(false);
+            job.finish();
+        }
+        synchronized (this) {
+            for (Job parkedJob : parked) {
+                parkedJob.future.cancel(false);
+            }
+            parked.clear();
+            for (Engine engine : freeEngines) {
+                engine.close();
+            }
+            freeEngines.clear();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * A search and its progress over all of its slices.
+     */
+    private class Job {
+        final ChessGame game;
+        final SearchLimits limits;
+        final Priority priority;
+        final long startTime = System.currentTimeMillis();
+        final long deadline;
+        final CompletableFuture<SearchResult> future = new CompletableFuture<>();
+
+        // changed by the worker running the job, and only while it is not queued
+        volatile long sequence;
+        volatile Engine engine = null; // while started, guarded by the scheduler
+        volatile boolean preempted = false;
+        long quantum = quantumNodes;
+        long nodes = 0;
+        SearchResult best = null; // of the deepest completed iteration
+
+        Job(ChessGame game, SearchLimits limits, Priority priority) {
+            this.game = game;
+            this.limits = limits;
+            this.priority = priority;
+            deadline = limits.timeMs() > 0 ? startTime + limits.timeMs() : Long.MAX_VALUE;
+        }
+
+        /**
+         * Completes the future with the best result and releases the engine.
+         */
+        void finish() {
+            if (best != null) {
+                future.complete(new SearchResult(best.bestMove(), best.ponderMove(),
+                    best.score(), best.depth(), nodes, System.currentTimeMillis() - startTime,
+                    best.lines(), best.stats()));
+            }
+            releaseEngine(this);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.jekabsthomas.chess.core;
+
+import java.util.List;
+
+/**
+ * Statistics of a finished search, summed over all search threads.
+ * @param nodes the number of searched nodes
+ * @param timeMs the time the search took in milliseconds
+ * @param depth the depth of the last completed iteration
+ * @param selDepth the largest distance from the root that was reached
+ * @param tableProbes the number of transposition table lookups
+ * @param tableHits the number of lookups that found their position
+ * @param expandedNodes the number of nodes whose moves were searched
+ * @param cutoffs the number of expanded nodes that stopped early (beta cutoffs)
+ * @param firstMoveCutoffs the number of cutoffs caused by the first searched move
+ * @param tablebaseHits the number of nodes resolved by the endgame tablebase
+ * @param iterationTimesMs the time of every completed iteration of the main thread
+ * @param iterationNodes the number of nodes of all threads during every completed iteration
+ * @author Jekabs Gritans
+ */
+public record SearchStats(
+    long nodes,
+    long timeMs,
+    int depth,
+    int selDepth,
+    long tableProbes,
+    long tableHits,
+    long expandedNodes,
+    long cutoffs,
+    long firstMoveCutoffs,
+    long tablebaseHits,
+    List<Long> iterationTimesMs,
+    List<Long> iterationNodes
+) {
+    /**
+     * Gets the search speed.
+     * @return the number of nodes per second, 0 if no time has passed
+     */
+    public long getNodesPerSecond() {
+        return getNodesPerSecond(nodes, timeMs);
+    }
+
+    /**
+     * Gets the fraction of transposition table lookups that found their position.
+     * @return the hit rate between 0 and 1
+     */
+    public double getTableHitRate() {
+        return getRate(tableHits, tableProbes);
+    }
+
+    /**
+     * Gets the fraction of expanded nodes that stopped before searching all moves.
+     * @return the cutoff rate between 0 and 1
+     */
+    public double getCutoffRate() {
+        return getRate(cutoffs, expandedNodes);
+    }
+
+    /**
+     * Gets the fraction of cutoffs caused by the first move, a measure of move ordering.
+     * @return the first move cutoff rate between 0 and 1
+     */
+    public double getFirstMoveCutoffRate() {
+        return getRate(firstMoveCutoffs, cutoffs);
+    }
+
+    /**
+     * Gets the effective branching factor: how many times more nodes the last iteration
+     *     needed than the one before.
+     * @return the branching factor, 0 if there were fewer than two iterations
+     */
+    public double getEffectiveBranchingFactor() {
+        int last = iterationNodes.size() - 1;
+        if (last < 1 || iterationNodes.get(last - 1) == 0) {
+            return 0;
+        }
+        return (double) iterationNodes.get(last) / iterationNodes.get(last - 1);
+    }
+
+    static long getNodesPerSecond(long nodes, long timeMs) {
+        return timeMs == 0 ? 0 : nodes * 1000 / timeMs;
+    }
+
+    static double getRate(long count, long total) {
+        return total == 0 ? 0 : (double) count / total;
+    }
+}
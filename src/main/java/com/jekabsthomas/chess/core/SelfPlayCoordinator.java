@@ -0,0 +1,492 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out self-play games to worker processes (see SelfPlayWorker) over TCP, for test runs
+ *     that need more than one JVM. Collects the results and writes the games as PGN.
+ * Every game is an opening position, played by the engine against itself with fixed-node
+ *     searches. Workers ask for a game whenever they are free, so faster workers play more.
+ * A game held by a worker whose connection drops (e.g. the process died) is handed out
+ *     again. Once no games are waiting, idle workers get a second copy of the game that has
+ *     been running longest, so a stuck worker cannot hold up the run; the first result counts.
+ *     The other copy is cancelled the next time its worker asks for the status of the game.
+ *
+ * Protocol, one line per message:
+ * - worker: next, the coordinator answers
+ *     play ID NODES FEN: play a game from FEN with NODES per move
+ *     wait MS: ask again after MS milliseconds, the remaining games are being played
+ *     done: all games are finished
+ * - worker: status ID, between moves, the coordinator answers
+ *     continue: keep playing
+ *     cancel: drop the game, another worker already finished it
+ * - worker: result ID RESULT MOVETEXT, e.g. result 3 1-0 1. e4 e5 2. Qh5 ...
+ * @author Jekabs Gritans
+ */
+public class SelfPlayCoordinator implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7171;
+    public static final long WAIT_MS = 200;
+    public static final int MAX_COPIES = 2; // workers playing the same game at once
+    public static final int MAX_RESTARTS = 3; // per launched worker process
+
+    private static final DateTimeFormatter PGN_DATE = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+    private final List<String> openings;
+    private final long nodesPerMove;
+    private final Path output; // null if the games are only kept in memory
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionExecutor;
+    private final Thread acceptThread;
+    private volatile boolean isClosed = false;
+
+    // guarded by lock, virtual threads must not block in synchronized
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Integer> pending = new ArrayDeque<>(); // not handed out yet
+    private final int[] copies; // per game, the number of workers playing it
+    private final long[] startTimes; // per game, when it was first handed out
+    private final String[] pgns; // per game, null until finished
+    private final CountDownLatch finished;
+    private final AtomicInteger reassignments = new AtomicInteger();
+    private final AtomicInteger cancellations = new AtomicInteger();
+
+    /**
+     * Starts a coordinator on the loopback address.
+     * @param port the port to listen on, or 0 for any free port
+     * @param openings the positions to play a game from, one game each
+     * @param nodesPerMove the node limit of every search
+     * @param output the PGN file to append finished games to, or null
+     * @throws IOException if the port cannot be opened
+     */
+    public SelfPlayCoordinator(int port, List<String> openings, long nodesPerMove, Path output)
+        throws IOException {
+        if (nodesPerMove <= 0) {
+            throw new IllegalArgumentException("Nodes per move must be positive");
+        }
+        for (String fen : openings) {
+            new ChessGame(fen); // fails early on an invalid FEN
+        }
+
+        this.openings = List.copyOf(openings);
+        this.nodesPerMove = nodesPerMove;
+        this.output = output;
+        copies = new int[openings.size()];
+        startTimes = new long[openings.size()];
+        pgns = new String[openings.size()];
+        finished = new CountDownLatch(openings.size());
+        for (int i = 0; i < openings.size(); i++) {
+            pending.add(i);
+        }
+
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        connectionExecutor = GameServer.newConnectionExecutor();
+        acceptThread = new Thread(this::acceptConnections, "self-play-coordinator");
+        acceptThread.start();
+    }
+
+    /**
+     * Creates openings by playing random moves from the starting position,
+     *     like the games of DataGenerator.
+     * @param games the number of openings
+     * @param plies the number of random moves of each
+     * @param seed the seed of the random moves
+     * @return the positions as FEN
+     */
+    public static List<String> randomOpenings(int games, int plies, long seed) {
+        Random random = new Random(seed);
+        List<String> openings = new ArrayList<>();
+        while (openings.size() < games) {
+            ChessGame game = new ChessGame();
+            for (int ply = 0; ply < plies && game.getGameState() == GameState.ACTIVE; ply++) {
+                List<ChessMove> moves = game.getLegalMoves();
+                game.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (game.getGameState() == GameState.ACTIVE) {
+                openings.add(game.getFenString());
+            }
+        }
+        return openings;
+    }
+
+    /**
+     * Gets the port the coordinator listens on.
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Waits until all games are finished.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all games are finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * Gets the number of finished games.
+     * @return the number of games
+     */
+    public int getFinishedGames() {
+        return openings.size() - (int) finished.getCount();
+    }
+
+    /**
+     * Gets the finished games in the order of their openings.
+     * @return the games as PGN
+     */
+    public List<String> getGames() {
+        lock.lock();
+        try {
+            return Arrays.stream(pgns).filter(Objects::nonNull).toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of times a game was handed out again, because its worker was lost
+     *     or to finish the run sooner.
+     * @return the number of reassignments
+     */
+    public int getReassignments() {
+        return reassignments.get();
+    }
+
+    /**
+     * Gets the number of games a worker dropped because another copy finished first.
+     * @return the number of cancelled games
+     */
+    public int getCancellations() {
+        return cancellations.get();
+    }
+
+    /**
+     * Stops accepting workers and closes the connections of the remaining ones.
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        serverSocket.close();
+        try {
+            acceptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connectionExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!isClosed) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> new Connection(socket).run());
+            } catch (IOException e) {
+                if (!isClosed) {
+                    System.out.println("Failed to accept connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the next game for a worker: a waiting one, else a second copy of the longest
+     *     running one.
+     * @return the game, or -1 if there is none to hand out
+     */
+    private int nextGame() {
+        lock.lock();
+        try {
+            Integer game = pending.poll();
+            if (game != null) {
+                if (startTimes[game] == 0) {
+                    startTimes[game] = System.currentTimeMillis();
+                } else {
+                    reassignments.incrementAndGet(); // its worker was lost
+                }
+                copies[game]++;
+                return game;
+            }
+
+            int longest = -1;
+            for (int i = 0; i < pgns.length; i++) {
+                if (pgns[i] == null && copies[i] > 0 && copies[i] < MAX_COPIES
+                    && (longest == -1 || startTimes[i] < startTimes[longest])) {
+                    longest = i;
+                }
+            }
+            if (longest != -1) {
+                copies[longest]++;
+                reassignments.incrementAndGet();
+            }
+            return longest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives a game back that a worker will not finish, so that it is handed out again.
+     * @param game the game
+     */
+    private void release(int game) {
+        lock.lock();
+        try {
+            copies[game]--;
+            if (pgns[game] == null && copies[game] == 0) {
+                pending.addFirst(game);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFinished(int game) {
+        lock.lock();
+        try {
+            return pgns[game] != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the result of a game, unless another copy of it finished first.
+     * @param game the game
+     * @param result the PGN result, e.g. 1-0
+     * @param moveText the moves in SAN with their numbers
+     * @throws IOException if the PGN file cannot be written
+     */
+    private void finish(int game, String result, String moveText) throws IOException {
+        lock.lock();
+        try {
+            copies[game]--;
+            if (pgns[game] != null) {
+                return;
+            }
+
+            String fen = openings.get(game);
+            pgns[game] = String.join("\n",
+                "[Event \"Self-play\"]",
+                "[Site \"localhost\"]",
+                "[Date \"" + LocalDate.now().format(PGN_DATE) + "\"]",
+                "[Round \"" + (game + 1) + "\"]",
+                "[White \"" + UciProtocol.NAME + "\"]",
+                "[Black \"" + UciProtocol.NAME + "\"]",
+                "[Result \"" + result + "\"]",
+                "[SetUp \"1\"]",
+                "[FEN \"" + fen + "\"]",
+                "",
+                (moveText.isEmpty() ? "" : moveText + " ") + result,
+                "");
+            if (output != null) {
+                Files.writeString(output, pgns[game] + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            finished.countDown();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Handles one worker thread, returning its games if the connection drops.
+     */
+    private class Connection {
+        private final Socket socket;
+        private final Set<Integer> games = new HashSet<>(); // handed out, not yet finished
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void run() {
+            try (socket;
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)),
+                    true);
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] tokens = line.trim().split("\\s+", 4);
+                    switch (tokens[0]) {
+                        case "next" -> out.println(next());
+                        case "status" -> out.println(status(Integer.parseInt(tokens[1])));
+                        case "result" -> {
+                            int game = Integer.parseInt(tokens[1]);
+                            if (games.remove(game)) {
+                                finish(game, tokens[2], tokens.length > 3 ? tokens[3] : "");
+                            }
+                        }
+                        default -> out.println("error Unknown command " + tokens[0]);
+                    }
+                }
+            } catch (SocketException e) {
+                // the worker is gone
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Worker connection failed: " + e.getMessage());
+            } finally {
+                for (int game : games) {
+                    release(game);
+                }
+            }
+        }
+
+        private String next() {
+            if (finished.getCount() == 0) {
+                return "done";
+            }
+
+            int game = nextGame();
+            if (game == -1) {
+                return "wait " + WAIT_MS;
+            }
+            games.add(game);
+            return "play %d %d %s".formatted(game, nodesPerMove, openings.get(game));
+        }
+
+        private String status(int game) {
+            if (!games.contains(game)) {
+                return "cancel";
+            } else if (!isFinished(game)) {
+                return "continue";
+            }
+
+            games.remove(game);
+            release(game);
+            cancellations.incrementAndGet();
+            return "cancel";
+        }
+    }
+
+    /**
+     * Starts a worker process with the classpath of this JVM.
+     * @param port the port of the coordinator
+     * @param threads the number of games the worker plays at once
+     * @return the process, its output goes to this process' output
+     * @throws IOException if the process cannot be started
+     */
+    static Process launchWorker(int port, int threads) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "--add-modules", "jdk.incubator.vector",
+            "-cp", System.getProperty("java.class.path"), SelfPlayWorker.class.getName(),
+            "-port", String.valueOf(port), "-threads", String.valueOf(threads))
+            .inheritIO()
+            .start();
+    }
+
+    /**
+     * Runs self-play games on local worker processes from the command line,
+     *     restarting workers that fail. With -workers 0 no workers are started,
+     *     so they can be started by hand (see SelfPlayWorker) on the same machine.
+     * Usage: selfplay output.pgn [-games N] [-nodes N] [-workers N] [-threads N] [-port N]
+     *     [-seed N] [-openings file with one FEN per line]
+     * @param args the arguments
+     * @throws IOException if the port cannot be opened or the output written
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: selfplay <output.pgn> [-games N] [-nodes N] [-workers N] "
+                + "[-threads N] [-port N] [-seed N] [-openings file]");
+            return;
+        }
+
+        int games = 100;
+        long nodes = DataGenerator.DEFAULT_NODES;
+        int workers = 2;
+        int threads = 1;
+        int port = DEFAULT_PORT;
+        long seed = System.nanoTime();
+        Path openingsFile = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games" -> games = Integer.parseInt(args[++i]);
+                case "-nodes" -> nodes = Long.parseLong(args[++i]);
+                case "-workers" -> workers = Integer.parseInt(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-port" -> port = Integer.parseInt(args[++i]);
+                case "-seed" -> seed = Long.parseLong(args[++i]);
+                case "-openings" -> openingsFile = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<String> openings = openingsFile != null
+            ? Files.readAllLines(openingsFile).stream().filter(line -> !line.isBlank()).toList()
+            : randomOpenings(games, DataGenerator.RANDOM_PLIES, seed);
+        long startTime = System.currentTimeMillis();
+        try (SelfPlayCoordinator coordinator = new SelfPlayCoordinator(port, openings, nodes,
+            Path.of(args[0]))) {
+            System.out.println("Coordinating " + openings.size() + " games on port "
+                + coordinator.getPort());
+
+            Process[] processes = new Process[workers];
+            int[] restarts = new int[workers];
+            for (int i = 0; i < workers; i++) {
+                processes[i] = launchWorker(coordinator.getPort(), threads);
+            }
+
+            int reported = 0;
+            while (!coordinator.awaitCompletion(1, TimeUnit.SECONDS)) {
+                for (int i = 0; i < workers; i++) {
+                    if (!processes[i].isAlive() && processes[i].exitValue() != 0
+                        && restarts[i] < MAX_RESTARTS) {
+                        System.out.println("Restarting worker " + i);
+                        restarts[i]++;
+                        processes[i] = launchWorker(coordinator.getPort(), threads);
+                    }
+                }
+                if (coordinator.getFinishedGames() != reported) {
+                    reported = coordinator.getFinishedGames();
+                    System.out.println(reported + "/" + openings.size() + " games finished");
+                }
+            }
+
+            // workers quit once they are told that all games are done
+            for (Process process : processes) {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            }
+            System.out.printf("%d games in %d ms, %d reassigned%n", openings.size(),
+                System.currentTimeMillis() - startTime, coordinator.getReassignments());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Plays self-play games handed out by a SelfPlayCoordinator, usually in its own JVM.
+ * Each worker has a connection and an engine of its own and plays one game at a time
+ *     until the coordinator is done. Games are adjudicated as draws after
+ *     DataGenerator.MAX_PLIES moves, like the games of the data generator.
+ * Between moves the worker asks whether the game is still open, as a copy of it may
+ *     have been finished by another worker, and drops it if not.
+ * @author Jekabs Gritans
+ */
+public class SelfPlayWorker {
+    public static final int CONNECT_ATTEMPTS = 20;
+    public static final long CONNECT_RETRY_MS = 500;
+
+    private static final int ENGINE_HASH_MB = 4;
+
+    private final String host;
+    private final int port;
+    private int gamesPlayed = 0;
+
+    /**
+     * Creates a worker.
+     * @param host the host of the coordinator
+     * @param port the port of the coordinator
+     */
+    public SelfPlayWorker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Plays games until the coordinator has none left.
+     * Retries to connect for a while, as the coordinator may still be starting.
+     * @return the number of games played
+     * @throws IOException if the coordinator cannot be reached or the connection fails
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int play() throws IOException, InterruptedException {
+        try (Socket socket = connect(); Engine engine = new Engine(ENGINE_HASH_MB, 1)) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+            while (true) {
+                out.println("next");
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("Coordinator closed the connection");
+                }
+
+                String[] tokens = line.split(" ", 4);
+                switch (tokens[0]) {
+                    case "play" -> {
+                        String id = tokens[1];
+                        String game;
+                        try {
+                            game = playGame(engine, tokens[3], Long.parseLong(tokens[2]),
+                                () -> isCancelled(in, out, id));
+                        } catch (UncheckedIOException e) {
+                            throw e.getCause();
+                        }
+                        if (game != null) {
+                            out.println("result " + id + " " + game);
+                            gamesPlayed++;
+                        }
+                    }
+                    case "wait" -> Thread.sleep(Long.parseLong(tokens[1]));
+                    case "done" -> {
+                        return gamesPlayed;
+                    }
+                    default -> throw new IOException("Unexpected message " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Asks the coordinator whether a game was finished by another worker.
+     */
+    private static boolean isCancelled(BufferedReader in, PrintWriter out, String id) {
+        out.println("status " + id);
+        try {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Coordinator closed the connection");
+            }
+            return line.equals("cancel");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Socket connect() throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (attempt == CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                Thread.sleep(CONNECT_RETRY_MS);
+            }
+        }
+    }
+
+    /**
+     * Plays a game of the engine against itself.
+     * @param engine the engine, its table is cleared first
+     * @param fen the starting position
+     * @param nodesPerMove the node limit of every search
+     * @param isCancelled checked before every move, the game is dropped once it is true
+     * @return the PGN result followed by the moves, e.g. 1-0 1. e4 e5 2. Qh5 ...,
+     *     or null if the game was cancelled
+     */
+    static String playGame(Engine engine, String fen, long nodesPerMove,
+        BooleanSupplier isCancelled) {
+        engine.newGame();
+        ChessGame game = new ChessGame(fen);
+        SearchLimits limits = SearchLimits.ofNodes(nodesPerMove);
+        StringBuilder moveText = new StringBuilder();
+
+        for (int ply = 0; ply < DataGenerator.MAX_PLIES; ply++) {
+            if (game.getGameState() != GameState.ACTIVE) {
+                break;
+            }
+            if (isCancelled.getAsBoolean()) {
+                return null;
+            }
+
+            ChessMove move = engine.search(game, limits).join().bestMove();
+            if (game.isWhiteMove()) {
+                moveText.append(game.getFullMoveNumber()).append(". ");
+            } else if (ply == 0) {
+                moveText.append(game.getFullMoveNumber()).append("... ");
+            }
+            moveText.append(game.toSan(move)).append(' ');
+            game.makeMove(move);
+        }
+
+        String result = switch (game.getGameState()) {
+            case WHITE_WINS -> "1-0";
+            case BLACK_WINS -> "0-1";
+            default -> "1/2-1/2";
+        };
+        return result + " " + moveText.toString().trim();
+    }
+
+    /**
+     * Runs workers that play the games of a coordinator on this machine.
+     * Usage: selfplay-worker [-host H (loopback)] [-port N] [-threads N]
+     * Exits with status 1 if a worker fails, so that the coordinator restarts it.
+     * @param args the arguments
+     * @throws InterruptedException if interrupted while playing
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        int port = SelfPlayCoordinator.DEFAULT_PORT;
+        int threads = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-host" -> host = args[++i];
+                case "-port" -> port = Integer.parseInt(args[++i]);
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            SelfPlayWorker worker = new SelfPlayWorker(host, port);
+            workers.add(executor.submit(worker::play));
+        }
+
+        int games = 0;
+        boolean failed = false;
+        for (Future<Integer> worker : workers) {
+            try {
+                games += worker.get();
+            } catch (ExecutionException e) {
+                System.out.println("Worker failed: " + e.getCause().getMessage());
+                failed = true;
+            }
+        }
+        executor.shutdown();
+        System.out.println("Worker played " + games + " games");
+        System.exit(failed ? 1 : 0);
+    }
+}
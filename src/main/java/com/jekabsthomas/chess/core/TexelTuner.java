@@ -0,0 +1,552 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import com.jekabsthomas.chess.engine.ChessPiece;
+import com.jekabsthomas.chess.engine.ChessRules;
+import com.jekabsthomas.chess.engine.MaterialTable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tunes the handcrafted evaluation on positions labeled with game results (Texel's method).
+ * Every position is resolved with a quiescence search and its evaluation is traced once,
+ *     which gives the coefficient of every parameter (see Evaluator.trace).
+ * The evaluation is then a cheap sparse dot product, and the parameters are optimized
+ *     with gradient descent (Adam) on the squared error between the result
+ *     and the win probability predicted from the evaluation.
+ * Loading and every pass over the positions run in parallel with fork/join.
+ *
+ * Position files have one position per line: a FEN followed by the result of the game,
+ *     as 1-0, 0-1, 1/2-1/2 or a number from white's perspective (e.g. 1.0, 0.5, 0.0).
+ *     The result may be wrapped in brackets or quotes.
+ * @author Jekabs Gritans
+ */
+public class TexelTuner {
+    public static final int DEFAULT_EPOCHS = 500;
+    public static final double DEFAULT_LEARNING_RATE = 1.0;
+
+    private static final int MAX_QUIESCENCE_PLY = 16;
+    private static final int LOAD_CHUNK = 1 << 14; // lines parsed in parallel at once
+    private static final int SPLIT_THRESHOLD = 1 << 12; // positions handled by one task
+
+    // Adam optimizer
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    // EvalParams.getPhaseKind of every parameter, looked up in the innermost loops
+    private static final byte[] PHASE_KINDS = new byte[EvalParams.SIZE];
+
+    static {
+        for (int i = 0; i < PHASE_KINDS.length; i++) {
+            PHASE_KINDS[i] = (byte) EvalParams.getPhaseKind(i);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    // positions, sparse coefficients of position i are at starts[i] until starts[i + 1]
+    private int numPositions = 0;
+    private float[] results = new float[1024];
+    private byte[] phases = new byte[1024];
+    private byte[] whiteScales = new byte[1024];
+    private byte[] blackScales = new byte[1024];
+    private int[] starts = new int[1025];
+    private short[] featureParams = new short[1 << 16];
+    private byte[] featureCoefficients = new byte[1 << 16];
+
+    // scales evaluations to win probabilities
+    private double scalingConstant = 1.0;
+
+    /**
+     * Creates a tuner.
+     * @param pool the pool to run in parallel on
+     */
+    public TexelTuner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Loads labeled positions from a file, in addition to those already loaded.
+     * Positions that cannot be parsed or are already decided are skipped.
+     * @param path the path of the file
+     * @param params the parameters used to resolve positions
+     * @return the number of loaded positions
+     * @throws IOException if the file cannot be read
+     */
+    public int load(Path path, EvalParams params) throws IOException {
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            List<String> lines = new ArrayList<String>(LOAD_CHUNK);
+            String line;
+            do {
+                line = reader.readLine();
+                if (line != null && !line.isBlank()) {
+                    lines.add(line);
+                }
+                if (lines.size() == LOAD_CHUNK || line == null && !lines.isEmpty()) {
+                    Sample[] samples = new Sample[lines.size()];
+                    pool.invoke(new ResolveTask(lines, samples, params, 0, lines.size()));
+                    for (Sample sample : samples) {
+                        if (sample != null) {
+                            add(sample);
+                            loaded++;
+                        }
+                    }
+                    lines.clear();
+                }
+            } while (line != null);
+        }
+        return loaded;
+    }
+
+    /**
+     * Finds the scaling constant that best fits the results for the given parameters.
+     * Should be called before tuning, so that only the parameters change during tuning.
+     * @param params the parameters
+     * @return the scaling constant
+     */
+    public double fitScalingConstant(EvalParams params) {
+        double[] weights = toWeights(params);
+
+        // golden section search, the loss is unimodal in the constant
+        double low = 0.05;
+        double high = 5.0;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        while (high - low > 1e-4) {
+            double left = high - ratio * (high - low);
+            double right = low + ratio * (high - low);
+            scalingConstant = left;
+            double leftLoss = computeLoss(weights);
+            scalingConstant = right;
+            double rightLoss = computeLoss(weights);
+            if (leftLoss < rightLoss) {
+                high = right;
+            } else {
+                low = left;
+            }
+        }
+
+        scalingConstant = (low + high) / 2;
+        return scalingConstant;
+    }
+
+    /**
+     * Tunes the parameters.
+     * @param start the parameters to start from
+     * @param epochs the number of gradient descent steps
+     * @param learningRate the step size in centipawns
+     * @param log receives progress, or null
+     * @return the tuned parameters
+     */
+    public EvalParams tune(EvalParams start, int epochs, double learningRate, PrintStream log) {
+        double[] weights = toWeights(start);
+        double[] momentum = new double[EvalParams.SIZE];
+        double[] velocity = new double[EvalParams.SIZE];
+
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            double[] gradient = pool.invoke(new GradientTask(weights, 0, numPositions));
+
+            for (int i = 0; i < EvalParams.SIZE; i++) {
+                if (!EvalParams.isTunable(i)) {
+                    continue;
+                }
+                double g = gradient[i] / numPositions;
+                momentum[i] = BETA1 * momentum[i] + (1 - BETA1) * g;
+                velocity[i] = BETA2 * velocity[i] + (1 - BETA2) * g * g;
+                double correctedMomentum = momentum[i] / (1 - Math.pow(BETA1, epoch));
+                double correctedVelocity = velocity[i] / (1 - Math.pow(BETA2, epoch));
+                weights[i] -= learningRate * correctedMomentum
+                    / (Math.sqrt(correctedVelocity) + EPSILON);
+            }
+
+            if (log != null && (epoch % 50 == 0 || epoch == epochs)) {
+                log.printf("epoch %d loss %.6f%n", epoch, computeLoss(weights));
+            }
+        }
+
+        EvalParams tuned = new EvalParams(start);
+        for (int i = 0; i < EvalParams.SIZE; i++) {
+            tuned.set(i, (int) Math.round(weights[i]));
+        }
+        return tuned;
+    }
+
+    /**
+     * Computes the mean squared error between results and predicted win probabilities.
+     * @param params the parameters
+     * @return the loss
+     */
+    public double computeLoss(EvalParams params) {
+        return computeLoss(toWeights(params));
+    }
+
+    /**
+     * Gets the number of loaded positions.
+     * @return the number of positions
+     */
+    public int getNumPositions() {
+        return numPositions;
+    }
+
+    private double computeLoss(double[] weights) {
+        return pool.invoke(new LossTask(weights, 0, numPositions)) / numPositions;
+    }
+
+    /**
+     * Evaluates a loaded position as a dot product of its coefficients and the weights.
+     * Mirrors Evaluator: tapered terms are blended by phase and the result is scaled.
+     * @param i the index of the position
+     * @param weights the weights
+     * @return the evaluation from white's perspective
+     */
+    private double evaluate(int i, double[] weights) {
+        double middlegame = 0;
+        double endgame = 0;
+        double both = 0;
+        for (int f = starts[i]; f < starts[i + 1]; f++) {
+            int param = featureParams[f];
+            double term = weights[param] * featureCoefficients[f];
+            switch (PHASE_KINDS[param]) {
+                case EvalParams.MIDDLEGAME -> middlegame += term;
+                case EvalParams.ENDGAME -> endgame += term;
+                default -> both += term;
+            }
+        }
+
+        int phase = phases[i];
+        double score = (middlegame * phase + endgame * (MaterialTable.MAX_PHASE - phase))
+            / MaterialTable.MAX_PHASE + both;
+        return score * (score > 0 ? whiteScales[i] : blackScales[i]) / MaterialTable.NORMAL_SCALE;
+    }
+
+    private double winProbability(double eval) {
+        return 1 / (1 + Math.pow(10, -scalingConstant * eval / 400));
+    }
+
+    private static double[] toWeights(EvalParams params) {
+        double[] weights = new double[EvalParams.SIZE];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = params.get(i);
+        }
+        return weights;
+    }
+
+    private void add(Sample sample) {
+        if (numPositions + 1 == results.length) {
+            int capacity = results.length * 2;
+            results = Arrays.copyOf(results, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            whiteScales = Arrays.copyOf(whiteScales, capacity);
+            blackScales = Arrays.copyOf(blackScales, capacity);
+            starts = Arrays.copyOf(starts, capacity + 1);
+        }
+
+        int start = starts[numPositions];
+        int end = start + sample.params.length;
+        if (end > featureParams.length) {
+            int capacity = Math.max(end, featureParams.length * 2);
+            featureParams = Arrays.copyOf(featureParams, capacity);
+            featureCoefficients = Arrays.copyOf(featureCoefficients, capacity);
+        }
+        System.arraycopy(sample.params, 0, featureParams, start, sample.params.length);
+        System.arraycopy(sample.coefficients, 0, featureCoefficients, start,
+            sample.coefficients.length);
+
+        results[numPositions] = sample.result;
+        phases[numPositions] = (byte) sample.phase;
+        whiteScales[numPositions] = (byte) sample.whiteScale;
+        blackScales[numPositions] = (byte) sample.blackScale;
+        starts[++numPositions] = end;
+    }
+
+    /**
+     * Parses a labeled position and resolves it.
+     * @param line the line of the position file
+     * @param evaluator the evaluator of the calling thread
+     * @param coefficients zeroed scratch array of length EvalParams.SIZE
+     * @return the sample, or null if the position is skipped
+     */
+    private static Sample resolve(String line, Evaluator evaluator, int[] coefficients) {
+        String[] tokens = line.trim().replaceAll("[;\"\\[\\]]", " ").trim().split("\\s+");
+        if (tokens.length < 5) {
+            return null;
+        }
+
+        float result;
+        switch (tokens[tokens.length - 1]) {
+            case "1-0" -> result = 1;
+            case "0-1" -> result = 0;
+            case "1/2-1/2" -> result = 0.5f;
+            default -> {
+                try {
+                    result = Float.parseFloat(tokens[tokens.length - 1]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+
+        // the move counters are optional
+        String fen = String.join(" ", Arrays.copyOfRange(tokens, 0,
+            Math.min(6, tokens.length - 1)));
+        if (tokens.length - 1 == 4) {
+            fen += " 0 1";
+        }
+
+        ChessGame game;
+        try {
+            game = new ChessGame(fen);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        // illegal if the player to move could capture the king
+        if (game.getGameState() != GameState.ACTIVE
+            || ChessRules.canCaptureKing(game.getBoard(), game.isWhiteMove())) {
+            return null;
+        }
+
+        ChessGame[] leaves = new ChessGame[MAX_QUIESCENCE_PLY + 1];
+        quiescence(game, -Engine.MATE_SCORE, Engine.MATE_SCORE, 0, leaves, evaluator);
+        ChessGame leaf = leaves[0];
+
+        // the bare king bonus is not a parameter, so such positions would mislead the tuner
+        int materialEntry = MaterialTable.probe(leaf.getBoard().getMaterialKey());
+        if (MaterialTable.isMatingBareKing(materialEntry, true)
+            || MaterialTable.isMatingBareKing(materialEntry, false)) {
+            return null;
+        }
+
+        evaluator.trace(leaf, coefficients);
+        int numFeatures = 0;
+        for (int coefficient : coefficients) {
+            if (coefficient != 0) {
+                numFeatures++;
+            }
+        }
+
+        Sample sample = new Sample(result, MaterialTable.getPhase(materialEntry),
+            MaterialTable.getScale(materialEntry, true), MaterialTable.getScale(materialEntry, false),
+            new short[numFeatures], new byte[numFeatures]);
+        int f = 0;
+        for (int param = 0; param < coefficients.length; param++) {
+            if (coefficients[param] != 0) {
+                sample.params[f] = (short) param;
+                sample.coefficients[f++] = (byte) coefficients[param];
+                coefficients[param] = 0;
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Searches captures and promotions until the position is quiet.
+     * @param game the game to search
+     * @param alpha the lower bound
+     * @param beta the upper bound
+     * @param ply the distance from the position being resolved
+     * @param leaves receives the quiet position at the end of the best line of each ply
+     * @param evaluator the evaluator of the calling thread
+     * @return the score from the perspective of the player to move
+     */
+    private static int quiescence(ChessGame game, int alpha, int beta, int ply,
+        ChessGame[] leaves, Evaluator evaluator) {
+        leaves[ply] = game;
+        int standPat = evaluator.evaluate(game);
+        if (standPat >= beta || ply == MAX_QUIESCENCE_PLY) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+
+        for (ChessMove move : game.getLegalMoves()) {
+            boolean isNoisy = game.isCapture(move) || move.getPromotionType() != ChessPiece.EMPTY;
+            if (!isNoisy) {
+                continue;
+            }
+
+            ChessGame next = new ChessGame(game);
+            next.makeMove(move);
+            if (next.getGameState() != GameState.ACTIVE) {
+                continue; // decided positions say nothing about the evaluation
+            }
+
+            int score = -quiescence(next, -beta, -alpha, ply + 1, leaves, evaluator);
+            if (score > alpha) {
+                alpha = score;
+                leaves[ply] = leaves[ply + 1];
+                if (score >= beta) {
+                    break;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Tunes the evaluation from the command line.
+     * Usage: tune positionsFile outputFile [epochs] [startParamsFile]
+     * @param args the arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: tune <positions file> <output file> [epochs] [start file]");
+            return;
+        }
+
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_EPOCHS;
+        EvalParams start = args.length > 3 ? EvalParams.load(Path.of(args[3])) : new EvalParams();
+
+        TexelTuner tuner = new TexelTuner(ForkJoinPool.commonPool());
+        long startTime = System.currentTimeMillis();
+        int loaded = tuner.load(Path.of(args[0]), start);
+        System.out.printf("loaded %d positions in %d ms%n", loaded,
+            System.currentTimeMillis() - startTime);
+
+        System.out.printf("scaling constant %.4f%n", tuner.fitScalingConstant(start));
+        System.out.printf("initial loss %.6f%n", tuner.computeLoss(start));
+        EvalParams tuned = tuner.tune(start, epochs, DEFAULT_LEARNING_RATE, System.out);
+        tuned.save(Path.of(args[1]));
+        System.out.printf("saved to %s after %d ms%n", args[1],
+            System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * A resolved position with the coefficients of its evaluation.
+     */
+    private record Sample(float result, int phase, int whiteScale, int blackScale,
+        short[] params, byte[] coefficients) {}
+
+    /**
+     * Resolves a range of lines, each task with its own evaluator.
+     */
+    private static class ResolveTask extends RecursiveAction {
+        private final List<String> lines;
+        private final Sample[] samples;
+        private final EvalParams params;
+        private final int from;
+        private final int to;
+
+        ResolveTask(List<String> lines, Sample[] samples, EvalParams params, int from, int to) {
+            this.lines = lines;
+            this.samples = samples;
+            this.params = params;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD / 16) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ResolveTask(lines, samples, params, from, mid),
+                    new ResolveTask(lines, samples, params, mid, to));
+                return;
+            }
+
+            Evaluator evaluator = new Evaluator(params, 1 << 10);
+            int[] coefficients = new int[EvalParams.SIZE];
+            for (int i = from; i < to; i++) {
+                samples[i] = resolve(lines.get(i), evaluator, coefficients);
+            }
+        }
+    }
+
+    /**
+     * Sums the squared errors of a range of positions.
+     */
+    private class LossTask extends RecursiveTask<Double> {
+        private final double[] weights;
+        private final int from;
+        private final int to;
+
+        LossTask(double[] weights, int from, int to) {
+            this.weights = weights;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                LossTask left = new LossTask(weights, from, mid);
+                left.fork();
+                double right = new LossTask(weights, mid, to).compute();
+                return left.join() + right;
+            }
+
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                double error = results[i] - winProbability(evaluate(i, weights));
+                sum += error * error;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Sums the loss gradients of a range of positions.
+     */
+    private class GradientTask extends RecursiveTask<double[]> {
+        private final double[] weights;
+        private final int from;
+        private final int to;
+
+        GradientTask(double[] weights, int from, int to) {
+            this.weights = weights;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                GradientTask left = new GradientTask(weights, from, mid);
+                left.fork();
+                double[] gradient = new GradientTask(weights, mid, to).compute();
+                double[] leftGradient = left.join();
+                for (int i = 0; i < gradient.length; i++) {
+                    gradient[i] += leftGradient[i];
+                }
+                return gradient;
+            }
+
+            double[] gradient = new double[EvalParams.SIZE];
+            for (int i = from; i < to; i++) {
+                double eval = evaluate(i, weights);
+                double probability = winProbability(eval);
+                int phase = phases[i];
+                int scale = eval > 0 ? whiteScales[i] : blackScales[i];
+
+                // derivative of the squared error with respect to the evaluation
+                double slope = -2 * (results[i] - probability) * probability * (1 - probability)
+                    * Math.log(10) * scalingConstant / 400 * scale / MaterialTable.NORMAL_SCALE;
+
+                for (int f = starts[i]; f < starts[i + 1]; f++) {
+                    int param = featureParams[f];
+                    double taper = switch (PHASE_KINDS[param]) {
+                        case EvalParams.MIDDLEGAME -> (double) phase / MaterialTable.MAX_PHASE;
+                        case EvalParams.ENDGAME ->
+                            (double) (MaterialTable.MAX_PHASE - phase) / MaterialTable.MAX_PHASE;
+                        default -> 1;
+                    };
+                    gradient[param] += slope * featureCoefficients[f] * taper;
+                }
+            }
+            return gradient;
+        }
+    }
+}
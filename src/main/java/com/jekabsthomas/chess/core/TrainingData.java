@@ -0,0 +1,171 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessPiece;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-width binary records of positions annotated with a search score and the game result.
+ * Every record is RECORD_BYTES long (little-endian), so files can be split and sampled freely:
+ * - bytes 0-7: occupancy bitboard, bit (row * 8 + col) with row 0 being the 8th rank
+ * - bytes 8-23: one nibble per occupied square in bit order, color bit 3 plus piece type
+ * - byte 24: bit 0 white to move, bits 1-4 castling rights KQkq
+ * - byte 25: en passant file (0 is a), or NO_EN_PASSANT
+ * - bytes 26-27: search score from white's perspective
+ * - byte 28: result, 0 black wins, 1 draw, 2 white wins
+ * - byte 29: half move clock (at most 255)
+ * - bytes 30-31: full move number
+ * @author Jekabs Gritans
+ */
+public class TrainingData {
+    public static final int RECORD_BYTES = 32;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // results
+    public static final int BLACK_WINS = 0;
+    public static final int DRAW = 1;
+    public static final int WHITE_WINS = 2;
+
+    static final int RESULT_OFFSET = 28;
+    private static final int NO_EN_PASSANT = 0xFF;
+    private static final String CASTLING_CHARACTERS = "KQkq";
+
+    private TrainingData() {}
+
+    /**
+     * Appends a record to a buffer.
+     * @param buffer the buffer, with at least RECORD_BYTES remaining and BYTE_ORDER set
+     * @param game the position
+     * @param score the search score from white's perspective (clamped to 16 bits)
+     * @param result the game result, e.g. DRAW
+     */
+    public static void write(ByteBuffer buffer, ChessGame game, int score, int result) {
+        ChessBoard board = game.getBoard();
+        long occupancy = 0;
+        long lowNibbles = 0;
+        long highNibbles = 0;
+        int numPieces = 0;
+
+        for (int sq = 0; sq < 64; sq++) {
+            byte piece = board.getPiece(sq / 8, sq % 8);
+            if (!ChessPiece.isPiece(piece)) {
+                continue;
+            }
+            occupancy |= 1L << sq;
+
+            long nibble = (ChessPiece.isWhite(piece) ? 0 : 8) | ChessPiece.getType(piece);
+            if (numPieces < 16) {
+                lowNibbles |= nibble << (4 * numPieces);
+            } else if (numPieces < 32) {
+                highNibbles |= nibble << (4 * (numPieces - 16));
+            }
+            numPieces++;
+        }
+
+        String[] fen = game.getFenString().split(" ");
+        int flags = game.isWhiteMove() ? 1 : 0;
+        for (int i = 0; i < 4; i++) {
+            if (fen[2].indexOf(CASTLING_CHARACTERS.charAt(i)) >= 0) {
+                flags |= 2 << i;
+            }
+        }
+
+        buffer.putLong(occupancy);
+        buffer.putLong(lowNibbles);
+        buffer.putLong(highNibbles);
+        buffer.put((byte) flags);
+        buffer.put((byte) (fen[3].equals("-") ? NO_EN_PASSANT : fen[3].charAt(0) - 'a'));
+        buffer.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score)));
+        buffer.put((byte) result);
+        buffer.put((byte) Math.min(Integer.parseInt(fen[4]), 255));
+        buffer.putShort((short) Math.min(Integer.parseInt(fen[5]), 0xFFFF));
+    }
+
+    /**
+     * Reads the position of a record as a FEN string.
+     * @param buffer the buffer, positioned at the record, which is consumed
+     * @return the FEN string
+     */
+    public static String readFen(ByteBuffer buffer) {
+        long occupancy = buffer.getLong();
+        long lowNibbles = buffer.getLong();
+        long highNibbles = buffer.getLong();
+        int flags = buffer.get() & 0xFF;
+        int enPassantFile = buffer.get() & 0xFF;
+        buffer.getShort(); // score
+        buffer.get(); // result
+        int halfMoveClock = buffer.get() & 0xFF;
+        int fullMoveNumber = buffer.getShort() & 0xFFFF;
+
+        StringBuilder fen = new StringBuilder();
+        int numPieces = 0;
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                if ((occupancy >>> (row * 8 + col) & 1) == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+
+                long nibbles = numPieces < 16 ? lowNibbles : highNibbles;
+                int nibble = (int) (nibbles >>> (4 * (numPieces % 16))) & 0xF;
+                byte color = (nibble & 8) == 0 ? ChessPiece.WHITE : ChessPiece.BLACK;
+                fen.append(ChessPiece.getFenCharacter((byte) (color | nibble & 7)));
+                numPieces++;
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+
+        fen.append((flags & 1) != 0 ? " w " : " b ");
+        int castlingStart = fen.length();
+        for (int i = 0; i < 4; i++) {
+            if ((flags & 2 << i) != 0) {
+                fen.append(CASTLING_CHARACTERS.charAt(i));
+            }
+        }
+        if (fen.length() == castlingStart) {
+            fen.append('-');
+        }
+
+        fen.append(' ');
+        if (enPassantFile == NO_EN_PASSANT) {
+            fen.append('-');
+        } else {
+            // the target is behind the pawn that just moved two squares
+            fen.append((char) ('a' + enPassantFile)).append((flags & 1) != 0 ? '6' : '3');
+        }
+        return fen.append(' ').append(halfMoveClock).append(' ').append(fullMoveNumber)
+            .toString();
+    }
+
+    /**
+     * Gets the search score of the record at an index.
+     * @param buffer the buffer
+     * @param index the byte index of the record
+     * @return the score from white's perspective
+     */
+    public static int getScore(ByteBuffer buffer, int index) {
+        return buffer.getShort(index + 26);
+    }
+
+    /**
+     * Gets the game result of the record at an index.
+     * @param buffer the buffer
+     * @param index the byte index of the record
+     * @return the result, e.g. DRAW
+     */
+    public static int getResult(ByteBuffer buffer, int index) {
+        return buffer.get(index + RESULT_OFFSET);
+    }
+}
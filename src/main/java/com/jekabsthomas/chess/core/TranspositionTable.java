@@ -0,0 +1,172 @@
+package com.jekabsthomas.chess.core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table keyed by 64-bit Zobrist hashes.
+ * Entries are packed into a single long so that probing and storing never allocate.
+ * The table is lockless so that several search threads can share it:
+ *     the key is stored xor-ed with the data, so a torn write
+ *     (key of one entry, data of another) simply fails verification on probe.
+ * @author Jekabs Gritans
+ */
+public class TranspositionTable {
+    // bound types of stored scores
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1; // score failed high (at least this good)
+    public static final int UPPER_BOUND = 2; // score failed low (at most this good)
+
+    // returned by probe if the position is not in the table
+    public static final long NONE = 0;
+
+    // layout of the packed data (from least significant bit):
+    // 20 bits move, 8 bits depth, 2 bits bound, 1 valid bit, 1 unused, 32 bits score
+    private static final long VALID_BIT = 1L << 30;
+    private static final int BYTES_PER_ENTRY = 16; // key + data
+
+    private long[] keys;
+    private long[] data;
+    private int mask;
+
+    /**
+     * Creates a transposition table.
+     * @param sizeMb the maximum size of the table in megabytes
+     */
+    public TranspositionTable(int sizeMb) {
+        resize(sizeMb);
+    }
+
+    /**
+     * Resizes the table, discarding all entries.
+     * The number of entries is the largest power of two that fits in the given size.
+     * @param sizeMb the maximum size of the table in megabytes
+     * @throws IllegalArgumentException if sizeMb is not positive
+     */
+    public void resize(int sizeMb) {
+        if (sizeMb <= 0) {
+            throw new IllegalArgumentException("Table size must be positive");
+        }
+
+        long maxEntries = (long) sizeMb * 1024 * 1024 / BYTES_PER_ENTRY;
+        int numEntries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+
+        TranspositionTableEvent event = new TranspositionTableEvent();
+        event.begin();
+        keys = new long[numEntries];
+        data = new long[numEntries];
+        mask = numEntries - 1;
+        commitEvent(event, TranspositionTableEvent.RESIZE);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        TranspositionTableEvent event = new TranspositionTableEvent();
+        event.begin();
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        commitEvent(event, TranspositionTableEvent.CLEAR);
+    }
+
+    private void commitEvent(TranspositionTableEvent event, String action) {
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.entries = keys.length;
+            event.bytes = (long) keys.length * BYTES_PER_ENTRY;
+            event.commit();
+        }
+    }
+
+    /**
+     * Gets the packed entry of a position.
+     * @param key the Zobrist hash of the position
+     * @return the packed entry, or NONE if the position is not stored
+     */
+    public long probe(long key) {
+        int idx = (int) key & mask;
+        long entry = data[idx];
+        if ((keys[idx] ^ entry) != key) {
+            return NONE;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the search result of a position.
+     * An existing entry of the same position is only replaced by a search of similar depth,
+     *     entries of other positions are always replaced.
+     * @param key the Zobrist hash of the position
+     * @param depth the depth the position was searched to
+     * @param bound the bound type of the score
+     * @param score the score of the position
+     * @param move the encoded best move, or 0 if unknown
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int idx = (int) key & mask;
+        long old = data[idx];
+        boolean isSamePosition = (keys[idx] ^ old) == key;
+
+        if (isSamePosition) {
+            if (depth < getDepth(old) - 2 && bound != EXACT) {
+                return;
+            }
+            // keep the old best move rather than forgetting it
+            if (move == 0) {
+                move = getMove(old);
+            }
+        }
+
+        long entry = (move & 0xFFFFFL)
+            | (long) (depth & 0xFF) << 20
+            | (long) bound << 28
+            | VALID_BIT
+            | (long) score << 32;
+        data[idx] = entry;
+        keys[idx] = key ^ entry;
+    }
+
+    /**
+     * Gets the number of entries the table can hold.
+     * @return the capacity of the table
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Gets the encoded best move of a packed entry.
+     * @param entry the packed entry
+     * @return the encoded move, or 0 if unknown
+     */
+    public static int getMove(long entry) {
+        return (int) (entry & 0xFFFFF);
+    }
+
+    /**
+     * Gets the search depth of a packed entry.
+     * @param entry the packed entry
+     * @return the depth
+     */
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 20) & 0xFF;
+    }
+
+    /**
+     * Gets the bound type of a packed entry.
+     * @param entry the packed entry
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int getBound(long entry) {
+        return (int) (entry >>> 28) & 3;
+    }
+
+    /**
+     * Gets the score of a packed entry.
+     * @param entry the packed entry
+     * @return the score
+     */
+    public static int getScore(long entry) {
+        return (int) (entry >> 32);
+    }
+}
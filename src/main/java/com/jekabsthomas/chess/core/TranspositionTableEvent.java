@@ -0,0 +1,34 @@
+package com.jekabsthomas.chess.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of the transposition table being resized or cleared.
+ * Both touch the whole table, so the duration of the event shows their cost
+ *     (and a resize allocates new arrays, which shows up in the GC data).
+ * @author Jekabs Gritans
+ */
+@Name("com.jekabsthomas.chess.TranspositionTable")
+@Label("Transposition Table Change")
+@Category({"Chess", "Search"})
+@Description("The transposition table was resized or cleared")
+class TranspositionTableEvent extends Event {
+    static final String RESIZE = "resize";
+    static final String CLEAR = "clear";
+
+    @Label("Action")
+    @Description("resize or clear")
+    String action;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+}
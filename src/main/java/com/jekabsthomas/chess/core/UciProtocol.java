@@ -0,0 +1,303 @@
+package com.jekabsthomas.chess.core;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import com.jekabsthomas.chess.engine.Tablebase;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.management.JMException;
+
+/**
+ * Front end of the engine for the UCI protocol, so that it can be used without the GUI
+ *     by tournament managers and analysis tools.
+ * Reads commands line by line and answers them, searches run in the background
+ *     and report their progress in info lines until they print their best move.
+ * Supported: uci, isready, ucinewgame, setoption (Hash, Threads, MultiPV, Ponder),
+ *     position (startpos or fen, with moves), go (depth, nodes, movetime, wtime, btime, winc,
+ *     binc, movestogo, infinite, ponder), stop, ponderhit and quit.
+ * See https://www.wbec-ridderkerk.nl/html/UCIProtocol.html
+ * @author Jekabs Gritans
+ */
+public class UciProtocol {
+    public static final String NAME = "CHESS";
+    public static final String AUTHORS = "Jekabs Gritans and Thomas de Bock";
+    public static final int MAX_HASH_MB = 4096;
+    public static final int MAX_THREADS = 256;
+    public static final int MAX_MULTI_PV = 64;
+
+    private final Engine engine;
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    private ChessGame game = new ChessGame();
+    private CompletableFuture<SearchResult> search = null; // completes once the move is printed
+
+    /**
+     * Creates a front end of an engine.
+     * @param engine the engine to search with
+     * @param in where the commands are read from
+     * @param out where the answers are written to
+     */
+    public UciProtocol(Engine engine, BufferedReader in, PrintStream out) {
+        this.engine = engine;
+        this.in = in;
+        this.out = out;
+        engine.setInfoListener(this::printInfo);
+    }
+
+    /**
+     * Handles commands until quit or the end of the input.
+     * Waits for the last search to print its best move before returning.
+     * @throws IOException if reading the input fails
+     */
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!handle(line)) {
+                break;
+            }
+        }
+
+        engine.stop();
+        waitForSearch();
+    }
+
+    /**
+     * Handles a single command. Unknown commands are ignored, as the protocol demands.
+     * @param line the command line
+     * @return false if the command was quit
+     */
+    boolean handle(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        try {
+            switch (tokens[0]) {
+                case "uci" -> printId();
+                case "isready" -> out.println("readyok");
+                case "ucinewgame" -> {
+                    waitForSearch();
+                    engine.newGame();
+                    game = new ChessGame();
+                }
+                case "setoption" -> setOption(tokens);
+                case "position" -> setPosition(tokens);
+                case "go" -> go(tokens);
+                case "stop" -> engine.stop();
+                case "ponderhit" -> engine.ponderHit();
+                case "quit" -> {
+                    return false;
+                }
+                default -> { }
+            }
+        } catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException e) {
+            out.println("info string " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void printId() {
+        out.println("id name " + NAME);
+        out.println("id author " + AUTHORS);
+        out.println("option name Hash type spin default %d min 1 max %d".formatted(
+            Engine.DEFAULT_HASH_MB, MAX_HASH_MB));
+        out.println("option name Threads type spin default %d min 1 max %d".formatted(
+            Engine.DEFAULT_THREADS, MAX_THREADS));
+        out.println("option name MultiPV type spin default 1 min 1 max " + MAX_MULTI_PV);
+        out.println("option name Ponder type check default false");
+        out.println("uciok");
+    }
+
+    /**
+     * Handles setoption name [name] value [value], names may contain spaces.
+     * @param tokens the command
+     */
+    private void setOption(String[] tokens) {
+        int valueIndex = indexOf(tokens, "value");
+        if (tokens.length < 3 || !tokens[1].equals("name") || valueIndex == -1) {
+            throw new IllegalArgumentException("Expected setoption name <name> value <value>");
+        }
+
+        String name = String.join(" ", Arrays.copyOfRange(tokens, 2, valueIndex));
+        String value = String.join(" ", Arrays.copyOfRange(tokens, valueIndex + 1, tokens.length));
+        waitForSearch();
+        switch (name.toLowerCase()) {
+            case "hash" -> engine.setHashSize(parseOption(value, MAX_HASH_MB));
+            case "threads" -> engine.setThreads(parseOption(value, MAX_THREADS));
+            case "multipv" -> engine.setMultiPv(parseOption(value, MAX_MULTI_PV));
+            case "ponder" -> { } // only tells whether the GUI may send go ponder
+            default -> throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    private static int parseOption(String value, int max) {
+        return Math.max(1, Math.min(max, Integer.parseInt(value)));
+    }
+
+    /**
+     * Handles position [startpos | fen [fen]] moves [moves].
+     * @param tokens the command
+     */
+    private void setPosition(String[] tokens) {
+        int movesIndex = indexOf(tokens, "moves");
+        int end = movesIndex == -1 ? tokens.length : movesIndex;
+        ChessGame newGame;
+        if (tokens.length > 1 && tokens[1].equals("startpos")) {
+            newGame = new ChessGame();
+        } else if (tokens.length > 2 && tokens[1].equals("fen")) {
+            newGame = new ChessGame(String.join(" ", Arrays.copyOfRange(tokens, 2, end)));
+        } else {
+            throw new IllegalArgumentException("Expected position startpos or position fen");
+        }
+
+        if (movesIndex != -1) {
+            for (int i = movesIndex + 1; i < tokens.length; i++) {
+                makeMove(newGame, tokens[i]);
+            }
+        }
+        game = newGame;
+    }
+
+    private static void makeMove(ChessGame game, String uci) {
+        ChessMove move = game.findMove(uci);
+        if (move == null) {
+            throw new IllegalArgumentException("Illegal move " + uci);
+        }
+        game.makeMove(move);
+    }
+
+    /**
+     * Handles go with its limits, the best move is printed when the search finishes.
+     * @param tokens the command
+     */
+    private void go(String[] tokens) {
+        waitForSearch();
+        if (game.getGameState() != GameState.ACTIVE) {
+            out.println("bestmove 0000");
+            return;
+        }
+
+        int depth = 0;
+        long nodes = 0;
+        long moveTimeMs = 0;
+        long[] remainingMs = {0, 0}; // white, black
+        long[] incrementMs = {0, 0};
+        int movesToGo = 0;
+        boolean isInfinite = false;
+        boolean isPondering = false;
+        for (int i = 1; i < tokens.length; i++) {
+            switch (tokens[i]) {
+                case "depth" -> depth = Integer.parseInt(tokens[++i]);
+                case "nodes" -> nodes = Long.parseLong(tokens[++i]);
+                case "movetime" -> moveTimeMs = Long.parseLong(tokens[++i]);
+                case "wtime" -> remainingMs[0] = Long.parseLong(tokens[++i]);
+                case "btime" -> remainingMs[1] = Long.parseLong(tokens[++i]);
+                case "winc" -> incrementMs[0] = Long.parseLong(tokens[++i]);
+                case "binc" -> incrementMs[1] = Long.parseLong(tokens[++i]);
+                case "movestogo" -> movesToGo = Integer.parseInt(tokens[++i]);
+                case "infinite" -> isInfinite = true;
+                case "ponder" -> isPondering = true;
+                default -> { } // e.g. searchmoves, mate
+            }
+        }
+
+        int side = game.isWhiteMove() ? 0 : 1;
+        if (moveTimeMs == 0 && remainingMs[side] > 0) {
+            moveTimeMs = SearchLimits.ofClock(remainingMs[side], incrementMs[side], movesToGo)
+                .timeMs();
+        }
+        SearchLimits limits = new SearchLimits(depth, nodes, moveTimeMs);
+
+        // an infinite search (also without any limits) must not finish before stop,
+        // which is exactly what a ponder search does
+        if (isInfinite || limits.equals(SearchLimits.infinite())) {
+            search = engine.ponder(game, SearchLimits.infinite());
+        } else if (isPondering) {
+            search = engine.ponder(game, limits);
+        } else {
+            search = engine.search(game, limits);
+        }
+        search = search.whenComplete(this::printBestMove);
+    }
+
+    private void printInfo(SearchInfo info) {
+        List<PvLine> lines = info.lines();
+        for (int i = 0; i < lines.size(); i++) {
+            PvLine line = lines.get(i);
+            StringBuilder pv = new StringBuilder();
+            for (ChessMove move : line.moves()) {
+                pv.append(' ').append(move.toUci());
+            }
+            out.println("info depth %d seldepth %d multipv %d score %s nodes %d nps %d time %d pv%s"
+                .formatted(info.depth(), info.selDepth(), i + 1, formatScore(line.score()),
+                    info.nodes(), info.getNodesPerSecond(), info.timeMs(), pv));
+        }
+    }
+
+    private void printBestMove(SearchResult result, Throwable error) {
+        if (error != null) {
+            out.println("info string search failed: " + error.getMessage());
+            out.println("bestmove 0000");
+        } else if (result.ponderMove() != null) {
+            out.println("bestmove %s ponder %s".formatted(result.bestMove().toUci(),
+                result.ponderMove().toUci()));
+        } else {
+            out.println("bestmove " + result.bestMove().toUci());
+        }
+    }
+
+    /**
+     * Formats a score as UCI, in centipawns or moves until mate.
+     * @param score the score from the perspective of the player to move
+     * @return the score, e.g. cp 35 or mate -2
+     */
+    static String formatScore(int score) {
+        int mateMoves = Engine.getMateMoves(score);
+        return mateMoves != 0 ? "mate " + mateMoves : "cp " + score;
+    }
+
+    /**
+     * Waits until the latest search has printed its best move.
+     * The GUI has to stop an infinite search itself before sending another command.
+     */
+    void waitForSearch() {
+        if (search != null) {
+            search.handle((result, error) -> null).join();
+        }
+    }
+
+    private static int indexOf(String[] tokens, String token) {
+        return Arrays.asList(tokens).indexOf(token);
+    }
+
+    /**
+     * Runs the UCI protocol over the console.
+     * Uses the endgame tablebase in the tablebases directory if there is one.
+     * The engine's statistics are registered as the MBean named uci.
+     * @param args not used
+     * @throws IOException if reading the console fails
+     */
+    public static void main(String[] args) throws IOException {
+        try (Engine engine = new Engine()) {
+            try {
+                engine.registerMBean("uci");
+            } catch (JMException e) {
+                // stdout belongs to the protocol
+                System.err.println("Failed to register MBean: " + e.getMessage());
+            }
+            Path directory = Path.of(System.getProperty("user.dir"), "tablebases");
+            if (Files.isDirectory(directory)) {
+                engine.setTablebase(Tablebase.open(directory));
+            }
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            new UciProtocol(engine, in, System.out).run();
+        }
+    }
+}
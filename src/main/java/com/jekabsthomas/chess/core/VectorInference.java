@@ -0,0 +1,74 @@
+package com.jekabsthomas.chess.core;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD inference with the incubating Vector API.
+ * Only loaded through NnueInference.create if the vector module is present.
+ * Integer arithmetic wraps the same way in every lane order, so results equal ScalarInference.
+ * @author Jekabs Gritans
+ */
+class VectorInference implements NnueInference {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    // same vector size, so every short vector widens into several int vectors
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int PARTS = SHORTS.length() / INTS.length();
+
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        int bound = SHORTS.loopBound(accumulator.length);
+        int i = 0;
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        int bound = SHORTS.loopBound(accumulator.length);
+        int i = 0;
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public int dot(short[] accumulator, short[] weights, int offset, short clip) {
+        IntVector sums = IntVector.zero(INTS);
+        int bound = SHORTS.loopBound(accumulator.length);
+        int i = 0;
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector activations = ShortVector.fromArray(SHORTS, accumulator, i)
+                .lanewise(VectorOperators.MAX, (short) 0)
+                .lanewise(VectorOperators.MIN, clip);
+            ShortVector rowWeights = ShortVector.fromArray(SHORTS, weights, offset + i);
+
+            // products do not fit in 16 bits, so widen before multiplying
+            for (int part = 0; part < PARTS; part++) {
+                IntVector a = (IntVector) activations.convertShape(VectorOperators.S2I, INTS, part);
+                IntVector w = (IntVector) rowWeights.convertShape(VectorOperators.S2I, INTS, part);
+                sums = sums.add(a.mul(w));
+            }
+        }
+
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < accumulator.length; i++) {
+            int activation = Math.min(Math.max(accumulator[i], 0), clip);
+            sum += activation * weights[offset + i];
+        }
+        return sum;
+    }
+}
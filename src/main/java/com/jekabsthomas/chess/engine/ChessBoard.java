@@ -1,5 +1,7 @@
 package com.jekabsthomas.chess.engine;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -15,10 +17,17 @@ public class ChessBoard {
     // internal representation is a 1D array for easier offsets
     // 1D coordinates are never exposed outside of the engine
     private final byte[] board1D; 
-    private CastlingAvailability castlingAvailability;
+    private int castlingRights; // bits of WHITE_KING_SIDE etc.
     private int enPassantTarget1D; // -1 if no en passant target
-    private Map<Byte, Set<ChessPosition>> whiteMaterial;
-    private Map<Byte, Set<ChessPosition>> blackMaterial;
+    private int whiteKing1D = -1; // -1 if there is no king
+    private int blackKing1D = -1;
+    private long pieceHash = 0; // Zobrist hash of the pieces (see ZobristHash.java)
+    private long pawnHash = 0; // Zobrist hash of only the pawns, for caching pawn structure
+    private byte[] pieceCounts = new byte[2 * MaterialTable.NUM_KINDS]; // see MaterialTable.java
+    private int materialKey = 0;
+    private int uncountableKinds = 0; // kinds with more pieces than the material key can count
+    private int pieceCount = 0;
+    private FeatureAccumulator accumulator = null; // e.g. of a neural network evaluation
 
     /**
      * Creates a chess board.
@@ -35,13 +44,10 @@ public class ChessBoard {
             board1D[i] = ChessPiece.INVALID;;
         }
 
-        whiteMaterial = initMaterialMap();
-        blackMaterial = initMaterialMap();
-
         // fill with pieces and empty
         fillBoard(fenPiecePlacement);
 
-        castlingAvailability = new CastlingAvailability(fenCastlingAvailability);
+        castlingRights = new CastlingAvailability(fenCastlingAvailability).getRights();
         enPassantTarget1D = fenEnPassantTarget.equals("-")
             ? -1 : new ChessPosition(fenEnPassantTarget).get1D();
     }
@@ -51,13 +57,30 @@ public class ChessBoard {
      * @param other the board to copy
      */
     public ChessBoard(ChessBoard other) {
+        this(other, true);
+    }
+
+    /**
+     * Creates a deep copy of a chess board.
+     * @param other the board to copy
+     * @param copyAccumulator false for temporary boards that are never evaluated
+     */
+    ChessBoard(ChessBoard other, boolean copyAccumulator) {
         board1D = other.board1D.clone();
 
-        // immutable
-        castlingAvailability = other.castlingAvailability; 
+        castlingRights = other.castlingRights;
         enPassantTarget1D = other.enPassantTarget1D;
-        whiteMaterial = copyMaterialMap(other.whiteMaterial);
-        blackMaterial = copyMaterialMap(other.blackMaterial);
+        whiteKing1D = other.whiteKing1D;
+        blackKing1D = other.blackKing1D;
+        pieceHash = other.pieceHash;
+        pawnHash = other.pawnHash;
+        pieceCounts = other.pieceCounts.clone();
+        materialKey = other.materialKey;
+        uncountableKinds = other.uncountableKinds;
+        pieceCount = other.pieceCount;
+        if (copyAccumulator && other.accumulator != null) {
+            accumulator = other.accumulator.copy();
+        }
     }
 
     /**
@@ -133,7 +156,7 @@ public class ChessBoard {
      * @return the FEN castling availability component of the board
      */
     public String getFenCastlingAvailability() {
-        return castlingAvailability.toString();
+        return getCastlingAvailability().toString();
     }
 
     /**
@@ -170,23 +193,81 @@ public class ChessBoard {
         byte capturedPiece = board1D[pos1D];
         board1D[pos1D] = piece;
 
-        // update material
-        Map<Byte, Set<ChessPosition>> material;
-        byte type;
+        // update material, nothing is allocated since this runs for every move of a search
+        if (ChessPiece.isPiece(capturedPiece)) {
+            byte type = ChessPiece.getType(capturedPiece);
+            pieceHash ^= ZobristHash.getPieceKey(capturedPiece, pos1D);
+            if (type == ChessPiece.PAWN) {
+                pawnHash ^= ZobristHash.getPieceKey(capturedPiece, pos1D);
+            } else if (type == ChessPiece.KING && getKingPos1D(ChessPiece.isWhite(capturedPiece))
+                == pos1D) {
+                setKingPos1D(ChessPiece.isWhite(capturedPiece), -1);
+            }
+            countPiece(capturedPiece, pos1D, -1);
+            if (accumulator != null) {
+                accumulator.removePiece(capturedPiece, pos1D / 12 - 2, pos1D % 12 - 2);
+            }
+        }
 
         if (ChessPiece.isPiece(piece)) {
-            material = ChessPiece.isWhite(piece) ? whiteMaterial : blackMaterial;
-            type = ChessPiece.getType(piece);
-            material.get(type).add(new ChessPosition(pos1D));
+            byte type = ChessPiece.getType(piece);
+            pieceHash ^= ZobristHash.getPieceKey(piece, pos1D);
+            if (type == ChessPiece.PAWN) {
+                pawnHash ^= ZobristHash.getPieceKey(piece, pos1D);
+            } else if (type == ChessPiece.KING) {
+                setKingPos1D(ChessPiece.isWhite(piece), pos1D);
+            }
+            countPiece(piece, pos1D, 1);
+            if (accumulator != null) {
+                accumulator.addPiece(piece, pos1D / 12 - 2, pos1D % 12 - 2);
+            }
         }
+    }
 
-        if (ChessPiece.isPiece(capturedPiece)) {
-            material = ChessPiece.isWhite(capturedPiece) ? whiteMaterial : blackMaterial;
-            type = ChessPiece.getType(capturedPiece);
-            material.get(type).remove(new ChessPosition(pos1D));
+    private void setKingPos1D(boolean isWhite, int pos1D) {
+        if (isWhite) {
+            whiteKing1D = pos1D;
+        } else {
+            blackKing1D = pos1D;
+        }
+    }
+
+    /**
+     * Updates the piece counts and the material key.
+     * @param piece the added or removed piece
+     * @param pos1D the 1D position of the piece
+     * @param change 1 if the piece was added, -1 if removed
+     */
+    private void countPiece(byte piece, int pos1D, int change) {
+        int slot = MaterialTable.getSlot(piece, pos1D);
+        int oldCount = pieceCounts[slot];
+        int newCount = oldCount + change;
+        pieceCounts[slot] = (byte) newCount;
+        pieceCount += change;
+        materialKey += MaterialTable.getKeyChange(slot, oldCount, newCount);
+
+        boolean wasUncountable = MaterialTable.isUncountable(slot, oldCount);
+        if (MaterialTable.isUncountable(slot, newCount) != wasUncountable) {
+            uncountableKinds += change;
         }
     }
 
+    /**
+     * Gets the material key of the board, which indexes the material table.
+     * @return the material key, or MaterialTable.NONE after unusual promotions
+     */
+    public int getMaterialKey() {
+        return uncountableKinds == 0 ? materialKey : MaterialTable.NONE;
+    }
+
+    /**
+     * Gets the number of pieces on the board, kings included.
+     * @return the number of pieces
+     */
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
     /**
      * Gets the piece at the given 2D position.
      * @param row the row index from top
@@ -273,16 +354,188 @@ public class ChessBoard {
             setPiece(move.to1D, promotionPiece);
         }
 
-        castlingAvailability = updateCastlingAvailability(castlingAvailability, move);
+        castlingRights &= CASTLING_MASKS[move.from1D] & CASTLING_MASKS[move.to1D];
+    }
+
+    /**
+     * Makes an encoded move (see ChessMove.encode) so that it can be taken back by undoMove.
+     * Special moves are recognized from the board: a king moving two squares castles,
+     *     a pawn moving diagonally to an empty square captures en passant.
+     * Does not allocate, unlike making a ChessMove there is no object per move.
+     * @param move the encoded move
+     * @return what undoMove needs to restore the board
+     */
+    int makeMove(int move) {
+        int from = getFrom(move);
+        int to = getTo(move);
+        byte piece = board1D[from];
+        byte capturedPiece = board1D[to];
+        int oldEnPassantTarget1D = enPassantTarget1D;
+        int undo = (capturedPiece & 0xFF) | castlingRights << 8 | (enPassantTarget1D + 1) << 12;
+
+        setPiece(to, piece);
+        setPiece(from, ChessPiece.EMPTY);
+        enPassantTarget1D = -1;
+
+        byte type = ChessPiece.getType(piece);
+        byte promotionType = getPromotionType(move);
+        if (promotionType != ChessPiece.EMPTY) {
+            setPiece(to, ChessPiece.setType(piece, promotionType));
+        } else if (type == ChessPiece.PAWN && Math.abs(to - from) == 24) {
+            enPassantTarget1D = (from + to) / 2;
+        } else if (type == ChessPiece.PAWN && to == oldEnPassantTarget1D
+            && ChessPiece.isEmpty(capturedPiece) && (to - from) % 12 != 0) {
+            setPiece(getEnPassantCapture1D(from, to), ChessPiece.EMPTY);
+        } else if (type == ChessPiece.KING && Math.abs(to - from) == 2) {
+            int rookFrom = getCastlingRookFrom1D(from, to);
+            setPiece(getCastlingRookTo1D(from, to), board1D[rookFrom]);
+            setPiece(rookFrom, ChessPiece.EMPTY);
+        }
+
+        castlingRights &= CASTLING_MASKS[from] & CASTLING_MASKS[to];
+        return undo;
+    }
+
+    /**
+     * Takes back an encoded move made by makeMove(int).
+     * @param move the encoded move
+     * @param undo the value returned when the move was made
+     */
+    void undoMove(int move, int undo) {
+        int from = getFrom(move);
+        int to = getTo(move);
+        byte piece = board1D[to];
+        byte capturedPiece = (byte) undo;
+        castlingRights = undo >>> 8 & 0xF;
+        enPassantTarget1D = (undo >>> 12) - 1;
+
+        if (getPromotionType(move) != ChessPiece.EMPTY) {
+            piece = ChessPiece.setType(piece, ChessPiece.PAWN);
+        }
+        setPiece(from, piece);
+        setPiece(to, capturedPiece);
+
+        byte type = ChessPiece.getType(piece);
+        if (type == ChessPiece.PAWN && to == enPassantTarget1D
+            && ChessPiece.isEmpty(capturedPiece) && (to - from) % 12 != 0) {
+            byte enemyColor = ChessPiece.isWhite(piece) ? ChessPiece.BLACK : ChessPiece.WHITE;
+            setPiece(getEnPassantCapture1D(from, to), (byte) (enemyColor | ChessPiece.PAWN));
+        } else if (type == ChessPiece.KING && Math.abs(to - from) == 2) {
+            int rookTo = getCastlingRookTo1D(from, to);
+            setPiece(getCastlingRookFrom1D(from, to), board1D[rookTo]);
+            setPiece(rookTo, ChessPiece.EMPTY);
+        }
+    }
+
+    /**
+     * Checks whether an encoded pseudo-legal move leaves the mover's king safe.
+     * Only the squares are changed while checking (not the hashes, material or accumulator),
+     *     which makes it much cheaper than making and taking back the move.
+     * @param move the encoded move
+     * @return true if the king cannot be captured after the move
+     */
+    boolean isLegal(int move) {
+        int from = getFrom(move);
+        int to = getTo(move);
+        byte piece = board1D[from];
+        byte capturedPiece = board1D[to];
+        boolean isWhite = ChessPiece.isWhite(piece);
+        boolean isKing = ChessPiece.isType(piece, ChessPiece.KING);
+
+        board1D[to] = piece;
+        board1D[from] = ChessPiece.EMPTY;
+
+        // the pawn captured en passant can be all that was blocking an attack,
+        // the castling rook never is (castling out of check is not generated)
+        int enPassantCapture1D = -1;
+        byte enPassantPawn = ChessPiece.EMPTY;
+        if (to == enPassantTarget1D && ChessPiece.isType(piece, ChessPiece.PAWN)
+            && (to - from) % 12 != 0) {
+            enPassantCapture1D = getEnPassantCapture1D(from, to);
+            enPassantPawn = board1D[enPassantCapture1D];
+            board1D[enPassantCapture1D] = ChessPiece.EMPTY;
+        }
+
+        int king1D = isKing ? to : getKingPos1D(isWhite);
+        boolean isLegal = king1D == -1 || !ChessRules.isUnderAttack(this, king1D, !isWhite);
+
+        board1D[from] = piece;
+        board1D[to] = capturedPiece;
+        if (enPassantCapture1D != -1) {
+            board1D[enPassantCapture1D] = enPassantPawn;
+        }
+        return isLegal;
+    }
+
+    /**
+     * Gets the piece an encoded move (see ChessMove.encode) moves.
+     * @param move the encoded move
+     * @return the piece on the start square of the move
+     */
+    public byte getMovedPiece(int move) {
+        return board1D[getFrom(move)];
+    }
+
+    /**
+     * Gets the piece an encoded move captures on its destination.
+     * @param move the encoded move
+     * @return the piece on the destination, EMPTY for quiet moves and en passant captures
+     */
+    public byte getCapturedPiece(int move) {
+        return board1D[getTo(move)];
     }
 
     /**
      * Gets the material for a player.
+     * Collected from the board on every call, so not meant for the search.
      * @param isWhite true if white material, false if black material
      * @return map of pieces to set of positions where such pieces are
      */
     public Map<Byte, Set<ChessPosition>> getMaterial(boolean isWhite) {
-        return isWhite ? whiteMaterial : blackMaterial;
+        Map<Byte, Set<ChessPosition>> material = new HashMap<Byte, Set<ChessPosition>>();
+        for (byte type = ChessPiece.PAWN; type <= ChessPiece.KING; type++) {
+            material.put(type, new HashSet<ChessPosition>());
+        }
+
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                byte piece = getPiece(row, col);
+                if (ChessPiece.isPiece(piece) && ChessPiece.isWhite(piece) == isWhite) {
+                    material.get(ChessPiece.getType(piece)).add(new ChessPosition(row, col));
+                }
+            }
+        }
+        return material;
+    }
+
+    /**
+     * Attaches an accumulator that follows every piece change of this board and its copies.
+     * The accumulator is reset and then receives all pieces currently on the board.
+     * @param accumulator the accumulator, or null to detach
+     */
+    public void setAccumulator(FeatureAccumulator accumulator) {
+        this.accumulator = accumulator;
+        if (accumulator == null) {
+            return;
+        }
+
+        accumulator.reset();
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                byte piece = getPiece(row, col);
+                if (ChessPiece.isPiece(piece)) {
+                    accumulator.addPiece(piece, row, col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the attached accumulator.
+     * @return the accumulator, or null if none is attached
+     */
+    public FeatureAccumulator getAccumulator() {
+        return accumulator;
     }
 
     /**
@@ -295,21 +548,47 @@ public class ChessBoard {
             + " " + getFenEnPassantTarget();
     }
   
+    /**
+     * Gets the Zobrist hash of the pieces on the board.
+     * @return the piece hash
+     */
+    long getPieceHash() {
+        return pieceHash;
+    }
+
+    /**
+     * Gets the Zobrist hash of only the pawns on the board.
+     * Pawn structure rarely changes within a search,
+     *     so evaluation terms that only depend on pawns can be cached by this hash.
+     * @return the pawn hash
+     */
+    public long getPawnHash() {
+        return pawnHash;
+    }
+
     /**
      * Gets the castling availability.
      * @return the castling availability
      */
     CastlingAvailability getCastlingAvailability() {
-        return castlingAvailability;
+        return new CastlingAvailability(castlingRights);
+    }
+
+    /**
+     * Gets the castling availability without creating an object.
+     * @return the bits of WHITE_KING_SIDE, WHITE_QUEEN_SIDE, BLACK_KING_SIDE and BLACK_QUEEN_SIDE
+     */
+    int getCastlingRights() {
+        return castlingRights;
     }
 
     /**
      * Gets the 1D position of the king.
      * @param isWhite true if white king, false if black king
-     * @return the 1D position of the king
+     * @return the 1D position of the king, -1 if there is none
      */
     int getKingPos1D(boolean isWhite) {
-        return getMaterial(isWhite).get(ChessPiece.KING).iterator().next().get1D();
+        return isWhite ? whiteKing1D : blackKing1D;
     }
 
     /**
@@ -320,39 +599,6 @@ public class ChessBoard {
         return enPassantTarget1D;
     }
 
-    /**
-     * Initializes a material map.
-     * @return the initialized material map
-     */
-    private Map<Byte, Set<ChessPosition>> initMaterialMap() {
-        return Map.of(
-            ChessPiece.PAWN, new HashSet<ChessPosition>(),
-            ChessPiece.KNIGHT, new HashSet<ChessPosition>(),
-            ChessPiece.BISHOP, new HashSet<ChessPosition>(),
-            ChessPiece.ROOK, new HashSet<ChessPosition>(),
-            ChessPiece.QUEEN, new HashSet<ChessPosition>(),
-            ChessPiece.KING, new HashSet<ChessPosition>()
-        );
-    }
-
-    /**
-     * Creates a deep copy of a material map.
-     * @param material the material map to copy
-     * @return the copied material map
-     */
-    private Map<Byte, Set<ChessPosition>> copyMaterialMap(Map<Byte, Set<ChessPosition>> material) {
-        Map<Byte, Set<ChessPosition>> copy = Map.of(
-            ChessPiece.PAWN, new HashSet<ChessPosition>(material.get(ChessPiece.PAWN)),
-            ChessPiece.KNIGHT, new HashSet<ChessPosition>(material.get(ChessPiece.KNIGHT)),
-            ChessPiece.BISHOP, new HashSet<ChessPosition>(material.get(ChessPiece.BISHOP)),
-            ChessPiece.ROOK, new HashSet<ChessPosition>(material.get(ChessPiece.ROOK)),
-            ChessPiece.QUEEN, new HashSet<ChessPosition>(material.get(ChessPiece.QUEEN)),
-            ChessPiece.KING, new HashSet<ChessPosition>(material.get(ChessPiece.KING))
-        );
-        
-        return copy;
-    }
-
     // starting positions for castling pieces
     private static final int WK_ROOK = new ChessPosition("h1").get1D();
     private static final int WQ_ROOK = new ChessPosition("a1").get1D();
@@ -361,28 +607,102 @@ public class ChessBoard {
     private static final int BQ_ROOK = new ChessPosition("a8").get1D();
     private static final int BK = new ChessPosition("e8").get1D();
 
+    // castling availability bits
+    static final int WHITE_KING_SIDE = 1;
+    static final int WHITE_QUEEN_SIDE = 2;
+    static final int BLACK_KING_SIDE = 4;
+    static final int BLACK_QUEEN_SIDE = 8;
+
+    // castling availability kept by moves from or to each square
+    // (moving the king or a rook, or capturing a rook, loses the castling on that side)
+    private static final int[] CASTLING_MASKS = new int[144];
+
+    static {
+        Arrays.fill(CASTLING_MASKS, 0xF);
+        CASTLING_MASKS[WK] = ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        CASTLING_MASKS[WK_ROOK] = ~WHITE_KING_SIDE;
+        CASTLING_MASKS[WQ_ROOK] = ~WHITE_QUEEN_SIDE;
+        CASTLING_MASKS[BK] = ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        CASTLING_MASKS[BK_ROOK] = ~BLACK_KING_SIDE;
+        CASTLING_MASKS[BQ_ROOK] = ~BLACK_QUEEN_SIDE;
+    }
+
+    // encoded moves, see ChessMove.encode
+
+    static int encode(int from1D, int to1D, byte promotionType) {
+        return from1D | to1D << 8 | promotionType << 16;
+    }
+
+    static int getFrom(int move) {
+        return move & 0xFF;
+    }
+
+    static int getTo(int move) {
+        return move >>> 8 & 0xFF;
+    }
+
+    static byte getPromotionType(int move) {
+        return (byte) (move >>> 16);
+    }
+
+    /**
+     * Gets the long algebraic (UCI) notation of an encoded move, e.g. e2e4 or a7a8q.
+     * @param move the encoded move
+     * @return the notation
+     */
+    public static String toUci(int move) {
+        String uci = new ChessPosition(getFrom(move)).toString()
+            + new ChessPosition(getTo(move));
+        byte promotionType = getPromotionType(move);
+        return promotionType == ChessPiece.EMPTY
+            ? uci : uci + ChessPiece.getFenCharacter(promotionType);
+    }
+
+    // squares of the other pieces involved in special moves
+
+    static int getCastlingRookFrom1D(int kingFrom1D, int kingTo1D) {
+        return kingTo1D > kingFrom1D ? kingTo1D + 1 : kingTo1D - 2;
+    }
+
+    static int getCastlingRookTo1D(int kingFrom1D, int kingTo1D) {
+        return (kingFrom1D + kingTo1D) / 2;
+    }
+
+    static int getEnPassantCapture1D(int from1D, int to1D) {
+        return from1D - from1D % 12 + to1D % 12; // beside the capturing pawn
+    }
+
     /**
-     * Updates castling availability after a move.
-     * @param availability the castling availability before the move
-     * @param move the move
-     * @return the castling availability after the move
+     * Incrementally updated features of the pieces on a board.
+     * Copying a board copies its accumulator, so it always matches the board it belongs to.
      */
-    private CastlingAvailability updateCastlingAvailability(CastlingAvailability availability,
-        ChessMove move) {
-        return new CastlingAvailability(
-          availability.whiteKingSide()
-            && move.from1D != WK_ROOK && move.from1D != WK
-            && move.to1D != WK_ROOK && move.to1D != WK,
-          availability.whiteQueenSide()
-            && move.from1D != WQ_ROOK && move.from1D != WK
-            && move.to1D != WQ_ROOK && move.to1D != WK,
-          availability.blackKingSide()
-            && move.from1D != BK_ROOK && move.from1D != BK
-            && move.to1D != BK_ROOK && move.to1D != BK,
-          availability.blackQueenSide()
-            && move.from1D != BQ_ROOK && move.from1D != BK
-            && move.to1D != BQ_ROOK && move.to1D != BK
-        );
+    public interface FeatureAccumulator {
+        /**
+         * Removes all pieces.
+         */
+        void reset();
+
+        /**
+         * Adds a piece.
+         * @param piece the piece
+         * @param row the row index from top
+         * @param col the column index from left
+         */
+        void addPiece(byte piece, int row, int col);
+
+        /**
+         * Removes a piece.
+         * @param piece the piece
+         * @param row the row index from top
+         * @param col the column index from left
+         */
+        void removePiece(byte piece, int row, int col);
+
+        /**
+         * Creates an independent copy of the accumulator.
+         * @return the copy
+         */
+        FeatureAccumulator copy();
     }
 
     /**
@@ -454,6 +774,33 @@ public class ChessBoard {
             return new ChessPosition(to1D / 12 - 2, to1D % 12 - 2);
         }
 
+        /**
+         * Gets the type of piece a pawn is promoted to by this move.
+         * @return the promotion type, or EMPTY if the move is not a promotion
+         */
+        public byte getPromotionType() {
+            return ChessPiece.EMPTY;
+        }
+
+        /**
+         * Gets a compact integer encoding of the move.
+         * Unique among the legal moves of a position, so it can be stored in place of the move
+         *     (e.g. in the bot's transposition table) and matched against regenerated moves.
+         * The lower 16 bits only depend on the from and to squares.
+         * @return the encoded move, never 0
+         */
+        public int encode() {
+            return ChessBoard.encode(from1D, to1D, getPromotionType());
+        }
+
+        /**
+         * Gets the long algebraic (UCI) notation of the move, e.g. e2e4 or a7a8q.
+         * @return the notation
+         */
+        public String toUci() {
+            return ChessBoard.toUci(encode());
+        }
+
         @Override
         public String toString() {
             return getFrom() + " -> " + getTo();
@@ -463,10 +810,16 @@ public class ChessBoard {
         public boolean equals(Object obj) {
             if (obj instanceof ChessMove) {
                 ChessMove other = (ChessMove) obj;
-                return from1D == other.from1D && to1D == other.to1D;
+                return from1D == other.from1D && to1D == other.to1D
+                    && getPromotionType() == other.getPromotionType();
             }
             return false;
         }
+
+        @Override
+        public int hashCode() {
+            return encode();
+        }
     }
 
     // special moves only differ from regular moves within the engine,
@@ -545,6 +898,11 @@ public class ChessBoard {
             super(from1D, to1D);
             this.promotionType = promotionType;
         }
+
+        @Override
+        public byte getPromotionType() {
+            return promotionType;
+        }
     }
 
     /**
@@ -569,6 +927,30 @@ public class ChessBoard {
             );
         }
 
+        /**
+         * Creates castling availability from bits.
+         * @param rights the bits of WHITE_KING_SIDE etc.
+         */
+        CastlingAvailability(int rights) {
+            this(
+                (rights & WHITE_KING_SIDE) != 0,
+                (rights & WHITE_QUEEN_SIDE) != 0,
+                (rights & BLACK_KING_SIDE) != 0,
+                (rights & BLACK_QUEEN_SIDE) != 0
+            );
+        }
+
+        /**
+         * Gets the castling availability as bits.
+         * @return the bits of WHITE_KING_SIDE etc.
+         */
+        int getRights() {
+            return (whiteKingSide ? WHITE_KING_SIDE : 0)
+                | (whiteQueenSide ? WHITE_QUEEN_SIDE : 0)
+                | (blackKingSide ? BLACK_KING_SIDE : 0)
+                | (blackQueenSide ? BLACK_QUEEN_SIDE : 0);
+        }
+
         @Override
         public String toString() {
             StringBuilder fen = new StringBuilder();
@@ -3,24 +3,35 @@ package com.jekabsthomas.chess.engine;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessPosition;
 import com.jekabsthomas.chess.utils.FenParser;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents a chess game.
  * Handles game flow and keeps track of legal moves.
+ * Besides move objects, moves can be made as encoded ints and taken back (see makeMove(int)),
+ *     which lets a search walk the game tree on a single game without allocating.
  * @author Jekabs Gritans
  */
 public class ChessGame {
+    private static final int INITIAL_HISTORY = 256;
+    private static final String SAN_PIECES = " PNBRQK"; // indexed by piece type
+
     private GameState state;
     private ChessBoard board;
     private boolean isWhiteMove;
     private int halfMoveClock;
     private int fullMoveNumber;
+    private int plyCount = 0; // moves made since the game was created
     private ZobristHash zobristHash;
 
-    // for threefold repetition draw
-    private HashMap<String, Integer> positionCount = new HashMap<String, Integer>();
+    // indexed by ply, for taking moves back and finding repetitions
+    private long[] keyHistory = new long[INITIAL_HISTORY]; // Zobrist hash of every position
+    private int[] moveHistory = new int[INITIAL_HISTORY];
+    private int[] undoHistory = new int[INITIAL_HISTORY]; // see ChessBoard.makeMove(int)
+    private int[] clockHistory = new int[INITIAL_HISTORY]; // half move clock before the move
+
+    private int[] moveBuffer = null; // for checking if there are legal moves
 
     /**
      * Creates a chess game.
@@ -40,8 +51,12 @@ public class ChessGame {
         this.isWhiteMove = game.isWhiteMove;
         this.halfMoveClock = game.halfMoveClock;
         this.fullMoveNumber = game.fullMoveNumber;
+        this.plyCount = game.plyCount;
         this.zobristHash = game.zobristHash;
-        this.positionCount = new HashMap<String, Integer>(game.positionCount);
+        this.keyHistory = game.keyHistory.clone();
+        this.moveHistory = game.moveHistory.clone();
+        this.undoHistory = game.undoHistory.clone();
+        this.clockHistory = game.clockHistory.clone();
     }
 
     /**
@@ -56,7 +71,7 @@ public class ChessGame {
         halfMoveClock = fen.halfMoveClock;
         fullMoveNumber = fen.fullMoveNumber;
         zobristHash = new ZobristHash();
-        updatePositionCount();
+        keyHistory[0] = zobristHash.getHash(this);
     }
 
     /**
@@ -112,57 +127,153 @@ public class ChessGame {
     }
 
     /**
-     * Makes a move and returns the new game state.
-     * (Does not check if move is legal)
-     * @param move the move to make
-     * @return the new game state
-     * @throws IllegalStateException if game is over
+     * Finds the legal move with the given UCI notation (see ChessMove.toUci).
+     * @param uci the notation, e.g. e2e4 or a7a8q
+     * @return the move, or null if there is no such legal move (also if the game is over)
      */
-    public GameState makeMove(ChessMove move) {
+    public ChessMove findMove(String uci) {
         if (state != GameState.ACTIVE) {
-            throw new IllegalStateException("Game is over");
+            return null;
         }
 
-        byte movedPiece = board.getPiece(move.from1D);
-        byte capturedPiece = board.getPiece(move.to1D);
-        board.makeMove(move);
+        for (ChessMove move : ChessRules.getLegalMoves(board, isWhiteMove)) {
+            if (move.toUci().equals(uci)) {
+                return move;
+            }
+        }
+        return null;
+    }
 
-        // increment clocks, check for draw
-        if (ChessPiece.isPiece(capturedPiece) || ChessPiece.isType(movedPiece, ChessPiece.PAWN)) {
-            halfMoveClock = 0;
+    /**
+     * Checks whether a move captures a piece, en passant included.
+     * @param move the legal move
+     * @return true if the move is a capture
+     */
+    public boolean isCapture(ChessMove move) {
+        return ChessPiece.isPiece(board.getPiece(move.to1D))
+            || move instanceof ChessBoard.EnPassantMove;
+    }
+
+    /**
+     * Gets the standard algebraic notation (SAN) of a legal move, as used in PGN,
+     *     e.g. Nbd7, exd6, O-O, e8=Q+ or Qh4#.
+     * @param move the legal move
+     * @return the notation
+     * @throws IllegalStateException if game is over
+     */
+    public String toSan(ChessMove move) {
+        StringBuilder san = new StringBuilder();
+        ChessPosition from = move.getFrom();
+        ChessPosition to = move.getTo();
+        byte type = ChessPiece.getType(board.getPiece(from.row(), from.col()));
+        boolean isCapture = isCapture(move);
+
+        if (move instanceof ChessBoard.CastlingMove) {
+            san.append(to.col() > from.col() ? "O-O" : "O-O-O");
+        } else if (type == ChessPiece.PAWN) {
+            if (isCapture) {
+                san.append((char) ('a' + from.col())).append('x');
+            }
+            san.append(to);
+            if (move.getPromotionType() != ChessPiece.EMPTY) {
+                san.append('=').append(SAN_PIECES.charAt(move.getPromotionType()));
+            }
         } else {
-            halfMoveClock++;
-            if (halfMoveClock >= 100) {
-                state = GameState.DRAW;
-                return state;
+            san.append(SAN_PIECES.charAt(type));
+
+            // name the file, the rank or both if other such pieces can move there too
+            boolean isAmbiguous = false;
+            boolean isSameFile = false;
+            boolean isSameRank = false;
+            for (ChessMove other : getLegalMoves()) {
+                ChessPosition otherFrom = other.getFrom();
+                if (other.getTo().equals(to) && !otherFrom.equals(from) && ChessPiece.getType(
+                    board.getPiece(otherFrom.row(), otherFrom.col())) == type) {
+                    isAmbiguous = true;
+                    isSameFile |= otherFrom.col() == from.col();
+                    isSameRank |= otherFrom.row() == from.row();
+                }
+            }
+            if (isAmbiguous && (!isSameFile || isSameRank)) {
+                san.append((char) ('a' + from.col()));
+            }
+            if (isSameFile) {
+                san.append(8 - from.row());
+            }
+            if (isCapture) {
+                san.append('x');
             }
+            san.append(to);
         }
 
-        // check for draw by insufficient material
-        if (ChessRules.isInsufficientMaterial(board)) {
-            state = GameState.DRAW;
-            return state;
+        ChessGame next = new ChessGame(this);
+        GameState nextState = next.makeMove(move);
+        if (nextState == GameState.WHITE_WINS || nextState == GameState.BLACK_WINS) {
+            san.append('#');
+        } else if (next.isInCheck()) {
+            san.append('+');
         }
+        return san.toString();
+    }
 
-        // check for draw by threefold repetition
-        updatePositionCount();
-        if (isThreefoldRepetition()) {
-            state = GameState.DRAW;
-            return state;
+    /**
+     * Gets the legal moves for the current player without allocating.
+     * @param moves the array to put the encoded moves in (see ChessMove.encode),
+     *     at least ChessRules.MAX_MOVES long
+     * @return the number of legal moves
+     * @throws IllegalStateException if game is over
+     */
+    public int getLegalMoves(int[] moves) {
+        if (state != GameState.ACTIVE) {
+            throw new IllegalStateException("Game is over");
         }
 
-        if (!isWhiteMove) {
-            fullMoveNumber++;
+        return ChessRules.getLegalMoves(board, isWhiteMove, moves);
+    }
+
+    /**
+     * Checks whether the current player has a legal move, without allocating.
+     * @return true if there is a legal move
+     */
+    public boolean hasLegalMoves() {
+        if (moveBuffer == null) {
+            moveBuffer = new int[ChessRules.MAX_MOVES];
         }
+        return ChessRules.hasLegalMoves(board, isWhiteMove, moveBuffer);
+    }
 
-        // switch turns
-        isWhiteMove = !isWhiteMove;
+    /**
+     * Checks whether the king of the current player is attacked.
+     * @return true if in check
+     */
+    public boolean isInCheck() {
+        return ChessRules.canCaptureKing(board, !isWhiteMove);
+    }
+
+    /**
+     * Gets the move object of an encoded move in the current position.
+     * @param move the encoded move (see ChessMove.encode)
+     * @return the move
+     */
+    public ChessMove decodeMove(int move) {
+        return ChessRules.toMove(board, move);
+    }
+
+    /**
+     * Makes a move and returns the new game state.
+     * (Does not check if move is legal)
+     * @param move the move to make
+     * @return the new game state
+     * @throws IllegalStateException if game is over
+     */
+    public GameState makeMove(ChessMove move) {
+        makeMove(move.encode());
 
         // check if the enemy has no legal moves
         // technically, it's now the enemy's turn
-        if (getLegalMoves().size() == 0) {
+        if (state == GameState.ACTIVE && !hasLegalMoves()) {
             // if the enemy king can be captured by my piece, they lose
-            if (ChessRules.canCaptureKing(board, !isWhiteMove)) {
+            if (isInCheck()) {
                 state = isWhiteMove ? GameState.BLACK_WINS : GameState.WHITE_WINS;
             } else {
                 // no legal moves and not in check, this is a stalemate
@@ -174,6 +285,71 @@ public class ChessGame {
         return state;
     }
 
+    /**
+     * Makes an encoded move, so that it can be taken back with undoMove.
+     * Draws are detected, but checkmate and stalemate are not:
+     *     the player to move then has no legal moves (see hasLegalMoves).
+     * Does not allocate, except to grow the history of very long games.
+     * (Does not check if move is legal)
+     * @param move the encoded move (see ChessMove.encode)
+     * @throws IllegalStateException if game is over
+     */
+    public void makeMove(int move) {
+        if (state != GameState.ACTIVE) {
+            throw new IllegalStateException("Game is over");
+        }
+        if (plyCount + 1 == keyHistory.length) {
+            growHistory();
+        }
+
+        byte movedPiece = board.getMovedPiece(move);
+        byte capturedPiece = board.getCapturedPiece(move);
+        moveHistory[plyCount] = move;
+        clockHistory[plyCount] = halfMoveClock;
+        undoHistory[plyCount] = board.makeMove(move);
+        plyCount++;
+
+        // increment clocks
+        if (ChessPiece.isPiece(capturedPiece) || ChessPiece.isType(movedPiece, ChessPiece.PAWN)) {
+            halfMoveClock = 0;
+        } else {
+            halfMoveClock++;
+        }
+
+        if (!isWhiteMove) {
+            fullMoveNumber++;
+        }
+
+        // switch turns
+        isWhiteMove = !isWhiteMove;
+        keyHistory[plyCount] = zobristHash.getHash(this);
+
+        // check for draw by the fifty move rule, insufficient material or threefold repetition
+        if (halfMoveClock >= 100 || ChessRules.isInsufficientMaterial(board)
+            || isThreefoldRepetition()) {
+            state = GameState.DRAW;
+        }
+    }
+
+    /**
+     * Takes back the last move, restoring the game as it was before the move.
+     * @throws IllegalStateException if no move was made
+     */
+    public void undoMove() {
+        if (plyCount == 0) {
+            throw new IllegalStateException("No move to take back");
+        }
+
+        plyCount--;
+        board.undoMove(moveHistory[plyCount], undoHistory[plyCount]);
+        halfMoveClock = clockHistory[plyCount];
+        isWhiteMove = !isWhiteMove;
+        if (!isWhiteMove) {
+            fullMoveNumber--;
+        }
+        state = GameState.ACTIVE; // no move can be made in a finished game
+    }
+
     /**
      * Gets the chess board.
      * @return the chess board
@@ -198,6 +374,14 @@ public class ChessGame {
         return fullMoveNumber;
     }
 
+    /**
+     * Gets the number of moves (of either player) made since the game was created.
+     * @return the number of plies
+     */
+    public int getPlyCount() {
+        return plyCount;
+    }
+
     /**
      * Gets whether it is white's turn.
      * @return true if it is white's turn, false if black's turn
@@ -227,20 +411,30 @@ public class ChessGame {
         return getFenString().equals(other.getFenString());
     }
 
-    /**
-     * Updates the position count for threefold repetition draw.
-     */
-    private void updatePositionCount() {
-        String boardFenString = getBoard().getFenString();
-        positionCount.put(boardFenString, positionCount.getOrDefault(boardFenString, 0) + 1);
-    }
-
     /**
      * Checks if the current position has been repeated three times.
+     * Positions before the last capture or pawn move can never come back,
+     *     so only that far back is searched.
      */
     private boolean isThreefoldRepetition() {
-        String boardFenString = getBoard().getFenString();
-        return positionCount.getOrDefault(boardFenString, 0) >= 3;
+        long key = keyHistory[plyCount];
+        int repetitions = 1;
+        int oldest = Math.max(plyCount - halfMoveClock, 0);
+        // the same player is to move every other ply
+        for (int ply = plyCount - 2; ply >= oldest; ply -= 2) {
+            if (keyHistory[ply] == key) {
+                repetitions++;
+            }
+        }
+        return repetitions >= 3;
+    }
+
+    private void growHistory() {
+        int length = 2 * keyHistory.length;
+        keyHistory = Arrays.copyOf(keyHistory, length);
+        moveHistory = Arrays.copyOf(moveHistory, length);
+        undoHistory = Arrays.copyOf(undoHistory, length);
+        clockHistory = Arrays.copyOf(clockHistory, length);
     }
 
     /**
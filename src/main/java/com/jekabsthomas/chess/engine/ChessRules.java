@@ -1,19 +1,20 @@
 package com.jekabsthomas.chess.engine;
 
-import com.jekabsthomas.chess.engine.ChessBoard.CastlingAvailability;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessPosition;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Static methods for legal move generation and checking if king is in check.
+ * Moves are generated as encoded ints (see ChessMove.encode) into a caller's array,
+ *     so searches can generate moves without allocating.
  * @author Jekabs Gritans
  */
 public class ChessRules {
+    // more than the most moves any position is known to have (218)
+    public static final int MAX_MOVES = 256;
+
     /**
      * Checks if the enemy king can be captured in this move. Cannot happen in actual game.
      * @param board the board
@@ -22,7 +23,7 @@ public class ChessRules {
      */
     public static boolean canCaptureKing(ChessBoard board, boolean isWhiteMove) {
         int enemyKingPos = board.getKingPos1D(!isWhiteMove);
-        return isUnderAttack(board, enemyKingPos, isWhiteMove);
+        return enemyKingPos != -1 && isUnderAttack(board, enemyKingPos, isWhiteMove);
     }
 
     /**
@@ -33,9 +34,10 @@ public class ChessRules {
      * @return list of legal moves
      */
     public static List<ChessMove> getLegalMoves(ChessBoard board, boolean isWhiteMove, int from) {
-        List<ChessMove> moves = getPseudoLegalMoves(board, isWhiteMove, from);
-        moves = filterExposedKing(moves, board, isWhiteMove);
-        return moves;
+        int[] moves = new int[MAX_MOVES];
+        int count = getPseudoLegalMoves(board, isWhiteMove, from, moves, 0);
+        count = removeIllegalMoves(board, moves, count);
+        return toMoveList(board, moves, count);
     }
 
     /**
@@ -45,149 +47,203 @@ public class ChessRules {
      * @return list of legal moves
      */
     public static List<ChessMove> getLegalMoves(ChessBoard board, boolean isWhiteMove) {
-        List<ChessMove> moves = getPseudoLegalMoves(board, isWhiteMove);
-        moves = filterExposedKing(moves, board, isWhiteMove);
-        return moves;
+        int[] moves = new int[MAX_MOVES];
+        return toMoveList(board, moves, getLegalMoves(board, isWhiteMove, moves));
+    }
+
+    /**
+     * Gets all legal moves for the current player without allocating.
+     * @param board the board
+     * @param isWhiteMove whether it is white's move
+     * @param moves the array to put the encoded moves in, at least MAX_MOVES long
+     * @return the number of legal moves
+     */
+    static int getLegalMoves(ChessBoard board, boolean isWhiteMove, int[] moves) {
+        int count = 0;
+        for (int pos = 0; pos < 144; pos++) {
+            count = getPseudoLegalMoves(board, isWhiteMove, pos, moves, count);
+        }
+        return removeIllegalMoves(board, moves, count);
+    }
+
+    /**
+     * Checks whether the current player has any legal move, stopping at the first one found.
+     * @param board the board
+     * @param isWhiteMove whether it is white's move
+     * @param buffer an array for the moves of a single piece, at least MAX_MOVES long
+     * @return true if there is a legal move
+     */
+    static boolean hasLegalMoves(ChessBoard board, boolean isWhiteMove, int[] buffer) {
+        for (int pos = 0; pos < 144; pos++) {
+            int count = getPseudoLegalMoves(board, isWhiteMove, pos, buffer, 0);
+            for (int i = 0; i < count; i++) {
+                if (board.isLegal(buffer[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the move object of an encoded move, with the type of special move it makes.
+     * @param board the board before the move
+     * @param move the encoded move
+     * @return the move
+     */
+    static ChessMove toMove(ChessBoard board, int move) {
+        int from = ChessBoard.getFrom(move);
+        int to = ChessBoard.getTo(move);
+        byte type = ChessPiece.getType(board.getPiece(from));
+        byte promotionType = ChessBoard.getPromotionType(move);
+
+        if (promotionType != ChessPiece.EMPTY) {
+            return board.new PromotionMove(from, to, promotionType);
+        } else if (type == ChessPiece.KING && Math.abs(to - from) == 2) {
+            return board.new CastlingMove(from, to, ChessBoard.getCastlingRookFrom1D(from, to),
+                ChessBoard.getCastlingRookTo1D(from, to));
+        } else if (type == ChessPiece.PAWN && Math.abs(to - from) == 24) {
+            return board.new PawnDoubleMove(from, to, (from + to) / 2);
+        } else if (type == ChessPiece.PAWN && to == board.getEnPassantTarget1D()
+            && (to - from) % 12 != 0) {
+            return board.new EnPassantMove(from, to, ChessBoard.getEnPassantCapture1D(from, to));
+        }
+        return board.new ChessMove(from, to);
     }
 
     /**
      * Checks if a board has insufficient material for checkmate.
+     * Looked up in the material table (see MaterialTable.java),
+     *     which also catches bishops that are all on the same color.
      * @param board the board
      */
     public static boolean isInsufficientMaterial(ChessBoard board) {
-        Map<Byte, Set<ChessPosition>> whiteMaterial = board.getMaterial(true);
-        Map<Byte, Set<ChessPosition>> blackMaterial = board.getMaterial(false);
-
-        return isInsufficientMaterial(whiteMaterial) && isInsufficientMaterial(blackMaterial);
+        return MaterialTable.isDrawn(MaterialTable.probe(board.getMaterialKey()));
     }
 
     /*
-     * Unidirectional check for insufficient material.
-     * Catches most but not all cases according to tournament rules
-     * (e.g. bishops on same color are not detected)
-     * But other cases are caught by the 50 move rule, so infinite loops are not possible.
+     * Check if any pieces of the player to move attack the position.
+     * Looks outwards from the position, which is far cheaper than generating their moves.
      */
-    private static boolean isInsufficientMaterial(Map<Byte, Set<ChessPosition>> material) {
+    static boolean isUnderAttack(ChessBoard board, int pos1D, boolean isWhiteMove) {
+        byte color = isWhiteMove ? ChessPiece.WHITE : ChessPiece.BLACK;
+
+        // pawns capture diagonally forward, so they are diagonally behind the position
+        int behind = isWhiteMove ? 12 : -12;
+        byte pawn = (byte) (color | ChessPiece.PAWN);
+        if (board.getPiece(pos1D + behind - 1) == pawn
+            || board.getPiece(pos1D + behind + 1) == pawn) {
+            return true;
+        }
 
-        // if any pawn, queen, or rook, not insufficient material
-        byte[] types = new byte[] {ChessPiece.PAWN, ChessPiece.QUEEN, ChessPiece.ROOK};
-        for (byte type : types) {
-            if (material.get(type).size() > 0) {
-                return false;
+        byte knight = (byte) (color | ChessPiece.KNIGHT);
+        for (int dir : KNIGHT_DIRS) {
+            if (board.getPiece(pos1D + dir) == knight) {
+                return true;
             }
         }
 
-        int numBishops = material.get(ChessPiece.BISHOP).size();
-        int numKnights = material.get(ChessPiece.KNIGHT).size();
+        byte king = (byte) (color | ChessPiece.KING);
+        for (int dir : KING_DIRS) {
+            if (board.getPiece(pos1D + dir) == king) {
+                return true;
+            }
+        }
 
-        return numBishops + numKnights <= 1;
+        byte bishop = (byte) (color | ChessPiece.BISHOP);
+        byte rook = (byte) (color | ChessPiece.ROOK);
+        byte queen = (byte) (color | ChessPiece.QUEEN);
+        return isUnderSlidingAttack(board, pos1D, BISHOP_DIRS, bishop, queen)
+            || isUnderSlidingAttack(board, pos1D, ROOK_DIRS, rook, queen);
     }
 
     /*
-     * Check if any enemy pieces can move to the position.
+     * Checks if the first piece in any of the directions is one of the given sliding pieces.
      */
-    private static boolean isUnderAttack(ChessBoard board, int pos1D, boolean isWhiteMove) {
-        List<ChessMove> moves = getPseudoLegalMoves(board, isWhiteMove, true);
-
-        // check if any move is to the position
-        for (ChessMove move : moves) {
-            if (move.to1D == pos1D) {
+    private static boolean isUnderSlidingAttack(ChessBoard board, int pos1D, int[] directions,
+        byte piece, byte queen) {
+        for (int dir : directions) {
+            int to = pos1D + dir;
+            byte found = board.getPiece(to);
+            while (ChessPiece.isEmpty(found)) {
+                to += dir;
+                found = board.getPiece(to);
+            }
+            if (found == piece || found == queen) {
                 return true;
             }
         }
-
         return false;
     }
 
     /*
-     * Removes moves that expose the friendly king.
+     * Removes moves that expose the friendly king, keeping the order of the others.
      */
-    private static List<ChessMove> filterExposedKing(List<ChessMove> moves, ChessBoard board,
-        boolean isWhiteMove) {
-        List<ChessMove> filteredMoves = new ArrayList<ChessMove>(0);
-
-        for (ChessMove move : moves) {
-            ChessBoard newBoard = new ChessBoard(board);
-
-            // I make my move
-            newBoard.makeMove(move);
-            
-            // if enemy cannot capture my king now, move is legal
-            if (!canCaptureKing(newBoard, !isWhiteMove)) {
-                filteredMoves.add(move);
+    private static int removeIllegalMoves(ChessBoard board, int[] moves, int count) {
+        int legalCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (board.isLegal(moves[i])) {
+                moves[legalCount++] = moves[i];
             }
         }
+        return legalCount;
+    }
 
-        return filteredMoves;
+    /*
+     * Creates the move objects of encoded moves.
+     */
+    private static List<ChessMove> toMoveList(ChessBoard board, int[] moves, int count) {
+        List<ChessMove> list = new ArrayList<ChessMove>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(toMove(board, moves[i]));
+        }
+        return list;
     }
 
     /*
-     * Gets valid moves from a position, not checking for exposed king.
+     * Adds the valid moves from a position, not checking for exposed king.
+     * Returns the new number of moves in the array.
      */
-    private static List<ChessMove> getPseudoLegalMoves(ChessBoard board, boolean isWhiteMove,
-        int from, boolean isCastlingRecursion) {
+    private static int getPseudoLegalMoves(ChessBoard board, boolean isWhiteMove, int from,
+        int[] moves, int count) {
         byte piece = board.getPiece(from);
         
         boolean isFriendlyPiece = ChessPiece.isPiece(piece)
             && ChessPiece.isWhite(piece) == isWhiteMove;
 
         if (!isFriendlyPiece) {
-            return Arrays.asList();
+            return count;
         }
 
         switch (ChessPiece.getType(piece)) {
             case ChessPiece.PAWN:
-                return getValidPawnMoves(board, isWhiteMove, from);
+                return getValidPawnMoves(board, isWhiteMove, from, moves, count);
             case ChessPiece.KNIGHT:
-                return getValidKnightMoves(board, isWhiteMove, from);
+                return getValidNonSlidingMoves(board, isWhiteMove, from, KNIGHT_DIRS, moves, count);
             case ChessPiece.BISHOP:
-                return getValidBishopMoves(board, isWhiteMove, from);
+                return getValidSlidingMoves(board, isWhiteMove, from, BISHOP_DIRS, moves, count);
             case ChessPiece.ROOK:
-                return getValidRookMoves(board, isWhiteMove, from);
+                return getValidSlidingMoves(board, isWhiteMove, from, ROOK_DIRS, moves, count);
             case ChessPiece.QUEEN:
-                return getValidQueenMoves(board, isWhiteMove, from);
+                return getValidSlidingMoves(board, isWhiteMove, from, QUEEN_DIRS, moves, count);
             case ChessPiece.KING:
-                return getValidKingMoves(board, isWhiteMove, from, isCastlingRecursion);
+                return getValidKingMoves(board, isWhiteMove, from, moves, count);
             default:
-                return Arrays.asList();
+                return count;
         }
     }
 
-    private static List<ChessMove> getPseudoLegalMoves(ChessBoard board, boolean isWhiteMove,
-        int from) {
-        return getPseudoLegalMoves(board, isWhiteMove, from, false);
-    }
-
     /*
-     * Gets valid moves, not checking for exposed king.
+     * Also used by the tablebase generator, to find the squares a piece could have come from.
      */
-    private static List<ChessMove> getPseudoLegalMoves(ChessBoard board, boolean isWhiteMove,
-        boolean isCastlingRecursion) {
-        List<ChessMove> moves = new ArrayList<ChessMove>(0);
-
-        for (int pos = 0; pos < 144; pos++) {
-            byte piece = board.getPiece(pos);
-            boolean isFriendlyPiece = ChessPiece.isPiece(piece)
-                && ChessPiece.isWhite(piece) == isWhiteMove;
-
-            if (isFriendlyPiece) {
-                moves.addAll(getPseudoLegalMoves(board, isWhiteMove, pos, isCastlingRecursion));
-            }
-        }
-
-        return moves;
-    }
-
-    private static List<ChessMove> getPseudoLegalMoves(ChessBoard board, boolean isWhiteMove) {
-        return getPseudoLegalMoves(board, isWhiteMove, false);
+    static List<ChessMove> getPseudoLegalMoves(ChessBoard board, boolean isWhiteMove,
+        int from) {
+        int[] moves = new int[MAX_MOVES];
+        return toMoveList(board, moves, getPseudoLegalMoves(board, isWhiteMove, from, moves, 0));
     }
 
     // VALID 1D MOVE DIRECTIONS FOR EACH PIECE TYPE
 
-    private static final int[] WHITE_PAWN_FORWARD_DIRS = new int[] {-12}; 
-    private static final int[] BLACK_PAWN_FORWARD_DIRS = new int[] {12};
-    private static final int[] WHITE_PAWN_DIAGONAL_DIRS = new int[] {-11, -13};
-    private static final int[] BLACK_PAWN_DIAGONAL_DIRS = new int[] {11, 13}; 
     private static final int[] KNIGHT_DIRS = new int[] {-23, -25, -14, -10, 10, 14, 23, 25};
     private static final int[] BISHOP_DIRS = new int[] {-13, -11, 11, 13};
     private static final int[] ROOK_DIRS = new int[] {-12, -1, 1, 12};
@@ -197,159 +253,124 @@ public class ChessRules {
     // POSITIONS FOR CASTLING
 
     private static final int CASTLING_WHITE_KING_TO = new ChessPosition("g1").get1D();
-    private static final int CASTLING_WHITE_KING_ROOK_FROM = new ChessPosition("h1").get1D();
     private static final int CASTLING_WHITE_KING_ROOK_TO = new ChessPosition("f1").get1D();
 
     private static final int CASTLING_BLACK_KING_TO = new ChessPosition("g8").get1D();
-    private static final int CASTLING_BLACK_KING_ROOK_FROM = new ChessPosition("h8").get1D();
     private static final int CASTLING_BLACK_KING_ROOK_TO = new ChessPosition("f8").get1D();
 
     private static final int CASTLING_WHITE_QUEEN_TO = new ChessPosition("c1").get1D();
-    private static final int CASTLING_WHITE_QUEEN_ROOK_FROM = new ChessPosition("a1").get1D();
     private static final int CASTLING_WHITE_QUEEN_ROOK_TO = new ChessPosition("d1").get1D();
     private static final int CASTLING_WHITE_QUEEN_BLOCKING = new ChessPosition("b1").get1D();
 
     private static final int CASTLING_BLACK_QUEEN_TO = new ChessPosition("c8").get1D();
-    private static final int CASTLING_BLACK_QUEEN_ROOK_FROM = new ChessPosition("a8").get1D();
     private static final int CASTLING_BLACK_QUEEN_ROOK_TO = new ChessPosition("d8").get1D();
     private static final int CASTLING_BLACK_QUEEN_BLOCKING =  new ChessPosition("b8").get1D();
 
     // METHODS FOR EACH PIECE TYPE
 
-    private static List<ChessMove> getValidPawnMoves(ChessBoard board, boolean isWhiteMove,
-        int from) {
-        int[] forwardDirs = isWhiteMove ? WHITE_PAWN_FORWARD_DIRS : BLACK_PAWN_FORWARD_DIRS;
-        int[] diagDirs = isWhiteMove ? WHITE_PAWN_DIAGONAL_DIRS : BLACK_PAWN_DIAGONAL_DIRS;
+    private static int getValidPawnMoves(ChessBoard board, boolean isWhiteMove, int from,
+        int[] moves, int count) {
+        int forward = isWhiteMove ? -12 : 12;
+        int startingRow = isWhiteMove ? 8 : 3;
 
         // forward non-capture
-        List<ChessMove> moves = getValidNonSlidingMoves(board, isWhiteMove, from, forwardDirs, true,
-            false);
+        int to = from + forward;
+        if (ChessPiece.isEmpty(board.getPiece(to))) {
+            count = addPawnMove(from, to, moves, count);
 
-        // diagonal capture
-        moves.addAll(getValidNonSlidingMoves(board, isWhiteMove, from, diagDirs, false, true));
-
-        // replace with promotion moves if at end row
-        List<ChessMove> newMoves = new ArrayList<ChessMove>(0);
-        for (ChessMove move : moves) {
-            // if at any end
-            if (move.to1D / 12 == 2 || move.to1D / 12 == 9) {
-                newMoves.add(board.new PromotionMove(move.from1D, move.to1D, ChessPiece.QUEEN));
-                newMoves.add(board.new PromotionMove(move.from1D, move.to1D, ChessPiece.ROOK));
-                newMoves.add(board.new PromotionMove(move.from1D, move.to1D, ChessPiece.BISHOP));
-                newMoves.add(board.new PromotionMove(move.from1D, move.to1D, ChessPiece.KNIGHT));
-            } else {
-                newMoves.add(move);
+            // double move, if two spaces ahead is empty too
+            if (from / 12 == startingRow && ChessPiece.isEmpty(board.getPiece(to + forward))) {
+                moves[count++] = ChessBoard.encode(from, to + forward, ChessPiece.EMPTY);
             }
         }
-        moves = newMoves;
-
-        // double move
-        int forward = isWhiteMove ? -12 : 12;
-        int startingRow = isWhiteMove ? 8 : 3;
-
-        boolean clearForDoubleMove = from / 12 == startingRow // in starting row
-            && ChessPiece.isEmpty(board.getPiece(from + forward)) // one space ahead is empty
-            && ChessPiece.isEmpty(board.getPiece(from + 2 * forward)); // two spaces ahead is empty
 
-        if (clearForDoubleMove) {
-            int enPassantTarget = from + forward;
-            int to = from + 2 * forward;
-            moves.add(board.new PawnDoubleMove(from, to, enPassantTarget));
+        // diagonal capture
+        for (int side = -1; side <= 1; side += 2) {
+            byte piece = board.getPiece(to + side);
+            if (ChessPiece.isPiece(piece) && ChessPiece.isWhite(piece) != isWhiteMove) {
+                count = addPawnMove(from, to + side, moves, count);
+            }
         }
 
-        int enPassantTarget1D = board.getEnPassantTarget1D();
         // en passant
-        if (enPassantTarget1D != -1) {
-
-            // 2 options for forward diagonal difference
-            int diffA = isWhiteMove ? -13 : 13;
-            int diffB = isWhiteMove ? -11 : 11;
-
-            if (from + diffA == enPassantTarget1D || from + diffB == enPassantTarget1D) {
-                int to = enPassantTarget1D;
-                int captuedPawn = to - forward; // 1 behind en passant target
-                moves.add(board.new EnPassantMove(from, to, captuedPawn));
-            }
+        int enPassantTarget1D = board.getEnPassantTarget1D();
+        if (enPassantTarget1D != -1
+            && (to - 1 == enPassantTarget1D || to + 1 == enPassantTarget1D)) {
+            moves[count++] = ChessBoard.encode(from, enPassantTarget1D, ChessPiece.EMPTY);
         }
 
-        return moves;
-    }
-
-    private static List<ChessMove> getValidKnightMoves(ChessBoard board, boolean isWhiteMove,
-        int from) {
-        return getValidNonSlidingMoves(board, isWhiteMove, from, KNIGHT_DIRS);
+        return count;
     }
 
-    private static List<ChessMove> getValidBishopMoves(ChessBoard board, boolean isWhiteMove,
-        int from) {
-        return getValidSlidingMoves(board, isWhiteMove, from, BISHOP_DIRS);
-    }
-
-    private static List<ChessMove> getValidRookMoves(ChessBoard board, boolean isWhiteMove,
-        int from) {
-        return getValidSlidingMoves(board, isWhiteMove, from, ROOK_DIRS);
-    }
-
-    private static List<ChessMove> getValidQueenMoves(ChessBoard board, boolean isWhiteMove,
-        int from) {
-        return getValidSlidingMoves(board, isWhiteMove, from, QUEEN_DIRS);
+    /*
+     * Adds a pawn move, replaced with promotion moves if at end row.
+     */
+    private static int addPawnMove(int from, int to, int[] moves, int count) {
+        if (to / 12 == 2 || to / 12 == 9) {
+            moves[count++] = ChessBoard.encode(from, to, ChessPiece.QUEEN);
+            moves[count++] = ChessBoard.encode(from, to, ChessPiece.ROOK);
+            moves[count++] = ChessBoard.encode(from, to, ChessPiece.BISHOP);
+            moves[count++] = ChessBoard.encode(from, to, ChessPiece.KNIGHT);
+        } else {
+            moves[count++] = ChessBoard.encode(from, to, ChessPiece.EMPTY);
+        }
+        return count;
     }
 
-    private static List<ChessMove> getValidKingMoves(ChessBoard board, boolean isWhiteMove,
-        int from, boolean isCastlingRecursion) {
-        List<ChessMove> moves =  getValidNonSlidingMoves(board, isWhiteMove, from, KING_DIRS);
+    private static int getValidKingMoves(ChessBoard board, boolean isWhiteMove, int from,
+        int[] moves, int count) {
+        count = getValidNonSlidingMoves(board, isWhiteMove, from, KING_DIRS, moves, count);
 
         // castling
-        CastlingAvailability castlingAvailability = board.getCastlingAvailability();
-
         // king being in starting position is embedded in castling availability
-        boolean canKingside = isWhiteMove ? castlingAvailability.whiteKingSide()
-            : castlingAvailability.blackKingSide();
-        boolean canQueenside = isWhiteMove ? castlingAvailability.whiteQueenSide()
-            : castlingAvailability.blackQueenSide();
+        int castlingRights = board.getCastlingRights();
+        boolean canKingside = (castlingRights & (isWhiteMove ? ChessBoard.WHITE_KING_SIDE
+            : ChessBoard.BLACK_KING_SIDE)) != 0;
+        boolean canQueenside = (castlingRights & (isWhiteMove ? ChessBoard.WHITE_QUEEN_SIDE
+            : ChessBoard.BLACK_QUEEN_SIDE)) != 0;
+        if (!canKingside && !canQueenside) {
+            return count;
+        }
+
+        // cannot castle out of check (the destination is checked like for any king move)
+        if (isUnderAttack(board, from, !isWhiteMove)) {
+            return count;
+        }
 
         int kingTo = isWhiteMove ? CASTLING_WHITE_KING_TO : CASTLING_BLACK_KING_TO;
-        int kingRookFrom = isWhiteMove ? CASTLING_WHITE_KING_ROOK_FROM
-            : CASTLING_BLACK_KING_ROOK_FROM;
         int kingRookTo = isWhiteMove ? CASTLING_WHITE_KING_ROOK_TO : CASTLING_BLACK_KING_ROOK_TO;
 
         int queenTo = isWhiteMove ? CASTLING_WHITE_QUEEN_TO : CASTLING_BLACK_QUEEN_TO;
-        int queenRookFrom = isWhiteMove ? CASTLING_WHITE_QUEEN_ROOK_FROM
-            : CASTLING_BLACK_QUEEN_ROOK_FROM;
         int queenRookTo = isWhiteMove ? CASTLING_WHITE_QUEEN_ROOK_TO : CASTLING_BLACK_QUEEN_ROOK_TO;
         int queenBlocking = isWhiteMove ? CASTLING_WHITE_QUEEN_BLOCKING
             : CASTLING_BLACK_QUEEN_BLOCKING;
 
         canKingside = canKingside
-            && !isCastlingRecursion
             && ChessPiece.isEmpty(board.getPiece(kingTo))
             && ChessPiece.isEmpty(board.getPiece(kingRookTo))
             && !isUnderAttack(board, kingRookTo, !isWhiteMove);
 
         canQueenside = canQueenside
-            && !isCastlingRecursion
             && ChessPiece.isEmpty(board.getPiece(queenTo))
             && ChessPiece.isEmpty(board.getPiece(queenRookTo))
             && ChessPiece.isEmpty(board.getPiece(queenBlocking))
             && !isUnderAttack(board, queenRookTo, !isWhiteMove);
 
         if (canKingside) {
-            moves.add(board.new CastlingMove(from, kingTo, kingRookFrom, kingRookTo));
+            moves[count++] = ChessBoard.encode(from, kingTo, ChessPiece.EMPTY);
         }
 
         if (canQueenside) {
-            moves.add(board.new CastlingMove(from, queenTo, queenRookFrom, queenRookTo));
+            moves[count++] = ChessBoard.encode(from, queenTo, ChessPiece.EMPTY);
         }
 
-        return moves;
+        return count;
     }
 
     // END OF METHODS FOR EACH PIECE TYPE
 
-    private static List<ChessMove> getValidSlidingMoves(ChessBoard board, boolean isWhiteMove,
-        int from, int[] directions) {
-        List<ChessMove> moves = new ArrayList<ChessMove>(0);
-
+    private static int getValidSlidingMoves(ChessBoard board, boolean isWhiteMove, int from,
+        int[] directions, int[] moves, int count) {
         for (int dir : directions) {
             int to = from + dir;
 
@@ -358,11 +379,11 @@ public class ChessRules {
 
                 // allow move to empty
                 if (ChessPiece.isEmpty(piece)) {
-                    moves.add(board.new ChessMove(from, to));
+                    moves[count++] = ChessBoard.encode(from, to, ChessPiece.EMPTY);
                 } else {
                     // allow capture enemy piece
                     if (ChessPiece.isPiece(piece) && (ChessPiece.isWhite(piece) != isWhiteMove)) {
-                        moves.add(board.new ChessMove(from, to));
+                        moves[count++] = ChessBoard.encode(from, to, ChessPiece.EMPTY);
                     }
                     // continue until blocked by piece or edge of board
                     break;
@@ -371,19 +392,12 @@ public class ChessRules {
             }
         }
 
-        return moves;
+        return count;
     }
 
-    // by default allow both moves to empty and capture since the only exception is pawn
-    private static List<ChessMove> getValidNonSlidingMoves(ChessBoard board, boolean isWhiteMove,
-        int from, int[] directions) {
-        return getValidNonSlidingMoves(board, isWhiteMove, from, directions, true, true);
-    }
-
-    private static List<ChessMove> getValidNonSlidingMoves(ChessBoard board, boolean isWhiteMove,
-        int from, int[] directions, boolean allowEmpty, boolean allowCapture) {
-        List<ChessMove> moves = new ArrayList<ChessMove>(0);
-
+    // allows both moves to empty and capture, pawns are handled separately
+    private static int getValidNonSlidingMoves(ChessBoard board, boolean isWhiteMove, int from,
+        int[] directions, int[] moves, int count) {
         for (int dir : directions) {
             int to = from + dir;
 
@@ -391,14 +405,13 @@ public class ChessRules {
                 byte piece = board.getPiece(to);
 
                 // allow empty or capture
-                if ((allowEmpty && ChessPiece.isEmpty(piece))
-                    || (allowCapture && ChessPiece.isPiece(piece)
-                    && (ChessPiece.isWhite(piece) != isWhiteMove))) {
-                    moves.add(board.new ChessMove(from, to));
+                if (ChessPiece.isEmpty(piece)
+                    || (ChessPiece.isPiece(piece) && (ChessPiece.isWhite(piece) != isWhiteMove))) {
+                    moves[count++] = ChessBoard.encode(from, to, ChessPiece.EMPTY);
                 }
             }
         }
 
-        return moves;
+        return count;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+package com.jekabsthomas.chess.engine;
+
+/**
+ * Precomputed knowledge about material combinations, indexed by a material key.
+ * The key is a mixed-radix number of piece counts which ChessBoard maintains incrementally,
+ *     so recognizing drawn material, the game phase or a won endgame is a single lookup.
+ * Bishops are counted by square color so that same-colored bishops can be recognized.
+ * Positions with more pieces of a kind than the key can count (after promotions)
+ *     have no key and get a neutral entry.
+ * @author Jekabs Gritans
+ */
+public class MaterialTable {
+    // key of positions that cannot be counted (see getKeyChange)
+    public static final int NONE = -1;
+
+    public static final int MAX_PHASE = 24; // all pieces on the board
+    public static final int NORMAL_SCALE = 64; // evaluation is not scaled
+
+    // piece kinds counted by the key, the piece types plus a separate dark-squared bishop
+    // LIGHT_BISHOP equals ChessPiece.BISHOP and kings are not counted
+    static final int LIGHT_BISHOP = ChessPiece.BISHOP;
+    static final int DARK_BISHOP = 7;
+    static final int NUM_KINDS = 8;
+
+    // the most pieces of each kind the key counts, more pawns are counted as the maximum
+    private static final int[] MAX_COUNTS = {0, 2, 2, 2, 2, 1, 0, 2};
+    private static final int[] PHASE_WEIGHTS = {0, 0, 1, 1, 2, 4, 0, 1};
+    // rough piece values in pawns, only for deciding whether material can win
+    private static final int[] UNITS = {0, 1, 3, 3, 5, 9, 0, 3};
+
+    // layout of an entry (from least significant bit):
+    // 5 bits phase, 1 bit drawn, 7 bits white scale, 7 bits black scale,
+    // 1 bit white mates bare king, 1 bit black mates bare king
+    private static final int DRAWN_BIT = 1 << 5;
+    private static final int WHITE_MATES_BIT = 1 << 20;
+    private static final int BLACK_MATES_BIT = 1 << 21;
+    private static final int NEUTRAL_ENTRY = MAX_PHASE | NORMAL_SCALE << 6 | NORMAL_SCALE << 13;
+
+    // weight of each counted piece in the key, white kinds first then black
+    private static final int[] KEY_WEIGHTS = new int[2 * NUM_KINDS];
+    private static final int[] table;
+
+    static {
+        int weight = 1;
+        for (int slot = 0; slot < 2 * NUM_KINDS; slot++) {
+            KEY_WEIGHTS[slot] = weight;
+            weight *= MAX_COUNTS[slot % NUM_KINDS] + 1;
+        }
+
+        table = new int[weight];
+        int[] counts = new int[2 * NUM_KINDS];
+        for (int key = 0; key < table.length; key++) {
+            int rest = key;
+            for (int slot = 0; slot < counts.length; slot++) {
+                int radix = MAX_COUNTS[slot % NUM_KINDS] + 1;
+                counts[slot] = rest % radix;
+                rest /= radix;
+            }
+            table[key] = computeEntry(counts);
+        }
+    }
+
+    /**
+     * Gets the entry of a material key.
+     * @param materialKey the material key of a board (see ChessBoard.getMaterialKey)
+     * @return the packed entry
+     */
+    public static int probe(int materialKey) {
+        return materialKey == NONE ? NEUTRAL_ENTRY : table[materialKey];
+    }
+
+    /**
+     * Gets the game phase of an entry.
+     * @param entry the packed entry
+     * @return 0 (only kings and pawns) to MAX_PHASE (all pieces)
+     */
+    public static int getPhase(int entry) {
+        return entry & 31;
+    }
+
+    /**
+     * Checks whether neither side has enough material to checkmate.
+     * @param entry the packed entry
+     * @return true if the game is drawn
+     */
+    public static boolean isDrawn(int entry) {
+        return (entry & DRAWN_BIT) != 0;
+    }
+
+    /**
+     * Gets how much an advantage of one side is worth, e.g. less with opposite-colored bishops.
+     * @param entry the packed entry
+     * @param isWhite whether to get the scale of white's advantage
+     * @return the scale, NORMAL_SCALE if the advantage counts fully
+     */
+    public static int getScale(int entry, boolean isWhite) {
+        return (entry >>> (isWhite ? 6 : 13)) & 127;
+    }
+
+    /**
+     * Checks whether a side can force mate against a bare king,
+     *     in which case the king should be driven to the edge.
+     * @param entry the packed entry
+     * @param isWhite whether to check white
+     * @return true if the side is mating a bare king
+     */
+    public static boolean isMatingBareKing(int entry, boolean isWhite) {
+        return (entry & (isWhite ? WHITE_MATES_BIT : BLACK_MATES_BIT)) != 0;
+    }
+
+    /**
+     * Gets the count slot of a piece, which depends on the square color for bishops.
+     * @param piece the piece
+     * @param pos1D the 1D position of the piece
+     * @return the slot, white kinds then black kinds
+     */
+    static int getSlot(byte piece, int pos1D) {
+        int kind = ChessPiece.getType(piece);
+        if (kind == ChessPiece.BISHOP && (pos1D / 12 + pos1D % 12) % 2 == 1) {
+            kind = DARK_BISHOP;
+        }
+        return ChessPiece.isWhite(piece) ? kind : NUM_KINDS + kind;
+    }
+
+    /**
+     * Gets the change of the material key when a count changes.
+     * @param slot the count slot
+     * @param oldCount the count before
+     * @param newCount the count after
+     * @return the change of the key
+     */
+    static int getKeyChange(int slot, int oldCount, int newCount) {
+        int max = MAX_COUNTS[slot % NUM_KINDS];
+        return (Math.min(newCount, max) - Math.min(oldCount, max)) * KEY_WEIGHTS[slot];
+    }
+
+    /**
+     * Checks whether a count is too large for the key to represent.
+     * Extra pawns are fine, since the table only cares about having a few pawns.
+     * @param slot the count slot
+     * @param count the count
+     * @return true if the count is too large
+     */
+    static boolean isUncountable(int slot, int count) {
+        int kind = slot % NUM_KINDS;
+        return kind != ChessPiece.PAWN && kind != ChessPiece.KING && count > MAX_COUNTS[kind];
+    }
+
+    private static int computeEntry(int[] counts) {
+        int phase = 0;
+        for (int slot = 0; slot < counts.length; slot++) {
+            phase += counts[slot] * PHASE_WEIGHTS[slot % NUM_KINDS];
+        }
+
+        int entry = Math.min(phase, MAX_PHASE);
+        if (isDrawn(counts)) {
+            return entry | DRAWN_BIT;
+        }
+
+        entry |= computeScale(counts, 0) << 6 | computeScale(counts, NUM_KINDS) << 13;
+        if (isMatingBareKing(counts, 0)) {
+            entry |= WHITE_MATES_BIT;
+        }
+        if (isMatingBareKing(counts, NUM_KINDS)) {
+            entry |= BLACK_MATES_BIT;
+        }
+        return entry;
+    }
+
+    /*
+     * No pawns, rooks or queens, and either at most one minor piece each
+     * or only bishops that are all on the same square color.
+     */
+    private static boolean isDrawn(int[] counts) {
+        for (int side = 0; side < 2 * NUM_KINDS; side += NUM_KINDS) {
+            if (counts[side + ChessPiece.PAWN] + counts[side + ChessPiece.ROOK]
+                + counts[side + ChessPiece.QUEEN] > 0) {
+                return false;
+            }
+        }
+
+        if (countMinors(counts, 0) <= 1 && countMinors(counts, NUM_KINDS) <= 1) {
+            return true;
+        }
+
+        int knights = counts[ChessPiece.KNIGHT] + counts[NUM_KINDS + ChessPiece.KNIGHT];
+        int lightBishops = counts[LIGHT_BISHOP] + counts[NUM_KINDS + LIGHT_BISHOP];
+        int darkBishops = counts[DARK_BISHOP] + counts[NUM_KINDS + DARK_BISHOP];
+        return knights == 0 && (lightBishops == 0 || darkBishops == 0);
+    }
+
+    /*
+     * Scale of one side's advantage.
+     * Without pawns a side needs a clear material advantage to win,
+     * and opposite-colored bishop endings are often drawn.
+     */
+    private static int computeScale(int[] counts, int side) {
+        int enemy = NUM_KINDS - side;
+        if (counts[side + ChessPiece.PAWN] == 0) {
+            int units = countPieceUnits(counts, side);
+            if (units - countPieceUnits(counts, enemy) <= UNITS[ChessPiece.BISHOP]) {
+                return units < UNITS[ChessPiece.ROOK] ? 0 : NORMAL_SCALE / 4;
+            }
+            // two knights cannot force mate
+            if (units == 2 * UNITS[ChessPiece.KNIGHT] && counts[side + ChessPiece.KNIGHT] == 2
+                && counts[enemy + ChessPiece.PAWN] == 0) {
+                return 0;
+            }
+        }
+
+        if (isOnlyBishop(counts, side) && isOnlyBishop(counts, enemy)
+            && counts[side + LIGHT_BISHOP] != counts[enemy + LIGHT_BISHOP]) {
+            return NORMAL_SCALE / 2;
+        }
+        return NORMAL_SCALE;
+    }
+
+    /*
+     * The other side has a bare king and this side has mating material without needing pawns.
+     */
+    private static boolean isMatingBareKing(int[] counts, int side) {
+        int enemy = NUM_KINDS - side;
+        if (countPieceUnits(counts, enemy) > 0 || counts[enemy + ChessPiece.PAWN] > 0) {
+            return false;
+        }
+
+        return counts[side + ChessPiece.QUEEN] + counts[side + ChessPiece.ROOK] > 0
+            || counts[side + LIGHT_BISHOP] > 0 && counts[side + DARK_BISHOP] > 0
+            || counts[side + ChessPiece.KNIGHT] > 0
+                && counts[side + LIGHT_BISHOP] + counts[side + DARK_BISHOP] > 0;
+    }
+
+    private static boolean isOnlyBishop(int[] counts, int side) {
+        return countMinors(counts, side) == 1 && counts[side + ChessPiece.KNIGHT] == 0
+            && counts[side + ChessPiece.ROOK] + counts[side + ChessPiece.QUEEN] == 0;
+    }
+
+    private static int countMinors(int[] counts, int side) {
+        return counts[side + ChessPiece.KNIGHT] + counts[side + LIGHT_BISHOP]
+            + counts[side + DARK_BISHOP];
+    }
+
+    // value of the non-pawn pieces of a side
+    private static int countPieceUnits(int[] counts, int side) {
+        int units = 0;
+        for (int kind = ChessPiece.KNIGHT; kind < NUM_KINDS; kind++) {
+            units += counts[side + kind] * UNITS[kind];
+        }
+        return units;
+    }
+}
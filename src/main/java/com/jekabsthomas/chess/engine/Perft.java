@@ -0,0 +1,391 @@
+package com.jekabsthomas.chess.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the game tree to a fixed depth (perft).
+ * Comparing the counts with known results verifies the move generation,
+ *     including the rare special moves deep in the tree.
+ * Moves are made and taken back on a private copy of the board,
+ *     and at the last ply the legal moves are only counted, not played (bulk counting).
+ * The tree can also be counted in parallel by fork/join tasks with their own board copies,
+ *     which should give exactly the same counts (and stresses the generator's thread safety).
+ * With a PerftTable, the counts of transposed subtrees are looked up instead of recounted.
+ * Data from https://www.chessprogramming.org/Perft_Results
+ * @author Jekabs Gritans
+ */
+public class Perft {
+    public static final int DEFAULT_SUITE_DEPTH = 5;
+
+    // parallel tasks: subtrees this shallow are counted by a single task,
+    // deeper ones are split until there are enough tasks per thread to balance the load
+    private static final int SERIAL_DEPTH = 3;
+    private static final int TASKS_PER_THREAD = 16;
+
+    private static final ZobristHash zobristHash = new ZobristHash();
+
+    /**
+     * A position with known perft results.
+     * @param fen the position
+     * @param nodes the number of leaf nodes at every depth, index 0 is depth 1
+     */
+    public record SuitePosition(String fen, long... nodes) {
+        /**
+         * Gets the deepest depth with a known result.
+         * @return the depth
+         */
+        public int getMaxDepth() {
+            return nodes.length;
+        }
+    }
+
+    public static final List<SuitePosition> SUITE = List.of(
+        new SuitePosition("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            20, 400, 8902, 197281, 4865609, 119060324),
+        new SuitePosition("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            48, 2039, 97862, 4085603, 193690690),
+        new SuitePosition("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            14, 191, 2812, 43238, 674624, 11030083),
+        new SuitePosition("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            6, 264, 9467, 422333, 15833292),
+        new SuitePosition("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            44, 1486, 62379, 2103487, 89941194),
+        new SuitePosition(
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            46, 2079, 89890, 3894594, 164075551)
+    );
+
+    private final ChessBoard board;
+    private final PerftTable table; // null if subtrees are not cached
+    private boolean isWhiteMove;
+    private int[][] moves = new int[0][]; // per ply, grown to the deepest call
+
+    /**
+     * Creates a perft counter for a position. The game itself is never changed.
+     * @param game the position to count from
+     */
+    public Perft(ChessGame game) {
+        this(game, null);
+    }
+
+    /**
+     * Creates a perft counter for a position that caches subtree counts.
+     * The game itself is never changed.
+     * @param game the position to count from
+     * @param table the table of subtree counts, may be shared with other counters,
+     *     or null to count every subtree
+     */
+    public Perft(ChessGame game, PerftTable table) {
+        this(game.getBoard(), game.isWhiteMove(), table);
+    }
+
+    private Perft(ChessBoard board, boolean isWhiteMove, PerftTable table) {
+        this.board = new ChessBoard(board, false); // never evaluated
+        this.isWhiteMove = isWhiteMove;
+        this.table = table;
+    }
+
+    /**
+     * Counts the leaf nodes of the game tree.
+     * Positions where the game ended on the board (mate or stalemate) have no children,
+     *     draws by rule are not checked, as is usual for perft.
+     * @param depth the number of plies, at least 0
+     * @return the number of positions reached after exactly depth plies
+     */
+    public long perft(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Depth must be at least 0");
+        }
+        if (depth == 0) {
+            return 1;
+        }
+        ensurePlies(depth);
+        return count(depth, 0);
+    }
+
+    /**
+     * Counts the leaf nodes below every legal move, for finding which move
+     *     a generator disagrees about with another (divide).
+     * @param depth the number of plies including the root moves, at least 1
+     * @return the counts by move in UCI notation, in generation order
+     */
+    public Map<String, Long> divide(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1");
+        }
+        ensurePlies(depth);
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        int[] rootMoves = moves[0];
+        int count = ChessRules.getLegalMoves(board, isWhiteMove, rootMoves);
+        for (int i = 0; i < count; i++) {
+            int move = rootMoves[i];
+            int undo = makeMove(move);
+            counts.put(ChessBoard.toUci(move), depth == 1 ? 1 : count(depth - 1, 1));
+            undoMove(move, undo);
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the leaf nodes of the game tree in parallel, see perft(int).
+     * @param depth the number of plies, at least 0
+     * @param pool the pool to run the tasks in
+     * @return the number of positions reached after exactly depth plies
+     */
+    public long perft(int depth, ForkJoinPool pool) {
+        if (depth <= SERIAL_DEPTH) {
+            return perft(depth);
+        }
+        return pool.invoke(new PerftTask(board, isWhiteMove, table, depth, 1,
+            pool.getParallelism()));
+    }
+
+    /**
+     * Counts the leaf nodes below every legal move in parallel, see divide(int).
+     * @param depth the number of plies including the root moves, at least 1
+     * @param pool the pool to run the tasks in
+     * @return the counts by move in UCI notation, in generation order
+     */
+    public Map<String, Long> divide(int depth, ForkJoinPool pool) {
+        if (depth <= SERIAL_DEPTH) {
+            return divide(depth);
+        }
+
+        int[] rootMoves = new int[ChessRules.MAX_MOVES];
+        int count = ChessRules.getLegalMoves(board, isWhiteMove, rootMoves);
+        List<PerftTask> tasks = PerftTask.split(board, isWhiteMove, table, rootMoves, count,
+            depth - 1, count, pool.getParallelism());
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                invokeAll(tasks);
+                return null;
+            }
+        });
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            counts.put(ChessBoard.toUci(rootMoves[i]), tasks.get(i).join());
+        }
+        return counts;
+    }
+
+    private long count(int depth, int ply) {
+        int[] plyMoves = moves[ply];
+        if (depth == 1) {
+            return ChessRules.getLegalMoves(board, isWhiteMove, plyMoves);
+        }
+
+        // a bulk count at depth 1 is cheaper than a lookup
+        long hash = 0;
+        if (table != null) {
+            hash = zobristHash.getHash(board, isWhiteMove);
+            long nodes = table.probe(hash, depth);
+            if (nodes != PerftTable.NONE) {
+                return nodes;
+            }
+        }
+
+        int count = ChessRules.getLegalMoves(board, isWhiteMove, plyMoves);
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            int undo = makeMove(move);
+            nodes += count(depth - 1, ply + 1);
+            undoMove(move, undo);
+        }
+
+        if (table != null) {
+            table.store(hash, depth, nodes);
+        }
+        return nodes;
+    }
+
+    private int makeMove(int move) {
+        int undo = board.makeMove(move);
+        isWhiteMove = !isWhiteMove;
+        return undo;
+    }
+
+    private void undoMove(int move, int undo) {
+        board.undoMove(move, undo);
+        isWhiteMove = !isWhiteMove;
+    }
+
+    private void ensurePlies(int depth) {
+        if (moves.length < depth) {
+            moves = new int[depth][ChessRules.MAX_MOVES];
+        }
+    }
+
+    /**
+     * Counts a subtree, either by itself or by splitting it into a task per move.
+     */
+    private static class PerftTask extends RecursiveTask<Long> {
+        private final ChessBoard board;
+        private final boolean isWhiteMove;
+        private final PerftTable table;
+        private final int depth;
+        private final int tasks; // the number of tasks at this task's level of the tree
+        private final int threads;
+
+        /**
+         * Creates a task.
+         * @param board the position, copied by the task
+         * @param isWhiteMove whether it is white's move
+         * @param table the table of subtree counts, or null
+         * @param depth the number of plies to count, at least 1
+         * @param tasks the number of tasks at this task's level of the tree
+         * @param threads the number of threads to balance the tasks over
+         */
+        PerftTask(ChessBoard board, boolean isWhiteMove, PerftTable table, int depth, int tasks,
+            int threads) {
+            this.board = new ChessBoard(board, false);
+            this.isWhiteMove = isWhiteMove;
+            this.table = table;
+            this.depth = depth;
+            this.tasks = tasks;
+            this.threads = threads;
+        }
+
+        @Override
+        protected Long compute() {
+            if (depth <= SERIAL_DEPTH || tasks >= threads * TASKS_PER_THREAD) {
+                return new Perft(board, isWhiteMove, table).perft(depth);
+            }
+
+            int[] moves = new int[ChessRules.MAX_MOVES];
+            int count = ChessRules.getLegalMoves(board, isWhiteMove, moves);
+            List<PerftTask> children = split(board, isWhiteMove, table, moves, count, depth - 1,
+                tasks * count, threads);
+            long nodes = 0;
+            for (PerftTask child : invokeAll(children)) {
+                nodes += child.join();
+            }
+            return nodes;
+        }
+
+        /**
+         * Creates a task for the subtree of every move.
+         * @param board the position
+         * @param isWhiteMove whether it is white's move
+         * @param table the table of subtree counts, or null
+         * @param moves the legal moves
+         * @param count the number of legal moves
+         * @param depth the depth below the moves, at least 1
+         * @param tasks the number of tasks at the level of the created tasks
+         * @param threads the number of threads
+         * @return the tasks in the order of the moves
+         */
+        static List<PerftTask> split(ChessBoard board, boolean isWhiteMove, PerftTable table,
+            int[] moves, int count, int depth, int tasks, int threads) {
+            List<PerftTask> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int undo = board.makeMove(moves[i]);
+                children.add(new PerftTask(board, !isWhiteMove, table, depth, tasks, threads));
+                board.undoMove(moves[i], undo);
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Runs perft from the command line, either divide on one position
+     *     or the whole suite as a regression test of the move generation.
+     * @param args options -depth N, -fen FEN (the starting position by default), -suite
+     *     -threads N (all cores by default) and -hash MB (the size of the table of subtree counts,
+     *     none by default)
+     */
+    public static void main(String[] args) {
+        int depth = -1;
+        String fen = SUITE.get(0).fen();
+        boolean isSuite = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hashMb = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-depth" -> depth = Integer.parseInt(args[++i]);
+                case "-fen" -> fen = args[++i];
+                case "-suite" -> isSuite = true;
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-hash" -> hashMb = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        if (!isSuite && depth < 1) {
+            System.out.println("Usage: perft -depth N [-fen FEN] [-threads N] [-hash MB]"
+                + " | perft -suite [-depth N] [-threads N] [-hash MB]");
+            return;
+        }
+
+        PerftTable table = hashMb > 0 ? new PerftTable(hashMb) : null;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            if (isSuite) {
+                boolean passed = runSuite(depth == -1 ? DEFAULT_SUITE_DEPTH : depth, pool,
+                    table);
+                System.out.println(passed ? "All results match" : "Some results do not match");
+                if (!passed) {
+                    System.exit(1);
+                }
+            } else {
+                runDivide(fen, depth, pool, table);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void runDivide(String fen, int depth, ForkJoinPool pool, PerftTable table) {
+        long start = System.nanoTime();
+        Map<String, Long> counts = new Perft(new ChessGame(fen), table).divide(depth, pool);
+        long timeMs = (System.nanoTime() - start) / 1_000_000;
+
+        long nodes = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+            nodes += entry.getValue();
+        }
+        System.out.println();
+        System.out.println("Moves           : " + counts.size());
+        System.out.println("Nodes           : " + nodes);
+        System.out.println("Time (ms)       : " + timeMs);
+        System.out.println("Nodes/second    : " + getNodesPerSecond(nodes, timeMs));
+    }
+
+    private static boolean runSuite(int maxDepth, ForkJoinPool pool, PerftTable table) {
+        boolean passed = true;
+        long totalNodes = 0;
+        long totalTimeMs = 0;
+        for (SuitePosition position : SUITE) {
+            System.out.println(position.fen());
+            Perft perft = new Perft(new ChessGame(position.fen()), table);
+            for (int depth = 1; depth <= Math.min(maxDepth, position.getMaxDepth()); depth++) {
+                long start = System.nanoTime();
+                long nodes = perft.perft(depth, pool);
+                long timeMs = (System.nanoTime() - start) / 1_000_000;
+                long expected = position.nodes()[depth - 1];
+                passed &= nodes == expected;
+                totalNodes += nodes;
+                totalTimeMs += timeMs;
+                System.out.printf("  depth %d: %12d nodes %7d ms %10d nps %s%n", depth, nodes,
+                    timeMs, getNodesPerSecond(nodes, timeMs),
+                    nodes == expected ? "ok" : "expected " + expected);
+            }
+        }
+        System.out.printf("%d nodes in %d ms, %d nps%n", totalNodes, totalTimeMs,
+            getNodesPerSecond(totalNodes, totalTimeMs));
+        return passed;
+    }
+
+    private static long getNodesPerSecond(long nodes, long timeMs) {
+        return timeMs == 0 ? 0 : nodes * 1000 / timeMs;
+    }
+}
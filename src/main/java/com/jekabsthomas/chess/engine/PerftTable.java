@@ -0,0 +1,100 @@
+package com.jekabsthomas.chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size table of perft subtree counts keyed by (Zobrist hash, depth),
+ *     so that transposed positions are only counted once.
+ * Like the bot's transposition table it is lockless, so parallel perft tasks can share it:
+ *     the key is stored xor-ed with the data, so a torn write
+ *     (key of one entry, data of another) simply fails verification on probe.
+ * A wrong count can thus only come from two positions with the same 64-bit hash,
+ *     which deep hashed runs against the known results would reveal.
+ * @author Jekabs Gritans
+ */
+public class PerftTable {
+    // returned by probe if the subtree is not in the table
+    public static final long NONE = -1;
+
+    // layout of the data: 6 bits depth, 58 bits count
+    private static final int DEPTH_BITS = 6;
+    private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+    private static final int BYTES_PER_ENTRY = 16; // key + data
+
+    // spreads the depths of one position over different entries
+    private static final long DEPTH_MIX = 0x9E3779B97F4A7C15L;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * Creates a perft table.
+     * The number of entries is the largest power of two that fits in the given size.
+     * @param sizeMb the maximum size of the table in megabytes
+     * @throws IllegalArgumentException if sizeMb is not positive
+     */
+    public PerftTable(int sizeMb) {
+        if (sizeMb <= 0) {
+            throw new IllegalArgumentException("Table size must be positive");
+        }
+
+        long maxEntries = (long) sizeMb * 1024 * 1024 / BYTES_PER_ENTRY;
+        int numEntries = Integer.highestOneBit((int) Math.min(maxEntries, 1 << 30));
+        keys = new long[numEntries];
+        data = new long[numEntries];
+        mask = numEntries - 1;
+    }
+
+    /**
+     * Looks up the count of a subtree.
+     * @param hash the Zobrist hash of the position
+     * @param depth the depth of the subtree
+     * @return the number of leaf nodes, or NONE if not found
+     */
+    public long probe(long hash, int depth) {
+        int index = getIndex(hash, depth);
+        long entryData = data[index];
+        if ((keys[index] ^ entryData) != hash || (entryData & MAX_DEPTH) != depth) {
+            return NONE;
+        }
+        return entryData >>> DEPTH_BITS;
+    }
+
+    /**
+     * Stores the count of a subtree, replacing whatever was in its entry.
+     * @param hash the Zobrist hash of the position
+     * @param depth the depth of the subtree, at most 63
+     * @param nodes the number of leaf nodes
+     */
+    public void store(long hash, int depth, long nodes) {
+        if (depth > MAX_DEPTH) {
+            return;
+        }
+
+        int index = getIndex(hash, depth);
+        long entryData = nodes << DEPTH_BITS | depth;
+        data[index] = entryData;
+        keys[index] = hash ^ entryData;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Gets the number of entries of the table.
+     * @return the number of entries
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    private int getIndex(long hash, int depth) {
+        return (int) (hash ^ depth * DEPTH_MIX) & mask;
+    }
+}
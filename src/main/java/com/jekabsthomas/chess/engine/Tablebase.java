@@ -0,0 +1,634 @@
+package com.jekabsthomas.chess.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Endgame tablebase: exact results of positions with few pieces (see TablebaseGenerator).
+ * Every ending (e.g. KQK, king and queen against king) is a table with an entry
+ *     for every placement of its pieces and player to move.
+ * A table is stored as a WDL file (win/draw/loss, 2 bits per position)
+ *     and a DTM file (plies to mate, 1 byte per position).
+ * Files are memory-mapped, so they are only read from disk as far as they are probed
+ *     and their pages are shared by all engines of the process.
+ * Endings with the colors swapped (e.g. KKQ) are probed by mirroring the board.
+ * Positions that are mirror images of each other share an entry, which leaves
+ *     462 placements of the kings without pawns and 1806 with pawns (see Table).
+ * Positions with castling or en passant rights are not in the tables.
+ * @author Jekabs Gritans
+ */
+public class Tablebase {
+    public static final int MAX_PIECES = 5;
+    public static final String WDL_EXTENSION = ".wdl";
+    public static final String DTM_EXTENSION = ".dtm";
+
+    // returned by probe if the position is not in any table
+    public static final int NOT_FOUND = -1;
+
+    // results from the perspective of the player to move (see getWdl)
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+
+    // distance of results only found in a WDL table (see getDistance)
+    public static final int UNKNOWN_DISTANCE = 255;
+
+    // file layout: magic, version, kind, number of positions (little-endian ints), entries
+    static final int MAGIC = 0x42544843; // "CHTB"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+    static final int WDL_KIND = 0;
+    static final int DTM_KIND = 1;
+
+    // DTM entries: 0 is a draw, odd n means the player to move mates in n plies,
+    // even n means the player to move is mated in n - 2 plies (win and loss distances
+    // always have this parity, so no bit is spent on the result)
+    static final int DTM_ILLEGAL = 255;
+    static final int MAX_DISTANCE = 251;
+
+    // WDL entries hold the result constants, or this for positions that cannot occur
+    static final int WDL_ILLEGAL = 3;
+
+    // placements of the kings that are kept, the others are mirror images of these
+    static final int PAWNLESS_KING_PAIRS = 462;
+    static final int PAWN_KING_PAIRS = 1806;
+
+    // symmetries (see transform): the bits to flip in a square, and whether to transpose it
+    static final int FLIP_FILES = 7;
+    static final int FLIP_RANKS = 56;
+    static final int TRANSPOSE = 64;
+
+    private static final String PIECE_ORDER = "QRBNP";
+
+    // by [hasPawns][whiteKing * 64 + blackKing] the king pair, -1 for placements not kept,
+    // and by [hasPawns][kingPair] the squares again
+    private static final int[][] KING_PAIRS = new int[2][64 * 64];
+    private static final int[][] KING_SQUARES = {
+        new int[PAWNLESS_KING_PAIRS], new int[PAWN_KING_PAIRS]};
+
+    static {
+        for (int pawns = 0; pawns < 2; pawns++) {
+            Arrays.fill(KING_PAIRS[pawns], -1);
+            int count = 0;
+            for (int whiteKing = 0; whiteKing < 64; whiteKing++) {
+                for (int blackKing = 0; blackKing < 64; blackKing++) {
+                    boolean isApart = Math.abs((whiteKing >>> 3) - (blackKing >>> 3)) > 1
+                        || Math.abs((whiteKing & 7) - (blackKing & 7)) > 1;
+                    if (isApart && getSymmetry(whiteKing, blackKing, pawns == 1) == 0) {
+                        KING_SQUARES[pawns][count] = whiteKing << 6 | blackKing;
+                        KING_PAIRS[pawns][whiteKing << 6 | blackKing] = count++;
+                    }
+                }
+            }
+        }
+    }
+
+    private volatile Table[] tables = new Table[0];
+    private volatile int maxPieces = 0;
+
+    /**
+     * Creates an empty tablebase.
+     */
+    public Tablebase() {
+    }
+
+    /**
+     * Opens all tables of a directory.
+     * If an ending has both files, distances are read from the DTM file.
+     * @param directory the directory with the table files
+     * @return the tablebase
+     * @throws IOException if a file cannot be read or is not a table
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        Map<String, Table> tables = new TreeMap<String, Table>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                boolean isWdl = fileName.endsWith(WDL_EXTENSION);
+                if (!isWdl && !fileName.endsWith(DTM_EXTENSION)) {
+                    continue;
+                }
+
+                String name = fileName.substring(0, fileName.length() - WDL_EXTENSION.length());
+                Table table = tables.computeIfAbsent(name, Table::new);
+                ByteBuffer data = map(file, isWdl ? WDL_KIND : DTM_KIND, table.size);
+                if (isWdl) {
+                    table.wdl = data;
+                } else {
+                    table.dtm = data;
+                }
+            }
+        }
+
+        Tablebase tablebase = new Tablebase();
+        for (Table table : tables.values()) {
+            tablebase.add(table);
+        }
+        return tablebase;
+    }
+
+    /**
+     * Maps a table file to memory and checks its header.
+     */
+    static ByteBuffer map(Path file, int kind, int positions) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long expectedSize = HEADER_BYTES
+                + (kind == WDL_KIND ? (positions + 3) / 4 : positions);
+            if (channel.size() != expectedSize) {
+                throw new IOException("Unexpected size of tablebase file " + file);
+            }
+
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || data.getInt(8) != kind
+                || data.getInt(12) != positions) {
+                throw new IOException("Invalid tablebase file " + file);
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Gets the table of an ending.
+     * @param name the name of the ending as generated, e.g. KQK
+     * @return the table, or null if the ending is not in the tablebase
+     */
+    Table getTable(String name) {
+        for (Table table : tables) {
+            if (table.name.equals(name)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a table, replacing a table of the same ending.
+     * @param table the table
+     */
+    synchronized void add(Table table) {
+        List<Table> newTables = new ArrayList<Table>(Arrays.asList(tables));
+        newTables.removeIf(other -> other.materialCode == table.materialCode);
+        newTables.add(table);
+
+        // probing threads never see a partially filled array
+        tables = newTables.toArray(new Table[0]);
+        maxPieces = Math.max(maxPieces, table.pieces.length);
+    }
+
+    /**
+     * Gets the endings of the tablebase.
+     * @return the names of the endings, e.g. KQK
+     */
+    public List<String> getEndings() {
+        List<String> endings = new ArrayList<String>();
+        for (Table table : tables) {
+            endings.add(table.name);
+        }
+        return endings;
+    }
+
+    /**
+     * Gets the largest number of pieces of an ending in the tablebase.
+     * Boards with more pieces are never found, so probing them costs nothing.
+     * @return the number of pieces, kings included
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Looks up the result of a position.
+     * Does not allocate, so it can be called in every node of a search.
+     * @param board the board
+     * @param isWhiteMove whether it is white's move
+     * @return the result (see getWdl and getDistance), or NOT_FOUND
+     */
+    public int probe(ChessBoard board, boolean isWhiteMove) {
+        if (board.getPieceCount() > maxPieces || board.getEnPassantTarget1D() != -1
+            || hasCastlingRights(board)) {
+            return NOT_FOUND;
+        }
+
+        long code = 0;
+        for (int pos1D = 0; pos1D < 144; pos1D++) {
+            byte piece = board.getPiece(pos1D);
+            if (ChessPiece.isPiece(piece)) {
+                code += getMaterialCode(piece);
+            }
+        }
+
+        for (Table table : tables) {
+            boolean isFlipped;
+            if (table.materialCode == code) {
+                isFlipped = false;
+            } else if (table.materialCode == flipColors(code)) {
+                isFlipped = true;
+            } else {
+                continue;
+            }
+
+            // with flipped colors black's pieces take white's slots, mirrored vertically,
+            // then the kings decide which mirror image is in the table
+            int whiteKing = 0;
+            int blackKing = 0;
+            for (int pos1D = 0; pos1D < 144; pos1D++) {
+                byte piece = board.getPiece(pos1D);
+                if (ChessPiece.isType(piece, ChessPiece.KING)) {
+                    int square = getSquare(pos1D, isFlipped);
+                    if (ChessPiece.isWhite(piece) != isFlipped) {
+                        whiteKing = square;
+                    } else {
+                        blackKing = square;
+                    }
+                }
+            }
+
+            int symmetry = getSymmetry(whiteKing, blackKing, table.hasPawns);
+            int kingPair = table.getKingPair(transform(whiteKing, symmetry),
+                transform(blackKing, symmetry));
+            if (kingPair < 0) {
+                return NOT_FOUND; // kings next to each other
+            }
+
+            // with both kings on the diagonal the position and its transposition are kept,
+            // the smaller index of the two is used
+            boolean isTransposable = !table.hasPawns && isOnDiagonal(whiteKing ^ symmetry)
+                && isOnDiagonal(blackKing ^ symmetry);
+            int index = (isWhiteMove != isFlipped ? 0 : 1)
+                | kingPair << getShift(table.pieces.length);
+            int transposedIndex = index;
+            int usedSlots = 3;
+            for (int pos1D = 0; pos1D < 144; pos1D++) {
+                byte piece = board.getPiece(pos1D);
+                if (!ChessPiece.isPiece(piece) || ChessPiece.isType(piece, ChessPiece.KING)) {
+                    continue;
+                }
+
+                int slot = table.getFreeSlot(isFlipped ? flipColor(piece) : piece, usedSlots);
+                usedSlots |= 1 << slot;
+                int square = getSquare(pos1D, isFlipped);
+                index |= transform(square, symmetry) << getShift(slot);
+                transposedIndex |= transform(square, symmetry | TRANSPOSE) << getShift(slot);
+            }
+            return table.probe(isTransposable ? Math.min(index, transposedIndex) : index);
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Gets whether the player to move wins, draws or loses.
+     * @param result the result of a probe
+     * @return WIN, DRAW or LOSS
+     */
+    public static int getWdl(int result) {
+        return result & 3;
+    }
+
+    /**
+     * Gets the number of plies until the game ends in mate with best play.
+     * @param result the result of a probe
+     * @return the number of plies, 0 for draws, UNKNOWN_DISTANCE if only the WDL is known
+     */
+    public static int getDistance(int result) {
+        return result >>> 2;
+    }
+
+    /**
+     * Packs a result.
+     * @param wdl WIN, DRAW or LOSS
+     * @param distance the number of plies to mate
+     * @return the result
+     */
+    static int toResult(int wdl, int distance) {
+        return wdl | distance << 2;
+    }
+
+    private static boolean hasCastlingRights(ChessBoard board) {
+        return board.getCastlingRights() != 0;
+    }
+
+    private static int getSquare(int pos1D, boolean isFlipped) {
+        int square = (pos1D / 12 - 2) * 8 + pos1D % 12 - 2;
+        return isFlipped ? square ^ 56 : square;
+    }
+
+    /**
+     * Gets the bit position of a piece's square within the index of a table.
+     * Bit 0 is the player to move (set for black), then 6 bits per slot after the kings'.
+     * The king pair is above them, at the shift of the slot after the last.
+     * @param slot the slot of the piece (see Table), not a king's
+     * @return the shift of the square
+     */
+    static int getShift(int slot) {
+        return 1 + 6 * (slot - 2);
+    }
+
+    /**
+     * Gets the symmetry that moves the kings to a placement kept in the tables:
+     *     the white king to the files a-d, and without pawns also to the ranks 5-8
+     *     (rows 0-3) below the diagonal, and the black king below the diagonal
+     *     if the white king is on it.
+     * If both kings end up on the diagonal, the transposition keeps them there
+     *     and the other pieces decide (see Table.getIndex).
+     * Pawns only move in one direction, so with pawns the board is only mirrored
+     *     horizontally.
+     * @param whiteKing the square of the white king
+     * @param blackKing the square of the black king
+     * @param hasPawns whether there are pawns
+     * @return the symmetry, 0 if the placement is kept
+     */
+    static int getSymmetry(int whiteKing, int blackKing, boolean hasPawns) {
+        int symmetry = (whiteKing & 7) > 3 ? FLIP_FILES : 0;
+        if (hasPawns) {
+            return symmetry;
+        }
+
+        if (whiteKing >>> 3 > 3) {
+            symmetry |= FLIP_RANKS;
+        }
+        whiteKing ^= symmetry;
+        blackKing ^= symmetry;
+        if ((whiteKing & 7) > whiteKing >>> 3
+            || (isOnDiagonal(whiteKing) && (blackKing & 7) > blackKing >>> 3)) {
+            symmetry |= TRANSPOSE;
+        }
+        return symmetry;
+    }
+
+    private static boolean isOnDiagonal(int square) {
+        return (square & 7) == square >>> 3;
+    }
+
+    /**
+     * Mirrors a square.
+     * @param square the square
+     * @param symmetry the symmetry (see getSymmetry)
+     * @return the mirrored square
+     */
+    static int transform(int square, int symmetry) {
+        square ^= symmetry & 63;
+        return (symmetry & TRANSPOSE) != 0 ? (square & 7) << 3 | square >>> 3 : square;
+    }
+
+    /**
+     * Gets the material code of a single piece, codes of all pieces of a board are summed.
+     * Every color and type has a 4 bit counter, white in the lower half.
+     */
+    private static long getMaterialCode(byte piece) {
+        int shift = (ChessPiece.isWhite(piece) ? 0 : 32) + 4 * ChessPiece.getType(piece);
+        return 1L << shift;
+    }
+
+    private static long flipColors(long code) {
+        return code << 32 | code >>> 32;
+    }
+
+    /**
+     * Swaps the color of a piece.
+     * @param piece the piece
+     * @return the piece of the other color
+     */
+    static byte flipColor(byte piece) {
+        return (byte) (piece ^ (ChessPiece.WHITE | ChessPiece.BLACK));
+    }
+
+    /**
+     * Gets the name of an ending in the form its table is generated in:
+     *     pieces sorted by value and the stronger side as white, e.g. KPKQ becomes KQKP.
+     * @param name the name of the ending, white's pieces first, both starting with the king
+     * @return the canonical name
+     * @throws IllegalArgumentException if the name is not an ending
+     */
+    public static String getCanonicalName(String name) {
+        byte[] pieces = parsePieces(name);
+        String white = "K";
+        String black = "K";
+        for (int i = 2; i < pieces.length; i++) {
+            char c = Character.toUpperCase(ChessPiece.getFenCharacter(pieces[i]));
+            if (ChessPiece.isWhite(pieces[i])) {
+                white += c;
+            } else {
+                black += c;
+            }
+        }
+
+        int whiteValue = getValue(white);
+        int blackValue = getValue(black);
+        boolean isSwapped = blackValue > whiteValue
+            || (blackValue == whiteValue && black.compareTo(white) > 0);
+        return isSwapped ? black + white : white + black;
+    }
+
+    private static int getValue(String side) {
+        int value = 0;
+        for (char c : side.toCharArray()) {
+            value += switch (c) {
+                case 'Q' -> 9;
+                case 'R' -> 5;
+                case 'B', 'N' -> 3;
+                case 'P' -> 1;
+                default -> 0;
+            };
+        }
+        return value;
+    }
+
+    /**
+     * Gets the pieces of an ending in slot order: white king, black king,
+     *     then white's other pieces by value, then black's other pieces by value.
+     * @param name the name of the ending, e.g. KRKP
+     * @return the pieces
+     * @throws IllegalArgumentException if the name is not an ending
+     */
+    static byte[] parsePieces(String name) {
+        int split = name.indexOf('K', 1);
+        if (!name.startsWith("K") || split < 0 || name.indexOf('K', split + 1) >= 0
+            || name.length() > MAX_PIECES) {
+            throw new IllegalArgumentException("Invalid ending " + name);
+        }
+
+        byte[] pieces = new byte[name.length()];
+        pieces[0] = ChessPiece.getPieceFromFenCharacter('K');
+        pieces[1] = ChessPiece.getPieceFromFenCharacter('k');
+        int slot = 2;
+        for (boolean isWhite : new boolean[] {true, false}) {
+            String side = isWhite ? name.substring(1, split) : name.substring(split + 1);
+            for (char type : PIECE_ORDER.toCharArray()) {
+                for (char c : side.toCharArray()) {
+                    if (PIECE_ORDER.indexOf(c) < 0) {
+                        throw new IllegalArgumentException("Invalid ending " + name);
+                    }
+                    if (c == type) {
+                        char fenCharacter = isWhite ? c : Character.toLowerCase(c);
+                        pieces[slot++] = ChessPiece.getPieceFromFenCharacter(fenCharacter);
+                    }
+                }
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * Table of a single ending.
+     * The index of a position has the player to move in bit 0, the square
+     *     (row * 8 + col, row 0 being the 8th rank) of every slot after the kings'
+     *     in 6 bits above it, and the king pair on top (see getShift).
+     * Only one mirror image of a position is stored, the one its kings decide
+     *     (see getSymmetry), so even a 5 piece table with pawns has less than 2^30 entries.
+     * Equal pieces have several slots, so their positions are stored once per permutation.
+     */
+    static class Table {
+        final String name;
+        final byte[] pieces; // by slot, see parsePieces
+        final boolean hasPawns;
+        final int size; // number of positions
+        final long materialCode;
+        ByteBuffer wdl = null;
+        ByteBuffer dtm = null;
+
+        /**
+         * Creates a table without data.
+         * @param name the name of the ending
+         * @throws IllegalArgumentException if the name is not an ending
+         */
+        Table(String name) {
+            this.name = name;
+            pieces = parsePieces(name);
+            hasPawns = name.indexOf('P') >= 0;
+            size = KING_SQUARES[hasPawns ? 1 : 0].length << getShift(pieces.length);
+
+            long code = 0;
+            for (byte piece : pieces) {
+                code += getMaterialCode(piece);
+            }
+            materialCode = code;
+        }
+
+        /**
+         * Gets the king pair of kings placed as kept in the table.
+         * @param whiteKing the square of the white king
+         * @param blackKing the square of the black king
+         * @return the king pair, or -1 if the kings are not placed as kept or next to
+         *     each other
+         */
+        int getKingPair(int whiteKing, int blackKing) {
+            return KING_PAIRS[hasPawns ? 1 : 0][whiteKing << 6 | blackKing];
+        }
+
+        /**
+         * Gets the index of a position, mirroring it as needed.
+         * Every position has a single index shared by all its mirror images: with both
+         *     kings on the diagonal the smaller index of the position and its
+         *     transposition is used, as probe does.
+         * @param squares the squares of the pieces by slot
+         * @param isWhiteMove whether it is white's move
+         * @return the index, or NOT_FOUND if the kings are next to each other
+         */
+        int getIndex(int[] squares, boolean isWhiteMove) {
+            int symmetry = getSymmetry(squares[0], squares[1], hasPawns);
+            int whiteKing = transform(squares[0], symmetry);
+            int blackKing = transform(squares[1], symmetry);
+            int kingPair = getKingPair(whiteKing, blackKing);
+            if (kingPair < 0) {
+                return NOT_FOUND;
+            }
+
+            int index = (isWhiteMove ? 0 : 1) | kingPair << getShift(pieces.length);
+            int transposedIndex = index;
+            for (int slot = 2; slot < pieces.length; slot++) {
+                index |= transform(squares[slot], symmetry) << getShift(slot);
+                transposedIndex |= transform(squares[slot], symmetry | TRANSPOSE)
+                    << getShift(slot);
+            }
+            boolean isTransposable = !hasPawns && isOnDiagonal(whiteKing)
+                && isOnDiagonal(blackKing);
+            return isTransposable ? Math.min(index, transposedIndex) : index;
+        }
+
+        /**
+         * Gets the squares of the pieces of a position.
+         * @param index the index of the position
+         * @param squares the array to fill with the squares by slot
+         */
+        void getSquares(int index, int[] squares) {
+            int kingSquares = KING_SQUARES[hasPawns ? 1 : 0][index >>> getShift(pieces.length)];
+            squares[0] = kingSquares >>> 6;
+            squares[1] = kingSquares & 63;
+            for (int slot = 2; slot < pieces.length; slot++) {
+                squares[slot] = index >>> getShift(slot) & 63;
+            }
+        }
+
+        /**
+         * Gets the first slot of a piece that is not used yet.
+         * @param piece the piece
+         * @param usedSlots the used slots as bits
+         * @return the slot
+         */
+        int getFreeSlot(byte piece, int usedSlots) {
+            for (int slot = 0; slot < pieces.length; slot++) {
+                if (pieces[slot] == piece && (usedSlots & 1 << slot) == 0) {
+                    return slot;
+                }
+            }
+            throw new IllegalStateException("Piece not in ending " + name);
+        }
+
+        /**
+         * Looks up the result of a position.
+         * @param index the index of the position
+         * @return the result, or NOT_FOUND if the position cannot occur
+         */
+        int probe(int index) {
+            if (dtm != null) {
+                return decodeDtm(dtm.get(HEADER_BYTES + index) & 0xFF);
+            }
+
+            int wdlEntry = wdl.get(HEADER_BYTES + (index >>> 2)) >>> 2 * (index & 3) & 3;
+            if (wdlEntry == WDL_ILLEGAL) {
+                return NOT_FOUND;
+            }
+            return wdlEntry == DRAW ? DRAW : toResult(wdlEntry, UNKNOWN_DISTANCE);
+        }
+    }
+
+    /**
+     * Converts a DTM entry to a result.
+     * @param entry the entry
+     * @return the result, or NOT_FOUND if the position cannot occur
+     */
+    static int decodeDtm(int entry) {
+        if (entry == DTM_ILLEGAL) {
+            return NOT_FOUND;
+        } else if (entry == 0) {
+            return DRAW;
+        }
+        return entry % 2 == 1 ? toResult(WIN, entry) : toResult(LOSS, entry - 2);
+    }
+
+    /**
+     * Converts a result to a DTM entry.
+     * @param result the result
+     * @return the entry
+     */
+    static int encodeDtm(int result) {
+        int distance = getDistance(result);
+        return switch (getWdl(result)) {
+            case WIN -> distance;
+            case LOSS -> distance + 2;
+            default -> 0;
+        };
+    }
+}
@@ -0,0 +1,660 @@
+package com.jekabsthomas.chess.engine;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.Tablebase.Table;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Generates endgame tablebases (see Tablebase) by retrograde analysis.
+ * Starting from the checkmates, results are propagated backwards one ply at a time:
+ *     a position is won in n plies if a move leads to a position lost in n - 1 plies,
+ *     and lost in n plies once all of its moves lead to positions won by the opponent.
+ * Positions that are never reached this way are draws.
+ * Captures and promotions leave the ending, their results are looked up in the tables
+ *     of the smaller endings, which are generated first.
+ * Mirror images share an entry, so moves are counted and retracted by the entries
+ *     they reach: two moves to mirror images of a position count once.
+ * Every step is split among threads, each with its own board.
+ * @author Jekabs Gritans
+ */
+public class TablebaseGenerator {
+    public static final List<String> DEFAULT_ENDINGS = List.of("KQK", "KRK", "KPK");
+
+    private static final int CHUNK_SIZE = 1 << 12;
+
+    // DTM entry of positions without a result yet, draws once generation is done
+    private static final int UNRESOLVED = 254;
+
+    // set in the move count of positions that can avoid losing by leaving the ending
+    private static final int CAN_DRAW = 1 << 16;
+
+    private static final String EMPTY_BOARD = "8/8/8/8/8/8/8/8";
+
+    private final Path directory;
+    private final int threads;
+    private final Tablebase tablebase;
+    private boolean isLogging = true;
+
+    /**
+     * Creates a generator that writes to a directory.
+     * Tables that are already in the directory are used rather than generated again.
+     * @param directory the directory of the tables, created if missing
+     * @param threads the number of threads to generate with
+     * @throws IOException if the directory cannot be read
+     */
+    public TablebaseGenerator(Path directory, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.threads = threads;
+        tablebase = Tablebase.open(directory);
+    }
+
+    /**
+     * Sets whether progress is printed to the console.
+     * @param isLogging true to print progress
+     */
+    public void setLogging(boolean isLogging) {
+        this.isLogging = isLogging;
+    }
+
+    /**
+     * Generates the tables of endings and of all smaller endings they can turn into.
+     * @param endings the names of the endings, e.g. KPK
+     * @return the tablebase with all tables of the directory
+     * @throws IOException if a table cannot be written
+     * @throws IllegalArgumentException if a name is not an ending
+     */
+    public Tablebase generate(List<String> endings) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String name : endings) {
+                generate(Tablebase.getCanonicalName(name), pool);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return tablebase;
+    }
+
+    /**
+     * Generates the table of an ending after the tables it depends on.
+     */
+    private void generate(String name, ExecutorService pool) throws IOException {
+        Table existing = tablebase.getTable(name);
+        if (existing != null && existing.dtm != null) {
+            return; // generating needs distances, a table with only WDL is generated again
+        }
+
+        for (String subEnding : getSubEndings(name)) {
+            generate(subEnding, pool);
+        }
+
+        long startTime = System.currentTimeMillis();
+        Table table = new Table(name);
+        byte[] entries = new Retrograde(table, pool).run();
+
+        Path dtmFile = directory.resolve(name + Tablebase.DTM_EXTENSION);
+        Path wdlFile = directory.resolve(name + Tablebase.WDL_EXTENSION);
+        write(dtmFile, Tablebase.DTM_KIND, entries.length, entries);
+        write(wdlFile, Tablebase.WDL_KIND, entries.length, toWdl(entries));
+        table.dtm = Tablebase.map(dtmFile, Tablebase.DTM_KIND, table.size);
+        table.wdl = Tablebase.map(wdlFile, Tablebase.WDL_KIND, table.size);
+        tablebase.add(table);
+
+        if (isLogging) {
+            printSummary(name, entries, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Gets the endings a capture or promotion can lead to, except for draws by material.
+     * @param name the canonical name of the ending
+     * @return the canonical names of the smaller endings
+     */
+    static Set<String> getSubEndings(String name) {
+        byte[] pieces = Tablebase.parsePieces(name);
+        Set<String> subEndings = new LinkedHashSet<String>();
+        for (int slot = 2; slot < pieces.length; slot++) {
+            byte[] captured = new byte[pieces.length - 1];
+            System.arraycopy(pieces, 0, captured, 0, slot);
+            System.arraycopy(pieces, slot + 1, captured, slot, pieces.length - slot - 1);
+            addEnding(subEndings, captured);
+
+            if (ChessPiece.isType(pieces[slot], ChessPiece.PAWN)) {
+                for (byte type : new byte[] {ChessPiece.QUEEN, ChessPiece.ROOK, ChessPiece.BISHOP,
+                    ChessPiece.KNIGHT}) {
+                    byte[] promoted = pieces.clone();
+                    promoted[slot] = ChessPiece.setType(pieces[slot], type);
+                    addEnding(subEndings, promoted);
+                }
+            }
+        }
+        return subEndings;
+    }
+
+    /**
+     * Adds the ending of some pieces, unless neither side can ever mate.
+     */
+    private static void addEnding(Set<String> endings, byte[] pieces) {
+        StringBuilder white = new StringBuilder();
+        StringBuilder black = new StringBuilder();
+        int whiteMinors = 0;
+        int blackMinors = 0;
+        boolean canMate = false;
+        for (byte piece : pieces) {
+            char c = Character.toUpperCase(ChessPiece.getFenCharacter(piece));
+            (ChessPiece.isWhite(piece) ? white : black).append(c);
+
+            byte type = ChessPiece.getType(piece);
+            if (type == ChessPiece.BISHOP || type == ChessPiece.KNIGHT) {
+                if (ChessPiece.isWhite(piece)) {
+                    whiteMinors++;
+                } else {
+                    blackMinors++;
+                }
+            } else if (type != ChessPiece.KING) {
+                canMate = true;
+            }
+        }
+
+        if (canMate || whiteMinors > 1 || blackMinors > 1) {
+            endings.add(Tablebase.getCanonicalName(white.toString() + black));
+        }
+    }
+
+    /**
+     * Writes a table file.
+     */
+    private static void write(Path file, int kind, int positions, byte[] entries)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(Tablebase.MAGIC)
+            .putInt(Tablebase.VERSION)
+            .putInt(kind)
+            .putInt(positions)
+            .flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.wrap(entries);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * Packs DTM entries into WDL entries, 4 per byte starting at the lowest bits.
+     */
+    private static byte[] toWdl(byte[] entries) {
+        byte[] wdl = new byte[(entries.length + 3) / 4];
+        for (int i = 0; i < entries.length; i++) {
+            int entry = entries[i] & 0xFF;
+            int result = Tablebase.decodeDtm(entry);
+            int wdlEntry = result == Tablebase.NOT_FOUND ? Tablebase.WDL_ILLEGAL
+                : Tablebase.getWdl(result);
+            wdl[i >>> 2] |= wdlEntry << 2 * (i & 3);
+        }
+        return wdl;
+    }
+
+    private static void printSummary(String name, byte[] entries, long timeMs) {
+        int wins = 0;
+        int draws = 0;
+        int losses = 0;
+        int longestMate = 0;
+        for (byte entry : entries) {
+            int result = Tablebase.decodeDtm(entry & 0xFF);
+            if (result == Tablebase.NOT_FOUND) {
+                continue;
+            }
+
+            switch (Tablebase.getWdl(result)) {
+                case Tablebase.WIN -> wins++;
+                case Tablebase.LOSS -> losses++;
+                default -> draws++;
+            }
+            longestMate = Math.max(longestMate, Tablebase.getDistance(result));
+        }
+        System.out.println("%s: %d wins, %d draws, %d losses, longest mate %d plies, %d ms"
+            .formatted(name, wins, draws, losses, longestMate, timeMs));
+    }
+
+    /**
+     * Generates tables from the command line.
+     * Usage: tablebase directory [endings...] [-threads N]
+     * @param args the arguments
+     * @throws IOException if a table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: tablebase <directory> [endings...] [-threads N]");
+            return;
+        }
+
+        List<String> endings = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                endings.add(args[i]);
+            }
+        }
+        if (endings.isEmpty()) {
+            endings = DEFAULT_ENDINGS;
+        }
+
+        new TablebaseGenerator(Path.of(args[0]), threads).generate(endings);
+    }
+
+    /**
+     * Growable list of ints, to collect millions of positions without boxing.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Adds a value unless it is in the list, meant for short lists.
+         * @return true if the value was added
+         */
+        boolean addIfAbsent(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    return false;
+                }
+            }
+            add(value);
+            return true;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Positions to be resolved, grouped by the number of plies to mate they will get.
+     */
+    private static class Buckets {
+        private final IntList[] lists = new IntList[Tablebase.MAX_DISTANCE + 1];
+
+        void add(int distance, int index) {
+            if (distance > Tablebase.MAX_DISTANCE) {
+                throw new IllegalStateException("Mate too long to store: " + distance);
+            }
+            if (lists[distance] == null) {
+                lists[distance] = new IntList();
+            }
+            lists[distance].add(index);
+        }
+
+        void addAll(Buckets other) {
+            for (int distance = 0; distance < lists.length; distance++) {
+                if (other.lists[distance] != null) {
+                    if (lists[distance] == null) {
+                        lists[distance] = new IntList();
+                    }
+                    lists[distance].addAll(other.lists[distance]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Work on a single position, given the calling thread's board and buckets.
+     */
+    private interface PositionTask {
+        void run(int index, ChessBoard board, Buckets buckets);
+    }
+
+    /**
+     * Generation of a single table.
+     */
+    private class Retrograde {
+        private final Table table;
+        private final ExecutorService pool;
+        private final byte[] entries;
+
+        // in-table moves not known to lose yet, or CAN_DRAW
+        private final AtomicIntegerArray moveCounts;
+
+        // plies to mate through the slowest move that leaves the ending and loses
+        private final byte[] lossDistances;
+
+        private final Buckets buckets = new Buckets();
+
+        Retrograde(Table table, ExecutorService pool) {
+            this.table = table;
+            this.pool = pool;
+            entries = new byte[table.size];
+            moveCounts = new AtomicIntegerArray(table.size);
+            lossDistances = new byte[table.size];
+        }
+
+        /**
+         * Generates the table.
+         * @return the DTM entries
+         */
+        byte[] run() {
+            Arrays.fill(entries, (byte) UNRESOLVED);
+            forEach(null, table.size, this::initialize);
+
+            // results only ever get longer, so every position is resolved with its shortest
+            // win (or longest loss) when its bucket is reached
+            for (int distance = 0; distance <= Tablebase.MAX_DISTANCE; distance++) {
+                IntList bucket = buckets.lists[distance];
+                if (bucket == null) {
+                    continue;
+                }
+                buckets.lists[distance] = null;
+
+                int wdl = distance % 2 == 1 ? Tablebase.WIN : Tablebase.LOSS;
+                byte entry = (byte) Tablebase.encodeDtm(Tablebase.toResult(wdl, distance));
+                IntList resolved = new IntList();
+                for (int i = 0; i < bucket.size; i++) {
+                    int index = bucket.values[i];
+                    if ((entries[index] & 0xFF) == UNRESOLVED) {
+                        entries[index] = entry;
+                        resolved.add(index);
+                    }
+                }
+
+                int resolvedDistance = distance;
+                forEach(resolved.values, resolved.size,
+                    (index, board, newBuckets) -> retract(index, resolvedDistance, board,
+                    newBuckets));
+            }
+
+            for (int i = 0; i < entries.length; i++) {
+                if ((entries[i] & 0xFF) == UNRESOLVED) {
+                    entries[i] = 0;
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Runs a task for positions, split among the threads.
+         * The buckets filled by the tasks are merged afterwards.
+         * @param indices the positions, or null for all positions up to count
+         * @param count the number of positions
+         * @param task the task
+         */
+        private void forEach(int[] indices, int count, PositionTask task) {
+            List<Callable<Buckets>> chunks = new ArrayList<Callable<Buckets>>();
+            for (int start = 0; start < count; start += CHUNK_SIZE) {
+                int chunkStart = start;
+                int chunkEnd = Math.min(start + CHUNK_SIZE, count);
+                chunks.add(() -> {
+                    ChessBoard board = new ChessBoard(EMPTY_BOARD, "-", "-");
+                    Buckets chunkBuckets = new Buckets();
+                    for (int i = chunkStart; i < chunkEnd; i++) {
+                        task.run(indices == null ? i : indices[i], board, chunkBuckets);
+                    }
+                    return chunkBuckets;
+                });
+            }
+
+            try {
+                for (Future<Buckets> chunk : pool.invokeAll(chunks)) {
+                    buckets.addAll(chunk.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("Generation failed", e.getCause());
+            }
+        }
+
+        /**
+         * Finds the legality, mates and stalemates, results through moves leaving the ending,
+         *     and number of moves within the ending of a position.
+         */
+        private void initialize(int index, ChessBoard board, Buckets newBuckets) {
+            int[] squares = new int[table.pieces.length];
+            table.getSquares(index, squares);
+            if (!isValid(squares) || table.getIndex(squares, (index & 1) == 0) != index) {
+                entries[index] = (byte) Tablebase.DTM_ILLEGAL;
+                return;
+            }
+
+            placePieces(board, squares, true);
+            try {
+                boolean isWhiteMove = (index & 1) == 0;
+                if (ChessRules.canCaptureKing(board, isWhiteMove)) {
+                    entries[index] = (byte) Tablebase.DTM_ILLEGAL;
+                    return;
+                }
+
+                List<ChessMove> moves = ChessRules.getLegalMoves(board, isWhiteMove);
+                if (moves.isEmpty()) {
+                    if (ChessRules.canCaptureKing(board, !isWhiteMove)) {
+                        newBuckets.add(0, index); // checkmate
+                    } else {
+                        entries[index] = 0; // stalemate
+                    }
+                    return;
+                }
+
+                IntList successors = new IntList();
+                int moveCount = 0;
+                int winDistance = Integer.MAX_VALUE;
+                int lossDistance = 0;
+                for (ChessMove move : moves) {
+                    if (!ChessPiece.isPiece(board.getPiece(move.to1D))
+                        && move.getPromotionType() == ChessPiece.EMPTY) {
+                        int slot = getSlot(squares, toSquare(move.from1D));
+                        if (successors.addIfAbsent(getIndex(squares, slot,
+                            toSquare(move.to1D), !isWhiteMove))) {
+                            moveCount++;
+                        }
+                        continue;
+                    }
+
+                    ChessBoard newBoard = new ChessBoard(board, false);
+                    newBoard.makeMove(move);
+                    if (ChessRules.isInsufficientMaterial(newBoard)) {
+                        moveCount |= CAN_DRAW;
+                        continue;
+                    }
+
+                    int result = tablebase.probe(newBoard, !isWhiteMove);
+                    int distance = Tablebase.getDistance(result);
+                    if (result == Tablebase.NOT_FOUND || distance == Tablebase.UNKNOWN_DISTANCE) {
+                        throw new IllegalStateException("Missing table for "
+                            + newBoard.getFenPiecePlacement());
+                    }
+
+                    switch (Tablebase.getWdl(result)) {
+                        case Tablebase.LOSS -> winDistance = Math.min(winDistance, distance + 1);
+                        case Tablebase.WIN -> lossDistance = Math.max(lossDistance, distance + 1);
+                        default -> moveCount |= CAN_DRAW;
+                    }
+                }
+
+                if (winDistance != Integer.MAX_VALUE) {
+                    newBuckets.add(winDistance, index); // unless a faster win is found first
+                    moveCount |= CAN_DRAW;
+                } else if (moveCount == 0) {
+                    newBuckets.add(lossDistance, index); // every move leaves and loses
+                }
+                moveCounts.set(index, moveCount);
+                lossDistances[index] = (byte) lossDistance;
+            } finally {
+                placePieces(board, squares, false);
+            }
+        }
+
+        /**
+         * Finds the positions one move before a resolved position and updates them:
+         *     before a loss they are won, before a win they lose if it was their last move.
+         * Only moves within the ending are retracted, captures and promotions were
+         *     already handled by initialize.
+         */
+        private void retract(int index, int distance, ChessBoard board, Buckets newBuckets) {
+            boolean isWhiteRetracting = (index & 1) == 1;
+            int[] squares = new int[table.pieces.length];
+            table.getSquares(index, squares);
+
+            // a position before several mirror images of this one is only updated once,
+            // as its moves to them were only counted once
+            IntList predecessors = new IntList();
+            placePieces(board, squares, true);
+            for (int slot = 0; slot < table.pieces.length; slot++) {
+                byte piece = table.pieces[slot];
+                if (ChessPiece.isWhite(piece) != isWhiteRetracting) {
+                    continue;
+                }
+
+                int square = squares[slot];
+                int pos1D = toPos1D(square);
+
+                if (ChessPiece.isType(piece, ChessPiece.PAWN)) {
+                    // pawns move forward, so they come from behind, but never from their
+                    // first rank, and from two squares behind if they are on their 4th rank
+                    int back = isWhiteRetracting ? 8 : -8;
+                    int from = square + back;
+                    int firstRow = isWhiteRetracting ? 7 : 0;
+                    int doubleRow = isWhiteRetracting ? 4 : 3;
+                    if (from / 8 == firstRow || !isEmpty(board, from)) {
+                        continue;
+                    }
+                    predecessors.addIfAbsent(getIndex(squares, slot, from, isWhiteRetracting));
+                    if (square / 8 == doubleRow && isEmpty(board, from + back)) {
+                        predecessors.addIfAbsent(getIndex(squares, slot, from + back,
+                            isWhiteRetracting));
+                    }
+                } else {
+                    // other pieces move the same way backwards and forwards
+                    for (ChessMove move : ChessRules.getPseudoLegalMoves(board, isWhiteRetracting,
+                        pos1D)) {
+                        if (ChessPiece.isEmpty(board.getPiece(move.to1D))) {
+                            predecessors.addIfAbsent(getIndex(squares, slot,
+                                toSquare(move.to1D), isWhiteRetracting));
+                        }
+                    }
+                }
+            }
+            placePieces(board, squares, false);
+
+            for (int i = 0; i < predecessors.size; i++) {
+                updatePredecessor(predecessors.values[i], distance, newBuckets);
+            }
+        }
+
+        /**
+         * Updates a position whose move leads to a position resolved at the given distance.
+         */
+        private void updatePredecessor(int index, int distance, Buckets newBuckets) {
+            if (index == Tablebase.NOT_FOUND || (entries[index] & 0xFF) != UNRESOLVED) {
+                return; // kings next to each other, illegal or already resolved
+            }
+
+            if (distance % 2 == 0) {
+                newBuckets.add(distance + 1, index);
+            } else if (moveCounts.decrementAndGet(index) == 0) {
+                newBuckets.add(Math.max(distance + 1, lossDistances[index] & 0xFF), index);
+            }
+        }
+
+        /**
+         * Checks that no two pieces share a square and no pawn is on the first or last rank.
+         * Transpositions that are not used (see Table.getIndex) are checked by the caller.
+         */
+        private boolean isValid(int[] squares) {
+            long occupied = 0;
+            for (int slot = 0; slot < table.pieces.length; slot++) {
+                int square = squares[slot];
+                int row = square / 8;
+                if ((occupied & 1L << square) != 0
+                    || (ChessPiece.isType(table.pieces[slot], ChessPiece.PAWN)
+                    && (row == 0 || row == 7))) {
+                    return false;
+                }
+                occupied |= 1L << square;
+            }
+            return true;
+        }
+
+        /**
+         * Puts the pieces of a position on the board, or removes them again.
+         */
+        private void placePieces(ChessBoard board, int[] squares, boolean isPlacing) {
+            for (int slot = 0; slot < table.pieces.length; slot++) {
+                board.setPiece(toPos1D(squares[slot]),
+                    isPlacing ? table.pieces[slot] : ChessPiece.EMPTY);
+            }
+        }
+
+        /**
+         * Gets the index of a position after a piece moved, without changing the squares.
+         */
+        private int getIndex(int[] squares, int slot, int square, boolean isWhiteMove) {
+            int oldSquare = squares[slot];
+            squares[slot] = square;
+            int index = table.getIndex(squares, isWhiteMove);
+            squares[slot] = oldSquare;
+            return index;
+        }
+
+        private int getSlot(int[] squares, int square) {
+            for (int slot = 0; ; slot++) {
+                if (squares[slot] == square) {
+                    return slot;
+                }
+            }
+        }
+
+        private boolean isEmpty(ChessBoard board, int square) {
+            return ChessPiece.isEmpty(board.getPiece(toPos1D(square)));
+        }
+    }
+
+    private static int toPos1D(int square) {
+        return (square / 8 + 2) * 12 + square % 8 + 2;
+    }
+
+    private static int toSquare(int pos1D) {
+        return (pos1D / 12 - 2) * 8 + pos1D % 12 - 2;
+    }
+}
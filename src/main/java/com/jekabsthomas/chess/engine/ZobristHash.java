@@ -1,6 +1,5 @@
 package com.jekabsthomas.chess.engine;
 
-import com.jekabsthomas.chess.engine.ChessBoard.CastlingAvailability;
 import java.util.Random;
 
 /**
@@ -8,13 +7,41 @@ import java.util.Random;
  *     Used for transposition table in the bot.
  * A Zobrist hash is constructed by xor-ing random bitstrings
  *     that correspond to elements of the chess game state.
+ * The piece part of the hash is maintained incrementally by the board,
+ *     so getting the hash does not need to look at every square.
  * @author Jekabs Gritans
  */
 public class ZobristHash {
-    private final long[][][] table = new long[2][6][144];
-    private final long whiteToMove;
-    private final long[] castlingAvailability = new long[4]; //wk, wq, bk, bq
-    private final long[] enPassantFiles = new long[8];
+    // fixed seed so that every game produces the same keys,
+    // which lets a bot reuse its transposition table across games and game copies
+    private static final long SEED = 0x2C4E55L;
+
+    private static final long[][][] table = new long[2][6][144];
+    private static final long whiteToMove;
+    private static final long[] castlingAvailability = new long[4]; //wk, wq, bk, bq
+    private static final long[] enPassantFiles = new long[8];
+
+    static {
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 6; j++) {
+                for (int k = 0; k < 144; k++) {
+                    table[i][j][k] = random.nextLong();
+                }
+            }
+        }
+
+        whiteToMove = random.nextLong();
+
+        for (int i = 0; i < 4; i++) {
+            castlingAvailability[i] = random.nextLong();
+        }
+
+        for (int i = 0; i < 8; i++) {
+            enPassantFiles[i] = random.nextLong();
+        }
+    }
 
     /**
      * Returns the hash of the given board.
@@ -22,38 +49,30 @@ public class ZobristHash {
      * @return the hash of the board
      */
     public long getHash(ChessGame game) {
-        ChessBoard board = game.getBoard();
-
-        long hash = 0;
+        return getHash(game.getBoard(), game.isWhiteMove());
+    }
 
+    /**
+     * Returns the hash of a board without its game.
+     * @param board the board
+     * @param isWhiteMove whether it is white's move
+     * @return the hash of the board
+     */
+    long getHash(ChessBoard board, boolean isWhiteMove) {
         // pieces
-        for (int i = 0; i < 144; i++) {
-            byte piece = board.getPiece(i);
-            if (ChessPiece.isPiece(piece)) {
-                int colorIndex = ChessPiece.isWhite(piece) ? 0 : 1;
-                int typeIndex = ChessPiece.getType(piece) - 1; // depends on byte values
-                hash ^= table[colorIndex][typeIndex][i]; 
-            }
-        }
+        long hash = board.getPieceHash();
 
         // to move
-        if (game.isWhiteMove()) {
+        if (isWhiteMove) {
             hash ^= whiteToMove;
         }
 
-        // castling availability
-        CastlingAvailability castling = board.getCastlingAvailability();
-        if (castling.whiteKingSide()) {
-            hash ^= castlingAvailability[0];
-        }
-        if (castling.whiteQueenSide()) {
-            hash ^= castlingAvailability[1];
-        }
-        if (castling.blackKingSide()) {
-            hash ^= castlingAvailability[2];
-        }
-        if (castling.blackQueenSide()) {
-            hash ^= castlingAvailability[3];
+        // castling availability, bit i of the rights has key i
+        int castlingRights = board.getCastlingRights();
+        for (int i = 0; i < 4; i++) {
+            if ((castlingRights & 1 << i) != 0) {
+                hash ^= castlingAvailability[i];
+            }
         }
 
         // en passant
@@ -67,34 +86,14 @@ public class ZobristHash {
     }
 
     /**
-     * Constructs a new Zobrist hash table.
-     */
-    public ZobristHash() {
-        for (int i = 0; i < 2; i++) {
-            for (int j = 0; j < 6; j++) {
-                for (int k = 0; k < 144; k++) {
-                    table[i][j][k] = random();
-                }
-            }
-        }
-
-        whiteToMove = random();
-
-        for (int i = 0; i < 4; i++) {
-            castlingAvailability[i] = random();
-        }
-
-        for (int i = 0; i < 8; i++) {
-            enPassantFiles[i] = random();
-        }
-    }
-
-    /**
-     * Generates a pseudo-random long.
-     * @return a pseudo-random long
+     * Gets the key of a piece on a square, to be xor-ed into the piece hash.
+     * @param piece the piece (not empty)
+     * @param pos1D the 1D position of the piece
+     * @return the key
      */
-    public long random() {
-        Random random = new Random();
-        return random.nextLong();
+    static long getPieceKey(byte piece, int pos1D) {
+        int colorIndex = ChessPiece.isWhite(piece) ? 0 : 1;
+        int typeIndex = ChessPiece.getType(piece) - 1; // depends on byte values
+        return table[colorIndex][typeIndex][pos1D];
     }
 }
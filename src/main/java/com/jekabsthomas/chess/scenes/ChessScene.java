@@ -1,12 +1,15 @@
 package com.jekabsthomas.chess.scenes;
 
-import com.jekabsthomas.chess.core.ChessBot;
+import com.jekabsthomas.chess.core.Engine;
+import com.jekabsthomas.chess.core.GameFinishedEvent;
+import com.jekabsthomas.chess.core.SearchResult;
 import com.jekabsthomas.chess.engine.ChessBoard;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessPosition;
 import com.jekabsthomas.chess.engine.ChessGame;
 import com.jekabsthomas.chess.engine.ChessGame.GameState;
 import com.jekabsthomas.chess.engine.ChessPiece;
+import com.jekabsthomas.chess.engine.Tablebase;
 import com.jekabsthomas.chess.entities.EndingEntity;
 import com.jekabsthomas.chess.entities.FloorTileEntity;
 import com.jekabsthomas.chess.entities.IndicatorEntity;
@@ -16,8 +19,12 @@ import java.awt.Image;
 import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.management.JMException;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
@@ -45,6 +52,9 @@ public class ChessScene extends Scene {
     public Clip moveClip;
     public boolean withBot = false;
     public boolean ended = false;
+    public Engine engine = new Engine();
+    public CompletableFuture<SearchResult> botSearch;
+    public ChessMove ponderMove;
 
     /** 
      * Constructs and initializes the ChessScene object.
@@ -53,8 +63,11 @@ public class ChessScene extends Scene {
     public ChessScene(boolean withBot) {
         super();
         this.withBot = withBot;
+        engine.setLogging(true); // the console shows the bot's thinking next to the window
         frame.getContentPane().setBackground(Color.gray);
         initGame();
+        initTablebase();
+        initMBean();
         initWinBanner();
         initPieces();
         initIndicators();
@@ -73,6 +86,36 @@ public class ChessScene extends Scene {
      */
     public void initGame() {
         chessGame = new ChessGame();
+        cancelBotSearch();
+        engine.newGame();
+    }
+
+    /**
+     * Lets the bot use the endgame tablebase in the tablebases directory, if there is one.
+     */
+    public void initTablebase() {
+        Path directory = Path.of(System.getProperty("user.dir"), "tablebases");
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try {
+            engine.setTablebase(Tablebase.open(directory));
+        } catch (IOException e) {
+            System.out.println("Failed to load tablebases");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Registers the bot's statistics as the MBean named gui, for monitoring tools.
+     */
+    public void initMBean() {
+        try {
+            engine.registerMBean("gui");
+        } catch (JMException e) {
+            System.out.println("Failed to register MBean: " + e.getMessage());
+        }
     }
 
     /** 
@@ -155,6 +198,7 @@ public class ChessScene extends Scene {
             stalemateBanner.graphic.setVisible(true);
         }
         ended = true;
+        GameFinishedEvent.emit(chessGame);
     }
 
     /** 
@@ -276,11 +320,12 @@ public class ChessScene extends Scene {
         GameState state = chessGame.makeMove(madeMove);
         if (state != GameState.ACTIVE) {
             showWinBanner(state);
+            cancelBotSearch();
         }
         updateBoardPieces(chessGame.getBoard());
         turnColor = turnColor == ChessPiece.WHITE ? ChessPiece.BLACK : ChessPiece.WHITE;
         if (!ended && ChessPiece.isColor(turnColor, ChessPiece.BLACK) && withBot) {
-            doBotTurn();
+            doBotTurn(madeMove);
         }
         moveClip.setFramePosition(0);
         moveClip.start();
@@ -288,13 +333,50 @@ public class ChessScene extends Scene {
     } 
 
     /** 
-     * Creates a new thread for the bot to run on,
+     * Starts the bot's search in the background,
      *    as not to make the gui pause while the bot is thinking up a new move.
+     * If the bot was pondering on the move the player made, its search simply continues,
+     *    otherwise the pondering is stopped and a new search is started.
+     * @param playerMove the move the player just made
      */
-    public void doBotTurn() {
-        ChessBot bot = new ChessBot();
-        ChessBot.currentGame = chessGame;
-        bot.start();
+    public void doBotTurn(ChessMove playerMove) {
+        if (botSearch != null && playerMove.equals(ponderMove)) {
+            engine.ponderHit();
+        } else {
+            cancelBotSearch();
+            botSearch = engine.search(chessGame, Engine.DEFAULT_LIMITS);
+        }
+        ponderMove = null;
+    }
+
+    /** 
+     * Lets the bot think on the player's time, assuming the player makes the expected move.
+     * @param expectedMove the move the bot expects the player to make, or null if unknown
+     */
+    public void startPondering(ChessMove expectedMove) {
+        if (expectedMove == null) {
+            return;
+        }
+
+        // nothing to think about if the expected move ends the game
+        ChessGame expectedGame = new ChessGame(chessGame);
+        if (expectedGame.makeMove(expectedMove) != GameState.ACTIVE) {
+            return;
+        }
+
+        botSearch = engine.ponder(chessGame, expectedMove, Engine.DEFAULT_LIMITS);
+        ponderMove = expectedMove;
+    }
+
+    /** 
+     * Stops the bot's search (or pondering) if there is one.
+     */
+    public void cancelBotSearch() {
+        if (botSearch != null) {
+            botSearch.cancel(true);
+            botSearch = null;
+        }
+        ponderMove = null;
     }
 
     /** 
@@ -433,21 +515,24 @@ public class ChessScene extends Scene {
  
     /** 
      * Overwrites Scene update function, 
-     *     handles the ChessBot thread by checking if it is finished generating the move.
+     *     makes the bot's move once its search is finished.
      */
     public void update() {
         super.update();
         if (withBot && ChessPiece.isColor(turnColor, ChessPiece.BLACK)) {
-            if (ChessBot.currentMove == null) {
+            if (botSearch == null || !botSearch.isDone()) {
                 return;
             }
 
+            SearchResult result = botSearch.join();
+            botSearch = null;
             turnColor = turnColor == ChessPiece.WHITE ? ChessPiece.BLACK : ChessPiece.WHITE;
-            GameState botState = chessGame.makeMove(ChessBot.currentMove);
-            ChessBot.currentMove = null;
+            GameState botState = chessGame.makeMove(result.bestMove());
             updateBoardPieces(chessGame.getBoard());
             if (botState != GameState.ACTIVE) {
                 showWinBanner(botState);
+            } else {
+                startPondering(result.ponderMove());
             }
             moveClip.setFramePosition(0);
             moveClip.start();
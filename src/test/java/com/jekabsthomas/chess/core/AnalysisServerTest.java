@@ -0,0 +1,136 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.core.AnalysisServer.Analysis;
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for AnalysisServer class.
+ */
+public class AnalysisServerTest {
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String E4 = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1";
+    private static final String MATE_IN_ONE = "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1";
+
+    private AnalysisServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new AnalysisServer(0, 1, 2);
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testAnalyzeOverHttp() throws IOException {
+        String json = get("fen=" + URLEncoder.encode(MATE_IN_ONE, StandardCharsets.UTF_8)
+            + "&depth=2", 200);
+        assertTrue(json.startsWith("{\"bestmove\": \"d1d8\", \"mate\": 1, \"depth\": 2, "));
+        assertTrue(json.endsWith("\"pv\": [\"d1d8\"]}"));
+    }
+
+    @Test
+    public void testBadRequests() throws IOException {
+        assertEquals("{\"error\": \"Missing fen\"}", get("depth=3", 400));
+        assertEquals("{\"error\": \"Invalid FEN string\"}", get("fen=nonsense", 400));
+        assertEquals("{\"error\": \"Depth must be between 1 and 30\"}",
+            get("fen=" + URLEncoder.encode(START, StandardCharsets.UTF_8) + "&depth=99", 400));
+    }
+
+    @Test
+    public void testSharedScheduler() throws IOException {
+        try (SearchScheduler scheduler = new SearchScheduler(1, 4, 2000)) {
+            AnalysisServer shared = new AnalysisServer(0, scheduler, 2);
+            assertEquals("d1d8", shared.analyze(MATE_IN_ONE, 2).bestMove());
+            shared.close();
+            assertTrue(scheduler.getSlices() > 0);
+
+            // the scheduler belongs to the caller, so it keeps running
+            assertEquals(2, scheduler.submit(new ChessGame(), SearchLimits.ofDepth(2),
+                SearchScheduler.Priority.NORMAL).join().depth());
+        }
+    }
+
+    @Test
+    public void testCache() {
+        Analysis first = server.analyze(START, 3);
+        // the clocks are not part of the position
+        assertSame(first, server.analyze(START.replace("0 1", "4 9"), 3));
+        assertEquals(1, server.getSearches());
+        assertEquals(1, server.getCacheHits());
+
+        server.analyze(START, 2);
+        assertEquals(2, server.getSearches());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        server.analyze(START, 2);
+        server.analyze(E4, 2);
+        server.analyze(START, 2);
+        server.analyze(MATE_IN_ONE, 2); // the cache holds 2 results, so E4 goes
+        assertEquals(3, server.getSearches());
+        server.analyze(START, 2);
+        assertEquals(3, server.getSearches());
+        server.analyze(E4, 2);
+        assertEquals(4, server.getSearches());
+    }
+
+    @Test
+    public void testIdenticalRequestsShareASearch() {
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Analysis>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return server.analyze(START, 7);
+            }));
+        }
+        start.countDown();
+
+        Analysis first = results.get(0).join();
+        for (CompletableFuture<Analysis> result : results) {
+            assertSame(first, result.join());
+        }
+        assertEquals(8, server.getRequests());
+        assertEquals(1, server.getSearches());
+        assertEquals(7, server.getCacheHits() + server.getCoalescedRequests());
+    }
+
+    private String get(String query, int expectedStatus) throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + "/analyze?" + query);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            assertEquals(expectedStatus, connection.getResponseCode());
+            try (InputStream in = expectedStatus == 200
+                ? connection.getInputStream() : connection.getErrorStream()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
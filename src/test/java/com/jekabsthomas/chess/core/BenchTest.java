@@ -0,0 +1,20 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for Bench class.
+ */
+public class BenchTest {
+    @Test
+    public void testSameSignature() {
+        Bench.Result first = Bench.run(3, Bench.DEFAULT_SEED, null);
+        Bench.Result second = Bench.run(3, Bench.DEFAULT_SEED, null);
+        assertTrue(first.nodes() > 0);
+        assertEquals(first.nodes(), second.nodes());
+        assertEquals(3, first.depthTimesMs().length);
+    }
+}
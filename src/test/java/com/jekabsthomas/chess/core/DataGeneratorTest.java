@@ -0,0 +1,62 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ZobristHash;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests for DataGenerator class.
+ */
+public class DataGeneratorTest {
+    @Test
+    public void testGenerate() throws IOException {
+        Path path = Files.createTempFile("selfplay", ".bin");
+        try {
+            DataGenerator generator = new DataGenerator(path, 300, 2, true, 42);
+            long positions = generator.generate(2);
+
+            byte[] bytes = Files.readAllBytes(path);
+            assertEquals(0, bytes.length % TrainingData.RECORD_BYTES);
+            assertEquals(positions, bytes.length / TrainingData.RECORD_BYTES);
+            assertTrue(positions > 0);
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(TrainingData.BYTE_ORDER);
+            ZobristHash zobristHash = new ZobristHash();
+            Set<Long> keys = new HashSet<Long>();
+            for (int i = 0; i < bytes.length; i += TrainingData.RECORD_BYTES) {
+                int result = TrainingData.getResult(buffer, i);
+                assertTrue(result >= TrainingData.BLACK_WINS && result <= TrainingData.WHITE_WINS);
+
+                buffer.position(i);
+                ChessGame game = new ChessGame(TrainingData.readFen(buffer));
+                assertTrue(keys.add(zobristHash.getHash(game)));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testSeedIsReproducible() throws IOException {
+        Path first = Files.createTempFile("selfplay", ".bin");
+        Path second = Files.createTempFile("selfplay", ".bin");
+        try {
+            new DataGenerator(first, 300, 1, false, 7).generate(2);
+            new DataGenerator(second, 300, 1, false, 7).generate(2);
+            assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+        }
+    }
+}
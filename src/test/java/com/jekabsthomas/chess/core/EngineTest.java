@@ -0,0 +1,329 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import com.jekabsthomas.chess.engine.Tablebase;
+import com.jekabsthomas.chess.engine.TablebaseGenerator;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+/**
+ * Tests for Engine class.
+ */
+public class EngineTest {
+    // white mates with Ra8
+    private static final String MATE_IN_ONE = "6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1";
+
+    @Test
+    public void testFindsMateInOne() {
+        try (Engine engine = new Engine()) {
+            ChessGame game = new ChessGame(MATE_IN_ONE);
+            ChessMove move = engine.generateMove(game, SearchLimits.ofDepth(2));
+
+            assertEquals("a1 -> a8", move.toString());
+            assertEquals(GameState.WHITE_WINS, game.makeMove(move));
+        }
+    }
+
+    @Test
+    public void testFindsMateInOneWithThreads() {
+        try (Engine engine = new Engine(1, 3)) {
+            ChessGame game = new ChessGame(MATE_IN_ONE);
+            ChessMove move = engine.generateMove(game, SearchLimits.ofDepth(3));
+
+            assertEquals("a1 -> a8", move.toString());
+        }
+    }
+
+    @Test
+    public void testNodeLimit() {
+        try (Engine engine = new Engine()) {
+            ChessGame game = new ChessGame();
+            ChessMove move = engine.generateMove(game, SearchLimits.ofNodes(500));
+
+            assertTrue(game.getLegalMoves().contains(move));
+            // the first iteration is always completed, but no deeper ones past the limit
+            assertTrue(engine.getNodeCount() <= 500 + game.getLegalMoves().size() + 1);
+        }
+    }
+
+    @Test
+    public void testIndependentEngines() throws InterruptedException {
+        // engines share no state, so concurrent searches must not interfere
+        Engine[] engines = new Engine[4];
+        ChessMove[] moves = new ChessMove[engines.length];
+        Thread[] threads = new Thread[engines.length];
+        for (int i = 0; i < engines.length; i++) {
+            int idx = i;
+            engines[i] = new Engine(1, 1);
+            threads[i] = new Thread(() -> {
+                moves[idx] = engines[idx].generateMove(new ChessGame(MATE_IN_ONE),
+                    SearchLimits.ofDepth(2));
+            });
+            threads[i].start();
+        }
+
+        try {
+            for (int i = 0; i < engines.length; i++) {
+                threads[i].join();
+                assertEquals("a1 -> a8", moves[i].toString());
+            }
+        } finally {
+            for (Engine engine : engines) {
+                engine.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSearchUsesSnapshot() {
+        try (Engine engine = new Engine()) {
+            ChessGame game = new ChessGame(MATE_IN_ONE);
+            CompletableFuture<SearchResult> future = engine.search(game, SearchLimits.ofDepth(2));
+
+            // changing the game does not affect the running search
+            game.makeMove(game.getLegalMoves().get(0));
+
+            SearchResult result = future.join();
+            assertEquals("a1 -> a8", result.bestMove().toString());
+            assertEquals(Engine.MATE_SCORE - 1, result.score());
+            assertEquals(2, result.depth());
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        try (Engine engine = new Engine()) {
+            ChessGame game = new ChessGame();
+            CompletableFuture<SearchResult> future = engine.search(game, SearchLimits.infinite());
+
+            Thread.sleep(200);
+            assertFalse(future.isDone());
+            engine.stop();
+
+            // stopping completes the search with the best move so far
+            SearchResult result = future.get(10, TimeUnit.SECONDS);
+            assertTrue(game.getLegalMoves().contains(result.bestMove()));
+        }
+    }
+
+    @Test
+    public void testStopCondition() throws Exception {
+        try (Engine engine = new Engine(1, 1)) {
+            // a condition that already holds stops the search after the first iteration
+            SearchResult result = engine.search(new ChessGame(), SearchLimits.infinite(),
+                () -> true).get(10, TimeUnit.SECONDS);
+            assertEquals(1, result.depth());
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        try (Engine engine = new Engine()) {
+            CompletableFuture<SearchResult> running = engine.search(new ChessGame(),
+                SearchLimits.infinite());
+            CompletableFuture<SearchResult> queued = engine.search(new ChessGame(),
+                SearchLimits.infinite());
+
+            Thread.sleep(200);
+            queued.cancel(true);
+            running.cancel(true);
+            assertTrue(running.isCancelled());
+
+            // the engine is free again once the cancelled searches are done
+            SearchResult result = engine.search(new ChessGame(MATE_IN_ONE), SearchLimits.ofDepth(2))
+                .get(10, TimeUnit.SECONDS);
+            assertEquals("a1 -> a8", result.bestMove().toString());
+        }
+    }
+
+    @Test
+    public void testPonderHit() throws Exception {
+        try (Engine engine = new Engine()) {
+            ChessGame game = new ChessGame();
+            SearchResult first = engine.search(game, SearchLimits.ofDepth(3)).join();
+            game.makeMove(first.bestMove());
+            ChessMove expected = first.ponderMove();
+            assertTrue(game.getLegalMoves().contains(expected));
+
+            CompletableFuture<SearchResult> ponder = engine.ponder(game, expected,
+                SearchLimits.ofTime(100));
+
+            // limits do not apply while pondering
+            Thread.sleep(300);
+            assertFalse(ponder.isDone());
+
+            game.makeMove(expected);
+            engine.ponderHit();
+            SearchResult result = ponder.get(10, TimeUnit.SECONDS);
+            assertTrue(game.getLegalMoves().contains(result.bestMove()));
+        }
+    }
+
+    @Test
+    public void testPonderMiss() throws Exception {
+        try (Engine engine = new Engine()) {
+            ChessGame game = new ChessGame(MATE_IN_ONE);
+            ChessGame previous = new ChessGame("6k1/5ppp/8/8/8/8/8/R5K1 b - - 0 1");
+            ChessMove expected = previous.getLegalMoves().get(0);
+
+            CompletableFuture<SearchResult> ponder = engine.ponder(previous, expected,
+                SearchLimits.ofDepth(2));
+            Thread.sleep(100);
+
+            // the opponent played something else, so the ponder search is thrown away
+            ponder.cancel(true);
+            SearchResult result = engine.search(game, SearchLimits.ofDepth(2))
+                .get(10, TimeUnit.SECONDS);
+            assertEquals("a1 -> a8", result.bestMove().toString());
+        }
+    }
+
+    @Test
+    public void testMultiPv() {
+        try (Engine engine = new Engine()) {
+            engine.setMultiPv(3);
+            ChessGame game = new ChessGame(MATE_IN_ONE);
+            SearchResult result = engine.search(game, SearchLimits.ofDepth(3)).join();
+
+            assertEquals(3, result.lines().size());
+            assertEquals("a1 -> a8", result.bestMove().toString());
+            assertEquals(result.lines().get(0).score(), result.score());
+
+            // lines are sorted, start with different moves and are playable
+            Set<ChessMove> firstMoves = new HashSet<ChessMove>();
+            int previousScore = Integer.MAX_VALUE;
+            for (PvLine line : result.lines()) {
+                assertTrue(line.score() <= previousScore);
+                previousScore = line.score();
+                assertTrue(firstMoves.add(line.moves().get(0)));
+
+                ChessGame lineGame = new ChessGame(game);
+                for (ChessMove move : line.moves()) {
+                    assertTrue(lineGame.getLegalMoves().contains(move));
+                    lineGame.makeMove(move);
+                }
+            }
+            assertTrue(result.lines().get(1).score() < Engine.MATE_SCORE - 100);
+        }
+    }
+
+    @Test
+    public void testPrincipalVariationLength() {
+        try (Engine engine = new Engine()) {
+            SearchResult result = engine.search(new ChessGame(), SearchLimits.ofDepth(3)).join();
+            assertEquals(3, result.lines().get(0).moves().size());
+        }
+    }
+
+    @Test
+    public void testTablebaseScores() throws IOException {
+        Path directory = Files.createTempDirectory("tablebase");
+        try (Engine engine = new Engine()) {
+            TablebaseGenerator generator = new TablebaseGenerator(directory, 1);
+            generator.setLogging(false);
+            Tablebase tablebase = generator.generate(List.of("KQK"));
+            engine.setTablebase(tablebase);
+
+            // every move reaches the table, so the exact distance is known at depth 1
+            ChessGame game = new ChessGame("8/8/8/3k4/8/8/8/KQ6 w - - 0 1");
+            int distance = Tablebase.getDistance(tablebase.probe(game.getBoard(), true));
+            SearchResult result = engine.search(game, SearchLimits.ofDepth(1)).join();
+            assertEquals(Engine.MATE_SCORE - distance, result.score());
+
+            ChessGame nextGame = new ChessGame(game);
+            nextGame.makeMove(result.bestMove());
+            int nextResult = tablebase.probe(nextGame.getBoard(), false);
+            assertEquals(Tablebase.LOSS, Tablebase.getWdl(nextResult));
+            assertEquals(distance - 1, Tablebase.getDistance(nextResult));
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testSearchStats() throws JMException {
+        try (Engine engine = new Engine()) {
+            SearchResult result = engine.search(new ChessGame(), SearchLimits.ofDepth(3)).join();
+            SearchStats stats = result.stats();
+
+            assertEquals(result.nodes(), stats.nodes());
+            assertEquals(3, stats.depth());
+            assertEquals(3, stats.selDepth());
+            assertEquals(3, stats.iterationTimesMs().size());
+            assertEquals(stats.nodes(), stats.iterationNodes().stream().mapToLong(n -> n).sum());
+            assertTrue(stats.tableProbes() > 0);
+            assertTrue(stats.cutoffs() > 0 && stats.cutoffs() <= stats.expandedNodes());
+            assertTrue(stats.firstMoveCutoffs() <= stats.cutoffs());
+            assertTrue(stats.getEffectiveBranchingFactor() > 1);
+
+            EngineStats totals = engine.getStats();
+            engine.search(new ChessGame(), SearchLimits.ofDepth(2)).join();
+            assertEquals(2, totals.getSearches());
+            assertEquals(2, totals.getLastDepth());
+            assertEquals(stats.nodes() + totals.getLastNodes(), totals.getNodes());
+
+            ObjectName name = engine.registerMBean("test");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(2L, server.getAttribute(name, "Searches"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Nodes"));
+
+            engine.close();
+            assertFalse(server.isRegistered(name));
+        }
+    }
+
+    @Test
+    public void testSearchAllocation() {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        // standard positions with castling, en passant and promotions
+        String[] fens = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        };
+
+        // searches run on the calling thread, so its allocations are the search's
+        try (Engine engine = new Engine(16, 1, Runnable::run)) {
+            // the first searches allocate the search stacks and compile the code
+            for (String fen : fens) {
+                engine.search(new ChessGame(fen), SearchLimits.ofDepth(4)).join();
+            }
+
+            for (String fen : fens) {
+                ChessGame game = new ChessGame(fen);
+                long before = threadBean.getThreadAllocatedBytes(threadId);
+                SearchResult result = engine.search(game, SearchLimits.ofDepth(5)).join();
+                long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+                // the search itself needs a few objects (e.g. its result), but no node does
+                assertTrue(result.nodes() > 1000);
+                assertTrue(allocated + " bytes allocated", allocated < 64 * 1024);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for EvalCache class.
+ */
+public class EvalCacheTest {
+    @Test
+    public void testStoreAndProbe() {
+        EvalCache cache = new EvalCache(1);
+        long key = 0x0123456789ABCDEFL;
+        assertEquals(EvalCache.NONE, cache.probe(key));
+
+        cache.store(key, -250);
+        assertEquals(-250, cache.probe(key));
+
+        cache.store(key, 75);
+        assertEquals(75, cache.probe(key));
+    }
+
+    @Test
+    public void testDifferentKeySameSlot() {
+        EvalCache cache = new EvalCache(1);
+        long key = 0x0123456789ABCDEFL;
+        long otherKey = key ^ 0x1000000000000000L; // same lower bits
+        cache.store(key, 10);
+        assertEquals(EvalCache.NONE, cache.probe(otherKey));
+
+        cache.store(otherKey, 20);
+        assertEquals(EvalCache.NONE, cache.probe(key));
+        assertEquals(20, cache.probe(otherKey));
+    }
+
+    @Test
+    public void testClear() {
+        EvalCache cache = new EvalCache(1);
+        cache.store(42, 42);
+        cache.clear();
+        assertEquals(EvalCache.NONE, cache.probe(42));
+    }
+}
@@ -0,0 +1,68 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+/**
+ * Tests for EvalParams class.
+ */
+public class EvalParamsTest {
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        EvalParams params = new EvalParams();
+        params.set(EvalParams.ISOLATED_PAWN, -23);
+        params.set(EvalParams.EG_POSITION_BONUSES + 100, 7);
+
+        Path path = Files.createTempFile("params", ".txt");
+        try {
+            params.save(path);
+            EvalParams loaded = EvalParams.load(path);
+            for (int i = 0; i < EvalParams.SIZE; i++) {
+                assertEquals(params.get(i), loaded.get(i));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testPartialFile() throws IOException {
+        Path path = Files.createTempFile("params", ".txt");
+        try {
+            Files.writeString(path, "shieldClose 12\npassedPawn 0 1 2 3 4 5 6 0\n");
+            EvalParams loaded = EvalParams.load(path);
+            EvalParams defaults = new EvalParams();
+            assertEquals(12, loaded.get(EvalParams.SHIELD_CLOSE));
+            assertEquals(6, loaded.get(EvalParams.PASSED_PAWN + 6));
+            assertEquals(defaults.get(EvalParams.SHIELD_FAR), loaded.get(EvalParams.SHIELD_FAR));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongNumberOfValues() throws IOException {
+        Path path = Files.createTempFile("params", ".txt");
+        try {
+            Files.writeString(path, "passedPawn 1 2 3\n");
+            EvalParams.load(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownGroup() throws IOException {
+        Path path = Files.createTempFile("params", ".txt");
+        try {
+            Files.writeString(path, "mobility 5\n");
+            EvalParams.load(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import org.junit.Test;
+
+/**
+ * Tests for Evaluator class.
+ */
+public class EvaluatorTest {
+    @Test
+    public void testSymmetry() {
+        // same position with colors swapped and the board flipped
+        ChessGame game = new ChessGame(
+            "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+        ChessGame mirrored = new ChessGame(
+            "rnbqkb1r/pppp1ppp/5n2/4p3/4P3/2N5/PPPP1PPP/R1BQKBNR b KQkq - 2 3");
+
+        Evaluator evaluator = new Evaluator();
+        assertEquals(evaluator.evaluate(game), evaluator.evaluate(mirrored));
+    }
+
+    @Test
+    public void testPassedPawn() {
+        // the black c-pawn stops the white d-pawn, the h-pawn does not
+        ChessGame blocked = new ChessGame("4k3/2p5/8/3P4/8/8/8/4K3 w - - 0 1");
+        ChessGame passed = new ChessGame("4k3/7p/8/3P4/8/8/8/4K3 w - - 0 1");
+
+        Evaluator evaluator = new Evaluator();
+        assertTrue(evaluator.evaluate(passed) > evaluator.evaluate(blocked) + 30);
+    }
+
+    @Test
+    public void testDoubledPawns() {
+        ChessGame doubled = new ChessGame("4k3/8/8/8/8/3P4/3P4/4K3 w - - 0 1");
+        ChessGame connected = new ChessGame("4k3/8/8/8/8/3P4/4P3/4K3 w - - 0 1");
+
+        Evaluator evaluator = new Evaluator();
+        assertTrue(evaluator.evaluate(connected) > evaluator.evaluate(doubled));
+    }
+
+    @Test
+    public void testTaperedKing() {
+        // the king should hide in the middlegame but become active in the endgame
+        ChessGame middlegameCastled = new ChessGame(
+            "r1bq1rk1/pppp1ppp/2n2n2/2b1p3/2B1P3/2N2N2/PPPP1PPP/R1BQ1RK1 w - - 6 5");
+        ChessGame middlegameCentral = new ChessGame(
+            "r1bq1rk1/pppp1ppp/2n2n2/2b1p3/2B1P3/2NK1N2/PPPP1PPP/R1BQ1R2 w - - 6 5");
+        ChessGame endgameCorner = new ChessGame("4k3/8/8/8/8/8/4P3/7K w - - 0 1");
+        ChessGame endgameCentral = new ChessGame("4k3/8/8/8/4K3/8/4P3/8 w - - 0 1");
+
+        Evaluator evaluator = new Evaluator();
+        assertTrue(evaluator.evaluate(middlegameCastled) > evaluator.evaluate(middlegameCentral));
+        assertTrue(evaluator.evaluate(endgameCentral) > evaluator.evaluate(endgameCorner));
+    }
+
+    @Test
+    public void testPawnTableHits() {
+        ChessGame game = new ChessGame();
+        Evaluator evaluator = new Evaluator();
+        int eval = evaluator.evaluate(game);
+        assertEquals(eval, evaluator.evaluate(game));
+        assertEquals(0.5, evaluator.getPawnTable().getHitRate(), 1e-9);
+
+        evaluator.clear();
+        assertEquals(eval, evaluator.evaluate(game));
+        assertEquals(1.0 / 3, evaluator.getPawnTable().getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testTrace() {
+        // the traced coefficients reproduce the evaluation (up to rounding of the blend)
+        ChessGame game = new ChessGame(
+            "r1bq1rk1/pp3ppp/2n2n2/2bpp3/2B1P3/2PP1N2/PP3PPP/RNBQ1RK1 w - - 0 7");
+        EvalParams params = new EvalParams();
+        Evaluator evaluator = new Evaluator(params, 1 << 10);
+        int[] coefficients = new int[EvalParams.SIZE];
+        int eval = evaluator.trace(game, coefficients);
+        assertEquals(eval, evaluator.evaluate(game));
+
+        int phase = 24; // all pieces but pawns are on the board
+        double middlegame = 0;
+        double endgame = 0;
+        double both = 0;
+        for (int i = 0; i < EvalParams.SIZE; i++) {
+            double term = (double) coefficients[i] * params.get(i);
+            switch (EvalParams.getPhaseKind(i)) {
+                case EvalParams.MIDDLEGAME -> middlegame += term;
+                case EvalParams.ENDGAME -> endgame += term;
+                default -> both += term;
+            }
+        }
+        double expected = (middlegame * phase + endgame * (24 - phase)) / 24 + both;
+        assertEquals(expected, eval, 1.0);
+    }
+}
@@ -0,0 +1,123 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import com.jekabsthomas.chess.engine.ChessGame.GameState;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+/**
+ * Tests for the flight recorder event classes.
+ */
+public class FlightRecorderEventsTest {
+    @Test
+    public void testSearchEvents() throws IOException {
+        List<RecordedEvent> events;
+        SearchResult result;
+        try (Recording recording = startRecording()) {
+            Engine engine = new Engine(4, 1);
+            result = engine.search(new ChessGame(), SearchLimits.ofDepth(3)).join();
+            engine.close();
+            events = stopRecording(recording);
+        }
+
+        List<RecordedEvent> iterations = getEvents(events, "SearchIteration");
+        assertEquals(3, iterations.size());
+        for (int i = 0; i < iterations.size(); i++) {
+            assertEquals(i + 1, iterations.get(i).getInt("depth"));
+            assertTrue(iterations.get(i).getLong("nodes") > 0);
+        }
+
+        List<RecordedEvent> moves = getEvents(events, "MoveDecided");
+        assertEquals(1, moves.size());
+        assertEquals(result.bestMove().toString(), moves.get(0).getString("move"));
+        assertEquals(result.score(), moves.get(0).getInt("score"));
+        assertEquals(result.nodes(), moves.get(0).getLong("nodes"));
+
+        // the engine allocates its table on creation
+        List<RecordedEvent> tableEvents = getEvents(events, "TranspositionTable");
+        assertFalse(tableEvents.isEmpty());
+        assertEquals("resize", tableEvents.get(0).getString("action"));
+    }
+
+    @Test
+    public void testTableEvents() throws IOException {
+        List<RecordedEvent> events;
+        try (Recording recording = startRecording()) {
+            TranspositionTable table = new TranspositionTable(1);
+            table.clear();
+            events = stopRecording(recording);
+        }
+
+        List<RecordedEvent> tableEvents = getEvents(events, "TranspositionTable");
+        assertEquals(2, tableEvents.size());
+        assertEquals("resize", tableEvents.get(0).getString("action"));
+        assertEquals("clear", tableEvents.get(1).getString("action"));
+        assertEquals(1024 * 1024, tableEvents.get(1).getLong("bytes"));
+    }
+
+    @Test
+    public void testGameFinishedEvent() throws IOException {
+        ChessGame game = new ChessGame();
+        for (String move : new String[] {"f2 -> f3", "e7 -> e5", "g2 -> g4", "d8 -> h4"}) {
+            game.makeMove(game.getLegalMoves().stream()
+                .filter(legal -> legal.toString().equals(move)).findFirst().orElseThrow());
+        }
+        assertEquals(GameState.BLACK_WINS, game.getGameState());
+
+        List<RecordedEvent> events;
+        try (Recording recording = startRecording()) {
+            GameFinishedEvent.emit(game);
+            events = stopRecording(recording);
+        }
+
+        List<RecordedEvent> finished = getEvents(events, "GameFinished");
+        assertEquals(1, finished.size());
+        assertEquals("BLACK_WINS", finished.get(0).getString("state"));
+        assertEquals(4, finished.get(0).getInt("plies"));
+    }
+
+    @Test
+    public void testDisabledEvents() {
+        // without a recording nothing is committed
+        assertFalse(new SearchIterationEvent().shouldCommit());
+        GameFinishedEvent.emit(new ChessGame());
+    }
+
+    private Recording startRecording() {
+        Recording recording = new Recording();
+        for (String name : new String[] {"SearchIteration", "MoveDecided", "TranspositionTable",
+            "GameFinished"}) {
+            recording.enable("com.jekabsthomas.chess." + name).withoutThreshold();
+        }
+        recording.start();
+        return recording;
+    }
+
+    private List<RecordedEvent> stopRecording(Recording recording) throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("events", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private List<RecordedEvent> getEvents(List<RecordedEvent> events, String name) {
+        return events.stream()
+            .filter(event -> event.getEventType().getName().endsWith("chess." + name))
+            .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+            .toList();
+    }
+}
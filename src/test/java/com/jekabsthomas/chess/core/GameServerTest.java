@@ -0,0 +1,151 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for GameServer class.
+ */
+public class GameServerTest {
+    private GameServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new GameServer(0, 1);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testHumanGame() throws IOException {
+        try (Client white = new Client(); Client black = new Client()) {
+            String[] game = white.send("new human").split(" ");
+            assertEquals("white", game[2]);
+            assertEquals("error Waiting for an opponent", white.send("move f2f3"));
+            assertEquals("game " + game[1] + " black", black.send("join " + game[1]));
+            assertEquals("joined", white.read());
+
+            // fool's mate
+            String[][] moves = {{"f2f3", "e7e5"}, {"g2g4", "d8h4"}};
+            for (String[] pair : moves) {
+                assertEquals("ok", white.send("move " + pair[0]));
+                assertEquals("move " + pair[0], black.read());
+                assertEquals("error Not your turn", white.send("move e2e4"));
+                assertEquals("ok", black.send("move " + pair[1]));
+                assertEquals("move " + pair[1], white.read());
+            }
+            assertEquals("end BLACK_WINS", white.read());
+            assertEquals("end BLACK_WINS", black.read());
+        }
+    }
+
+    @Test
+    public void testBotGame() throws IOException {
+        try (Client client = new Client()) {
+            assertTrue(client.send("new bot white depth 2").startsWith("game "));
+            assertEquals("ok", client.send("move e2e4"));
+            String reply = client.read().split(" ")[1];
+            assertNotNull(new ChessGame(
+                "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1").findMove(reply));
+            assertTrue(client.send("fen").startsWith("fen "));
+        }
+    }
+
+    @Test
+    public void testBotPlaysWhite() throws IOException {
+        try (Client client = new Client()) {
+            assertTrue(client.send("new bot black movetime 50").endsWith(" black"));
+            assertTrue(client.read().startsWith("move "));
+            assertEquals(20, client.send("moves").split(" ").length - 1);
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        try (Client client = new Client()) {
+            assertEquals("error No game, start one with new", client.send("fen"));
+            assertEquals("error No game 12345 to join", client.send("join 12345"));
+            client.send("new bot white depth 1");
+            assertEquals("error Illegal move e2e5", client.send("move e2e5"));
+            assertEquals("error Unknown command dance", client.send("dance"));
+        }
+    }
+
+    @Test
+    public void testLeaving() throws IOException {
+        try (Client white = new Client()) {
+            String id = white.send("new human").split(" ")[1];
+            try (Client black = new Client()) {
+                black.send("join " + id);
+                white.read();
+                black.out.println("quit");
+            }
+            assertEquals("left", white.read());
+            assertEquals("error No game, start one with new", white.send("fen"));
+        }
+    }
+
+    @Test
+    public void testManyIdleSessions() throws IOException {
+        List<Client> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                Client client = new Client();
+                clients.add(client);
+                client.send("new human");
+            }
+            assertEquals(200, server.getSessionCount());
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * A connection to the server that reads one line per answer.
+     */
+    private class Client implements AutoCloseable {
+        final Socket socket;
+        final BufferedReader in;
+        final PrintWriter out;
+
+        Client() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            socket.setSoTimeout(10000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        String send(String command) throws IOException {
+            out.println(command);
+            return read();
+        }
+
+        String read() throws IOException {
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.jekabsthomas.chess.engine.ChessBoard;
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for NnueNetwork and NnueAccumulator classes.
+ */
+public class NnueNetworkTest {
+    private static final int HIDDEN_SIZE = 40; // not a multiple of the vector length
+
+    private static NnueNetwork createRandomNetwork(long seed) {
+        Random random = new Random(seed);
+        short[] featureWeights = new short[NnueNetwork.NUM_FEATURES * HIDDEN_SIZE];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(129) - 64);
+        }
+        short[] hiddenBiases = new short[HIDDEN_SIZE];
+        for (int i = 0; i < hiddenBiases.length; i++) {
+            hiddenBiases[i] = (short) random.nextInt(128);
+        }
+        short[] outputWeights = new short[2 * HIDDEN_SIZE];
+        for (int i = 0; i < outputWeights.length; i++) {
+            outputWeights[i] = (short) (random.nextInt(257) - 128);
+        }
+        return new NnueNetwork(HIDDEN_SIZE, featureWeights, hiddenBiases, outputWeights, 100);
+    }
+
+    // plays a few moves, including captures
+    private static ChessGame playMoves(ChessGame game) {
+        Random random = new Random(7);
+        for (int i = 0; i < 12; i++) {
+            game.makeMove(game.getLegalMoves().get(random.nextInt(game.getLegalMoves().size())));
+        }
+        return game;
+    }
+
+    @Test
+    public void testIncrementalAccumulator() {
+        NnueNetwork network = createRandomNetwork(1);
+        ChessGame game = new ChessGame();
+        game.getBoard().setAccumulator(network.createAccumulator());
+        playMoves(game);
+
+        // accumulator after moves equals an accumulator built from scratch
+        ChessGame fromFen = new ChessGame(game.getFenString());
+        fromFen.getBoard().setAccumulator(network.createAccumulator());
+
+        NnueAccumulator incremental = (NnueAccumulator) game.getBoard().getAccumulator();
+        NnueAccumulator refreshed = (NnueAccumulator) fromFen.getBoard().getAccumulator();
+        for (boolean isWhite : new boolean[] {true, false}) {
+            short[] expected = refreshed.getValues(isWhite);
+            short[] actual = incremental.getValues(isWhite);
+            for (int i = 0; i < HIDDEN_SIZE; i++) {
+                assertEquals(expected[i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testScalarAndVectorInference() {
+        NnueNetwork network = createRandomNetwork(2);
+        NnueInference scalar = new ScalarInference();
+        NnueInference fastest = NnueInference.create();
+
+        ChessGame game = new ChessGame();
+        game.getBoard().setAccumulator(network.createAccumulator());
+        NnueAccumulator accumulator = (NnueAccumulator) game.getBoard().getAccumulator();
+        for (boolean isWhiteMove : new boolean[] {true, false}) {
+            assertEquals(network.evaluate(accumulator, isWhiteMove, scalar),
+                network.evaluate(accumulator, isWhiteMove, fastest));
+        }
+
+        // accumulators updated by either inference are identical too
+        network.setInference(scalar);
+        ChessGame scalarGame = playMoves(new ChessGame(game));
+        network.setInference(fastest);
+        ChessGame fastestGame = playMoves(new ChessGame(game));
+
+        NnueAccumulator scalarAcc = (NnueAccumulator) scalarGame.getBoard().getAccumulator();
+        NnueAccumulator fastestAcc = (NnueAccumulator) fastestGame.getBoard().getAccumulator();
+        assertEquals(network.evaluate(scalarAcc, true, scalar),
+            network.evaluate(fastestAcc, true, fastest));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        NnueNetwork network = createRandomNetwork(3);
+        Path path = Files.createTempFile("network", ".nnue");
+        try {
+            network.save(path);
+            NnueNetwork loaded = NnueNetwork.load(path);
+            assertEquals(HIDDEN_SIZE, loaded.getHiddenSize());
+
+            ChessBoard board = playMoves(new ChessGame()).getBoard();
+            board.setAccumulator(network.createAccumulator());
+            int expected = network.evaluate((NnueAccumulator) board.getAccumulator(), true);
+            board.setAccumulator(loaded.createAccumulator());
+            assertEquals(expected, loaded.evaluate((NnueAccumulator) board.getAccumulator(), true));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadInvalidFile() throws IOException {
+        Path path = Files.createTempFile("network", ".nnue");
+        try {
+            Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+            NnueNetwork.load(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testEngineWithNetwork() {
+        try (Engine engine = new Engine()) {
+            engine.setNetwork(createRandomNetwork(4));
+            assertNotNull(engine.generateMove(new ChessGame(), SearchLimits.ofDepth(3)));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.core.SearchScheduler.Priority;
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for SearchScheduler class.
+ */
+public class SearchSchedulerTest {
+    private SearchScheduler scheduler;
+
+    @Before
+    public void startScheduler() {
+        scheduler = new SearchScheduler(1, 4, 2000);
+    }
+
+    @After
+    public void stopScheduler() {
+        scheduler.close();
+    }
+
+    @Test
+    public void testDepthOverSeveralSlices() {
+        ChessGame game = new ChessGame();
+        SearchResult result = scheduler.submit(game, SearchLimits.ofDepth(5), Priority.NORMAL)
+            .join();
+        assertEquals(5, result.depth());
+        assertTrue(game.getLegalMoves().contains(result.bestMove()));
+        assertTrue(scheduler.getSlices() > 1);
+    }
+
+    @Test
+    public void testMate() {
+        ChessGame game = new ChessGame("6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1");
+        SearchResult result = scheduler.submit(game, SearchLimits.ofDepth(4), Priority.NORMAL)
+            .join();
+        assertEquals(Engine.MATE_SCORE - 1, result.score());
+        assertEquals("d1d8", result.bestMove().toUci());
+    }
+
+    @Test
+    public void testNodeBudget() {
+        SearchResult result = scheduler.submit(new ChessGame(), SearchLimits.ofNodes(10000),
+            Priority.NORMAL).join();
+        assertTrue(result.nodes() >= 10000);
+        assertNotNull(result.bestMove());
+    }
+
+    @Test
+    public void testDeadline() {
+        SearchResult result = scheduler.submit(new ChessGame(), SearchLimits.ofTime(200),
+            Priority.NORMAL).join();
+        assertTrue(result.timeMs() >= 200);
+        assertTrue(result.timeMs() < 2000);
+    }
+
+    @Test
+    public void testLatencyCriticalPreemptsBackground() throws InterruptedException {
+        // slices so long that the move would otherwise wait for seconds
+        try (SearchScheduler slow = new SearchScheduler(1, 4, SearchScheduler.MAX_QUANTUM_NODES)) {
+            CompletableFuture<SearchResult> analysis = slow.submit(new ChessGame(),
+                SearchLimits.infinite(), Priority.BACKGROUND);
+            Thread.sleep(100);
+
+            SearchResult move = slow.submit(new ChessGame(), SearchLimits.ofDepth(3),
+                Priority.LATENCY_CRITICAL).join();
+            assertEquals(3, move.depth());
+            assertEquals(1, slow.getPreemptions());
+            assertFalse(analysis.isDone()); // queued again, keeps going until cancelled
+            analysis.cancel(false);
+        }
+    }
+
+    @Test
+    public void testBackgroundRunsLast() {
+        // equal priorities take turns, the background job only gets the idle worker
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<?>> jobs = new ArrayList<>();
+        String[] names = {"first", "background", "second"};
+        Priority[] priorities = {Priority.NORMAL, Priority.BACKGROUND, Priority.NORMAL};
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            jobs.add(scheduler.submit(new ChessGame(), SearchLimits.ofDepth(5), priorities[i])
+                .thenRun(() -> finished.add(name)));
+        }
+        CompletableFuture.allOf(jobs.toArray(new CompletableFuture<?>[0])).join();
+        assertEquals("background", finished.get(2));
+    }
+
+    @Test
+    public void testStartedJobsAreBounded() {
+        try (SearchScheduler small = new SearchScheduler(1, 1, 500, 2)) {
+            List<CompletableFuture<SearchResult>> jobs = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                jobs.add(small.submit(new ChessGame(), SearchLimits.ofDepth(4),
+                    Priority.BACKGROUND));
+            }
+            for (CompletableFuture<SearchResult> job : jobs) {
+                assertEquals(4, job.join().depth());
+            }
+            assertEquals(2, small.getEngineCount());
+        }
+    }
+
+    @Test
+    public void testEngineIsTakenFromLessImportantJob() throws InterruptedException {
+        try (SearchScheduler small = new SearchScheduler(1, 1, 500, 1)) {
+            CompletableFuture<SearchResult> analysis = small.submit(new ChessGame(),
+                SearchLimits.infinite(), Priority.BACKGROUND);
+            while (small.getSlices() == 0) {
+                Thread.sleep(1);
+            }
+            SearchResult move = small.submit(new ChessGame(), SearchLimits.ofDepth(3),
+                Priority.NORMAL).join();
+            assertEquals(3, move.depth());
+            assertFalse(analysis.isDone());
+            analysis.cancel(false);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGameOver() {
+        ChessGame game = new ChessGame();
+        for (String move : new String[] {"f2f3", "e7e5", "g2g4", "d8h4"}) {
+            game.makeMove(game.findMove(move));
+        }
+        scheduler.submit(game, SearchLimits.ofDepth(1), Priority.NORMAL);
+    }
+
+    @Test
+    public void testRegisterMBeans() throws JMException, InterruptedException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName first = new ObjectName("com.jekabsthomas.chess:type=Engine,name="
+            + ObjectName.quote("scheduler-test-0"));
+        scheduler.submit(new ChessGame(), SearchLimits.ofDepth(1), Priority.NORMAL).join();
+        scheduler.registerMBeans("scheduler-test");
+        assertTrue(server.isRegistered(first));
+        assertEquals(1L, server.getAttribute(first, "Searches"));
+
+        scheduler.close(); // the worker may still hold the engine for a moment
+        while (server.isRegistered(first)) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests for SelfPlayCoordinator class.
+ */
+public class SelfPlayCoordinatorTest {
+    private static final long NODES = 200;
+
+    @Test
+    public void testWorkerProcesses() throws IOException, InterruptedException {
+        List<String> openings = SelfPlayCoordinator.randomOpenings(4, 8, 1);
+        try (SelfPlayCoordinator coordinator = new SelfPlayCoordinator(0, openings, NODES,
+            null)) {
+            List<Process> workers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                workers.add(SelfPlayCoordinator.launchWorker(coordinator.getPort(), 1));
+            }
+
+            assertTrue(coordinator.awaitCompletion(2, TimeUnit.MINUTES));
+            for (Process worker : workers) {
+                assertTrue(worker.waitFor(30, TimeUnit.SECONDS));
+                assertEquals(0, worker.exitValue());
+            }
+
+            List<String> games = coordinator.getGames();
+            assertEquals(4, games.size());
+            for (int i = 0; i < games.size(); i++) {
+                assertTrue(games.get(i).contains("[Round \"" + (i + 1) + "\"]"));
+                assertTrue(games.get(i).contains("[FEN \"" + openings.get(i) + "\"]"));
+                assertTrue(games.get(i).trim().matches("(?s).*(1-0|0-1|1/2-1/2)"));
+            }
+        }
+    }
+
+    @Test
+    public void testGameOfLostWorkerIsPlayedAgain() throws IOException, InterruptedException {
+        List<String> openings = SelfPlayCoordinator.randomOpenings(2, 8, 2);
+        try (SelfPlayCoordinator coordinator = new SelfPlayCoordinator(0, openings, NODES,
+            null)) {
+            try (Client lost = new Client(coordinator)) {
+                assertTrue(lost.send("next").startsWith("play 0 200 "));
+            }
+
+            int played = new SelfPlayWorker(getHost(), coordinator.getPort()).play();
+            assertEquals(2, played);
+            assertEquals(2, coordinator.getGames().size());
+            assertEquals(1, coordinator.getReassignments());
+        }
+    }
+
+    @Test
+    public void testStuckWorkerIsOvertaken() throws IOException, InterruptedException {
+        List<String> openings = SelfPlayCoordinator.randomOpenings(1, 8, 3);
+        try (SelfPlayCoordinator coordinator = new SelfPlayCoordinator(0, openings, NODES,
+            null);
+            Client stuck = new Client(coordinator)) {
+            assertTrue(stuck.send("next").startsWith("play 0 "));
+
+            // the idle worker gets a copy of the game and finishes it first
+            CompletableFuture<Integer> played = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new SelfPlayWorker(getHost(), coordinator.getPort()).play();
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertEquals(1, (int) played.join());
+            String game = coordinator.getGames().get(0);
+
+            // a late result is ignored, the stuck worker would have been told to stop
+            assertEquals("cancel", stuck.send("status 0"));
+            stuck.out.println("result 0 1-0 1. e4");
+            assertEquals("done", stuck.send("next"));
+            assertEquals(game, coordinator.getGames().get(0));
+        }
+    }
+
+    @Test
+    public void testFinishedCopyIsCancelled() throws IOException, InterruptedException {
+        List<String> openings = SelfPlayCoordinator.randomOpenings(1, 8, 4);
+        try (SelfPlayCoordinator coordinator = new SelfPlayCoordinator(0, openings, 100000,
+            null);
+            Client first = new Client(coordinator)) {
+            assertTrue(first.send("next").startsWith("play 0 "));
+            assertEquals("continue", first.send("status 0"));
+
+            // the worker gets a copy, which is dropped once the first copy is finished
+            CompletableFuture<Integer> played = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new SelfPlayWorker(getHost(), coordinator.getPort()).play();
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            while (coordinator.getReassignments() == 0) {
+                Thread.sleep(1);
+            }
+            first.out.println("result 0 1-0 1. e4");
+
+            assertEquals(0, (int) played.join());
+            assertEquals(1, coordinator.getCancellations());
+            assertTrue(coordinator.getGames().get(0).endsWith("1. e4 1-0\n"));
+        }
+    }
+
+    @Test
+    public void testPlayGame() {
+        try (Engine engine = new Engine(4, 1)) {
+            String game = SelfPlayWorker.playGame(engine,
+                "6k1/5ppp/8/8/8/8/5PPP/3R2K1 b - - 0 1", NODES, () -> false);
+            assertTrue(game.startsWith("1/2-1/2 1... ") || game.startsWith("0-1 1... ")
+                || game.startsWith("1-0 1... "));
+            assertTrue(game.contains(" 2. "));
+
+            assertNull(SelfPlayWorker.playGame(engine,
+                "6k1/5ppp/8/8/8/8/5PPP/3R2K1 b - - 0 1", NODES, () -> true));
+        }
+    }
+
+    private static String getHost() {
+        return InetAddress.getLoopbackAddress().getHostAddress();
+    }
+
+    /**
+     * A worker connection that is controlled by the test.
+     */
+    private static class Client implements AutoCloseable {
+        final Socket socket;
+        final BufferedReader in;
+        final PrintWriter out;
+
+        Client(SelfPlayCoordinator coordinator) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.getPort());
+            socket.setSoTimeout(10000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        String send(String command) throws IOException {
+            out.println(command);
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
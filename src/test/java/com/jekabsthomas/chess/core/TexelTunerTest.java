@@ -0,0 +1,57 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Tests for TexelTuner class.
+ */
+public class TexelTunerTest {
+    private static final List<String> POSITIONS = List.of(
+        "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1 [0.5]",
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3 1/2-1/2",
+        "4k3/8/8/3P4/8/8/8/4K3 w - - 0 1 1-0",
+        "4k3/8/8/8/8/8/3p4/6K1 w - - 0 1 \"0-1\";",
+        // illegal, black could capture the king
+        "4k3/8/8/8/8/8/3p4/4K3 b - - 0 1 0-1",
+        "rnb1kbnr/pppp1ppp/8/4p3/4P2q/8/PPPP1PPP/RNBQKBNR w KQkq - 1 3 0-1",
+        "r3k2r/ppp2ppp/8/8/8/8/PPP2PPP/R2QK2R w KQkq - 0 1 1-0",
+        "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1 1-0",
+        // captures are resolved: the queen can be taken
+        "4k3/8/8/3q4/4P3/8/8/4K3 w - - 0 1 1-0",
+        "not a position 1-0",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"
+    );
+
+    @Test
+    public void testLoadAndTune() throws IOException {
+        Path path = Files.createTempFile("positions", ".txt");
+        try {
+            Files.write(path, POSITIONS);
+            TexelTuner tuner = new TexelTuner(ForkJoinPool.commonPool());
+            EvalParams start = new EvalParams();
+
+            // the malformed line and the line without a result are skipped
+            assertEquals(8, tuner.load(path, start));
+            assertEquals(8, tuner.getNumPositions());
+
+            double scalingConstant = tuner.fitScalingConstant(start);
+            assertTrue(scalingConstant > 0);
+
+            double initialLoss = tuner.computeLoss(start);
+            EvalParams tuned = tuner.tune(start, 50, TexelTuner.DEFAULT_LEARNING_RATE, null);
+            assertTrue(tuner.computeLoss(tuned) < initialLoss);
+            assertEquals(start.get(EvalParams.MG_PIECE_VALUES + 5),
+                tuned.get(EvalParams.MG_PIECE_VALUES + 5)); // the king is not tuned
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
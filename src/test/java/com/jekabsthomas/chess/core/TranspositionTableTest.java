@@ -0,0 +1,59 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for TranspositionTable class.
+ */
+public class TranspositionTableTest {
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 0x123456789ABCDEFL;
+        table.store(key, 7, TranspositionTable.LOWER_BOUND, -12345, 0x5A1B);
+
+        long entry = table.probe(key);
+        assertEquals(7, TranspositionTable.getDepth(entry));
+        assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.getBound(entry));
+        assertEquals(-12345, TranspositionTable.getScore(entry));
+        assertEquals(0x5A1B, TranspositionTable.getMove(entry));
+    }
+
+    @Test
+    public void testProbeMissing() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 42;
+        table.store(key, 3, TranspositionTable.EXACT, 10, 0x1234);
+
+        // same slot, different key
+        long otherKey = key + table.getCapacity();
+        assertEquals(TranspositionTable.NONE, table.probe(otherKey));
+
+        table.clear();
+        assertEquals(TranspositionTable.NONE, table.probe(key));
+    }
+
+    @Test
+    public void testKeepsMoveOfSamePosition() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 99;
+        table.store(key, 3, TranspositionTable.EXACT, 10, 0x1234);
+        table.store(key, 4, TranspositionTable.UPPER_BOUND, 5, 0);
+
+        long entry = table.probe(key);
+        assertEquals(4, TranspositionTable.getDepth(entry));
+        assertEquals(0x1234, TranspositionTable.getMove(entry));
+    }
+
+    @Test
+    public void testCapacity() {
+        // 1 MB of 16 byte entries
+        TranspositionTable table = new TranspositionTable(1);
+        assertEquals(1 << 16, table.getCapacity());
+
+        table.resize(3);
+        assertEquals(1 << 17, table.getCapacity());
+    }
+}
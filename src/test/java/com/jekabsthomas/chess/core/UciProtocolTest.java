@@ -0,0 +1,113 @@
+package com.jekabsthomas.chess.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.jekabsthomas.chess.engine.ChessGame;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for UciProtocol class.
+ */
+public class UciProtocolTest {
+    @Test
+    public void testHandshake() {
+        List<String> output = run("uci", "isready", "quit");
+        assertEquals("id name " + UciProtocol.NAME, output.get(0));
+        assertTrue(output.contains("uciok"));
+        assertEquals("readyok", output.get(output.size() - 1));
+    }
+
+    @Test
+    public void testGoDepth() {
+        List<String> output = run("setoption name Hash value 8", "ucinewgame",
+            "position startpos moves e2e4 e7e5", "go depth 3");
+
+        // one info line per iteration, the best move comes last
+        assertTrue(output.get(0).startsWith("info depth 1 seldepth "));
+        assertTrue(output.get(2).startsWith("info depth 3 "));
+        assertTrue(output.get(2).contains(" score cp "));
+        assertTrue(output.get(2).contains(" pv "));
+        String bestMove = output.get(3).split(" ")[1];
+        assertNotNull(new ChessGame(
+            "rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2").findMove(bestMove));
+    }
+
+    @Test
+    public void testMate() {
+        List<String> output = run("position fen 6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+            "go depth 2");
+        assertTrue(output.get(1).contains(" score mate 1 "));
+        assertEquals("bestmove d1d8", output.get(2));
+    }
+
+    @Test
+    public void testInfiniteUntilStop() {
+        List<String> output = run("position startpos", "go infinite", "stop");
+        assertTrue(output.get(output.size() - 1).startsWith("bestmove "));
+    }
+
+    @Test
+    public void testQuitStopsSearch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Engine engine = new Engine(16, 1)) {
+            String commands = "position startpos\ngo infinite\nquit\nisready";
+            BufferedReader in = new BufferedReader(new StringReader(commands));
+            new UciProtocol(engine, in, new PrintStream(bytes, true)).run();
+        }
+        String[] output = bytes.toString().split("\\R");
+        assertTrue(output[output.length - 1].startsWith("bestmove "));
+    }
+
+    @Test
+    public void testIllegalMove() {
+        List<String> output = run("position startpos moves e2e5", "isready");
+        assertEquals(List.of("info string Illegal move e2e5", "readyok"), output);
+    }
+
+    @Test
+    public void testGameOver() {
+        List<String> output = run("position startpos moves f2f3 e7e5 g2g4 d8h4", "go depth 3");
+        assertEquals(List.of("bestmove 0000"), output);
+    }
+
+    @Test
+    public void testFormatScore() {
+        assertEquals("cp -35", UciProtocol.formatScore(-35));
+        assertEquals("mate 1", UciProtocol.formatScore(Engine.MATE_SCORE - 1));
+        assertEquals("mate 2", UciProtocol.formatScore(Engine.MATE_SCORE - 3));
+        assertEquals("mate -1", UciProtocol.formatScore(-Engine.MATE_SCORE + 2));
+    }
+
+    @Test
+    public void testClockLimits() {
+        assertEquals(1000 + 750, SearchLimits.ofClock(30000, 1000, 0).timeMs());
+        assertEquals(5000, SearchLimits.ofClock(10000, 0, 2).timeMs());
+        // never all of the remaining time
+        assertEquals(50, SearchLimits.ofClock(100, 1000, 1).timeMs());
+    }
+
+    /**
+     * Handles the commands like a GUI that waits for the best move at the end.
+     */
+    private static List<String> run(String... commands) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Engine engine = new Engine(16, 1)) {
+            BufferedReader in = new BufferedReader(new StringReader(""));
+            UciProtocol protocol = new UciProtocol(engine, in, new PrintStream(bytes, true));
+            for (String command : commands) {
+                protocol.handle(command);
+            }
+            protocol.waitForSearch();
+        }
+        return Arrays.asList(bytes.toString().split("\\R"));
+    }
+}
@@ -65,6 +65,22 @@ public class ChessGamePerftTest {
         assertEquals(2079, perft(game, 2));
     }
 
+    @Test
+    public void testMakeAndUndoMoves() {
+        // deeper, since making and taking back encoded moves is much faster
+        ChessGame game = new ChessGame(
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        assertEquals(97862, perftUndo(game, 3));
+        game = new ChessGame("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertEquals(43238, perftUndo(game, 4));
+        game = new ChessGame("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8");
+        assertEquals(62379, perftUndo(game, 3));
+
+        // the game is unchanged afterwards
+        assertEquals("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            game.getFenString());
+    }
+
     /*
      * Counts the number of nodes in the game tree at the given depth.
      */
@@ -82,6 +98,26 @@ public class ChessGamePerftTest {
         return nodes;
     }
 
+    /*
+     * Counts the nodes by making and taking back encoded moves on a single game.
+     */
+    private int perftUndo(ChessGame game, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+
+        int[] moves = new int[ChessRules.MAX_MOVES];
+        int numMoves = game.getLegalMoves(moves);
+        int nodes = 0;
+        for (int i = 0; i < numMoves; i++) {
+            game.makeMove(moves[i]);
+            nodes += perftUndo(game, depth - 1);
+            game.undoMove();
+        }
+
+        return nodes;
+    }
+
     /*
      * Makes a move on a copy of the game and return the copy.
      */
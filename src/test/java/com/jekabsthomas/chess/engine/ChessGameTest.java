@@ -1,6 +1,8 @@
 package com.jekabsthomas.chess.engine;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.jekabsthomas.chess.engine.ChessBoard.ChessMove;
 import com.jekabsthomas.chess.engine.ChessBoard.ChessPosition;
@@ -132,4 +134,61 @@ public class ChessGameTest {
         GameState state = game.makeMove(move);
         assertEquals(GameState.DRAW, state);
     }
+
+    @Test
+    public void testUndoMove() {
+        // castling, en passant and promotion are taken back too
+        String fen = "r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1";
+        ChessGame game = new ChessGame(fen);
+        ZobristHash hash = new ZobristHash();
+        long startHash = hash.getHash(game);
+        int[] moves = new int[ChessRules.MAX_MOVES];
+        int numMoves = game.getLegalMoves(moves);
+        assertEquals(game.getLegalMoves().size(), numMoves);
+
+        for (int i = 0; i < numMoves; i++) {
+            game.makeMove(moves[i]);
+            game.undoMove();
+            assertEquals(fen, game.getFenString());
+            assertEquals(startHash, hash.getHash(game));
+        }
+    }
+
+    @Test
+    public void testIsCapture() {
+        ChessGame game = new ChessGame("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1");
+        assertTrue(game.isCapture(game.findMove("e5d6"))); // en passant
+        assertTrue(game.isCapture(game.findMove("b7a8q")));
+        assertFalse(game.isCapture(game.findMove("b7b8q")));
+        assertFalse(game.isCapture(game.findMove("e5e6")));
+    }
+
+    @Test
+    public void testToSan() {
+        ChessGame game = new ChessGame();
+        assertEquals("e4", game.toSan(game.findMove("e2e4")));
+        assertEquals("Nf3", game.toSan(game.findMove("g1f3")));
+
+        // castling, en passant, promotion with check, captures and disambiguation
+        game = new ChessGame("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1");
+        assertEquals("O-O", game.toSan(game.findMove("e1g1")));
+        assertEquals("O-O-O", game.toSan(game.findMove("e1c1")));
+        assertEquals("exd6", game.toSan(game.findMove("e5d6")));
+        assertEquals("bxa8=Q+", game.toSan(game.findMove("b7a8q")));
+        assertEquals("Rxa8+", game.toSan(game.findMove("a1a8")));
+        assertEquals("Rd1", game.toSan(game.findMove("a1d1"))); // the other rook is blocked
+        game = new ChessGame("k7/8/8/R7/8/R7/8/K7 w - - 0 1");
+        assertEquals("R5a4+", game.toSan(game.findMove("a5a4")));
+
+        game = new ChessGame();
+        for (String move : new String[] {"f2f3", "e7e5", "g2g4"}) {
+            game.makeMove(game.findMove(move));
+        }
+        assertEquals("Qh4#", game.toSan(game.findMove("d8h4")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUndoWithoutMove() {
+        new ChessGame().undoMove();
+    }
 }
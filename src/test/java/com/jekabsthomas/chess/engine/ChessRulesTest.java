@@ -144,5 +144,13 @@ public class ChessRulesTest {
         // rook
         board = new ChessBoard("kKr5/8/8/8/8/8/8/8", "-", "-");
         assertFalse(ChessRules.isInsufficientMaterial(board));
+
+        // two bishops on the same color (after a promotion)
+        board = new ChessBoard("kKb1b3/8/8/8/8/8/8/8", "-", "-");
+        assertTrue(ChessRules.isInsufficientMaterial(board));
+
+        // bishops of both sides on the same color
+        board = new ChessBoard("kKb1B3/8/8/8/8/8/8/8", "-", "-");
+        assertTrue(ChessRules.isInsufficientMaterial(board));
     }
 }
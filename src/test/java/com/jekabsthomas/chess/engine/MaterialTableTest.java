@@ -0,0 +1,67 @@
+package com.jekabsthomas.chess.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for MaterialTable class.
+ */
+public class MaterialTableTest {
+    @Test
+    public void testIncrementalKey() {
+        // key after making moves (incl. captures) equals the key of the same position from scratch
+        ChessGame game = new ChessGame(
+            "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3");
+        for (String[] move : new String[][] {{"e5", "d4"}, {"f3", "d4"}, {"c6", "d4"}}) {
+            game.makeMove(game.getBoard().new ChessMove(
+                new ChessBoard.ChessPosition(move[0]).get1D(),
+                new ChessBoard.ChessPosition(move[1]).get1D()));
+        }
+
+        ChessGame fromFen = new ChessGame(game.getFenString());
+        assertEquals(fromFen.getBoard().getMaterialKey(), game.getBoard().getMaterialKey());
+    }
+
+    @Test
+    public void testPhase() {
+        ChessBoard start = new ChessGame().getBoard();
+        int entry = MaterialTable.probe(start.getMaterialKey());
+        assertEquals(MaterialTable.MAX_PHASE, MaterialTable.getPhase(entry));
+
+        ChessBoard pawnEnding = new ChessBoard("4k3/pppp4/8/8/8/8/4PPPP/4K3", "-", "-");
+        entry = MaterialTable.probe(pawnEnding.getMaterialKey());
+        assertEquals(0, MaterialTable.getPhase(entry));
+    }
+
+    @Test
+    public void testScale() {
+        // opposite-colored bishops
+        ChessBoard board = new ChessBoard("4k3/pp3b2/8/8/8/8/PPPB4/4K3", "-", "-");
+        int entry = MaterialTable.probe(board.getMaterialKey());
+        assertEquals(MaterialTable.NORMAL_SCALE / 2, MaterialTable.getScale(entry, true));
+
+        // two knights cannot force mate
+        board = new ChessBoard("4k3/8/8/8/8/8/8/3NNK2", "-", "-");
+        entry = MaterialTable.probe(board.getMaterialKey());
+        assertEquals(0, MaterialTable.getScale(entry, true));
+        assertFalse(MaterialTable.isDrawn(entry));
+
+        // rook against bare king
+        board = new ChessBoard("4k3/8/8/8/8/8/8/R3K3", "-", "-");
+        entry = MaterialTable.probe(board.getMaterialKey());
+        assertEquals(MaterialTable.NORMAL_SCALE, MaterialTable.getScale(entry, true));
+        assertTrue(MaterialTable.isMatingBareKing(entry, true));
+        assertFalse(MaterialTable.isMatingBareKing(entry, false));
+    }
+
+    @Test
+    public void testUncountableMaterial() {
+        // three white knights after promotions
+        ChessBoard board = new ChessBoard("4k3/8/8/8/8/8/8/2NNNK2", "-", "-");
+        assertEquals(MaterialTable.NONE, board.getMaterialKey());
+        assertFalse(ChessRules.isInsufficientMaterial(board));
+    }
+}
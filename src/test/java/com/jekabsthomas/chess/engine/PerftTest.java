@@ -0,0 +1,101 @@
+package com.jekabsthomas.chess.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Tests for Perft class.
+ */
+public class PerftTest {
+    @Test
+    public void testSuite() {
+        for (Perft.SuitePosition position : Perft.SUITE) {
+            Perft perft = new Perft(new ChessGame(position.fen()));
+            for (int depth = 1; depth <= 3; depth++) {
+                assertEquals(position.fen(), position.nodes()[depth - 1], perft.perft(depth));
+            }
+        }
+    }
+
+    @Test
+    public void testDeeper() {
+        Perft.SuitePosition position = Perft.SUITE.get(2);
+        assertEquals(position.nodes()[4], new Perft(new ChessGame(position.fen())).perft(5));
+    }
+
+    @Test
+    public void testDivide() {
+        // promotions are written with the piece
+        ChessGame game = new ChessGame("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1");
+        Map<String, Long> counts = new Perft(game).divide(1);
+        assertEquals(9, counts.size());
+        assertEquals(Long.valueOf(1), counts.get("b7b8q"));
+        assertEquals(Long.valueOf(1), counts.get("b7b8n"));
+
+        Perft.SuitePosition position = Perft.SUITE.get(3);
+        counts = new Perft(new ChessGame(position.fen())).divide(3);
+        assertEquals(position.nodes()[0], counts.size());
+        assertEquals(position.nodes()[2],
+            counts.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Perft.SuitePosition position : Perft.SUITE.subList(2, 5)) {
+                Perft perft = new Perft(new ChessGame(position.fen()));
+                assertEquals(position.nodes()[3], perft.perft(4, pool));
+                assertEquals(perft.divide(4), perft.divide(4, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testHashed() {
+        PerftTable table = new PerftTable(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Perft.SuitePosition position : Perft.SUITE) {
+                Perft perft = new Perft(new ChessGame(position.fen()), table);
+                assertEquals(position.nodes()[3], perft.perft(4));
+                // again from the table, also by the parallel tasks
+                assertEquals(position.nodes()[3], perft.perft(4, pool));
+                assertEquals(position.nodes()[2], perft.perft(3));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTable() {
+        PerftTable table = new PerftTable(1);
+        assertEquals(1 << 16, table.size());
+        assertEquals(PerftTable.NONE, table.probe(12345, 3));
+        table.store(12345, 3, 1_000_000_000_000L);
+        assertEquals(1_000_000_000_000L, table.probe(12345, 3));
+        assertEquals(PerftTable.NONE, table.probe(12345, 4));
+        assertEquals(PerftTable.NONE, table.probe(12346, 3));
+        table.clear();
+        assertEquals(PerftTable.NONE, table.probe(12345, 3));
+    }
+
+    @Test
+    public void testGameUnchanged() {
+        ChessGame game = new ChessGame(Perft.SUITE.get(1).fen());
+        new Perft(game).perft(3);
+        assertEquals(Perft.SUITE.get(1).fen(), game.getFenString());
+        assertEquals(1, new Perft(game).perft(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDepth() {
+        new Perft(new ChessGame()).perft(-1);
+    }
+}
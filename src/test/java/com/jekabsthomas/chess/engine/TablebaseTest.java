@@ -0,0 +1,198 @@
+package com.jekabsthomas.chess.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for Tablebase and TablebaseGenerator classes.
+ */
+public class TablebaseTest {
+    private static Path directory;
+    private static Tablebase tablebase;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        directory = Files.createTempDirectory("tablebase");
+        TablebaseGenerator generator = new TablebaseGenerator(directory, 2);
+        generator.setLogging(false);
+        tablebase = generator.generate(List.of("KQK", "KPK"));
+    }
+
+    @AfterClass
+    public static void deleteFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testCanonicalName() {
+        assertEquals("KQK", Tablebase.getCanonicalName("KKQ"));
+        assertEquals("KQKP", Tablebase.getCanonicalName("KPKQ"));
+        assertEquals("KRPK", Tablebase.getCanonicalName("KPRK"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidName() {
+        Tablebase.getCanonicalName("KXK");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyPieces() {
+        Tablebase.getCanonicalName("KQRKRR");
+    }
+
+    @Test
+    public void testSubEndings() {
+        assertEquals(Set.of("KQK", "KRK"), TablebaseGenerator.getSubEndings("KPK"));
+        assertEquals(Set.of("KRK", "KPK", "KQKR", "KRKR", "KRKB", "KRKN"),
+            TablebaseGenerator.getSubEndings("KRKP"));
+    }
+
+    @Test
+    public void testKnownPositions() {
+        // Qa8 mates
+        assertResult(Tablebase.WIN, 1, "7k/8/6K1/8/8/8/Q7/8 w - - 0 1");
+        // the same with colors swapped
+        assertResult(Tablebase.WIN, 1, "8/q7/8/8/8/6k1/8/7K b - - 0 1");
+        assertResult(Tablebase.LOSS, 0, "Q6k/8/6K1/8/8/8/8/8 b - - 0 1");
+        // stalemate
+        assertResult(Tablebase.DRAW, 0, "7k/5Q2/6K1/8/8/8/8/8 b - - 0 1");
+        // the queen is lost
+        assertResult(Tablebase.DRAW, 0, "8/8/8/3kQ3/8/8/8/K7 b - - 0 1");
+    }
+
+    @Test
+    public void testMirroredPositions() {
+        // Qa8 mates, in all 8 mirror images
+        String[] fens = {"7k/8/6K1/8/8/8/Q7/8", "k7/8/1K6/8/8/8/7Q/8", "8/Q7/8/8/8/6K1/8/7k",
+            "8/7Q/8/8/8/1K6/8/k7", "6Q1/8/8/8/8/8/2K5/k7", "k7/2K5/8/8/8/8/8/6Q1",
+            "1Q6/8/8/8/8/8/5K2/7k", "7k/5K2/8/8/8/8/8/1Q6"};
+        for (String fen : fens) {
+            assertResult(Tablebase.WIN, 1, fen + " w - - 0 1");
+        }
+
+        // pawns can only be mirrored horizontally
+        int result = probe("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1");
+        assertEquals(Tablebase.WIN, Tablebase.getWdl(result));
+        assertEquals(result, probe("3k4/8/3K4/3P4/8/8/8/8 w - - 0 1"));
+        assertResult(Tablebase.DRAW, 0, "4k3/4P3/4K3/8/8/8/8/8 b - - 0 1"); // stalemate
+        assertResult(Tablebase.DRAW, 0, "8/8/8/8/8/4k3/4p3/4K3 w - - 0 1");
+    }
+
+    @Test
+    public void testKingPairs() {
+        assertEquals(Tablebase.PAWNLESS_KING_PAIRS << 7, new Tablebase.Table("KQK").size);
+        assertEquals(Tablebase.PAWN_KING_PAIRS << 7, new Tablebase.Table("KPK").size);
+    }
+
+    @Test
+    public void testFivePieces() {
+        // the largest tables still fit an int index
+        Tablebase.Table table = new Tablebase.Table("KQKRP");
+        assertEquals(Tablebase.PAWN_KING_PAIRS << 19, table.size);
+        table = new Tablebase.Table(Tablebase.getCanonicalName("KRKQR"));
+        assertEquals("KQRKR", table.name);
+        assertEquals(Tablebase.PAWNLESS_KING_PAIRS << 19, table.size);
+
+        // mirror images share an index, which gives the squares of one of them back
+        int[] squares = {60, 3, 35, 9, 50};
+        int index = table.getIndex(squares, false);
+        for (int symmetry : new int[] {Tablebase.FLIP_FILES, Tablebase.FLIP_RANKS,
+            Tablebase.TRANSPOSE, Tablebase.FLIP_FILES | Tablebase.FLIP_RANKS,
+            Tablebase.FLIP_RANKS | Tablebase.TRANSPOSE}) {
+            int[] mirrored = new int[squares.length];
+            for (int slot = 0; slot < squares.length; slot++) {
+                mirrored[slot] = Tablebase.transform(squares[slot], symmetry);
+            }
+            assertEquals(index, table.getIndex(mirrored, false));
+        }
+
+        int[] decoded = new int[squares.length];
+        table.getSquares(index, decoded);
+        assertEquals(index, table.getIndex(decoded, false));
+        assertEquals(Tablebase.NOT_FOUND, table.getIndex(new int[] {0, 1, 35, 9, 50}, true));
+    }
+
+    @Test
+    public void testWhiteAlwaysWins() {
+        Tablebase.Table table = tablebase.getTable("KQK");
+        int longestWin = 0;
+        for (int index = 0; index < table.size; index += 2) {
+            int result = table.probe(index);
+            if (result != Tablebase.NOT_FOUND) {
+                assertEquals(Tablebase.WIN, Tablebase.getWdl(result));
+                longestWin = Math.max(longestWin, Tablebase.getDistance(result));
+            }
+        }
+        assertEquals(19, longestWin); // mate in 10 moves
+    }
+
+    @Test
+    public void testNotFound() {
+        ChessGame game = new ChessGame("4k3/8/8/8/8/8/8/R3K3 w Q - 0 1");
+        assertEquals(Tablebase.NOT_FOUND, tablebase.probe(game.getBoard(), true));
+        game = new ChessGame("4k3/8/8/8/8/8/8/RR2K3 w - - 0 1");
+        assertEquals(Tablebase.NOT_FOUND, tablebase.probe(game.getBoard(), true));
+        game = new ChessGame();
+        assertEquals(Tablebase.NOT_FOUND, tablebase.probe(game.getBoard(), true));
+    }
+
+    @Test
+    public void testOpenFiles() throws IOException {
+        Tablebase opened = Tablebase.open(directory);
+        assertEquals(List.of("KPK", "KQK", "KRK"), opened.getEndings());
+        ChessGame game = new ChessGame("7k/8/6K1/8/8/8/Q7/8 w - - 0 1");
+        assertEquals(tablebase.probe(game.getBoard(), true), opened.probe(game.getBoard(), true));
+
+        // without the DTM file only the result is known
+        Path wdlDirectory = Files.createTempDirectory("wdl");
+        Path wdlFile = wdlDirectory.resolve("KQK" + Tablebase.WDL_EXTENSION);
+        try {
+            Files.copy(directory.resolve("KQK" + Tablebase.WDL_EXTENSION), wdlFile);
+            int result = Tablebase.open(wdlDirectory).probe(game.getBoard(), true);
+            assertEquals(Tablebase.WIN, Tablebase.getWdl(result));
+            assertEquals(Tablebase.UNKNOWN_DISTANCE, Tablebase.getDistance(result));
+        } finally {
+            Files.deleteIfExists(wdlFile);
+            Files.delete(wdlDirectory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsCorruptFile() throws IOException {
+        Path corruptDirectory = Files.createTempDirectory("corrupt");
+        Path file = corruptDirectory.resolve("KQK" + Tablebase.DTM_EXTENSION);
+        try {
+            Files.write(file, new byte[] {1, 2, 3});
+            Tablebase.open(corruptDirectory);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(corruptDirectory);
+        }
+    }
+
+    private int probe(String fen) {
+        ChessGame game = new ChessGame(fen);
+        return tablebase.probe(game.getBoard(), game.isWhiteMove());
+    }
+
+    private void assertResult(int wdl, int distance, String fen) {
+        int result = probe(fen);
+        assertNotEquals(Tablebase.NOT_FOUND, result);
+        assertEquals(wdl, Tablebase.getWdl(result));
+        assertEquals(distance, Tablebase.getDistance(result));
+    }
+}
@@ -1,6 +1,7 @@
 package com.jekabsthomas.chess.engine;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import org.junit.Test;
 
@@ -20,4 +21,34 @@ public class ZobristHashTest {
         ZobristHash hash = new ZobristHash();
         assertEquals(true, hash.getHash(game) == hash.getHash(copy));
     }
+
+    @Test
+    public void testIncrementalHash() {
+        // hash after making moves equals the hash of the same position set up from scratch
+        ChessGame game = new ChessGame();
+        ZobristHash hash = new ZobristHash();
+        long startHash = hash.getHash(game);
+
+        for (int i = 0; i < 6; i++) {
+            game.makeMove(game.getLegalMoves().get(i));
+            assertNotEquals(startHash, hash.getHash(game));
+        }
+
+        ChessGame fromFen = new ChessGame(game.getFenString());
+        assertEquals(hash.getHash(fromFen), hash.getHash(game));
+    }
+
+    @Test
+    public void testPawnHash() {
+        // knight moves leave the pawn structure unchanged, pawn moves do not
+        ChessGame game = new ChessGame();
+        ChessGame knightMoved = new ChessGame(
+            "rnbqkbnr/pppppppp/8/8/8/5N2/PPPPPPPP/RNBQKB1R b KQkq - 1 1");
+        ChessGame pawnMoved = new ChessGame(
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+
+        long pawnHash = game.getBoard().getPawnHash();
+        assertEquals(pawnHash, knightMoved.getBoard().getPawnHash());
+        assertNotEquals(pawnHash, pawnMoved.getBoard().getPawnHash());
+    }
 }